@@ -120,6 +120,10 @@ public class AStarProgress implements Serializable {
 		);
 	}
 	
+	public long getNumNodesExpanded() {
+		return numNodesExpanded;
+	}
+	
 	public void setGoalScore(double val) {
 		goalScore = val;
 	}
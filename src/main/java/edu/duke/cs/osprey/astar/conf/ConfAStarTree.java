@@ -166,7 +166,8 @@ public class ConfAStarTree implements ConfSearch {
 				builder.updater,
 				emat,
 				builder.numIterations,
-				builder.convergenceThreshold
+				builder.convergenceThreshold,
+				builder.numWarmIterations
 			);
 			return this;
 		}
@@ -286,6 +287,21 @@ public class ConfAStarTree implements ConfSearch {
 		 * large numbers of MPLP iterations, optimizing this value may increase performance though.
 		 */
 		private double convergenceThreshold = 0.0001;
+
+		/**
+		 * If greater than zero, MPLP runs to convergence only once at each expanded A* node,
+		 * and then scores each child node by starting from the parent's messages and running
+		 * at most this many more iterations.
+		 * 
+		 * This value doesn't affect the accuracy of the conformation search, only the speed.
+		 * 
+		 * The children start from much better messages than the traditional A* heuristic, so
+		 * a few iterations at each child usually give tighter bounds than a cold start with
+		 * many iterations. This is most helpful for designs with many MPLP iterations.
+		 * 
+		 * When zero, every node starts from the traditional A* heuristic.
+		 */
+		private int numWarmIterations = 0;
 		
 		public MPLPBuilder setUpdater(MPLPUpdater val) {
 			updater = val;
@@ -301,6 +317,11 @@ public class ConfAStarTree implements ConfSearch {
 			convergenceThreshold = val;
 			return this;
 		}
+
+		public MPLPBuilder setNumWarmIterations(int val) {
+			numWarmIterations = val;
+			return this;
+		}
 	}
 
 	public static MPLPBuilder MPLPBuilder() {
@@ -417,6 +438,11 @@ public class ConfAStarTree implements ConfSearch {
 	}
 	
 	private boolean isPruned(ConfIndex confIndex, int nextPos, int nextRc) {
+		return isPruned(rcs, confIndex, nextPos, nextRc);
+	}
+
+	/** true if assigning the RC would make a pair or triple pruned by the RCs' pruning matrix */
+	static boolean isPruned(RCs rcs, ConfIndex confIndex, int nextPos, int nextRc) {
 		
 		// do we even have pruned pairs?
 		PruningMatrix pmat = rcs.getPruneMat();
@@ -39,6 +39,10 @@ import edu.duke.cs.osprey.confspace.Conf;
 import edu.duke.cs.osprey.confspace.SimpleConfSpace;
 import edu.duke.cs.osprey.ematrix.EnergyMatrix;
 import edu.duke.cs.osprey.ematrix.NegatedEnergyMatrix;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+import edu.duke.cs.osprey.tools.ObjectPool;
+import edu.duke.cs.osprey.tools.ObjectPool.Checkout;
 import edu.duke.cs.osprey.tools.TimeFormatter;
 
 import java.math.BigInteger;
@@ -62,6 +66,7 @@ public class ConfRanker {
 		private ScorerFactory gscorerFactory = null;
 		private ScorerFactory hscorerFactory = null;
 		private boolean reportProgress = false;
+		private Parallelism parallelism = Parallelism.makeCpu(1);
 
 		public Builder(SimpleConfSpace confSpace, EnergyMatrix emat) {
 			this.confSpace = confSpace;
@@ -88,6 +93,15 @@ public class ConfRanker {
 			return this;
 		}
 
+		/**
+		 * Count independent sub-trees in parallel on a work-stealing thread pool.
+		 * Each thread gets its own scorers, so the scorer factories must make independent scorers.
+		 */
+		public Builder setParallelism(Parallelism val) {
+			parallelism = val;
+			return this;
+		}
+
 		public ConfRanker build() {
 
 			if (rcs == null) {
@@ -102,17 +116,126 @@ public class ConfRanker {
 				hscorerFactory = (emat) -> new TraditionalPairwiseHScorer(emat, rcs);
 			}
 
-			return new ConfRanker(confSpace, emat, rcs, gscorerFactory, hscorerFactory, reportProgress);
+			return new ConfRanker(confSpace, emat, rcs, gscorerFactory, hscorerFactory, reportProgress, parallelism);
+		}
+	}
+
+	/**
+	 * Bounds on the number of conformations with scores at most the query score.
+	 * The bounds are exact when the ranker had enough time to classify every conformation.
+	 */
+	public static class RankBounds {
+
+		/** number of conformations known to score at most the query score */
+		public final BigInteger lower;
+
+		/** total number of conformations, minus the ones known to score above the query score */
+		public final BigInteger upper;
+
+		public RankBounds(BigInteger lower, BigInteger upper) {
+			this.lower = lower;
+			this.upper = upper;
+		}
+
+		public boolean isExact() {
+			return lower.equals(upper);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("[%s,%s]", lower, upper);
 		}
 	}
 
 	private static int Unassigned = -1;
 
+	/** split the tree into about this many sub-trees per thread, so work-stealing can balance the load */
+	private static final int SubTreesPerThread = 16;
+
+	/** a conformation count that stays in a long until it overflows */
+	private static class Counter {
+
+		private long small = 0;
+		private BigInteger big = BigInteger.ZERO;
+
+		public void increment() {
+			add(1);
+		}
+
+		public void add(long val) {
+			if (small > Long.MAX_VALUE - val) {
+				big = big.add(BigInteger.valueOf(small));
+				small = 0;
+			}
+			small += val;
+		}
+
+		public void add(BigInteger val) {
+			if (val.bitLength() < Long.SIZE - 1) {
+				add(val.longValue());
+			} else {
+				big = big.add(val);
+			}
+		}
+
+		public void add(Counter other) {
+			add(other.small);
+			big = big.add(other.big);
+		}
+
+		public BigInteger get() {
+			return big.add(BigInteger.valueOf(small));
+		}
+	}
+
+	/** conformation counts for one sub-tree, only ever touched by one thread at a time */
+	private static class Counts {
+
+		public final Counter below = new Counter();
+		public final Counter above = new Counter();
+
+		public void add(Counts other) {
+			below.add(other.below);
+			above.add(other.above);
+		}
+	}
+
+	/** search state for one thread at a time, since A* scorers and conf indices aren't thread-safe */
+	private class Scorers {
+
+		public final AStarScorer gscorer = gscorerFactory.make(emat);
+		public final AStarScorer hscorer = hscorerFactory.make(emat);
+		public final AStarScorer negatedHScorer = hscorerFactory.make(negatedEmat);
+		public final ConfIndex confIndex = new ConfIndex(confSpace.positions.size());
+	}
+
+	private class Search {
+
+		public final double queryScore;
+		public final long stopNs;
+		public final boolean hasTimeBudget;
+
+		public Search(double queryScore) {
+			this.queryScore = queryScore;
+			this.stopNs = 0;
+			this.hasTimeBudget = false;
+		}
+
+		public Search(double queryScore, long maxTimeMs) {
+			this.queryScore = queryScore;
+			this.stopNs = System.nanoTime() + maxTimeMs*1000000L;
+			this.hasTimeBudget = true;
+		}
+
+		public boolean isOutOfTime() {
+			return hasTimeBudget && System.nanoTime() - stopNs >= 0;
+		}
+	}
+
 	private class Progress {
 
 		public final BigInteger total;
-		public BigInteger below = BigInteger.ZERO;
-		public BigInteger above = BigInteger.ZERO;
+		public final Counts counts = new Counts();
 
 		public final long startTimeNs = System.nanoTime();
 		public long reportIntervalMs = 5000;
@@ -123,20 +246,12 @@ public class ConfRanker {
 			this.total = total;
 		}
 
-		public void incrementBelow() {
-			incrementBelow(BigInteger.ONE);
+		public BigInteger getBelow() {
+			return counts.below.get();
 		}
 
-		public void incrementAbove() {
-			incrementAbove(BigInteger.ONE);
-		}
-
-		public void incrementBelow(BigInteger val) {
-			below = below.add(val);
-		}
-
-		public void incrementAbove(BigInteger val) {
-			above = above.add(val);
+		public BigInteger getAbove() {
+			return counts.above.get();
 		}
 
 		public void writeReportIfNeeded() {
@@ -152,6 +267,8 @@ public class ConfRanker {
 		}
 
 		public String getReport() {
+			BigInteger below = getBelow();
+			BigInteger above = getAbove();
 			return String.format("progress: [%e,%e] of %e  (%.6f%%)   %s",
 				below.doubleValue(),
 				total.doubleValue() - above.doubleValue(),
@@ -239,6 +356,26 @@ public class ConfRanker {
 			}
 			return numConfs;
 		}
+
+		/** adds the number of conformations in this sub-tree to the counter, without BigInteger math if possible */
+		public void countConformations(RCs rcs, Counter counter) {
+			long numConfs = 1;
+			for (int pos=0; pos<assignments.length; pos++) {
+				if (assignments[pos] == Unassigned) {
+					int numRCs = rcs.getNum(pos);
+					if (numRCs == 0) {
+						// no RCs at this position means no conformations at all
+						return;
+					}
+					if (numConfs > Long.MAX_VALUE/numRCs) {
+						counter.add(getNumConformations(rcs));
+						return;
+					}
+					numConfs *= numRCs;
+				}
+			}
+			counter.add(numConfs);
+		}
 	}
 
 	public final SimpleConfSpace confSpace;
@@ -247,14 +384,13 @@ public class ConfRanker {
 	public final ScorerFactory gscorerFactory;
 	public final ScorerFactory hscorerFactory;
 	public final boolean reportProgress;
+	public final Parallelism parallelism;
 
-	private final AStarScorer gscorer;
-	private final AStarScorer hscorer;
-	private final AStarScorer negatedHScorer;
-	private final ConfIndex confIndex;
+	private final NegatedEnergyMatrix negatedEmat;
+	private final ObjectPool<Scorers> scorers;
 	private final Node rootNode;
 
-	private ConfRanker(SimpleConfSpace confSpace, EnergyMatrix emat, RCs rcs, ScorerFactory gscorerFactory, ScorerFactory hscorerFactory, boolean reportProgress) {
+	private ConfRanker(SimpleConfSpace confSpace, EnergyMatrix emat, RCs rcs, ScorerFactory gscorerFactory, ScorerFactory hscorerFactory, boolean reportProgress, Parallelism parallelism) {
 
 		this.confSpace = confSpace;
 		this.rcs = rcs;
@@ -262,60 +398,131 @@ public class ConfRanker {
 		this.gscorerFactory = gscorerFactory;
 		this.hscorerFactory = hscorerFactory;
 		this.reportProgress = reportProgress;
+		this.parallelism = parallelism;
 
-		// make the A* scorers
-		gscorer = gscorerFactory.make(emat);
-		hscorer = hscorerFactory.make(emat);
-		negatedHScorer = hscorerFactory.make(new NegatedEnergyMatrix(confSpace, emat));
-
-		confIndex = new ConfIndex(confSpace.positions.size());
+		// make the A* scorers lazily, and reuse them across threads and searches
+		negatedEmat = new NegatedEnergyMatrix(confSpace, emat);
+		scorers = new ObjectPool<>((ignored) -> new Scorers());
 
 		// make the root node
 		rootNode = new Node(confSpace.positions.size());
-		rootNode.index(confIndex);
-		rootNode.gscore = gscorer.calc(confIndex, rcs);
-		rootNode.minHScore = hscorer.calc(confIndex, rcs);
-		rootNode.maxHScore = -negatedHScorer.calc(confIndex, rcs);
+		try (Checkout<Scorers> checkout = scorers.autoCheckout()) {
+			Scorers s = checkout.get();
+			rootNode.index(s.confIndex);
+			rootNode.gscore = s.gscorer.calc(s.confIndex, rcs);
+			rootNode.minHScore = s.hscorer.calc(s.confIndex, rcs);
+			rootNode.maxHScore = -s.negatedHScorer.calc(s.confIndex, rcs);
+		}
 	}
 
 	public BigInteger getNumConfsAtMost(double queryScore) {
+		return numConfsAtMost(new Search(queryScore)).getBelow();
+	}
+
+	/**
+	 * Like {@link #getNumConfsAtMost(double)}, but stops after about the given time
+	 * and returns bounds on the count that hold no matter how the unfinished sub-trees would have turned out.
+	 */
+	public RankBounds getNumConfsAtMost(double queryScore, long maxTimeMs) {
+		Progress progress = numConfsAtMost(new Search(queryScore, maxTimeMs));
+		return new RankBounds(
+			progress.getBelow(),
+			progress.total.subtract(progress.getAbove())
+		);
+	}
+
+	private Progress numConfsAtMost(Search search) {
+
 		Progress progress = new Progress(rcs.getNumConformations());
-		numConfsAtMost(rootNode, queryScore, progress);
-		return progress.below;
+
+		try (TaskExecutor tasks = parallelism.makeWorkStealingTaskExecutor(1)) {
+
+			// expand the top levels of the tree breadth-first on this thread,
+			// until there are enough independent sub-trees to keep all the threads busy
+			int numSubTrees = tasks.getParallelism()*SubTreesPerThread;
+			List<Node> subTrees = Collections.singletonList(rootNode);
+			try (Checkout<Scorers> checkout = scorers.autoCheckout()) {
+				while (!subTrees.isEmpty() && subTrees.size() < numSubTrees && !search.isOutOfTime()) {
+					List<Node> childNodes = new ArrayList<>();
+					for (Node node : subTrees) {
+						childNodes.addAll(expand(node, search, progress.counts, checkout.get()));
+					}
+					subTrees = childNodes;
+					progress.writeReportIfNeeded();
+				}
+			}
+
+			// then count the sub-trees in parallel
+			for (Node node : subTrees) {
+				tasks.submit(
+					() -> {
+						Counts counts = new Counts();
+						try (Checkout<Scorers> checkout = scorers.autoCheckout()) {
+							count(node, search, counts, checkout.get());
+						}
+						return counts;
+					},
+					(counts) -> {
+						progress.counts.add(counts);
+						progress.writeReportIfNeeded();
+					}
+				);
+			}
+			tasks.waitForFinish();
+		}
+
+		return progress;
 	}
 
-	private void numConfsAtMost(Node node, double queryScore, Progress progress) {
+	private void count(Node node, Search search, Counts counts, Scorers s) {
 
-		node.index(confIndex);
-		assert (confIndex.numUndefined > 0);
+		// out of time? leave this sub-tree unclassified, so it counts towards neither bound
+		if (search.isOutOfTime()) {
+			return;
+		}
+
+		for (Node childNode : expand(node, search, counts, s)) {
+			count(childNode, search, counts, s);
+		}
+	}
+
+	/**
+	 * Counts the conformations under the node that can be classified cheaply,
+	 * and returns the child nodes that still need to be searched.
+	 */
+	private List<Node> expand(Node node, Search search, Counts counts, Scorers s) {
+
+		node.index(s.confIndex);
+		assert (s.confIndex.numUndefined > 0);
 
 		// if this is the last assignment, just count the energies quickly without sub-tree bounding
-		if (confIndex.numUndefined == 1) {
-			countLeaves(queryScore, progress);
+		if (s.confIndex.numUndefined == 1) {
+			countLeaves(search.queryScore, counts, s);
+			return Collections.emptyList();
 		} else {
-			countBranches(node, queryScore, progress);
+			return countBranches(node, search.queryScore, counts, s);
 		}
 	}
 
-	private void countLeaves(double queryScore, Progress progress) {
+	private void countLeaves(double queryScore, Counts counts, Scorers s) {
 
-		int pos = confIndex.undefinedPos[0];
+		int pos = s.confIndex.undefinedPos[0];
 
 		for (int rc : rcs.get(pos)) {
 
-			double score = gscorer.calcDifferential(confIndex, rcs, pos, rc);
+			double score = s.gscorer.calcDifferential(s.confIndex, rcs, pos, rc);
 
 			if (score <= queryScore) {
-				progress.incrementBelow();
+				counts.below.increment();
 			} else {
-				progress.incrementAbove();
+				counts.above.increment();
 			}
 		}
-
-		progress.writeReportIfNeeded();
 	}
 
-	private void countBranches(Node node, double queryScore, Progress progress) {
+	private List<Node> countBranches(Node node, double queryScore, Counts counts, Scorers s) {
+
+		ConfIndex confIndex = s.confIndex;
 
 		// find the possible assignment that maximizes the number of pruned confs
 		List<Node> childNodes = new ArrayList<>();
@@ -332,14 +539,14 @@ public class ConfRanker {
 				Node childNode = node.assign(pos, rc); // TODO: use object pool to re-use memory?
 
 				// approximate the optimal sub-tree min,max scores using g+h scores
-				childNode.gscore = gscorer.calcDifferential(confIndex, rcs, pos, rc);
-				childNode.minHScore = hscorer.calcDifferential(confIndex, rcs, pos, rc);
+				childNode.gscore = s.gscorer.calcDifferential(confIndex, rcs, pos, rc);
+				childNode.minHScore = s.hscorer.calcDifferential(confIndex, rcs, pos, rc);
 
 				if (childNode.getMinScore() > queryScore) {
 					numSubTreesPruned++;
 				} else {
 
-					childNode.maxHScore = -negatedHScorer.calcDifferential(confIndex, rcs, pos, rc);
+					childNode.maxHScore = -s.negatedHScorer.calcDifferential(confIndex, rcs, pos, rc);
 					if (childNode.getMaxScore() <= queryScore) {
 						numSubTreesPruned++;
 					}
@@ -369,13 +576,13 @@ public class ConfRanker {
 			}
 
 			if (childNode.getMinScore() > queryScore) {
-				progress.incrementAbove(childNode.getNumConformations(rcs));
+				childNode.countConformations(rcs, counts.above);
 				iter.remove();
 				continue;
 			}
 
 			if (childNode.getMaxScore() <= queryScore) {
-				progress.incrementBelow(childNode.getNumConformations(rcs));
+				childNode.countConformations(rcs, counts.below);
 				iter.remove();
 				continue;
 			}
@@ -383,11 +590,6 @@ public class ConfRanker {
 			// can't prune, keep this child node in the list
 		}
 
-		progress.writeReportIfNeeded();
-
-		// recurse on the child nodes
-		for (Node childNode: childNodes) {
-			numConfsAtMost(childNode, queryScore, progress);
-		}
+		return childNodes;
 	}
 }
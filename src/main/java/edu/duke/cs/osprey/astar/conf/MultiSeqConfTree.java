@@ -0,0 +1,561 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.astar.conf;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.duke.cs.osprey.astar.conf.linked.LinkedConfAStarNode;
+import edu.duke.cs.osprey.astar.conf.order.AStarOrder;
+import edu.duke.cs.osprey.astar.conf.order.DynamicHMeanAStarOrder;
+import edu.duke.cs.osprey.astar.conf.scoring.AStarScorer;
+import edu.duke.cs.osprey.astar.conf.scoring.PairwiseGScorer;
+import edu.duke.cs.osprey.astar.conf.scoring.TraditionalPairwiseHScorer;
+import edu.duke.cs.osprey.confspace.ConfSearch;
+import edu.duke.cs.osprey.confspace.ConfSpaceIteration;
+import edu.duke.cs.osprey.confspace.Sequence;
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.pruning.PruningMatrix;
+
+
+/**
+ * A* conformation search over many sequences at once, eg for a sweep of partition functions.
+ *
+ * Sequences start out sharing the search tree, and a node stays shared by all the sequences whose RCs
+ * include its assignments, so those sequences expand and score the node only once. Once a node matches
+ * only one sequence, the rest of its subtree belongs to that sequence and is searched just like
+ * {@link ConfAStarTree} with the traditional heuristic.
+ *
+ * Shared nodes are scored with the traditional heuristic over the union of the RCs of just the sequences
+ * sharing the node, which is a lower bound for each of them, so each sequence still gets its conformations in order.
+ * Shared nodes pick the next position with {@link DynamicHMeanAStarOrder} over the same union of RCs.
+ *
+ * Each call to {@link #makeConfSearch} makes an independent search. Once the expected number of searches
+ * (see {@link Builder#setNumSearchesPerSequence}) have all expanded a shared node, the tree forgets the
+ * node's children, so the shared part of the tree doesn't outlive the searches that need it.
+ * Any extra searches still work, they just expand those nodes again.
+ */
+public class MultiSeqConfTree {
+
+	public static class Builder {
+
+		private final EnergyMatrix emat;
+		private final ConfSpaceIteration confSpace;
+		private final List<Sequence> sequences = new ArrayList<>();
+
+		private PruningMatrix pmat = null;
+		private int numSearchesPerSequence = 1;
+
+		public Builder(EnergyMatrix emat, ConfSpaceIteration confSpace) {
+			this.emat = emat;
+			this.confSpace = confSpace;
+		}
+
+		public Builder addSequence(Sequence val) {
+			if (!sequences.contains(val)) {
+				sequences.add(val);
+			}
+			return this;
+		}
+
+		public Builder addSequences(Collection<Sequence> vals) {
+			for (Sequence val : vals) {
+				addSequence(val);
+			}
+			return this;
+		}
+
+		public Builder setPruningMatrix(PruningMatrix val) {
+			pmat = val;
+			return this;
+		}
+
+		/**
+		 * How many searches will be made for each sequence, eg 2 if a partition function
+		 * uses separate upper and lower bound searches.
+		 */
+		public Builder setNumSearchesPerSequence(int val) {
+			if (val <= 0) {
+				throw new IllegalArgumentException("number of searches must be positive");
+			}
+			numSearchesPerSequence = val;
+			return this;
+		}
+
+		public MultiSeqConfTree build() {
+
+			if (sequences.isEmpty()) {
+				throw new IllegalArgumentException("add at least one sequence");
+			}
+
+			return new MultiSeqConfTree(emat, confSpace, sequences, pmat, numSearchesPerSequence);
+		}
+	}
+
+	/** the sequences that share a node, and how to score nodes for them */
+	private static class Group {
+
+		final BitSet seqs;
+		final RCs rcs;
+		final AStarScorer hscorer;
+		final AStarOrder order;
+
+		Group(BitSet seqs, RCs rcs, AStarScorer gscorer, AStarScorer hscorer) {
+			this.seqs = seqs;
+			this.rcs = rcs;
+			this.hscorer = hscorer;
+			this.order = new DynamicHMeanAStarOrder();
+			this.order.setScorers(gscorer, hscorer);
+		}
+	}
+
+	/** a node whose subtree is shared by more than one sequence */
+	private static class SharedNode implements ConfAStarNode {
+
+		final LinkedConfAStarNode node;
+		final Group group;
+
+		List<SharedChild> children = null;
+		int numExpansions = 0;
+
+		SharedNode(LinkedConfAStarNode node, Group group) {
+			this.node = node;
+			this.group = group;
+		}
+
+		@Override
+		public LinkedConfAStarNode assign(int pos, int rc) {
+			return node.assign(pos, rc);
+		}
+
+		@Override
+		public void getConf(int[] conf) {
+			node.getConf(conf);
+		}
+
+		@Override
+		public void index(ConfIndex index) {
+			node.index(index);
+		}
+
+		@Override
+		public double getGScore() {
+			return node.getGScore();
+		}
+
+		@Override
+		public void setGScore(double val) {
+			node.setGScore(val);
+		}
+
+		@Override
+		public double getHScore() {
+			return node.getHScore();
+		}
+
+		@Override
+		public void setHScore(double val) {
+			node.setHScore(val);
+		}
+
+		@Override
+		public int getLevel() {
+			return node.getLevel();
+		}
+	}
+
+	private static class SharedChild {
+
+		final int pos;
+		final int rc;
+		final BitSet seqs;
+
+		/** null if only one sequence has this child, so each sequence should score its own */
+		final SharedNode node;
+
+		SharedChild(int pos, int rc, BitSet seqs, SharedNode node) {
+			this.pos = pos;
+			this.rc = rc;
+			this.seqs = seqs;
+			this.node = node;
+		}
+	}
+
+	public final EnergyMatrix emat;
+	public final ConfSpaceIteration confSpace;
+	public final List<Sequence> sequences;
+	public final int numSearchesPerSequence;
+
+	private final int numPos;
+	private final RCs[] unprunedRCsBySeq;
+	private final RCs[] rcsBySeq;
+
+	private final AStarScorer sharedGScorer;
+	private final ConfIndex sharedIndex;
+	private final Map<BitSet,Group> groups = new HashMap<>();
+	private SharedNode sharedRoot = null;
+
+	private final AtomicLong numSharedExpansions = new AtomicLong(0);
+	private final AtomicLong numReusedExpansions = new AtomicLong(0);
+	private final AtomicLong numOwnExpansions = new AtomicLong(0);
+
+	private MultiSeqConfTree(EnergyMatrix emat, ConfSpaceIteration confSpace, List<Sequence> sequences, PruningMatrix pmat, int numSearchesPerSequence) {
+
+		this.emat = emat;
+		this.confSpace = confSpace;
+		this.sequences = new ArrayList<>(sequences);
+		this.numSearchesPerSequence = numSearchesPerSequence;
+
+		numPos = confSpace.numPos();
+
+		// get the RCs for each sequence
+		unprunedRCsBySeq = new RCs[sequences.size()];
+		rcsBySeq = new RCs[sequences.size()];
+		for (int i=0; i<sequences.size(); i++) {
+			unprunedRCsBySeq[i] = sequences.get(i).makeRCs(confSpace);
+			rcsBySeq[i] = unprunedRCsBySeq[i];
+			if (pmat != null) {
+				rcsBySeq[i] = new RCs(rcsBySeq[i], pmat);
+			}
+		}
+
+		sharedGScorer = new PairwiseGScorer(emat);
+		sharedIndex = new ConfIndex(numPos);
+	}
+
+	/** the number of shared nodes expanded, ie the expansions each sequence would otherwise repeat */
+	public long getNumSharedExpansions() {
+		return numSharedExpansions.get();
+	}
+
+	/** the number of times a sequence's search used a shared node another search had already expanded */
+	public long getNumReusedExpansions() {
+		return numReusedExpansions.get();
+	}
+
+	/** the number of nodes expanded by all the searches, counting each shared node only once */
+	public long getNumExpansions() {
+		return numSharedExpansions.get() + numOwnExpansions.get();
+	}
+
+	public int indexOf(Sequence seq) {
+		int seqi = sequences.indexOf(seq);
+		if (seqi < 0) {
+			throw new IllegalArgumentException("sequence was not added to the tree: " + seq);
+		}
+		return seqi;
+	}
+
+	/**
+	 * finds the sequence with exactly these RCs, before or after pruning,
+	 * eg for a {@link edu.duke.cs.osprey.kstar.KStar.PfuncFactory}
+	 */
+	public int indexOf(RCs rcs) {
+		for (int seqi=0; seqi<rcsBySeq.length; seqi++) {
+			if (sameRCs(unprunedRCsBySeq[seqi], rcs) || sameRCs(rcsBySeq[seqi], rcs)) {
+				return seqi;
+			}
+		}
+		throw new IllegalArgumentException("no sequence in the tree has RCs " + rcs);
+	}
+
+	private boolean sameRCs(RCs a, RCs b) {
+		if (a.getNumPos() != b.getNumPos()) {
+			return false;
+		}
+		for (int pos=0; pos<a.getNumPos(); pos++) {
+			if (!Arrays.equals(a.get(pos), b.get(pos))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public RCs getRCs(Sequence seq) {
+		return rcsBySeq[indexOf(seq)];
+	}
+
+	public SequenceConfSearch makeConfSearch(Sequence seq) {
+		return new SequenceConfSearch(indexOf(seq));
+	}
+
+	public SequenceConfSearch makeConfSearch(RCs rcs) {
+		return new SequenceConfSearch(indexOf(rcs));
+	}
+
+	private Group getGroup(BitSet seqs) {
+		return groups.computeIfAbsent(seqs, key -> {
+
+			// take the union of the sequences' RCs
+			int[][] union = new int[numPos][];
+			for (int pos=0; pos<numPos; pos++) {
+				TreeSet<Integer> rcs = new TreeSet<>();
+				for (int seqi = seqs.nextSetBit(0); seqi >= 0; seqi = seqs.nextSetBit(seqi + 1)) {
+					for (int rc : rcsBySeq[seqi].get(pos)) {
+						rcs.add(rc);
+					}
+				}
+				union[pos] = rcs.stream().mapToInt(i -> i).toArray();
+			}
+			RCs rcs = new RCs(union);
+
+			return new Group(seqs, rcs, sharedGScorer, new TraditionalPairwiseHScorer(emat, rcs));
+		});
+	}
+
+	private synchronized SharedNode getSharedRoot() {
+		if (sharedRoot == null) {
+
+			BitSet seqs = new BitSet();
+			seqs.set(0, rcsBySeq.length);
+			Group group = getGroup(seqs);
+
+			// assign the positions every sequence has only one RC for, like ConfAStarTree does
+			LinkedConfAStarNode node = new LinkedConfAStarNode();
+			for (int pos=0; pos<numPos; pos++) {
+				if (group.rcs.getNum(pos) == 1) {
+					node = node.assign(pos, group.rcs.get(pos)[0]);
+				}
+			}
+
+			node.index(sharedIndex);
+			node.setGScore(sharedGScorer.calc(sharedIndex, group.rcs));
+			node.setHScore(group.hscorer.calc(sharedIndex, group.rcs));
+			sharedRoot = new SharedNode(node, group);
+		}
+		return sharedRoot;
+	}
+
+	private synchronized List<SharedChild> expand(SharedNode parent) {
+
+		List<SharedChild> children = parent.children;
+		if (children == null) {
+			children = makeChildren(parent);
+			numSharedExpansions.incrementAndGet();
+		} else {
+			numReusedExpansions.incrementAndGet();
+		}
+
+		// once every search has moved past this node, forget the children
+		parent.numExpansions++;
+		if (parent.numExpansions >= parent.group.seqs.cardinality()*numSearchesPerSequence) {
+			parent.children = null;
+		} else {
+			parent.children = children;
+		}
+
+		return children;
+	}
+
+	private List<SharedChild> makeChildren(SharedNode parent) {
+
+		Group group = parent.group;
+		parent.index(sharedIndex);
+		int pos = group.order.getNextPos(sharedIndex, group.rcs);
+
+		List<SharedChild> children = new ArrayList<>();
+		for (int rc : group.rcs.get(pos)) {
+
+			// which sequences have this child?
+			BitSet seqs = new BitSet();
+			for (int seqi = group.seqs.nextSetBit(0); seqi >= 0; seqi = group.seqs.nextSetBit(seqi + 1)) {
+				if (rcsBySeq[seqi].contains(pos, rc)) {
+					seqs.set(seqi);
+				}
+			}
+			if (seqs.isEmpty()) {
+				continue;
+			}
+
+			// only share the child if more than one sequence can use it
+			SharedNode node = null;
+			if (seqs.cardinality() > 1) {
+				Group childGroup = getGroup(seqs);
+				LinkedConfAStarNode child = parent.assign(pos, rc);
+				child.setGScore(sharedGScorer.calcDifferential(sharedIndex, group.rcs, pos, rc));
+				child.setHScore(childGroup.hscorer.calcDifferential(sharedIndex, childGroup.rcs, pos, rc));
+				node = new SharedNode(child, childGroup);
+			}
+
+			children.add(new SharedChild(pos, rc, seqs, node));
+		}
+
+		return children;
+	}
+
+	/**
+	 * A* search over the conformations of one sequence, that shares nodes with the other sequences in the tree
+	 */
+	public class SequenceConfSearch implements ConfSearch {
+
+		public final Sequence sequence;
+		public final RCs rcs;
+
+		private final int seqi;
+		private final AStarScorer gscorer;
+		private final AStarScorer hscorer;
+		private final AStarOrder order;
+		private final ConfIndex index;
+		private final PriorityQueue<ConfAStarNode> queue = new PriorityQueue<>();
+
+		private boolean isStarted = false;
+
+		private SequenceConfSearch(int seqi) {
+
+			this.seqi = seqi;
+			this.sequence = sequences.get(seqi);
+			this.rcs = rcsBySeq[seqi];
+
+			gscorer = new PairwiseGScorer(emat);
+			hscorer = new TraditionalPairwiseHScorer(emat, rcs);
+			order = new DynamicHMeanAStarOrder();
+			order.setScorers(gscorer, hscorer);
+			index = new ConfIndex(numPos);
+		}
+
+		@Override
+		public BigInteger getNumConformations() {
+			return rcs.getNumConformations();
+		}
+
+		@Override
+		public ScoredConf nextConf() {
+
+			if (!isStarted) {
+				isStarted = true;
+
+				if (!rcs.hasConfs()) {
+					return null;
+				}
+
+				if (sequences.size() > 1) {
+					queue.add(getSharedRoot());
+				} else {
+					queue.add(scoreFork(new LinkedConfAStarNode()));
+				}
+			}
+
+			while (true) {
+
+				// no nodes left? we're done
+				ConfAStarNode node = queue.poll();
+				if (node == null) {
+					return null;
+				}
+
+				// leaf node? report it
+				if (node.getLevel() == numPos) {
+					return new ScoredConf(node.makeConf(numPos), node.getGScore());
+				}
+
+				if (node instanceof SharedNode) {
+					expandShared((SharedNode)node);
+				} else {
+					expandOwn(node);
+				}
+			}
+		}
+
+		private void expandShared(SharedNode parent) {
+
+			for (SharedChild child : expand(parent)) {
+
+				if (!child.seqs.get(seqi)) {
+					continue;
+				}
+
+				parent.index(index);
+				if (ConfAStarTree.isPruned(rcs, index, child.pos, child.rc)) {
+					continue;
+				}
+
+				ConfAStarNode node = child.node;
+				if (node == null) {
+					node = scoreFork(parent.assign(child.pos, child.rc));
+				}
+				if (Double.isFinite(node.getScore())) {
+					queue.add(node);
+				}
+			}
+		}
+
+		private void expandOwn(ConfAStarNode parent) {
+
+			numOwnExpansions.incrementAndGet();
+
+			parent.index(index);
+			int nextPos = order.getNextPos(index, rcs);
+
+			for (int nextRc : rcs.get(nextPos)) {
+
+				if (ConfAStarTree.isPruned(rcs, index, nextPos, nextRc)) {
+					continue;
+				}
+
+				parent.index(index);
+				ConfAStarNode child = parent.assign(nextPos, nextRc);
+				child.setGScore(gscorer.calcDifferential(index, rcs, nextPos, nextRc));
+				child.setHScore(hscorer.calcDifferential(index, rcs, nextPos, nextRc));
+				if (Double.isFinite(child.getScore())) {
+					queue.add(child);
+				}
+			}
+		}
+
+		/** starts this sequence's own subtree, and assigns the positions with only one RC, like ConfAStarTree does */
+		private ConfAStarNode scoreFork(LinkedConfAStarNode node) {
+
+			node.index(index);
+			for (int pos=0; pos<numPos; pos++) {
+				if (rcs.getNum(pos) == 1 && index.isUndefined(pos)) {
+					node = node.assign(pos, rcs.get(pos)[0]);
+				}
+			}
+
+			node.index(index);
+			node.setGScore(gscorer.calc(index, rcs));
+			node.setHScore(hscorer.calc(index, rcs));
+			return node;
+		}
+	}
+}
@@ -37,24 +37,42 @@ import edu.duke.cs.osprey.astar.conf.RCs;
 import edu.duke.cs.osprey.astar.conf.scoring.mplp.MPLPUpdater;
 import edu.duke.cs.osprey.astar.conf.scoring.mplp.MessageVars;
 import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.PrimitiveEnergyMatrix;
 
 public class MPLPPairwiseHScorer implements AStarScorer {
 	
 	private MPLPUpdater updater;
 	private EnergyMatrix emat;
+	private PrimitiveEnergyMatrix energies;
 	private int maxNumIterations;
 	private double epsilon;
+	private int numWarmIterations;
+
+	// converged messages for the last node whose children we scored, for warm starts
+	private ConfIndex warmIndex = null;
+	private MessageVars warmLambdas = null;
 
 	public MPLPPairwiseHScorer(MPLPUpdater updater, EnergyMatrix emat, int maxNumIterations, double epsilon) {
+		this(updater, emat, maxNumIterations, epsilon, 0);
+	}
+
+	/**
+	 * @param numWarmIterations if > 0, score child nodes by starting MPLP from their parent's
+	 *                          converged messages, and running at most this many more iterations.
+	 *                          if 0, start every node from the traditional A* heuristic instead.
+	 */
+	public MPLPPairwiseHScorer(MPLPUpdater updater, EnergyMatrix emat, int maxNumIterations, double epsilon, int numWarmIterations) {
 		this.updater = updater;
 		this.emat = emat;
+		this.energies = emat.primitive();
 		this.maxNumIterations = maxNumIterations;
 		this.epsilon = epsilon;
+		this.numWarmIterations = numWarmIterations;
 	}
 	
 	@Override
 	public MPLPPairwiseHScorer make() {
-		return new MPLPPairwiseHScorer(updater, emat, maxNumIterations, epsilon);
+		return new MPLPPairwiseHScorer(updater, emat, maxNumIterations, epsilon, numWarmIterations);
 	}
 
 	@Override
@@ -63,12 +81,50 @@ public class MPLPPairwiseHScorer implements AStarScorer {
 		// init lambdas using the traditional A* heuristic
 		// NOTE: we must use these initial values for early stopping to be sound
 		MessageVars lambdas = new MessageVars(rcs, confIndex);
-		lambdas.initTraditionalAStar(emat);
+		lambdas.initTraditionalAStar(energies);
 		
 		// run MPLP
+		return run(lambdas, maxNumIterations);
+	}
+
+	@Override
+	public double calcDifferential(ConfIndex confIndex, RCs rcs, int nextPos, int nextRc) {
+
+		if (numWarmIterations <= 0 || maxNumIterations <= 0) {
+			return AStarScorer.super.calcDifferential(confIndex, rcs, nextPos, nextRc);
+		}
+
+		// A* scores all the children of a node in a row, so converge MPLP at the parent once
+		if (!isWarm(confIndex, rcs)) {
+			warmIndex = new ConfIndex(confIndex);
+			warmLambdas = new MessageVars(rcs, warmIndex);
+			warmLambdas.initTraditionalAStar(energies);
+			run(warmLambdas, maxNumIterations);
+		}
+
+		// then just refine the parent's messages at each child
+		// NOTE: the parent's messages are as sound a starting point as the traditional A* heuristic
+		MessageVars lambdas = new MessageVars(rcs, confIndex.assign(nextPos, nextRc));
+		lambdas.initFromParent(warmLambdas, energies);
+		return run(lambdas, numWarmIterations);
+	}
+
+	private boolean isWarm(ConfIndex confIndex, RCs rcs) {
+		if (warmIndex == null || warmLambdas.getRCs() != rcs || warmIndex.numDefined != confIndex.numDefined) {
+			return false;
+		}
+		for (int i=0; i<confIndex.numDefined; i++) {
+			if (warmIndex.definedPos[i] != confIndex.definedPos[i] || warmIndex.definedRCs[i] != confIndex.definedRCs[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private double run(MessageVars lambdas, int numIterations) {
 		double energy = lambdas.getTotalEnergy();
-		for (int i=0; i<maxNumIterations; i++) {
-			updater.update(lambdas, emat);
+		for (int i=0; i<numIterations; i++) {
+			updater.update(lambdas, energies);
 			double newEnergy = lambdas.getTotalEnergy();
 			if (Math.abs(newEnergy - energy) < epsilon) {
 				break;
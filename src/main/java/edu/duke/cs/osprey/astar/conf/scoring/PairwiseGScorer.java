@@ -35,6 +35,7 @@ package edu.duke.cs.osprey.astar.conf.scoring;
 import edu.duke.cs.osprey.astar.conf.ConfIndex;
 import edu.duke.cs.osprey.astar.conf.RCs;
 import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.PrimitiveEnergyMatrix;
 import edu.duke.cs.osprey.tools.MathTools;
 
 public class PairwiseGScorer implements AStarScorer {
@@ -42,6 +43,8 @@ public class PairwiseGScorer implements AStarScorer {
 	public final EnergyMatrix emat;
 	public final MathTools.Optimizer optimizer;
 
+	private final PrimitiveEnergyMatrix energies;
+
 	public PairwiseGScorer(EnergyMatrix emat) {
 		this(emat, MathTools.Optimizer.Minimize);
 	}
@@ -49,6 +52,8 @@ public class PairwiseGScorer implements AStarScorer {
 	public PairwiseGScorer(EnergyMatrix emat, MathTools.Optimizer optimizer) {
 		this.emat = emat;
 		this.optimizer = optimizer;
+
+		energies = emat.primitive();
 	}
 	
 	@Override
@@ -60,14 +65,14 @@ public class PairwiseGScorer implements AStarScorer {
 	public double calc(ConfIndex confIndex, RCs rcs) {
 		
 		// constant term
-    	double gscore = emat.getConstTerm();
+    	double gscore = energies.getConstTerm();
     	
     	// one body energies
 		for (int i=0; i<confIndex.numDefined; i++) {
 			int pos1 = confIndex.definedPos[i];
 			int rc1 = confIndex.definedRCs[i];
 			
-			gscore += emat.getOneBody(pos1, rc1);
+			gscore += energies.getOneBody(pos1, rc1);
 		}
 		
 		// pairwise energies
@@ -79,7 +84,7 @@ public class PairwiseGScorer implements AStarScorer {
 				int pos2 = confIndex.definedPos[j];
 				int rc2 = confIndex.definedRCs[j];
 				
-				gscore += emat.getPairwise(pos1, rc1, pos2, rc2);
+				gscore += energies.getPairwise(pos1, rc1, pos2, rc2);
 			}
 		}
 		
@@ -93,13 +98,22 @@ public class PairwiseGScorer implements AStarScorer {
     	double gscore = confIndex.node.getGScore(optimizer);
     	
     	// add the new one-body energy
-    	gscore += emat.getOneBody(nextPos, nextRc);
+    	gscore += energies.getOneBody(nextPos, nextRc);
     	
-    	// add the new pairwise energies
-    	for (int i=0; i<confIndex.numDefined; i++) {
-    		int pos = confIndex.definedPos[i];
-    		int rc = confIndex.definedRCs[i];
-    		gscore += emat.getPairwise(pos, rc, nextPos, nextRc);
+    	// add the new pairwise energies, from the new RC's rows if we can
+    	if (energies.hasArrays()) {
+    		double[] rows = energies.getPairwiseRows();
+    		for (int i=0; i<confIndex.numDefined; i++) {
+    			int pos = confIndex.definedPos[i];
+    			int rc = confIndex.definedRCs[i];
+    			gscore += rows[energies.getPairwiseRowOffset(nextPos, nextRc, pos) + rc*energies.getPairwiseRowStride(nextPos, pos)];
+    		}
+    	} else {
+    		for (int i=0; i<confIndex.numDefined; i++) {
+    			int pos = confIndex.definedPos[i];
+    			int rc = confIndex.definedRCs[i];
+    			gscore += energies.getPairwise(pos, rc, nextPos, nextRc);
+    		}
     	}
     	
     	return gscore;
@@ -36,6 +36,7 @@ import edu.duke.cs.osprey.astar.conf.ConfAStarNode;
 import edu.duke.cs.osprey.astar.conf.ConfIndex;
 import edu.duke.cs.osprey.astar.conf.RCs;
 import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.PrimitiveEnergyMatrix;
 import edu.duke.cs.osprey.tools.MathTools;
 
 public class TraditionalPairwiseHScorer implements AStarScorer {
@@ -44,6 +45,7 @@ public class TraditionalPairwiseHScorer implements AStarScorer {
 	public final RCs rcs;
 	public final MathTools.Optimizer optimizer;
 	
+	private final PrimitiveEnergyMatrix energies;
 	private double[][][] undefinedEnergies; // indexed by (pos1,pos2), rc at pos1
 	private ConfAStarNode cachedNode;
 	private double[][] cachedEnergies;
@@ -56,9 +58,13 @@ public class TraditionalPairwiseHScorer implements AStarScorer {
 		this.emat = emat;
 		this.rcs = rcs;
 		this.optimizer = optimizer;
+		this.energies = emat.primitive();
 		
 		int numPos = emat.getNumPos();
 		
+		// read the pairwise energies a row at a time, if we can
+		double[] rows = energies.hasArrays() ? energies.getPairwiseRows() : null;
+		
 		// pre-compute all undefined energy terms
 		undefinedEnergies = new double[numPos][][];
 		for (int pos1=0; pos1<numPos; pos1++) {
@@ -75,8 +81,16 @@ public class TraditionalPairwiseHScorer implements AStarScorer {
 					
 					// optimize over rc2
 					double optEnergy = optimizer.initDouble();
-					for (int rc2 : rcs.get(pos2)) {
-						optEnergy = optimizer.opt(optEnergy, emat.getPairwise(pos1, rc1, pos2, rc2));
+					if (rows != null) {
+						// pos1 > pos2, so the row is contiguous
+						int offset = energies.getPairwiseRowOffset(pos1, rc1, pos2);
+						for (int rc2 : rcs.get(pos2)) {
+							optEnergy = optimizer.opt(optEnergy, rows[offset + rc2]);
+						}
+					} else {
+						for (int rc2 : rcs.get(pos2)) {
+							optEnergy = optimizer.opt(optEnergy, energies.getPairwise(pos1, rc1, pos2, rc2));
+						}
 					}
 					
 					undefinedEnergies[pos1][i][pos2] = optEnergy;
@@ -162,7 +176,7 @@ public class TraditionalPairwiseHScorer implements AStarScorer {
 				}
 				
 				// add defined contribution
-				rcEnergy += emat.getPairwise(pos, rc, nextPos, nextRc);
+				rcEnergy += energies.getPairwise(pos, rc, nextPos, nextRc);
 				
 				optRCEnergy = optimizer.opt(optRCEnergy, rcEnergy);
 			}
@@ -186,14 +200,14 @@ public class TraditionalPairwiseHScorer implements AStarScorer {
 				int rc1 = rcs1[j];
 				
 				// start with the one-body energy
-				double energy = emat.getOneBody(pos1, rc1);
+				double energy = energies.getOneBody(pos1, rc1);
 				
 				// add defined energies
 				for (int k=0; k<confIndex.numDefined; k++) {
 					int pos2 = confIndex.definedPos[k];
 					int rc2 = confIndex.definedRCs[k];
 					
-					energy += emat.getPairwise(pos1, rc1, pos2, rc2);
+					energy += energies.getPairwise(pos1, rc1, pos2, rc2);
 				}
 				
 				// add undefined energies
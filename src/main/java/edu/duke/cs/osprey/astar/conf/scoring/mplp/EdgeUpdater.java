@@ -34,12 +34,12 @@ package edu.duke.cs.osprey.astar.conf.scoring.mplp;
 
 import edu.duke.cs.osprey.astar.conf.ConfIndex;
 import edu.duke.cs.osprey.astar.conf.RCs;
-import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.PrimitiveEnergyMatrix;
 
 public class EdgeUpdater implements MPLPUpdater {
 	
 	@Override
-	public void update(MessageVars lambdas, EnergyMatrix emat) {
+	public void update(MessageVars lambdas, PrimitiveEnergyMatrix emat) {
 		
 		// lambda_ji(xi) = -0.5*lambda_{i-j}(xi) + 0.5*max_xj [ lamda_{j-i}(xj) + theta_ij(xi,xj) ]
 		// and with i,j reversed
@@ -81,22 +81,30 @@ public class EdgeUpdater implements MPLPUpdater {
 		}
 	}
 	
-	private void update(MessageVars lambdas, EnergyMatrix emat, int posi1, int posi2) {
+	private void update(MessageVars lambdas, PrimitiveEnergyMatrix emat, int posi1, int posi2) {
 
 		RCs rcs = lambdas.getRCs();
 		ConfIndex confIndex = lambdas.getConfIndex();
 		
 		int pos1 = confIndex.undefinedPos[posi1];
 		int pos2 = confIndex.undefinedPos[posi2];
+		int[] rcs2 = rcs.get(pos2);
+
+		// read the pairwise energies a row at a time, if we can
+		double[] rows = emat.hasArrays() ? emat.getPairwiseRows() : null;
+		int stride = rows != null ? emat.getPairwiseRowStride(pos1, pos2) : 0;
 
 		for (int rci1=0; rci1<rcs.getNum(pos1); rci1++) {
 			int rc1 = rcs.get(pos1, rci1);
+			int offset = rows != null ? emat.getPairwiseRowOffset(pos1, rc1, pos2) : 0;
 			
 			double minEnergy = Double.POSITIVE_INFINITY;
-			for (int rci2=0; rci2<rcs.getNum(pos2); rci2++) {
-				int rc2 = rcs.get(pos2, rci2);
-				double energy = lambdas.getEnergyWithout(posi2, rci2, posi1)
-					+ emat.getPairwise(pos1, rc1, pos2, rc2);
+			for (int rci2=0; rci2<rcs2.length; rci2++) {
+				int rc2 = rcs2[rci2];
+				double theta = rows != null
+					? rows[offset + rc2*stride]
+					: emat.getPairwise(pos1, rc1, pos2, rc2);
+				double energy = lambdas.getEnergyWithout(posi2, rci2, posi1) + theta;
 				minEnergy = Math.min(minEnergy, energy);
 			}
 			
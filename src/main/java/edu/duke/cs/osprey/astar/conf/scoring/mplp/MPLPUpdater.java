@@ -33,8 +33,13 @@
 package edu.duke.cs.osprey.astar.conf.scoring.mplp;
 
 import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.PrimitiveEnergyMatrix;
 
 public interface MPLPUpdater {
 	
-	void update(MessageVars lambdas, EnergyMatrix emat); 
+	void update(MessageVars lambdas, PrimitiveEnergyMatrix emat); 
+	
+	default void update(MessageVars lambdas, EnergyMatrix emat) {
+		update(lambdas, emat.primitive());
+	}
 }
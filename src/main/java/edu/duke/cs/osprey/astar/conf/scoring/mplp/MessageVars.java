@@ -37,6 +37,7 @@ import java.util.Arrays;
 import edu.duke.cs.osprey.astar.conf.ConfIndex;
 import edu.duke.cs.osprey.astar.conf.RCs;
 import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.PrimitiveEnergyMatrix;
 
 public class MessageVars {
 	
@@ -85,6 +86,13 @@ public class MessageVars {
 	}
 	
 	public void initTraditionalAStar(EnergyMatrix emat) {
+		initTraditionalAStar(emat.primitive());
+	}
+	
+	public void initTraditionalAStar(PrimitiveEnergyMatrix emat) {
+		
+		// read the pairwise energies a row at a time, if we can
+		double[] rows = emat.hasArrays() ? emat.getPairwiseRows() : null;
 		
 		for (int posi1=0; posi1<confIndex.numUndefined; posi1++) {
 			int pos1 = confIndex.undefinedPos[posi1];
@@ -109,8 +117,16 @@ public class MessageVars {
 					
 						// min over the other RC
 						double minEnergy = Double.POSITIVE_INFINITY;
-						for (int rc2 : rcs.get(pos2)) {
-							minEnergy = Math.min(minEnergy, emat.getPairwise(pos1, rc1, pos2, rc2));
+						if (rows != null) {
+							int offset = emat.getPairwiseRowOffset(pos1, rc1, pos2);
+							int stride = emat.getPairwiseRowStride(pos1, pos2);
+							for (int rc2 : rcs.get(pos2)) {
+								minEnergy = Math.min(minEnergy, rows[offset + rc2*stride]);
+							}
+						} else {
+							for (int rc2 : rcs.get(pos2)) {
+								minEnergy = Math.min(minEnergy, emat.getPairwise(pos1, rc1, pos2, rc2));
+							}
 						}
 						set(posi2, posi1, rci1, minEnergy);
 					
@@ -132,6 +148,56 @@ public class MessageVars {
 		}
 	}
 	
+	/**
+	 * Warm-starts the messages from the messages of an ancestor node, eg after MPLP converged there.
+	 *
+	 * The ancestor's undefined positions must include all of this node's undefined positions.
+	 * Messages between positions that are still undefined carry over as-is. Messages to and from
+	 * the newly-defined positions are replaced by the exact pairwise energies with the defined RCs,
+	 * so the lower bound stays sound, just like after {@link #initTraditionalAStar}.
+	 */
+	public void initFromParent(MessageVars parent, PrimitiveEnergyMatrix emat) {
+
+		if (parent.rcs != rcs) {
+			throw new IllegalArgumentException("parent messages are for different RCs");
+		}
+
+		// map our undefined positions to the parent's
+		int[] parentPosis = new int[confIndex.numUndefined];
+		for (int posi1=0; posi1<confIndex.numUndefined; posi1++) {
+			parentPosis[posi1] = parent.confIndex.findUndefined(confIndex.undefinedPos[posi1]);
+			if (parentPosis[posi1] < 0) {
+				throw new IllegalArgumentException("position " + confIndex.undefinedPos[posi1] + " is defined in the parent");
+			}
+		}
+
+		for (int posi1=0; posi1<confIndex.numUndefined; posi1++) {
+			int pos1 = confIndex.undefinedPos[posi1];
+			int parentPosi1 = parentPosis[posi1];
+
+			for (int rci1=0; rci1<rcs.getNum(pos1); rci1++) {
+				int rc1 = rcs.get(pos1, rci1);
+
+				// i,i messages get the energies with the positions the parent didn't have defined
+				double sum = parent.get(parentPosi1, parentPosi1, rci1);
+				for (int posi2=0; posi2<confIndex.numDefined; posi2++) {
+					int pos2 = confIndex.definedPos[posi2];
+					if (parent.confIndex.isUndefined(pos2)) {
+						sum += emat.getPairwise(pos1, rc1, pos2, confIndex.definedRCs[posi2]);
+					}
+				}
+				set(posi1, posi1, rci1, sum);
+
+				// i,j messages just carry over
+				for (int posi2=0; posi2<confIndex.numUndefined; posi2++) {
+					if (posi2 != posi1) {
+						set(posi2, posi1, rci1, parent.get(parentPosis[posi2], parentPosi1, rci1));
+					}
+				}
+			}
+		}
+	}
+
 	public RCs getRCs() {
 		return rcs;
 	}
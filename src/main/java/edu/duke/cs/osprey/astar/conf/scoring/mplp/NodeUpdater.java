@@ -34,12 +34,12 @@ package edu.duke.cs.osprey.astar.conf.scoring.mplp;
 
 import edu.duke.cs.osprey.astar.conf.ConfIndex;
 import edu.duke.cs.osprey.astar.conf.RCs;
-import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.PrimitiveEnergyMatrix;
 
 public class NodeUpdater implements MPLPUpdater {
 	
 	@Override
-	public void update(MessageVars lambdas, EnergyMatrix emat) {
+	public void update(MessageVars lambdas, PrimitiveEnergyMatrix emat) {
 		
 		// corrected NMPLP (in the notation of the correction paper)
 		
@@ -96,6 +96,9 @@ public class NodeUpdater implements MPLPUpdater {
 		RCs rcs = lambdas.getRCs();
 		ConfIndex confIndex = lambdas.getConfIndex();
 		
+		// read the pairwise energies a row at a time, if we can
+		double[] rows = emat.hasArrays() ? emat.getPairwiseRows() : null;
+		
 		for (int posi1=0; posi1<confIndex.numUndefined; posi1++) {
 			int pos1 = confIndex.undefinedPos[posi1];
 			
@@ -109,14 +112,20 @@ public class NodeUpdater implements MPLPUpdater {
 					continue;
 				}
 				
+				int[] rcs2 = rcs.get(pos2);
+				int stride = rows != null ? emat.getPairwiseRowStride(pos1, pos2) : 0;
+				
 				for (int rci1=0; rci1<rcs.getNum(pos1); rci1++) {
 					int rc1 = rcs.get(pos1, rci1);
+					int offset = rows != null ? emat.getPairwiseRowOffset(pos1, rc1, pos2) : 0;
 					
 					double minVal = Double.POSITIVE_INFINITY;
-					for (int rci2=0; rci2<rcs.getNum(pos2); rci2++) {
-						int rc2 = rcs.get(pos2, rci2);
+					for (int rci2=0; rci2<rcs2.length; rci2++) {
+						int rc2 = rcs2[rci2];
 						
-						double theta = emat.getPairwise(pos1, rc1, pos2, rc2);
+						double theta = rows != null
+							? rows[offset + rc2*stride]
+							: emat.getPairwise(pos1, rc1, pos2, rc2);
 						double delta = lambdas.getEnergyWithout(posi2, rci2, posi1);
 						
 						minVal = Math.min(minVal, theta + delta);
@@ -158,13 +167,18 @@ public class NodeUpdater implements MPLPUpdater {
 				//    ]
 				//    - delta_{posi2-posi1}(rci2)
 				// ]/2
+				int[] rcs1 = rcs.get(pos1);
+				int stride = rows != null ? emat.getPairwiseRowStride(pos2, pos1) : 0;
 				for (int rci2=0; rci2<rcs.getNum(pos2); rci2++) {
 					int rc2 = rcs.get(pos2, rci2);
+					int offset = rows != null ? emat.getPairwiseRowOffset(pos2, rc2, pos1) : 0;
 					
 					double minVal = Double.POSITIVE_INFINITY;
-					for (int rci1=0; rci1<rcs.getNum(pos1); rci1++) {
-						int rc1 = rcs.get(pos1, rci1);
-						double theta = emat.getPairwise(pos1, rc1, pos2, rc2);
+					for (int rci1=0; rci1<rcs1.length; rci1++) {
+						int rc1 = rcs1[rci1];
+						double theta = rows != null
+							? rows[offset + rc1*stride]
+							: emat.getPairwise(pos1, rc1, pos2, rc2);
 						double gamma1 = gammas.getEnergy(posi1, rci1);
 						double gamma2 = gammas.get(posi2, posi1, rci1);
 						if (Double.isFinite(theta) && Double.isFinite(gamma1) && Double.isFinite(gamma2)) {
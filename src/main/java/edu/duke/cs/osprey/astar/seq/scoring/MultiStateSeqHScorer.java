@@ -0,0 +1,276 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.astar.seq.scoring;
+
+import edu.duke.cs.osprey.astar.seq.nodes.SeqAStarNode;
+import edu.duke.cs.osprey.confspace.FragmentEnergies;
+import edu.duke.cs.osprey.confspace.SeqSpace;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+
+/**
+ * A* heuristic for partially-defined sequences over one or more states,
+ * as described in the COMETS paper, SI section B.2
+ *
+ * The inner loops of the heuristic (optimizing pair energies over the residue types and RCs
+ * at lower positions) don't depend on the sequence assignments, so they're computed once up front
+ * into tables, per state. The table for the root node holds the best case over all residue types.
+ * Scoring a node just corrects the root table for each position the node assigns.
+ */
+public class MultiStateSeqHScorer implements SeqAStarScorer {
+
+	public static class StateTerm {
+
+		public final SimpleConfSpace confSpace;
+		public final FragmentEnergies energies;
+		public final double weight;
+
+		/**
+		 * @param weight multiplies all the energies for this state, should be non-negative
+		 */
+		public StateTerm(SimpleConfSpace confSpace, FragmentEnergies energies, double weight) {
+			this.confSpace = confSpace;
+			this.energies = energies;
+			this.weight = weight;
+		}
+	}
+
+	private class StateTable {
+
+		final int numPos;
+
+		// seq pos index for each conf pos, or -1 for immutable positions
+		final int[] seqPosByPos;
+
+		// conf pos index for each seq pos, or -1 if the state doesn't have that seq pos
+		final int[] posBySeqPos;
+
+		// RCs for each pos and res type, immutable positions have one res type that covers all the RCs
+		final int[][][] rcsByRT;
+
+		// [pos1][rc1] -> single energy plus best pair energies over all res types at lower positions
+		final double[][] rootEnergies;
+
+		// [pos1][rc1][pos2][rt2] -> how much the best pair energy changes when pos2 (< pos1) is assigned to rt2
+		final double[][][][] rtCorrections;
+
+		StateTable(StateTerm term) {
+
+			List<SimpleConfSpace.Position> positions = term.confSpace.positions;
+			numPos = positions.size();
+
+			seqPosByPos = new int[numPos];
+			posBySeqPos = new int[seqSpace.positions.size()];
+			Arrays.fill(posBySeqPos, -1);
+			rcsByRT = new int[numPos][][];
+			for (SimpleConfSpace.Position pos : positions) {
+				SeqSpace.Position seqPos = seqSpace.getPosition(pos.resNum);
+				if (seqPos != null) {
+
+					seqPosByPos[pos.index] = seqPos.index;
+					posBySeqPos[seqPos.index] = pos.index;
+
+					// mutable pos, group the RCs by res type
+					rcsByRT[pos.index] = new int[seqPos.resTypes.size()][];
+					for (SeqSpace.ResType rt : seqPos.resTypes) {
+						rcsByRT[pos.index][rt.index] = pos.resConfs.stream()
+							.filter(rc -> rc.template.name.equals(rt.name))
+							.mapToInt(rc -> rc.index)
+							.toArray();
+					}
+
+				} else {
+
+					// immutable position, use all the RCs
+					assert (pos.resTypes.size() == 1);
+					seqPosByPos[pos.index] = -1;
+					rcsByRT[pos.index] = new int[][] {
+						pos.resConfs.stream()
+							.mapToInt(rc -> rc.index)
+							.toArray()
+					};
+				}
+			}
+
+			rootEnergies = new double[numPos][];
+			rtCorrections = new double[numPos][][][];
+			for (int pos1=0; pos1<numPos; pos1++) {
+				int numRCs1 = positions.get(pos1).resConfs.size();
+				rootEnergies[pos1] = new double[numRCs1];
+				rtCorrections[pos1] = new double[numRCs1][pos1][];
+				for (int rc1=0; rc1<numRCs1; rc1++) {
+
+					double energy = term.weight*term.energies.getEnergy(pos1, rc1);
+
+					for (int pos2=0; pos2<pos1; pos2++) {
+
+						// min over RCs at each res type
+						int numRTs2 = rcsByRT[pos2].length;
+						double[] bestRTEnergies = new double[numRTs2];
+						double bestEnergy = Double.POSITIVE_INFINITY;
+						for (int rt2=0; rt2<numRTs2; rt2++) {
+							double bestRCEnergy = Double.POSITIVE_INFINITY;
+							for (int rc2 : rcsByRT[pos2][rt2]) {
+								bestRCEnergy = Math.min(bestRCEnergy, term.weight*term.energies.getEnergy(pos1, rc1, pos2, rc2));
+							}
+							bestRTEnergies[rt2] = bestRCEnergy;
+							bestEnergy = Math.min(bestEnergy, bestRCEnergy);
+						}
+
+						energy += bestEnergy;
+
+						// store corrections relative to the best res type
+						double[] corrections = new double[numRTs2];
+						for (int rt2=0; rt2<numRTs2; rt2++) {
+							if (bestRTEnergies[rt2] == bestEnergy) {
+								// including when both are infinite
+								corrections[rt2] = 0.0;
+							} else {
+								corrections[rt2] = bestRTEnergies[rt2] - bestEnergy;
+							}
+						}
+						rtCorrections[pos1][rc1][pos2] = corrections;
+					}
+
+					rootEnergies[pos1][rc1] = energy;
+				}
+			}
+		}
+
+		double calc(SeqAStarNode.Assignments assignments) {
+
+			// map the sequence assignments to this state's conf positions
+			int[] rtsByPos = new int[numPos];
+			Arrays.fill(rtsByPos, -1);
+			int[] assignedPos = new int[assignments.numAssigned];
+			int numAssignedPos = 0;
+			for (int i=0; i<assignments.numAssigned; i++) {
+				int pos = posBySeqPos[assignments.assignedPos[i]];
+				if (pos >= 0) {
+					rtsByPos[pos] = assignments.assignedRTs[i];
+					assignedPos[numAssignedPos++] = pos;
+				}
+			}
+
+			double score = 0.0;
+			for (int pos1=0; pos1<numPos; pos1++) {
+
+				double bestPos1Energy = Double.POSITIVE_INFINITY;
+
+				// optimize over res types at pos1
+				int rt1Start = 0;
+				int rt1End = rcsByRT[pos1].length;
+				if (rtsByPos[pos1] >= 0) {
+					rt1Start = rtsByPos[pos1];
+					rt1End = rt1Start + 1;
+				}
+				for (int rt1=rt1Start; rt1<rt1End; rt1++) {
+
+					// min over RCs at (pos1,rt1)
+					for (int rc1 : rcsByRT[pos1][rt1]) {
+
+						// start with the root energy, then correct for the assigned lower positions
+						double rc1Energy = rootEnergies[pos1][rc1];
+						double[][] corrections = rtCorrections[pos1][rc1];
+						for (int i=0; i<numAssignedPos; i++) {
+							int pos2 = assignedPos[i];
+							if (pos2 < pos1) {
+								rc1Energy += corrections[pos2][rtsByPos[pos2]];
+							}
+						}
+
+						bestPos1Energy = Math.min(bestPos1Energy, rc1Energy);
+					}
+				}
+
+				score += bestPos1Energy;
+			}
+
+			return score;
+		}
+	}
+
+	public final SeqSpace seqSpace;
+	public final double offset;
+	public final boolean parallel;
+
+	private final StateTable[] tables;
+
+	/**
+	 * @param parallel true to score the states in parallel, which helps when there are many states and positions
+	 */
+	public MultiStateSeqHScorer(SeqSpace seqSpace, double offset, List<StateTerm> terms, boolean parallel) {
+
+		this.seqSpace = seqSpace;
+		this.offset = offset;
+		this.parallel = parallel && terms.size() > 1;
+
+		// precompute the tables for all the states
+		IntStream indices = IntStream.range(0, terms.size());
+		if (this.parallel) {
+			indices = indices.parallel();
+		}
+		tables = indices
+			.mapToObj(i -> new StateTable(terms.get(i)))
+			.toArray(StateTable[]::new);
+	}
+
+	@Override
+	public double calc(SeqAStarNode.Assignments assignments) {
+
+		double[] stateScores;
+		if (parallel) {
+			stateScores = Arrays.stream(tables)
+				.parallel()
+				.mapToDouble(table -> table.calc(assignments))
+				.toArray();
+		} else {
+			stateScores = new double[tables.length];
+			for (int i=0; i<tables.length; i++) {
+				stateScores[i] = tables[i].calc(assignments);
+			}
+		}
+
+		// sum in a fixed order, so the scores don't depend on the thread scheduling
+		double score = offset;
+		for (double stateScore : stateScores) {
+			score += stateScore;
+		}
+		return score;
+	}
+}
@@ -1,21 +1,10 @@
 package edu.duke.cs.osprey.coffee;
 
 import com.hazelcast.cluster.Address;
-import com.hazelcast.cluster.Member;
-import com.hazelcast.config.Config;
-import com.hazelcast.core.Hazelcast;
-import com.hazelcast.core.HazelcastInstance;
-import com.hazelcast.cp.ICountDownLatch;
-import com.hazelcast.instance.impl.HazelcastInstanceProxy;
-import com.hazelcast.internal.serialization.impl.AbstractSerializationService;
 import com.hazelcast.nio.ObjectDataInput;
 import com.hazelcast.nio.ObjectDataOutput;
 import com.hazelcast.nio.serialization.StreamSerializer;
-import com.hazelcast.spi.impl.NodeEngineImpl;
-import com.hazelcast.spi.impl.operationexecutor.OperationRunner;
 import com.hazelcast.spi.impl.operationservice.Operation;
-import com.hazelcast.spi.impl.operationservice.impl.OperationServiceImpl;
-import com.hazelcast.spi.impl.servicemanager.impl.ServiceManagerImpl;
 import edu.duke.cs.osprey.parallelism.Cluster;
 import edu.duke.cs.osprey.parallelism.Hostname;
 import edu.duke.cs.osprey.parallelism.ThreadTools;
@@ -30,7 +19,6 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 
@@ -40,6 +28,13 @@ public class ClusterMember implements AutoCloseable {
 	 * Launch a pseudo-cluster on different threads.
 	 */
 	public static List<Throwable> launchPseudoCluster(int numMembers, Consumer<Cluster> block) {
+		return launchPseudoCluster(numMembers, Cluster.Transport.Hazelcast, block);
+	}
+
+	/**
+	 * Launch a pseudo-cluster on different threads, using the given transport between members.
+	 */
+	public static List<Throwable> launchPseudoCluster(int numMembers, Cluster.Transport transport, Consumer<Cluster> block) {
 
 		List<Throwable> exceptions = new ArrayList<>();
 
@@ -54,7 +49,7 @@ public class ClusterMember implements AutoCloseable {
 						latch.countDown();
 						latch.await();
 
-						block.accept(new Cluster("NodeDB", "job", memberi, numMembers));
+						block.accept(new Cluster("NodeDB", "job", memberi, numMembers, Cluster.DefaultClientIsMember, transport));
 
 					} catch (Throwable t) {
 						t.printStackTrace();
@@ -85,13 +80,7 @@ public class ClusterMember implements AutoCloseable {
 	public final Cluster cluster;
 
 	public final String name;
-	public final HazelcastInstance inst;
-
-	private final NodeEngineImpl nodeEngine;
-	private final OperationServiceImpl opService;
-	private final ServiceManagerImpl serviceManager;
-	private final AbstractSerializationService serializationService;
-	private final OperationRunner[] operationRunners;
+	public final ClusterTransport transport;
 
 	public ClusterMember(Cluster cluster) {
 
@@ -99,34 +88,18 @@ public class ClusterMember implements AutoCloseable {
 
 		name = String.format("%s-%d", cluster.name, cluster.nodeId);
 
-		// configure the cluster
-		Config cfg = new Config();
-		cfg.setClusterName(cluster.id);
-		cfg.setInstanceName(name);
-
-		// disable Hazelcast's automatic phone home "feature", which is on by default
-		cfg.setProperty("hazelcast.phone.home.enabled", "false");
-
-		// let the cluster know which member is the director
-		cfg.getMemberAttributeConfig().setAttribute("director", Boolean.toString(isDirector()));
-
-		// actually start hazelcast
-		inst = Hazelcast.newHazelcastInstance(cfg);
-
-		// Hazelcast's "SPI" (service programming interface) is a total mess.
-		// I think they've actually started removing it, but it's still there. Sort of.
-		nodeEngine = ((HazelcastInstanceProxy)inst).getOriginal().node.getNodeEngine();
-		opService = nodeEngine.getOperationService();
-		serviceManager = (ServiceManagerImpl)nodeEngine.getServiceManager();
-		serializationService = (AbstractSerializationService)nodeEngine.getSerializationService();
-		operationRunners = nodeEngine.getOperationService().getOperationExecutor().getGenericOperationRunners();
+		switch (cluster.transport) {
+			case Hazelcast: transport = new HazelcastTransport(cluster, name, isDirector()); break;
+			case InProcess: transport = new InProcessTransport(cluster, name); break;
+			default: throw new UnsupportedOperationException("unknown transport: " + cluster.transport);
+		}
 
-		log("node started on cluster %s, addr=%s, hostname=%s", cluster.id, nodeEngine.getThisAddress(), Hostname.get());
+		log("node started on cluster %s, transport=%s, addr=%s, hostname=%s", cluster.id, cluster.transport, transport.address(), Hostname.get());
 	}
 
 	@Override
 	public void close() {
-		inst.getLifecycleService().shutdown();
+		transport.close();
 		log("node finished");
 	}
 
@@ -152,11 +125,7 @@ public class ClusterMember implements AutoCloseable {
 	}
 
 	public Address directorAddress() {
-		return inst.getCluster().getMembers().stream()
-			.filter(member -> Boolean.parseBoolean(member.getAttribute("director")))
-			.findFirst()
-			.orElseThrow(() -> new NoSuchElementException("can't find director cluster member"))
-			.getAddress();
+		return transport.directorAddress();
 	}
 
 	/**
@@ -270,11 +239,8 @@ public class ClusterMember implements AutoCloseable {
 
 	public void barrier(long timeout, TimeUnit timeUnit) {
 
-		ICountDownLatch latch = inst.getCPSubsystem().getCountDownLatch("barrier-" + barrierId);
 		try {
-			latch.trySetCount(cluster.numNodes);
-			latch.countDown();
-			boolean isSynced = latch.await(timeout, timeUnit);
+			boolean isSynced = transport.barrier(barrierId, timeout, timeUnit);
 			if (!isSynced) {
 				throwTimeout("timed out waiting for barrier");
 			}
@@ -282,9 +248,6 @@ public class ClusterMember implements AutoCloseable {
 			throw new RuntimeException(ex);
 		}
 
-		// NOTE: don't need to destroy the latch
-		// apparently it gets automatically destroyed after await() finishes
-
 		barrierId += 1;
 	}
 
@@ -301,18 +264,18 @@ public class ClusterMember implements AutoCloseable {
 	private int nextObjectId;
 
 	public void registerService(String name, Object service) {
-		serviceManager.registerService(name, service);
+		transport.registerService(name, service);
 	}
 
 	private static class UnregisteredService {}
 
 	public void unregisterService(String name) {
 		// hazelcast doesn't actually allow un-registration, so fake it with a dummy object
-		serviceManager.registerService(name, new UnregisteredService());
+		transport.registerService(name, new UnregisteredService());
 	}
 
 	public <T> void registerSerializer(Class<T> c, StreamSerializer<T> serializer) {
-		serializationService.register(c, serializer);
+		transport.registerSerializer(c, serializer);
 	}
 
 	public void sendToOthers(Supplier<Operation> op) {
@@ -323,9 +286,7 @@ public class ClusterMember implements AutoCloseable {
 	}
 
 	public void sendTo(Operation op, Address address) {
-		nodeEngine.getOperationService().invokeOnTarget(null, op, address);
-		// NOTE: the future returned from invokeXXX() isn't useful unless the operation sends a response back
-		// we don't really use responses, so just ignore the future
+		transport.send(op, address);
 	}
 
 	public <T> T requestFrom(Operation op, Address address, long timeout, TimeUnit timeUnit) {
@@ -338,10 +299,7 @@ public class ClusterMember implements AutoCloseable {
 		}
 
 		try {
-			var future = nodeEngine.getOperationService().invokeOnTarget(null, op, address);
-			@SuppressWarnings("unchecked")
-			T response = (T)future.get(timeout, timeUnit);
-			return response;
+			return transport.request(op, address, timeout, timeUnit);
 		} catch (InterruptedException | ExecutionException | java.util.concurrent.TimeoutException ex) {
 			throw new RuntimeException(String.format("%s request to %s failed",
 				op.getClass().getSimpleName(), address
@@ -350,22 +308,15 @@ public class ClusterMember implements AutoCloseable {
 	}
 
 	public Address address() {
-		return nodeEngine.getThisAddress();
+		return transport.address();
 	}
 
 	public List<Address> otherMemberAddresses() {
-		// TODO: cache this somehow? and update when cluster membership changes?
-		return inst.getCluster().getMembers().stream()
-			.filter(member -> !member.getAddress().equals(address()))
-			.sorted(Comparator.comparing(Member::getUuid))
-			.map(Member::getAddress)
-			.collect(Collectors.toList());
+		return transport.otherMemberAddresses();
 	}
 
 	public long finishedOperations() {
-		return Arrays.stream(operationRunners)
-			.mapToLong(runner -> runner.executedOperationsCount())
-			.sum();
+		return transport.finishedOperations();
 	}
 
 	public void waitForOperation(long operationNum, long timeout, TimeUnit timeUnit) {
@@ -0,0 +1,54 @@
+package edu.duke.cs.osprey.coffee;
+
+import com.hazelcast.cluster.Address;
+import com.hazelcast.nio.serialization.StreamSerializer;
+import com.hazelcast.spi.impl.operationservice.Operation;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+/**
+ * Moves operations between cluster members.
+ *
+ * Operations are always Hazelcast operations, but transports other than Hazelcast
+ * are free to deliver them however they want, eg without serializing them at all.
+ * So operations shouldn't rely on the caller address, and should copy any payload
+ * the sender might change after sending.
+ */
+public interface ClusterTransport extends AutoCloseable {
+
+	Address address();
+	Address directorAddress();
+
+	/** all the members except this one, in the same order on every member */
+	List<Address> otherMemberAddresses();
+
+	/** makes the service available to operations sent to this member */
+	void registerService(String name, Object service);
+
+	<T> void registerSerializer(Class<T> c, StreamSerializer<T> serializer);
+
+	/** sends the operation to the member, and doesn't wait for it to run */
+	void send(Operation op, Address address);
+
+	/** sends the operation to the member, and waits for the response */
+	<T> T request(Operation op, Address address, long timeout, TimeUnit timeUnit)
+		throws InterruptedException, ExecutionException, TimeoutException;
+
+	/**
+	 * Waits for all the members to reach the barrier with the given id.
+	 *
+	 * @return true if all the members arrived before the timeout
+	 */
+	boolean barrier(long id, long timeout, TimeUnit timeUnit)
+		throws InterruptedException;
+
+	/** the number of operations this member has run so far */
+	long finishedOperations();
+
+	@Override
+	void close();
+}
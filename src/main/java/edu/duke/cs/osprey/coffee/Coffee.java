@@ -265,6 +265,13 @@ public class Coffee {
 		// provide a simple default that should be fine for most cases
 		public PosInterGen posInterGen = new PosInterGen(PosInterDist.DesmetEtAl1992, null);
 
+		/**
+		 * Path to a file to cache the Z matrix for this state, if any.
+		 * If the file exists and matches this design, the Z matrix is read from the file instead of computed.
+		 * When running on a cluster, the file should be on a filesystem all the cluster members can see.
+		 */
+		public File zmatCacheFile = null;
+
 		public StateConfig(MultiStateConfSpace.State state) {
 
 			if (!(state.confSpace instanceof ConfSpace)) {
@@ -407,7 +414,7 @@ public class Coffee {
 									ecalc = nodeProcessor.gpuEcalcs[info.config.state.index];
 								}
 								info.zmat = new ClusterZMatrix(info.config.confSpace, info.config.posInterGen, bcalc);
-								info.zmat.compute(member, cpuTasks, includeStaticStatic, tripleCorrectionThreshold, ecalc);
+								info.zmat.compute(member, cpuTasks, includeStaticStatic, tripleCorrectionThreshold, ecalc, info.config.zmatCacheFile);
 								info.initBounder();
 							}
 
@@ -469,7 +476,7 @@ public class Coffee {
 				try (var ecalc = new NativeConfEnergyCalculator(stateInfo.config.confSpace, precision)) {
 
 					var zmat = new ClusterZMatrix(stateInfo.config.confSpace, stateInfo.config.posInterGen, bcalc);
-					zmat.compute(member, cpuTasks, includeStaticStatic, tripleCorrectionThreshold, ecalc);
+					zmat.compute(member, cpuTasks, includeStaticStatic, tripleCorrectionThreshold, ecalc, stateInfo.config.zmatCacheFile);
 					return zmat;
 				}
 			}
@@ -0,0 +1,142 @@
+package edu.duke.cs.osprey.coffee;
+
+import com.hazelcast.cluster.Address;
+import com.hazelcast.cluster.Member;
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.cp.ICountDownLatch;
+import com.hazelcast.instance.impl.HazelcastInstanceProxy;
+import com.hazelcast.internal.serialization.impl.AbstractSerializationService;
+import com.hazelcast.nio.serialization.StreamSerializer;
+import com.hazelcast.spi.impl.NodeEngineImpl;
+import com.hazelcast.spi.impl.operationexecutor.OperationRunner;
+import com.hazelcast.spi.impl.operationservice.Operation;
+import com.hazelcast.spi.impl.servicemanager.impl.ServiceManagerImpl;
+import edu.duke.cs.osprey.parallelism.Cluster;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+
+/**
+ * Sends operations between cluster members over the network, using Hazelcast.
+ */
+public class HazelcastTransport implements ClusterTransport {
+
+	public final HazelcastInstance inst;
+
+	private final int numNodes;
+
+	private final NodeEngineImpl nodeEngine;
+	private final ServiceManagerImpl serviceManager;
+	private final AbstractSerializationService serializationService;
+	private final OperationRunner[] operationRunners;
+
+	public HazelcastTransport(Cluster cluster, String name, boolean isDirector) {
+
+		numNodes = cluster.numNodes;
+
+		// configure the cluster
+		Config cfg = new Config();
+		cfg.setClusterName(cluster.id);
+		cfg.setInstanceName(name);
+
+		// disable Hazelcast's automatic phone home "feature", which is on by default
+		cfg.setProperty("hazelcast.phone.home.enabled", "false");
+
+		// let the cluster know which member is the director
+		cfg.getMemberAttributeConfig().setAttribute("director", Boolean.toString(isDirector));
+
+		// actually start hazelcast
+		inst = Hazelcast.newHazelcastInstance(cfg);
+
+		// Hazelcast's "SPI" (service programming interface) is a total mess.
+		// I think they've actually started removing it, but it's still there. Sort of.
+		nodeEngine = ((HazelcastInstanceProxy)inst).getOriginal().node.getNodeEngine();
+		serviceManager = (ServiceManagerImpl)nodeEngine.getServiceManager();
+		serializationService = (AbstractSerializationService)nodeEngine.getSerializationService();
+		operationRunners = nodeEngine.getOperationService().getOperationExecutor().getGenericOperationRunners();
+	}
+
+	@Override
+	public void close() {
+		inst.getLifecycleService().shutdown();
+	}
+
+	@Override
+	public Address address() {
+		return nodeEngine.getThisAddress();
+	}
+
+	@Override
+	public Address directorAddress() {
+		return inst.getCluster().getMembers().stream()
+			.filter(member -> Boolean.parseBoolean(member.getAttribute("director")))
+			.findFirst()
+			.orElseThrow(() -> new NoSuchElementException("can't find director cluster member"))
+			.getAddress();
+	}
+
+	@Override
+	public List<Address> otherMemberAddresses() {
+		// TODO: cache this somehow? and update when cluster membership changes?
+		return inst.getCluster().getMembers().stream()
+			.filter(member -> !member.getAddress().equals(address()))
+			.sorted(Comparator.comparing(Member::getUuid))
+			.map(Member::getAddress)
+			.collect(Collectors.toList());
+	}
+
+	@Override
+	public void registerService(String name, Object service) {
+		serviceManager.registerService(name, service);
+	}
+
+	@Override
+	public <T> void registerSerializer(Class<T> c, StreamSerializer<T> serializer) {
+		serializationService.register(c, serializer);
+	}
+
+	@Override
+	public void send(Operation op, Address address) {
+		nodeEngine.getOperationService().invokeOnTarget(null, op, address);
+		// NOTE: the future returned from invokeXXX() isn't useful unless the operation sends a response back
+		// we don't really use responses, so just ignore the future
+	}
+
+	@Override
+	public <T> T request(Operation op, Address address, long timeout, TimeUnit timeUnit)
+	throws InterruptedException, ExecutionException, TimeoutException {
+		var future = nodeEngine.getOperationService().invokeOnTarget(null, op, address);
+		@SuppressWarnings("unchecked")
+		T response = (T)future.get(timeout, timeUnit);
+		return response;
+	}
+
+	@Override
+	public boolean barrier(long id, long timeout, TimeUnit timeUnit)
+	throws InterruptedException {
+
+		ICountDownLatch latch = inst.getCPSubsystem().getCountDownLatch("barrier-" + id);
+		latch.trySetCount(numNodes);
+		latch.countDown();
+
+		// NOTE: don't need to destroy the latch
+		// apparently it gets automatically destroyed after await() finishes
+		return latch.await(timeout, timeUnit);
+	}
+
+	@Override
+	public long finishedOperations() {
+		return Arrays.stream(operationRunners)
+			.mapToLong(runner -> runner.executedOperationsCount())
+			.sum();
+	}
+}
@@ -0,0 +1,242 @@
+package edu.duke.cs.osprey.coffee;
+
+import com.hazelcast.cluster.Address;
+import com.hazelcast.nio.serialization.StreamSerializer;
+import com.hazelcast.spi.impl.operationservice.Operation;
+import edu.duke.cs.osprey.parallelism.Cluster;
+import edu.duke.cs.osprey.tools.Log;
+
+import java.net.InetAddress;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Sends operations between cluster members that all live in the same JVM,
+ * eg pseudo-clusters for testing, or one member per socket on a single big machine.
+ *
+ * Operations (and their responses) are handed to the other member by reference,
+ * without any serialization, so operations must copy any payload the sender
+ * might change after sending (eg {@link edu.duke.cs.osprey.coffee.nodedb.AddNodesOperation}),
+ * and each operation instance should be sent to only one member.
+ * Operations that need to know who sent them should carry the sender's address
+ * in their payload, since the in-process transport doesn't set the caller address.
+ */
+public class InProcessTransport implements ClusterTransport {
+
+	/** how long to wait for a member to join before giving up on sending it an operation */
+	private static final long JoinTimeoutMs = 60*1000;
+
+	/** the fake port of the first member, to make addresses that look like Hazelcast's */
+	private static final int BasePort = 5701;
+
+	/** all the members of one cluster */
+	private static class Hub {
+
+		final InProcessTransport[] members;
+		final Map<Long,CountDownLatch> barriers = new HashMap<>();
+		int numOpen = 0;
+
+		Hub(int numNodes) {
+			members = new InProcessTransport[numNodes];
+		}
+	}
+
+	private static final Map<String,Hub> hubs = new HashMap<>();
+
+	private static Hub join(Cluster cluster, InProcessTransport member) {
+		synchronized (hubs) {
+			Hub hub = hubs.computeIfAbsent(cluster.id, key -> new Hub(cluster.numNodes));
+			if (hub.members.length != cluster.numNodes) {
+				throw new IllegalArgumentException(String.format("cluster %s already has %d members, not %d",
+					cluster.id, hub.members.length, cluster.numNodes
+				));
+			}
+			if (hub.members[cluster.nodeId] != null) {
+				throw new IllegalStateException(String.format("cluster %s already has member %d", cluster.id, cluster.nodeId));
+			}
+			hub.members[cluster.nodeId] = member;
+			hub.numOpen += 1;
+			hubs.notifyAll();
+			return hub;
+		}
+	}
+
+	private static void leave(Cluster cluster, Hub hub) {
+		synchronized (hubs) {
+			hub.members[cluster.nodeId] = null;
+			hub.numOpen -= 1;
+			if (hub.numOpen <= 0) {
+				hubs.remove(cluster.id);
+			}
+		}
+	}
+
+	private static Address makeAddress(int nodeId) {
+		return new Address(InetAddress.getLoopbackAddress(), BasePort + nodeId);
+	}
+
+	public final Cluster cluster;
+
+	private final Hub hub;
+	private final Address address;
+	private final List<Address> otherAddresses;
+	private final Map<String,Object> services = new ConcurrentHashMap<>();
+	private final ThreadPoolExecutor operationThreads;
+	private final AtomicLong numFinishedOperations = new AtomicLong(0);
+
+	public InProcessTransport(Cluster cluster, String name) {
+
+		this.cluster = cluster;
+
+		address = makeAddress(cluster.nodeId);
+		List<Address> addresses = new ArrayList<>();
+		for (int i=0; i<cluster.numNodes; i++) {
+			if (i != cluster.nodeId) {
+				addresses.add(makeAddress(i));
+			}
+		}
+		otherAddresses = Collections.unmodifiableList(addresses);
+
+		// run operations on a few threads, like Hazelcast's generic operation threads
+		int numThreads = Math.max(2, Runtime.getRuntime().availableProcessors()/2);
+		AtomicInteger threadId = new AtomicInteger(0);
+		operationThreads = new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.DAYS, new LinkedBlockingQueue<>(), (runnable) -> {
+			Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+			thread.setDaemon(true);
+			thread.setName(String.format("%s-op-%d", name, threadId.getAndIncrement()));
+			return thread;
+		});
+
+		hub = join(cluster, this);
+	}
+
+	@Override
+	public void close() {
+		leave(cluster, hub);
+		operationThreads.shutdown();
+	}
+
+	@Override
+	public Address address() {
+		return address;
+	}
+
+	@Override
+	public Address directorAddress() {
+		return makeAddress(0);
+	}
+
+	@Override
+	public List<Address> otherMemberAddresses() {
+		return otherAddresses;
+	}
+
+	@Override
+	public void registerService(String name, Object service) {
+		services.put(name, service);
+	}
+
+	@Override
+	public <T> void registerSerializer(Class<T> c, StreamSerializer<T> serializer) {
+		// nothing gets serialized, so we don't need serializers
+	}
+
+	private InProcessTransport findMember(Address address) {
+
+		int nodeId = address.getPort() - BasePort;
+		if (nodeId < 0 || nodeId >= hub.members.length) {
+			throw new NoSuchElementException("no cluster member at " + address);
+		}
+
+		// wait for the member to join, if needed
+		long stopMs = System.currentTimeMillis() + JoinTimeoutMs;
+		synchronized (hubs) {
+			while (hub.members[nodeId] == null) {
+				long waitMs = stopMs - System.currentTimeMillis();
+				if (waitMs <= 0) {
+					throw new NoSuchElementException("cluster member at " + address + " never joined");
+				}
+				try {
+					hubs.wait(waitMs);
+				} catch (InterruptedException ex) {
+					throw new RuntimeException(ex);
+				}
+			}
+			return hub.members[nodeId];
+		}
+	}
+
+	private Object run(Operation op)
+	throws Exception {
+
+		// do what Hazelcast's operation runner would have done, minus the deserialization
+		Object service = services.get(op.getServiceName());
+		if (service == null) {
+			throw new IllegalStateException(String.format("no service named %s to run %s",
+				op.getServiceName(), op.getClass().getSimpleName()
+			));
+		}
+		op.setService(service);
+
+		try {
+			op.beforeRun();
+			op.run();
+			op.afterRun();
+			if (op.returnsResponse()) {
+				return op.getResponse();
+			}
+			return null;
+		} finally {
+			numFinishedOperations.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void send(Operation op, Address address) {
+		InProcessTransport member = findMember(address);
+		member.operationThreads.execute(() -> {
+			try {
+				member.run(op);
+			} catch (Throwable t) {
+				// there's no one to tell, so just log it, like Hazelcast does
+				Log.log("%s failed on %s: %s", op.getClass().getSimpleName(), address, t);
+				t.printStackTrace();
+			}
+		});
+	}
+
+	@Override
+	public <T> T request(Operation op, Address address, long timeout, TimeUnit timeUnit)
+	throws InterruptedException, ExecutionException, TimeoutException {
+		InProcessTransport member = findMember(address);
+		Future<Object> future = member.operationThreads.submit(() -> member.run(op));
+		@SuppressWarnings("unchecked")
+		T response = (T)future.get(timeout, timeUnit);
+		return response;
+	}
+
+	@Override
+	public boolean barrier(long id, long timeout, TimeUnit timeUnit)
+	throws InterruptedException {
+
+		CountDownLatch latch;
+		synchronized (hub.barriers) {
+			latch = hub.barriers.computeIfAbsent(id, key -> new CountDownLatch(hub.members.length));
+			latch.countDown();
+			if (latch.getCount() <= 0) {
+				// everyone else already has the latch, so we don't need to keep it around
+				hub.barriers.remove(id);
+			}
+		}
+
+		return latch.await(timeout, timeUnit);
+	}
+
+	@Override
+	public long finishedOperations() {
+		return numFinishedOperations.get();
+	}
+}
@@ -279,21 +279,46 @@ public class NodeProcessor implements AutoCloseable {
 		}
 	}
 
-	private static class MinimizationQueue {
+	/**
+	 * A bounded queue of leaf nodes waiting for GPU minimization, ordered by how much
+	 * minimizing each node could tighten the Z bound, ie its zSumUpper.
+	 *
+	 * Batches take the most valuable nodes first, and when the queue is full,
+	 * the least valuable node gets bumped out instead of the oldest one.
+	 */
+	static class MinimizationQueue {
+
+		private static class Entry {
+
+			final NodeInfo info;
+			final long order;
+
+			Entry(NodeInfo info, long order) {
+				this.info = info;
+				this.order = order;
+			}
+		}
+
+		// sort by zSumUpper ascending, then by arrival order, so equal bounds still get distinct entries
+		private static final Comparator<Entry> comparator = Comparator
+			.<Entry,BigExp>comparing(entry -> entry.info.node.zSumUpper)
+			.thenComparingLong(entry -> entry.order);
 
 		public final int capacity;
 		public final int batchSize;
 
-		private final Deque<NodeInfo> nodes;
+		private final TreeSet<Entry> nodes;
 		private final ReentrantLock lock;
 		private final Condition batchReady;
 
+		private long nextOrder = 0;
+
 		MinimizationQueue(int capacity, int batchSize) {
 
 			this.capacity = capacity;
 			this.batchSize = batchSize;
 
-			nodes = new ArrayDeque<>(capacity);
+			nodes = new TreeSet<>(comparator);
 			lock = new ReentrantLock(false);
 			batchReady = lock.newCondition();
 		}
@@ -308,19 +333,30 @@ public class NodeProcessor implements AutoCloseable {
 			}
 		}
 
+		/**
+		 * Adds the node to the queue.
+		 *
+		 * @return the least valuable node if the queue is full (possibly the node that was just offered), or null
+		 */
 		NodeInfo offer(NodeInfo node) {
 			final ReentrantLock lock = this.lock;
 			lock.lock();
 			try {
 
-				// if the queue is full, return the first node
+				var entry = new Entry(node, nextOrder++);
+
+				// if the queue is full, bump out the least valuable node
 				NodeInfo out = null;
-				if (nodes.size() == capacity) {
-					out = nodes.poll();
+				if (nodes.size() >= capacity) {
+					if (comparator.compare(entry, nodes.first()) <= 0) {
+						// the new node is worth less than everything already queued
+						return node;
+					}
+					out = nodes.pollFirst().info;
 				}
 
 				// add the node to the queue
-				nodes.offer(node);
+				nodes.add(entry);
 
 				// signal pollers if needed
 				if (nodes.size() >= batchSize) {
@@ -334,7 +370,16 @@ public class NodeProcessor implements AutoCloseable {
 			}
 		}
 
+		/**
+		 * Waits for a full batch of nodes, then returns the most valuable ones.
+		 *
+		 * @return the batch, or null if no batch was ready in time
+		 */
 		List<NodeInfo> poll(int count, long timeout, TimeUnit unit) {
+
+			// never wait for a batch bigger than the queue can hold
+			count = Math.min(count, capacity);
+
 			try {
 				long timeoutNs = unit.toNanos(timeout);
 				final ReentrantLock lock = this.lock;
@@ -351,11 +396,17 @@ public class NodeProcessor implements AutoCloseable {
 						timeoutNs = batchReady.awaitNanos(timeoutNs);
 					}
 
-					// poll off the batch
+					// poll off the batch, best nodes first
 					var batch = new ArrayList<NodeInfo>(count);
 					while (batch.size() < count) {
-						batch.add(nodes.poll());
+						batch.add(nodes.pollLast().info);
+					}
+
+					// if there's enough left over for another batch, wake up another poller
+					if (nodes.size() >= count) {
+						batchReady.signal();
 					}
+
 					return batch;
 
 				} finally {
@@ -645,7 +696,7 @@ public class NodeProcessor implements AutoCloseable {
 		return seqdb.confSpace.seqSpace.makeSequence(stateInfos[statei].config.confSpace, conf);
 	}
 
-	private static class NodeInfo {
+	static class NodeInfo {
 
 		final NodeIndex.Node node;
 		final NodeTree tree;
@@ -841,6 +892,10 @@ public class NodeProcessor implements AutoCloseable {
 		// pick the next position to expand, according to the position permutation
 		int posi = stateInfo.posPermutation[confIndex.numDefined];
 
+		// the children only differ from the parent at the new position,
+		// so compute the parent's zPathHead once and just multiply in the new terms for each child
+		var parentZPathHead = stateInfo.zPathHead(confIndex);
+
 		// expand the node at the picked position
 		for (int confi : nodeInfo.tree.rcs.get(posi)) {
 			confIndex.assignInPlace(posi, confi);
@@ -861,7 +916,8 @@ public class NodeProcessor implements AutoCloseable {
 			}
 
 			// compute an upper bound for the assignment
-			var zSumUpper = stateInfo.zSumUpper(confIndex, nodeInfo.tree).normalize(true);
+			var zPathHead = stateInfo.zPathHead(parentZPathHead, confIndex, posi, confi);
+			var zSumUpper = stateInfo.zSumUpper(confIndex, nodeInfo.tree, zPathHead).normalize(true);
 
 			// update nodedb
 			nodeBatch.add(new NodeIndex.Node(
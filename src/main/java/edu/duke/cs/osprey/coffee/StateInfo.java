@@ -136,7 +136,15 @@ public class StateInfo {
 	}
 
 	public BigExp zSumUpper(ConfIndex index, NodeTree tree) {
-		BigExp out = zPathHead(index);
+		return zSumUpper(index, tree, zPathHead(index));
+	}
+
+	/**
+	 * Same as {@link #zSumUpper(ConfIndex, NodeTree)}, but uses an already-computed zPathHead,
+	 * eg from {@link #zPathHead(BigExp, ConfIndex, int, int)}.
+	 */
+	public BigExp zSumUpper(ConfIndex index, NodeTree tree, BigExp zPathHead) {
+		BigExp out = new BigExp(zPathHead);
 		out.mult(zPathTailUpper(index, tree));
 		out.mult(leavesBySequenceUpper(index, tree));
 		return out;
@@ -152,6 +160,16 @@ public class StateInfo {
 		return bounder.g(index);
 	}
 
+	/**
+	 * Computes the zPathHead of a child node from its parent's zPathHead,
+	 * where index is the child and posi is the newly-assigned position.
+	 */
+	public BigExp zPathHead(BigExp parentZPathHead, ConfIndex index, int posi, int confi) {
+		BigExp out = new BigExp(parentZPathHead);
+		out.mult(bounder.gDifferential(index, posi, confi));
+		return out;
+	}
+
 	public BigExp zPathTailUpper(ConfIndex index, NodeTree tree) {
 		return bounder.h(index, tree);
 	}
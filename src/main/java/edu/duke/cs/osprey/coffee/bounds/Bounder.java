@@ -14,6 +14,16 @@ public interface Bounder {
 	 */
 	BigExp g(ConfIndex index);
 
+	/**
+	 * Compute the factor a newly-assigned position contributes to the g-score,
+	 * ie, the product of all the terms that include the new position and otherwise only defined positions.
+	 * The child g-score is then the parent g-score times this factor,
+	 * which costs time linear in the number of defined positions, rather than the whole g-score calculation.
+	 *
+	 * @param index the child conformation, where posi is already assigned to confi
+	 */
+	BigExp gDifferential(ConfIndex index, int posi, int confi);
+
 	/**
 	 * Comptue the h-score of a partial conformation.
 	 * ie, an upper bound on the additional contribution to the g-score of any possible sub-conformation.
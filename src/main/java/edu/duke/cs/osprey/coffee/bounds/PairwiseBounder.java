@@ -52,13 +52,29 @@ public class PairwiseBounder implements Bounder {
 			int posi1 = index.definedPos[i1];
 			int confi1 = index.definedRCs[i1];
 
-			z.mult(zmat.single(posi1, confi1));
+			zmat.multSingle(z, posi1, confi1);
 
 			for (int i2=0; i2<i1; i2++) {
 				int posi2 = index.definedPos[i2];
 				int confi2 = index.definedRCs[i2];
 
-				z.mult(zmat.pair(posi1, confi1, posi2, confi2));
+				zmat.multPair(z, posi1, confi1, posi2, confi2);
+			}
+		}
+
+		return z;
+	}
+
+	@Override
+	public BigExp gDifferential(ConfIndex index, int posi, int confi) {
+
+		BigExp z = zmat.single(posi, confi);
+
+		// multiply the pairs with the other defined positions
+		for (int i=0; i<index.numDefined; i++) {
+			int posi2 = index.definedPos[i];
+			if (posi2 != posi) {
+				zmat.multPair(z, posi, confi, posi2, index.definedRCs[i]);
 			}
 		}
 
@@ -85,14 +101,14 @@ public class PairwiseBounder implements Bounder {
 			BigExp zpos1 = new BigExp(Double.NEGATIVE_INFINITY);
 			for (int confi1 : tree.rcs.get(posi1)) {
 
-				BigExp zrc1 = new BigExp(zmat.single(posi1, confi1));
+				BigExp zrc1 = zmat.single(posi1, confi1);
 
 				// interactions with defined residues
 				for (int i2=0; i2<index.numDefined; i2++) {
 					int posi2 = index.definedPos[i2];
 					int confi2 = index.definedRCs[i2];
 
-					zrc1.mult(zmat.pair(posi1, confi1, posi2, confi2));
+					zmat.multPair(zrc1, posi1, confi1, posi2, confi2);
 				}
 
 				// interactions with undefined residues
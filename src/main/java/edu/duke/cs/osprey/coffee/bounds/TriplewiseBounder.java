@@ -1,23 +1,124 @@
 package edu.duke.cs.osprey.coffee.bounds;
 
 import edu.duke.cs.osprey.astar.conf.ConfIndex;
-import edu.duke.cs.osprey.astar.conf.RCs;
 import edu.duke.cs.osprey.coffee.nodedb.NodeTree;
 import edu.duke.cs.osprey.coffee.zmat.ClusterZMatrix;
+import edu.duke.cs.osprey.confspace.Conf;
 import edu.duke.cs.osprey.tools.BigExp;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 
 public class TriplewiseBounder implements Bounder {
 
+	/**
+	 * All the non-null triples that include a (posi1,confi1,posi2,confi2) pair,
+	 * listed by the third assignment.
+	 */
+	private static class TripleList {
+
+		final int[] posi3s;
+		final int[] confi3s;
+		final BigExp[] triples;
+
+		TripleList(int size) {
+			posi3s = new int[size];
+			confi3s = new int[size];
+			triples = new BigExp[size];
+		}
+
+		int size() {
+			return posi3s.length;
+		}
+	}
+
 	public final ClusterZMatrix zmat;
 
 	private final PairwiseBounder pairwiseBounder;
 
+	/** indexed by ClusterZMatrix.pairIndex(), null where the pair has no triples */
+	private final TripleList[] triplesByPair;
+
 	public TriplewiseBounder(ClusterZMatrix zmat) {
 
 		this.zmat = zmat;
 
 		pairwiseBounder = new PairwiseBounder(zmat);
+
+		// collect the non-null triples for each pair
+		List<List<int[]>> assignmentsByPair = new ArrayList<>(zmat.numPairs());
+		for (int i=0; i<zmat.numPairs(); i++) {
+			assignmentsByPair.add(null);
+		}
+		var confSpace = zmat.confSpace;
+		for (int posi1=0; posi1<confSpace.numPos(); posi1++) {
+			for (int posi2=0; posi2<posi1; posi2++) {
+				for (int posi3=0; posi3<posi2; posi3++) {
+					for (int confi1=0; confi1<confSpace.numConf(posi1); confi1++) {
+						for (int confi2=0; confi2<confSpace.numConf(posi2); confi2++) {
+							for (int confi3=0; confi3<confSpace.numConf(posi3); confi3++) {
+
+								if (zmat.triple(posi1, confi1, posi2, confi2, posi3, confi3) == null) {
+									continue;
+								}
+
+								// list the triple under all three of its pairs
+								addAssignment(assignmentsByPair, zmat.pairIndex(posi1, confi1, posi2, confi2), posi3, confi3);
+								addAssignment(assignmentsByPair, zmat.pairIndex(posi1, confi1, posi3, confi3), posi2, confi2);
+								addAssignment(assignmentsByPair, zmat.pairIndex(posi2, confi2, posi3, confi3), posi1, confi1);
+							}
+						}
+					}
+				}
+			}
+		}
+
+		// pack the lists into arrays
+		triplesByPair = new TripleList[zmat.numPairs()];
+		for (int posi1=0; posi1<confSpace.numPos(); posi1++) {
+			for (int posi2=0; posi2<posi1; posi2++) {
+				for (int confi1=0; confi1<confSpace.numConf(posi1); confi1++) {
+					for (int confi2=0; confi2<confSpace.numConf(posi2); confi2++) {
+
+						int pairi = zmat.pairIndex(posi1, confi1, posi2, confi2);
+						var assignments = assignmentsByPair.get(pairi);
+						if (assignments == null) {
+							continue;
+						}
+
+						var list = new TripleList(assignments.size());
+						for (int i=0; i<assignments.size(); i++) {
+							int posi3 = assignments.get(i)[0];
+							int confi3 = assignments.get(i)[1];
+							list.posi3s[i] = posi3;
+							list.confi3s[i] = confi3;
+							list.triples[i] = zmat.triple(posi1, confi1, posi2, confi2, posi3, confi3);
+						}
+						triplesByPair[pairi] = list;
+					}
+				}
+			}
+		}
+	}
+
+	private static void addAssignment(List<List<int[]>> assignmentsByPair, int pairi, int posi, int confi) {
+		var assignments = assignmentsByPair.get(pairi);
+		if (assignments == null) {
+			assignments = new ArrayList<>();
+			assignmentsByPair.set(pairi, assignments);
+		}
+		assignments.add(new int[] { posi, confi });
+	}
+
+	private int[] confsByPos(ConfIndex index) {
+		int[] confs = new int[zmat.confSpace.numPos()];
+		Arrays.fill(confs, Conf.Unassigned);
+		for (int i=0; i<index.numDefined; i++) {
+			confs[index.definedPos[i]] = index.definedRCs[i];
+		}
+		return confs;
 	}
 
 	@Override
@@ -28,37 +129,74 @@ public class TriplewiseBounder implements Bounder {
 		// start with the static-static energy
 		z.mult(zmat.staticStatic());
 
+		int[] confs = confsByPos(index);
+
 		// multiply all the singles and pairs
 		for (int i1=0; i1<index.numDefined; i1++) {
 			int posi1 = index.definedPos[i1];
 			int confi1 = index.definedRCs[i1];
 
-			z.mult(zmat.single(posi1, confi1));
+			zmat.multSingle(z, posi1, confi1);
 
 			for (int i2=0; i2<i1; i2++) {
 				int posi2 = index.definedPos[i2];
 				int confi2 = index.definedRCs[i2];
 
-				z.mult(zmat.pair(posi1, confi1, posi2, confi2));
+				zmat.multPair(z, posi1, confi1, posi2, confi2);
 
-				for (int i3=0; i3<i2; i3++) {
-					int posi3 = index.definedPos[i3];
-					int confi3 = index.definedRCs[i3];
+				// multiply the triples whose third position is lower than both of these,
+				// so each triple only gets counted once
+				multTriples(z, confs, posi1, confi1, posi2, confi2, Math.min(posi1, posi2));
+			}
+		}
 
-					// TODO: accelerate this by pre-calculating all the posi3,confi3 values for p1c1p2c2 pairs
-					//  then intersect against the defined positions in the conf
-					// TODO: could also optimize the index calculation for the triples
-					var triple = zmat.triple(posi1, confi1, posi2, confi2, posi3, confi3);
-					if (triple != null) {
-						z.mult(triple);
-					}
-				}
+		return z;
+	}
+
+	@Override
+	public BigExp gDifferential(ConfIndex index, int posi, int confi) {
+
+		BigExp z = zmat.single(posi, confi);
+
+		int[] confs = confsByPos(index);
+
+		for (int i=0; i<index.numDefined; i++) {
+			int posi2 = index.definedPos[i];
+			if (posi2 == posi) {
+				continue;
 			}
+			int confi2 = index.definedRCs[i];
+
+			zmat.multPair(z, posi, confi, posi2, confi2);
+
+			// multiply the triples with the new position and two defined positions,
+			// but only count each pair of defined positions once
+			multTriples(z, confs, posi, confi, posi2, confi2, posi2);
 		}
 
 		return z;
 	}
 
+	/**
+	 * Multiplies all the triples for the pair whose third position is defined and below maxPosi3.
+	 * Checking the third assignment against the conf is cheaper than looking up every defined position,
+	 * since most pairs have only a few triples, if any.
+	 */
+	private void multTriples(BigExp z, int[] confs, int posi1, int confi1, int posi2, int confi2, int maxPosi3) {
+
+		var list = triplesByPair[zmat.pairIndex(posi1, confi1, posi2, confi2)];
+		if (list == null) {
+			return;
+		}
+
+		for (int i=0; i<list.size(); i++) {
+			int posi3 = list.posi3s[i];
+			if (posi3 < maxPosi3 && confs[posi3] == list.confi3s[i]) {
+				z.mult(list.triples[i]);
+			}
+		}
+	}
+
 	@Override
 	public BigExp h(ConfIndex index, NodeTree tree) {
 		return pairwiseBounder.h(index, tree);
@@ -26,7 +26,9 @@ public class AddNodesOperation extends Operation {
 
 	public AddNodesOperation(int statei, List<NodeIndex.Node> nodes) {
 		this.statei = statei;
-		this.nodes = nodes;
+		// copy the list, since senders reuse theirs right after sending,
+		// and in-process transports don't serialize operations
+		this.nodes = new ArrayList<>(nodes);
 	}
 
 	@Override
@@ -1,5 +1,6 @@
 package edu.duke.cs.osprey.coffee.nodedb;
 
+import com.hazelcast.cluster.Address;
 import com.hazelcast.nio.ObjectDataInput;
 import com.hazelcast.nio.ObjectDataOutput;
 import com.hazelcast.spi.impl.operationservice.Operation;
@@ -13,17 +14,35 @@ import java.io.IOException;
  */
 public class BroadcastOperation extends Operation {
 
+	private Address src;
 	private NodeIndices.BroadcastInfo nodesInfo;
 
 	// TODO: serialize node performance
 
 	@SuppressWarnings("unused") // used by hazelcast
 	public BroadcastOperation() {
+		src = null;
 		nodesInfo = null;
 	}
 
-	public BroadcastOperation(NodeIndices.BroadcastInfo nodesInfo, NodePerformance nodePerformance) {
-		this.nodesInfo = nodesInfo;
+	/**
+	 * Carries the sender's address explicitly, rather than relying on the caller address,
+	 * which only Hazelcast's operation service sets.
+	 */
+	public BroadcastOperation(Address src, NodeIndices.BroadcastInfo nodesInfo, NodePerformance nodePerformance) {
+		this.src = src;
+
+		// copy the info, since the max scores belong to the sender's indices,
+		// and in-process transports don't serialize operations
+		int n = nodesInfo.size();
+		this.nodesInfo = new NodeIndices.BroadcastInfo(n);
+		System.arraycopy(nodesInfo.freeSpaces, 0, this.nodesInfo.freeSpaces, 0, n);
+		for (int i=0; i<n; i++) {
+			BigExp maxScore = nodesInfo.maxScores[i];
+			this.nodesInfo.maxScores[i] = maxScore != null ? new BigExp(maxScore) : null;
+		}
+		this.nodesInfo.usedBytes = nodesInfo.usedBytes;
+		this.nodesInfo.totalBytes = nodesInfo.totalBytes;
 	}
 
 	@Override
@@ -36,6 +55,8 @@ public class BroadcastOperation extends Operation {
 	throws IOException {
 		super.writeInternal(out);
 
+		out.writeObject(src);
+
 		int n = nodesInfo.size();
 		out.writeInt(n);
 
@@ -62,6 +83,8 @@ public class BroadcastOperation extends Operation {
 	throws IOException {
 		super.readInternal(in);
 
+		src = in.readObject();
+
 		int n = in.readInt();
 		nodesInfo = new NodeIndices.BroadcastInfo(n);
 
@@ -90,6 +113,6 @@ public class BroadcastOperation extends Operation {
 	@Override
 	public final void run() {
 		NodeDB nodedb = getService();
-		nodedb.receiveBroadcast(getCallerAddress(), nodesInfo);
+		nodedb.receiveBroadcast(src, nodesInfo);
 	}
 }
@@ -166,7 +166,7 @@ public class NodeDB implements AutoCloseable {
 		var info = thread.get(() -> indices.getBroadcastInfo());
 
 		// broadcast
-		member.sendToOthers(() -> new BroadcastOperation(info, perf));
+		member.sendToOthers(() -> new BroadcastOperation(member.address(), info, perf));
 	}
 
 	void receiveBroadcast(Address src, NodeIndices.BroadcastInfo nodeInfo) {
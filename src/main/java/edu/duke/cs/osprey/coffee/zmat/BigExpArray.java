@@ -0,0 +1,212 @@
+package edu.duke.cs.osprey.coffee.zmat;
+
+import edu.duke.cs.osprey.tools.BigExp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+
+/**
+ * A fixed-size array of BigExp values, stored as parallel primitive buffers
+ * rather than one heap object per value.
+ *
+ * The buffers are either on the heap, or memory-mapped from a file written by {@link #write(FileChannel)}.
+ * Mapped arrays read straight from the file's pages, so every member reading the same file
+ * on the same machine shares one copy of it in the page cache.
+ * Setting a value in a mapped array copies just that chunk of the array to the heap first.
+ *
+ * Unset values read as null.
+ */
+public class BigExpArray {
+
+	/** the exponent for unset values */
+	private static final int Unset = Integer.MIN_VALUE;
+
+	/**
+	 * Values are stored in chunks of this many values (256 MiB of doubles),
+	 * since a single mapping can't exceed 2 GiB
+	 */
+	private static final int ChunkShift = 25;
+	private static final int ChunkSize = 1 << ChunkShift;
+	private static final int ChunkMask = ChunkSize - 1;
+
+	private final int size;
+	private final DoubleBuffer[] fp;
+	private final IntBuffer[] exp;
+
+	public BigExpArray(int size) {
+		this.size = size;
+		int numChunks = numChunks(size);
+		fp = new DoubleBuffer[numChunks];
+		exp = new IntBuffer[numChunks];
+		for (int c=0; c<numChunks; c++) {
+			int len = chunkLength(size, c);
+			fp[c] = DoubleBuffer.wrap(new double[len]);
+			int[] e = new int[len];
+			Arrays.fill(e, Unset);
+			exp[c] = IntBuffer.wrap(e);
+		}
+	}
+
+	private BigExpArray(int size, DoubleBuffer[] fp, IntBuffer[] exp) {
+		this.size = size;
+		this.fp = fp;
+		this.exp = exp;
+	}
+
+	private static int numChunks(int size) {
+		return (int)(((long)size + ChunkSize - 1) >>> ChunkShift);
+	}
+
+	private static int chunkLength(int size, int c) {
+		return Math.min(ChunkSize, size - (c << ChunkShift));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isSet(int i) {
+		return exp[i >>> ChunkShift].get(i & ChunkMask) != Unset;
+	}
+
+	/** counts the set values, in linear time */
+	public int count() {
+		int count = 0;
+		for (IntBuffer chunk : exp) {
+			for (int i=0; i<chunk.capacity(); i++) {
+				if (chunk.get(i) != Unset) {
+					count += 1;
+				}
+			}
+		}
+		return count;
+	}
+
+	/** returns a new BigExp, or null if the value isn't set */
+	public BigExp get(int i) {
+		int c = i >>> ChunkShift;
+		int j = i & ChunkMask;
+		int e = exp[c].get(j);
+		if (e == Unset) {
+			return null;
+		}
+		return new BigExp(fp[c].get(j), e);
+	}
+
+	public void set(int i, BigExp val) {
+		int c = i >>> ChunkShift;
+		int j = i & ChunkMask;
+		if (fp[c].isReadOnly()) {
+			copyChunkToHeap(c);
+		}
+		if (val == null) {
+			fp[c].put(j, 0.0);
+			exp[c].put(j, Unset);
+		} else {
+			fp[c].put(j, val.fp);
+			exp[c].put(j, val.exp);
+		}
+	}
+
+	private synchronized void copyChunkToHeap(int c) {
+		if (!fp[c].isReadOnly()) {
+			// another thread beat us to it
+			return;
+		}
+		double[] f = new double[fp[c].capacity()];
+		fp[c].get(0, f);
+		int[] e = new int[exp[c].capacity()];
+		exp[c].get(0, e);
+		exp[c] = IntBuffer.wrap(e);
+		fp[c] = DoubleBuffer.wrap(f);
+	}
+
+	/**
+	 * Multiplies the value into z without allocating anything.
+	 *
+	 * @return false if the value isn't set, in which case z is unchanged
+	 */
+	public boolean mult(int i, BigExp z) {
+		int c = i >>> ChunkShift;
+		int j = i & ChunkMask;
+		int e = exp[c].get(j);
+		if (e == Unset) {
+			return false;
+		}
+		z.fp *= fp[c].get(j);
+		z.exp += e;
+		z.normalize(false);
+		return true;
+	}
+
+	/** the number of bytes {@link #write(FileChannel)} writes */
+	public long numBytes() {
+		return (long)size()*(Double.BYTES + Integer.BYTES);
+	}
+
+	/** writes the values at the channel's current position */
+	public void write(FileChannel channel)
+	throws IOException {
+		ByteBuffer buf = ByteBuffer.allocateDirect(Math.max(1, Math.min(ChunkSize, size()))*Double.BYTES);
+		for (DoubleBuffer chunk : fp) {
+			buf.clear();
+			buf.asDoubleBuffer().put(chunk.duplicate().clear());
+			buf.limit(chunk.capacity()*Double.BYTES);
+			writeFully(channel, buf);
+		}
+		for (IntBuffer chunk : exp) {
+			buf.clear();
+			buf.asIntBuffer().put(chunk.duplicate().clear());
+			buf.limit(chunk.capacity()*Integer.BYTES);
+			writeFully(channel, buf);
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buf)
+	throws IOException {
+		while (buf.hasRemaining()) {
+			channel.write(buf);
+		}
+	}
+
+	/**
+	 * Memory-maps values written by {@link #write(FileChannel)}, starting at the channel's current position,
+	 * and advances the position past the values.
+	 * The mapping stays valid after the channel is closed.
+	 */
+	public static BigExpArray map(FileChannel channel, int size)
+	throws IOException {
+
+		int numChunks = numChunks(size);
+		DoubleBuffer[] fp = new DoubleBuffer[numChunks];
+		IntBuffer[] exp = new IntBuffer[numChunks];
+
+		long pos = channel.position();
+		for (int c=0; c<numChunks; c++) {
+			long numBytes = (long)chunkLength(size, c)*Double.BYTES;
+			fp[c] = mapChunk(channel, pos, numBytes).asDoubleBuffer();
+			pos += numBytes;
+		}
+		for (int c=0; c<numChunks; c++) {
+			long numBytes = (long)chunkLength(size, c)*Integer.BYTES;
+			exp[c] = mapChunk(channel, pos, numBytes).asIntBuffer();
+			pos += numBytes;
+		}
+		channel.position(pos);
+
+		return new BigExpArray(size, fp, exp);
+	}
+
+	private static ByteBuffer mapChunk(FileChannel channel, long pos, long numBytes)
+	throws IOException {
+		if (pos + numBytes > channel.size()) {
+			throw new IOException("Z matrix cache file is truncated");
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, pos, numBytes);
+	}
+}
@@ -1,7 +1,6 @@
 package edu.duke.cs.osprey.coffee.zmat;
 
 import edu.duke.cs.osprey.coffee.ClusterMember;
-import edu.duke.cs.osprey.confspace.TripleMatrix;
 import edu.duke.cs.osprey.confspace.TupleMatrixGeneric;
 import edu.duke.cs.osprey.confspace.compiled.ConfSpace;
 import edu.duke.cs.osprey.energy.compiled.ConfEnergyCalculator;
@@ -13,9 +12,17 @@ import edu.duke.cs.osprey.parallelism.WorkLatch;
 import edu.duke.cs.osprey.tools.BigExp;
 import edu.duke.cs.osprey.tools.Progress;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
@@ -23,18 +30,101 @@ import java.util.stream.Collectors;
 
 /**
  * A boltzmann-weighted energy matrix that can be computed in parallel on a cluster.
+ *
+ * Values are stored in packed primitive buffers (see {@link BigExpArray}), rather than one BigExp object per tuple.
+ * The buffers are only allocated when the Z matrix is computed, so a Z matrix read from a cache file
+ * never allocates heap for the singles and pairs.
  */
 public class ClusterZMatrix {
 
 	public static final String ServiceName = "ClusterZMatrix";
 
+	/**
+	 * Identifies the inputs to a Z matrix cache file.
+	 * If any of these change, the cached Z matrix is stale.
+	 */
+	private static class CacheKey {
+
+		/** versions in files older than this are always stale */
+		static final int CurrentVersion = 1;
+
+		static final int NumBytes = Integer.BYTES*4 + 1 + Double.BYTES*3;
+
+		int version;
+		int confSpaceHash;
+		int posInterDistId;
+		int erefHash;
+		boolean includeStaticStatic;
+		double tripleCorrectionThreshold; // NaN for no triples
+		double R;
+		double T;
+
+		void write(ByteBuffer buf) {
+			buf.putInt(version);
+			buf.putInt(confSpaceHash);
+			buf.putInt(posInterDistId);
+			buf.putInt(erefHash);
+			buf.put((byte)(includeStaticStatic ? 1 : 0));
+			buf.putDouble(tripleCorrectionThreshold);
+			buf.putDouble(R);
+			buf.putDouble(T);
+		}
+
+		static CacheKey read(ByteBuffer buf) {
+			var key = new CacheKey();
+			key.version = buf.getInt();
+			key.confSpaceHash = buf.getInt();
+			key.posInterDistId = buf.getInt();
+			key.erefHash = buf.getInt();
+			key.includeStaticStatic = buf.get() != 0;
+			key.tripleCorrectionThreshold = buf.getDouble();
+			key.R = buf.getDouble();
+			key.T = buf.getDouble();
+			return key;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof CacheKey && equals((CacheKey)other);
+		}
+
+		boolean equals(CacheKey other) {
+			return this.version == other.version
+				&& this.confSpaceHash == other.confSpaceHash
+				&& this.posInterDistId == other.posInterDistId
+				&& this.erefHash == other.erefHash
+				&& this.includeStaticStatic == other.includeStaticStatic
+				// compare bits, so NaN == NaN
+				&& Double.doubleToLongBits(this.tripleCorrectionThreshold) == Double.doubleToLongBits(other.tripleCorrectionThreshold)
+				&& this.R == other.R
+				&& this.T == other.T;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(version, confSpaceHash, posInterDistId, erefHash, includeStaticStatic, tripleCorrectionThreshold, R, T);
+		}
+	}
+
 	public final ConfSpace confSpace;
 	public final PosInterGen posInterGen;
 	public final BoltzmannCalculator bcalc;
 
 	private BigExp staticStatic;
-	private final TupleMatrixGeneric<BigExp> singlesPairs;
-	private TripleMatrix<BigExp> triples;
+
+	private final int[] singleOffsets;
+	private final int numSingles;
+	private BigExpArray singles = null;
+
+	// indexed by position pair, where posi1 > posi2
+	private final int[] pairOffsets;
+	private final int numPairs;
+	private BigExpArray pairs = null;
+
+	// indexed by position triple, where posi1 > posi2 > posi3
+	private final int[] tripleOffsets;
+	private final long numTriplesTotal;
+	private BigExpArray triples;
 
 	private WorkLatch latch = null;
 	private Progress progress = null;
@@ -47,16 +137,59 @@ public class ClusterZMatrix {
 		this.bcalc = bcalc;
 
 		staticStatic = new BigExp(1.0, 0);
-		singlesPairs = new TupleMatrixGeneric<>(confSpace);
+
+		// lay out the singles
+		singleOffsets = new int[confSpace.numPos()];
+		long size = 0;
+		for (int posi=0; posi<confSpace.numPos(); posi++) {
+			singleOffsets[posi] = checkSize(size);
+			size += confSpace.numConf(posi);
+		}
+		numSingles = checkSize(size);
+
+		// lay out the pairs
+		pairOffsets = new int[confSpace.numPos()*(confSpace.numPos() - 1)/2];
+		size = 0;
+		for (int posi1=0; posi1<confSpace.numPos(); posi1++) {
+			for (int posi2=0; posi2<posi1; posi2++) {
+				pairOffsets[posi1*(posi1 - 1)/2 + posi2] = checkSize(size);
+				size += (long)confSpace.numConf(posi1)*confSpace.numConf(posi2);
+			}
+		}
+		numPairs = checkSize(size);
+
+		// lay out the triples, but don't allocate them until we need them
+		tripleOffsets = new int[Math.max(0, confSpace.numPos()*(confSpace.numPos() - 1)*(confSpace.numPos() - 2)/6)];
+		size = 0;
+		for (int posi1=0; posi1<confSpace.numPos(); posi1++) {
+			for (int posi2=0; posi2<posi1; posi2++) {
+				for (int posi3=0; posi3<posi2; posi3++) {
+					tripleOffsets[posi1*(posi1 - 1)*(posi1 - 2)/6 + posi2*(posi2 - 1)/2 + posi3] = checkSize(size);
+					size += (long)confSpace.numConf(posi1)*confSpace.numConf(posi2)*confSpace.numConf(posi3);
+				}
+			}
+		}
+		numTriplesTotal = size;
 		triples = null;
 	}
 
+	private static int checkSize(long size) {
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("conformation space too large for a Z matrix");
+		}
+		return (int)size;
+	}
+
 	private BigExp z(double energy) {
 		return new BigExp(bcalc.calcPrecise(energy));
 	}
 
 	public void compute(ClusterMember member, TaskExecutor tasks, boolean includeStaticStatic, Double tripleCorrectionThreshold, ConfEnergyCalculator ecalc) {
 
+		singles = new BigExpArray(numSingles);
+		pairs = new BigExpArray(numPairs);
+		triples = null;
+
 		// register with hazelcast
 		member.registerService(ServiceName, this);
 
@@ -72,6 +205,147 @@ public class ClusterZMatrix {
 		member.unregisterService(ServiceName);
 	}
 
+	/**
+	 * Same as {@link #compute(ClusterMember, TaskExecutor, boolean, Double, ConfEnergyCalculator)},
+	 * but reads the Z matrix from the cache file instead when the file was written for the same inputs,
+	 * ie, the same conformation space, position interactions, temperature, and triple settings.
+	 * Otherwise, the Z matrix is computed as usual, and the director writes the cache file.
+	 *
+	 * Every cluster member memory-maps the cache file directly, rather than sending the Z matrix around the cluster,
+	 * so the cache file should be on a filesystem all the cluster members can see.
+	 * The mapped file is the Z matrix's backing store, so members on the same machine share its pages.
+	 */
+	public void compute(ClusterMember member, TaskExecutor tasks, boolean includeStaticStatic, Double tripleCorrectionThreshold, ConfEnergyCalculator ecalc, File cacheFile) {
+
+		if (cacheFile == null) {
+			compute(member, tasks, includeStaticStatic, tripleCorrectionThreshold, ecalc);
+			return;
+		}
+
+		var key = makeCacheKey(includeStaticStatic, tripleCorrectionThreshold);
+
+		// check the cache
+		if (cacheFile.exists()) {
+			member.log0("reading Z matrix from file: %s", cacheFile);
+			if (readCache(cacheFile, key)) {
+				return;
+			}
+			member.log0("cached Z matrix is out of date, ignoring");
+		}
+
+		// cache miss, compute the Z matrix
+		compute(member, tasks, includeStaticStatic, tripleCorrectionThreshold, ecalc);
+
+		// cache it
+		if (member.isDirector()) {
+			writeCache(cacheFile, key);
+			member.log("wrote Z matrix to file: %s", cacheFile);
+		}
+	}
+
+	private CacheKey makeCacheKey(boolean includeStaticStatic, Double tripleCorrectionThreshold) {
+		var key = new CacheKey();
+		key.version = CacheKey.CurrentVersion;
+		key.confSpaceHash = confSpace.hashCode();
+		key.posInterDistId = posInterGen.dist.ordinal();
+		key.erefHash = Objects.hashCode(posInterGen.eref);
+		key.includeStaticStatic = includeStaticStatic;
+		key.tripleCorrectionThreshold = tripleCorrectionThreshold != null ? tripleCorrectionThreshold : Double.NaN;
+		key.R = bcalc.R;
+		key.T = bcalc.T;
+		return key;
+	}
+
+	private static final int CacheMagic = 0x5a4d4154; // "ZMAT"
+	private static final int CacheHeaderBytes = Integer.BYTES + CacheKey.NumBytes + Double.BYTES + Integer.BYTES*4;
+
+	/** returns false if the cache file doesn't match the key */
+	private boolean readCache(File file, CacheKey key) {
+		try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+			if (channel.size() < CacheHeaderBytes) {
+				return false;
+			}
+			ByteBuffer header = ByteBuffer.allocate(CacheHeaderBytes);
+			while (header.hasRemaining()) {
+				if (channel.read(header) < 0) {
+					return false;
+				}
+			}
+			header.flip();
+
+			// check the header
+			if (header.getInt() != CacheMagic) {
+				return false;
+			}
+			if (!CacheKey.read(header).equals(key)) {
+				return false;
+			}
+			var staticStatic = new BigExp(header.getDouble(), header.getInt());
+			int numSingles = header.getInt();
+			int numPairs = header.getInt();
+			int numTriples = header.getInt();
+			if (numSingles != this.numSingles || numPairs != this.numPairs || (numTriples >= 0 && numTriples != numTriplesTotal)) {
+				return false;
+			}
+
+			// map the arrays
+			var singles = BigExpArray.map(channel, numSingles);
+			var pairs = BigExpArray.map(channel, numPairs);
+			BigExpArray triples = null;
+			if (numTriples >= 0) {
+				triples = BigExpArray.map(channel, numTriples);
+			}
+
+			this.staticStatic = staticStatic;
+			this.singles = singles;
+			this.pairs = pairs;
+			this.triples = triples;
+			return true;
+
+		} catch (IOException ex) {
+			throw new RuntimeException("can't read Z matrix cache file: " + file, ex);
+		}
+	}
+
+	private void writeCache(File file, CacheKey key) {
+
+		// write to a temp file first, then move it into place,
+		// so nothing ever sees a partially-written cache file
+		File tmpFile = new File(file.getPath() + ".tmp");
+
+		try (var channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			ByteBuffer header = ByteBuffer.allocate(CacheHeaderBytes);
+			header.putInt(CacheMagic);
+			key.write(header);
+			header.putDouble(staticStatic.fp);
+			header.putInt(staticStatic.exp);
+			header.putInt(singles.size());
+			header.putInt(pairs.size());
+			header.putInt(triples != null ? triples.size() : -1);
+			header.flip();
+			while (header.hasRemaining()) {
+				channel.write(header);
+			}
+
+			singles.write(channel);
+			pairs.write(channel);
+			if (triples != null) {
+				triples.write(channel);
+			}
+
+		} catch (IOException ex) {
+			throw new RuntimeException("can't write Z matrix cache file: " + tmpFile, ex);
+		}
+
+		try {
+			Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ex) {
+			throw new RuntimeException("can't move Z matrix cache file into place: " + file, ex);
+		}
+	}
+
 	private int calcWorkSize(TaskExecutor tasks, ConfEnergyCalculator ecalc) {
 		// figure out how many singles to request at once
 		// the best value here probably varies per design,
@@ -96,7 +370,7 @@ public class ClusterZMatrix {
 
 	private void computeSingles(ClusterMember member, TaskExecutor tasks, ConfEnergyCalculator ecalc) {
 
-		int numSingles = singlesPairs.getNumOneBody();
+		int numSingles = singles.size();
 		latch = new WorkLatch(numSingles);
 		if (member.id() == 0) {
 			progress = new Progress(numSingles);
@@ -153,7 +427,7 @@ public class ClusterZMatrix {
 		long missing = -droppedTuples.get();
 		for (int posi=0; posi<ecalc.confSpace().numPos(); posi++) {
 			for (int confi=0; confi<ecalc.confSpace().numConf(posi); confi++) {
-				if (singlesPairs.getOneBody(posi, confi) == null) {
+				if (!singles.isSet(singleIndex(posi, confi))) {
 					missing += 1;
 				}
 			}
@@ -173,7 +447,7 @@ public class ClusterZMatrix {
 
 	private void computePairs(ClusterMember member, TaskExecutor tasks, ConfEnergyCalculator ecalc) {
 
-		int numPairs = singlesPairs.getNumPairwise();
+		int numPairs = pairs.size();
 		latch = new WorkLatch(numPairs);
 		if (member.id() == 0) {
 			progress = new Progress(numPairs);
@@ -238,7 +512,7 @@ public class ClusterZMatrix {
 			for (int posi2=0; posi2<posi1; posi2++) {
 				for (int confi1=0; confi1<ecalc.confSpace().numConf(posi1); confi1++) {
 					for (int confi2=0; confi2<ecalc.confSpace().numConf(posi2); confi2++) {
-						if (singlesPairs.getPairwise(posi1, confi1, posi2, confi2) == null) {
+						if (!pairs.isSet(pairIndex(posi1, confi1, posi2, confi2))) {
 							missing += 1;
 						}
 					}
@@ -261,7 +535,7 @@ public class ClusterZMatrix {
 	private void computeTripleCorrections(ClusterMember member, TaskExecutor tasks, ConfEnergyCalculator ecalc, double energyThreshold) {
 
 		// allocate space
-		triples = new TripleMatrix<>(confSpace);
+		triples = new BigExpArray(checkSize(numTriplesTotal));
 
 		member.log0("filtering triples ...");
 
@@ -282,7 +556,7 @@ public class ClusterZMatrix {
 						for (int confi1=0; confi1<n1; confi1++) {
 
 							// skip triples whose constituents are below the z threshold
-							if (singlesPairs.getOneBody(posi1, confi1).lessThan(zThreshold)) {
+							if (single(posi1, confi1).lessThan(zThreshold)) {
 								index += n2*n3;
 								continue;
 							}
@@ -290,8 +564,8 @@ public class ClusterZMatrix {
 							for (int confi2=0; confi2<n2; confi2++) {
 
 								// skip triples whose constituents are below the z threshold
-								if (singlesPairs.getOneBody(posi2, confi2).lessThan(zThreshold)
-								|| singlesPairs.getPairwise(posi1, confi1, posi2, confi2).lessThan(zThreshold)) {
+								if (single(posi2, confi2).lessThan(zThreshold)
+								|| pair(posi1, confi1, posi2, confi2).lessThan(zThreshold)) {
 									index += n3;
 									continue;
 								}
@@ -299,9 +573,9 @@ public class ClusterZMatrix {
 								for (int confi3=0; confi3<n3; confi3++) {
 
 									// skip triples whose constituents are below the z threshold
-									if (singlesPairs.getOneBody(posi3, confi3).lessThan(zThreshold)
-									|| singlesPairs.getPairwise(posi1, confi1, posi3, confi3).lessThan(zThreshold)
-									|| singlesPairs.getPairwise(posi2, confi2, posi3, confi3).lessThan(zThreshold)) {
+									if (single(posi3, confi3).lessThan(zThreshold)
+									|| pair(posi1, confi1, posi3, confi3).lessThan(zThreshold)
+									|| pair(posi2, confi2, posi3, confi3).lessThan(zThreshold)) {
 										index += 1;
 										continue;
 									}
@@ -397,7 +671,7 @@ public class ClusterZMatrix {
 							for (int confi2=0; confi2<ecalc.confSpace().numConf(posi2); confi2++) {
 								for (int confi3=0; confi3<ecalc.confSpace().numConf(posi3); confi3++) {
 									if (passed[index]) {
-										if (triples.get(posi1, confi1, posi2, confi2, posi3, confi3) == null) {
+										if (!triples.isSet(tripleIndex(posi1, confi1, posi2, confi2, posi3, confi3))) {
 											missing += 1;
 										}
 									}
@@ -476,7 +750,7 @@ public class ClusterZMatrix {
 		// We don't need to synchronize the tuple writes though.
 		// Phe partition of tuples guarantees none of those writes will ever race.
 		for (var tuple : tuples) {
-			boolean wasWritten = tuple.write(singlesPairs, triples);
+			boolean wasWritten = tuple.write(this);
 			if (!wasWritten) {
 				droppedTuples.incrementAndGet();
 			}
@@ -495,54 +769,169 @@ public class ClusterZMatrix {
 	}
 
 	public int numSingles() {
-		return singlesPairs.getNumOneBody();
+		return numSingles;
 	}
 	public int singleIndex(int posi, int confi) {
-		return singlesPairs.getOneBodyIndex(posi, confi);
+		return singleOffsets[posi] + confi;
 	}
 	public BigExp single(int posi, int confi) {
-		return singlesPairs.getOneBody(posi, confi);
+		return singles.get(singleIndex(posi, confi));
 	}
 	public void set(int posi, int confi, BigExp val) {
-		singlesPairs.setOneBody(posi, confi, val);
+		singles.set(singleIndex(posi, confi), val);
+	}
+	/** multiplies the single into z, without allocating anything */
+	public void multSingle(BigExp z, int posi, int confi) {
+		singles.mult(singleIndex(posi, confi), z);
 	}
 
 	public int numPairs() {
-		return singlesPairs.getNumPairwise();
+		return numPairs;
 	}
 	public int pairIndex(int posi1, int posi2) {
-		return singlesPairs.getPairwiseIndex(posi1, posi2);
+
+		// posi2 should be strictly less than posi1
+		if (posi2 > posi1) {
+			int swap = posi1;
+			posi1 = posi2;
+			posi2 = swap;
+		} else if (posi1 == posi2) {
+			throw new Error("Can't pair design position " + posi1 + " with itself");
+		}
+
+		return posi1*(posi1 - 1)/2 + posi2;
 	}
 	public int pairIndex(int posi1, int confi1, int posi2, int confi2) {
-		return singlesPairs.getPairwiseIndex(posi1, confi1, posi2, confi2);
+
+		// posi2 should be strictly less than posi1
+		if (posi2 > posi1) {
+			int swap = posi1;
+			posi1 = posi2;
+			posi2 = swap;
+			swap = confi1;
+			confi1 = confi2;
+			confi2 = swap;
+		} else if (posi1 == posi2) {
+			throw new Error("Can't pair design position " + posi1 + " with itself");
+		}
+
+		return pairOffsets[posi1*(posi1 - 1)/2 + posi2] + confSpace.numConf(posi2)*confi1 + confi2;
 	}
 	public BigExp pair(int posi1, int confi1, int posi2, int confi2) {
-		return singlesPairs.getPairwise(posi1, confi1, posi2, confi2);
+		return pairs.get(pairIndex(posi1, confi1, posi2, confi2));
 	}
 	public void set(int posi1, int confi1, int posi2, int confi2, BigExp val) {
-		singlesPairs.setPairwise(posi1, confi1, posi2, confi2, val);
+		pairs.set(pairIndex(posi1, confi1, posi2, confi2), val);
+	}
+	/** multiplies the pair into z, without allocating anything */
+	public void multPair(BigExp z, int posi1, int confi1, int posi2, int confi2) {
+		pairs.mult(pairIndex(posi1, confi1, posi2, confi2), z);
 	}
 
 	public boolean hasTriples() {
 		return triples != null && triples.count() > 0;
 	}
 	public int numTriples() {
-		return triples.size();
+		return checkSize(numTriplesTotal);
 	}
 	public int tripleIndex(int posi1, int posi2, int posi3) {
-		return triples.index(posi1, posi2, posi3);
+
+		// need: posi3 < posi2 < posi1
+		// sort them using a fixed swap chain
+		if (posi2 > posi1) {
+			int swap = posi1;
+			posi1 = posi2;
+			posi2 = swap;
+		}
+		if (posi3 > posi2) {
+			int swap = posi2;
+			posi2 = posi3;
+			posi3 = swap;
+		}
+		if (posi2 > posi1) {
+			int swap = posi1;
+			posi1 = posi2;
+			posi2 = swap;
+		}
+		if (posi1 == posi2 || posi2 == posi3) {
+			throw new Error("Can't make a triple with a repeated design position");
+		}
+
+		return posi1*(posi1 - 1)*(posi1 - 2)/6 + posi2*(posi2 - 1)/2 + posi3;
 	}
 	public int tripleIndex(int posi1, int confi1, int posi2, int confi2, int posi3, int confi3) {
-		return triples.index(posi1, confi1, posi2, confi2, posi3, confi3);
+
+		// need: posi3 < posi2 < posi1
+		// sort them using a fixed swap chain
+		if (posi2 > posi1) {
+			int swap = posi1;
+			posi1 = posi2;
+			posi2 = swap;
+			swap = confi1;
+			confi1 = confi2;
+			confi2 = swap;
+		}
+		if (posi3 > posi2) {
+			int swap = posi2;
+			posi2 = posi3;
+			posi3 = swap;
+			swap = confi2;
+			confi2 = confi3;
+			confi3 = swap;
+		}
+		if (posi2 > posi1) {
+			int swap = posi1;
+			posi1 = posi2;
+			posi2 = swap;
+			swap = confi1;
+			confi1 = confi2;
+			confi2 = swap;
+		}
+		if (posi1 == posi2 || posi2 == posi3) {
+			throw new Error("Can't make a triple with a repeated design position");
+		}
+
+		int n2 = confSpace.numConf(posi2);
+		int n3 = confSpace.numConf(posi3);
+		return tripleOffsets[posi1*(posi1 - 1)*(posi1 - 2)/6 + posi2*(posi2 - 1)/2 + posi3]
+			+ n3*n2*confi1
+			+ n3*confi2
+			+ confi3;
 	}
 	public BigExp triple(int posi1, int confi1, int posi2, int confi2, int posi3, int confi3) {
-		return triples.get(posi1, confi1, posi2, confi2, posi3, confi3);
+		if (triples == null) {
+			return null;
+		}
+		return triples.get(tripleIndex(posi1, confi1, posi2, confi2, posi3, confi3));
 	}
 	public void set(int posi1, int confi1, int posi2, int confi2, int posi3, int confi3, BigExp val) {
-		triples.set(posi1, confi1, posi2, confi2, posi3, confi3, val);
+		triples.set(tripleIndex(posi1, confi1, posi2, confi2, posi3, confi3), val);
+	}
+	/**
+	 * multiplies the triple into z, without allocating anything
+	 * @return false if there's no triple, in which case z is unchanged
+	 */
+	public boolean multTriple(BigExp z, int posi1, int confi1, int posi2, int confi2, int posi3, int confi3) {
+		if (triples == null) {
+			return false;
+		}
+		return triples.mult(tripleIndex(posi1, confi1, posi2, confi2, posi3, confi3), z);
 	}
 
 	public String singlesPairsToString(int cellWidth, int precision) {
+
+		// this is just for debugging, so copy into a tuple matrix and let it do the formatting
+		var singlesPairs = new TupleMatrixGeneric<BigExp>(confSpace);
+		for (int posi1=0; posi1<confSpace.numPos(); posi1++) {
+			for (int confi1=0; confi1<confSpace.numConf(posi1); confi1++) {
+				singlesPairs.setOneBody(posi1, confi1, single(posi1, confi1));
+				for (int posi2=0; posi2<posi1; posi2++) {
+					for (int confi2=0; confi2<confSpace.numConf(posi2); confi2++) {
+						singlesPairs.setPairwise(posi1, confi1, posi2, confi2, pair(posi1, confi1, posi2, confi2));
+					}
+				}
+			}
+		}
 		return singlesPairs.toString(cellWidth, f -> f.toString(precision));
 	}
 }
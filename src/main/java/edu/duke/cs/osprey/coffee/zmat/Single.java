@@ -1,7 +1,5 @@
 package edu.duke.cs.osprey.coffee.zmat;
 
-import edu.duke.cs.osprey.confspace.TripleMatrix;
-import edu.duke.cs.osprey.confspace.TupleMatrixGeneric;
 import edu.duke.cs.osprey.confspace.compiled.ConfSpace;
 import edu.duke.cs.osprey.energy.compiled.ConfEnergyCalculator;
 import edu.duke.cs.osprey.energy.compiled.PosInterGen;
@@ -49,8 +47,8 @@ public class Single implements Tuple {
 	}
 
 	@Override
-	public boolean write(TupleMatrixGeneric<BigExp> singlesPairs, TripleMatrix<BigExp> triples) {
-		singlesPairs.setOneBody(posi1, confi1, z);
+	public boolean write(ClusterZMatrix zmat) {
+		zmat.set(posi1, confi1, z);
 		return true;
 	}
 
@@ -1,7 +1,5 @@
 package edu.duke.cs.osprey.coffee.zmat;
 
-import edu.duke.cs.osprey.confspace.TripleMatrix;
-import edu.duke.cs.osprey.confspace.TupleMatrixGeneric;
 import edu.duke.cs.osprey.confspace.compiled.ConfSpace;
 import edu.duke.cs.osprey.energy.compiled.ConfEnergyCalculator;
 import edu.duke.cs.osprey.energy.compiled.PosInterGen;
@@ -58,13 +56,13 @@ public class Triple implements Tuple {
 	}
 
 	@Override
-	public boolean write(TupleMatrixGeneric<BigExp> singlesPairs, TripleMatrix<BigExp> triples) {
+	public boolean write(ClusterZMatrix zmat) {
 
 		// convert the triple energy into a correction
-		BigExp divisor = new BigExp(singlesPairs.getPairwise(posi1, confi1, posi2, confi2));
-		divisor.mult(singlesPairs.getPairwise(posi1, confi1, posi3, confi3));
-		divisor.mult(singlesPairs.getPairwise(posi2, confi2, posi3, confi3));
-		divisor.pow(1.0/MathTools.numTriplesPerPair(singlesPairs.getNumPos()));
+		BigExp divisor = new BigExp(zmat.pair(posi1, confi1, posi2, confi2));
+		divisor.mult(zmat.pair(posi1, confi1, posi3, confi3));
+		divisor.mult(zmat.pair(posi2, confi2, posi3, confi3));
+		divisor.pow(1.0/MathTools.numTriplesPerPair(zmat.confSpace.numPos()));
 
 		// filter out unhelpful corrections
 		// ie, if the correction factor is >= 1
@@ -74,7 +72,7 @@ public class Triple implements Tuple {
 
 		var correction = new BigExp(z);
 		correction.div(divisor);
-		triples.set(posi1, confi1, posi2, confi2, posi3, confi3, correction);
+		zmat.set(posi1, confi1, posi2, confi2, posi3, confi3, correction);
 		return true;
 	}
 
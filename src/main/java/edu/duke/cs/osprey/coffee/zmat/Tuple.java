@@ -1,7 +1,5 @@
 package edu.duke.cs.osprey.coffee.zmat;
 
-import edu.duke.cs.osprey.confspace.TripleMatrix;
-import edu.duke.cs.osprey.confspace.TupleMatrixGeneric;
 import edu.duke.cs.osprey.confspace.compiled.ConfSpace;
 import edu.duke.cs.osprey.energy.compiled.ConfEnergyCalculator;
 import edu.duke.cs.osprey.energy.compiled.PosInterGen;
@@ -16,6 +14,6 @@ public interface Tuple {
 	int type();
 	ConfEnergyCalculator.MinimizationJob makeJob(ConfSpace confSpace, PosInterGen posInterGen);
 	void setZ(BigExp z);
-	boolean write(TupleMatrixGeneric<BigExp> singlesPairs, TripleMatrix<BigExp> triples);
+	boolean write(ClusterZMatrix zmat);
 	void write(DataOutput out) throws IOException;
 }
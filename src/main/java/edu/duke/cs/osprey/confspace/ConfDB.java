@@ -32,6 +32,8 @@
 
 package edu.duke.cs.osprey.confspace;
 
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.tools.*;
 
 import org.jetbrains.annotations.NotNull;
@@ -41,6 +43,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -549,8 +552,11 @@ public class ConfDB implements AutoCleanable {
 			return btree.sizeLong();
 		}
 
+		/**
+		 * Flushes the db, or if the db {@link #flushInBackground flushes in the background}, asks for a flush.
+		 */
 		public void flush() {
-			ConfDB.this.flush();
+			ConfDB.this.requestFlush();
 		}
 	}
 
@@ -701,6 +707,9 @@ public class ConfDB implements AutoCleanable {
 	private final Map<Sequence,SequenceDB> sequenceDBs;
 	private final IntEncoding assignmentEncoding;
 
+	private TaskExecutor flushTasks = null;
+	private final AtomicBoolean isFlushQueued = new AtomicBoolean(false);
+
 	public ConfDB(ConfSpaceIteration confSpace) {
 		this(confSpace, null);
 	}
@@ -811,6 +820,39 @@ public class ConfDB implements AutoCleanable {
 		}
 	}
 
+	/**
+	 * Makes {@link ConfTable#flush()} flush the db on a blocking task executor
+	 * (see {@link Parallelism#makeBlockingTaskExecutor(int)}), so the threads writing conformations,
+	 * usually compute threads, don't wait on the disk. A table flush that comes in while another
+	 * is still waiting to start gets merged into it. {@link #close()} still flushes everything before returning.
+	 */
+	public ConfDB flushInBackground(Parallelism parallelism) {
+		if (flushTasks == null) {
+			flushTasks = parallelism.makeBlockingTaskExecutor(0);
+		}
+		return this;
+	}
+
+	private void requestFlush() {
+
+		if (flushTasks == null) {
+			flush();
+			return;
+		}
+
+		// skip the flush if one is already waiting, it will pick up our writes too
+		if (isFlushQueued.compareAndSet(false, true)) {
+			flushTasks.submit(
+				() -> {
+					isFlushQueued.set(false);
+					flush();
+					return null;
+				},
+				(ignored) -> {}
+			);
+		}
+	}
+
 	public void flush() {
 		// In write-ahead mode, we don't actually have any transactions,
 		// so there's nothing to commit in the traditional sense.
@@ -819,6 +861,17 @@ public class ConfDB implements AutoCleanable {
 	}
 
 	public void close() {
+
+		// wait for any background flushes
+		if (flushTasks != null) {
+			try {
+				flushTasks.waitForFinish();
+			} finally {
+				flushTasks.clean();
+				flushTasks = null;
+			}
+		}
+
 		flush();
 		for (ConfTable table : tables.values()) {
 			table.close();
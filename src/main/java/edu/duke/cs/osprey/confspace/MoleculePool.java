@@ -0,0 +1,252 @@
+/*
+** This file is part of OSPREY 3.0
+**
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+**
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+**
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+**
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+**
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+**
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+package edu.duke.cs.osprey.confspace;
+
+import edu.duke.cs.osprey.dof.MutAlignmentCache;
+import edu.duke.cs.osprey.structure.Atom;
+import edu.duke.cs.osprey.structure.Molecule;
+import edu.duke.cs.osprey.structure.Residue;
+import edu.duke.cs.osprey.tools.ObjectPool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+/**
+ * Reusable molecules for {@link SimpleConfSpace#checkoutMolecule()}.
+ *
+ * Each pooled molecule is copied from the template molecule once. After that, building a conformation
+ * only resets the residues the previous build touched and re-applies the assigned residue confs, so the cost
+ * is proportional to the number of assigned positions rather than to the size of the molecule.
+ * Residues outside the design positions never change templates, so resetting them is just a
+ * coordinate copy, and their atoms and bonds are shared by every build on that molecule.
+ *
+ * Molecules are checked out and returned explicitly, so the pool only grows to the number of
+ * concurrent callers, and goes away with its conformation space.
+ */
+class MoleculePool {
+
+	private final SimpleConfSpace confSpace;
+	private final Molecule molTemplate;
+	private final MutAlignmentCache mutAlignmentCache;
+
+	/** index of each design position's residue in the template molecule */
+	private final int[] resIndicesByPos;
+
+	/** true if the residue at this index in the template molecule is a design position */
+	private final boolean[] isPosRes;
+
+	private final ObjectPool<Entry> entries;
+
+	static class Entry {
+
+		final Molecule mol;
+
+		// residues whose coords (or atoms) may differ from the template
+		final boolean[] isDirty;
+		final int[] dirtyIndices;
+		int numDirty = 0;
+
+		// residues assigned by the current build
+		final boolean[] isAssigned;
+
+		Entry(Molecule molTemplate) {
+			mol = new Molecule();
+			for (Residue res : molTemplate.residues) {
+				res.copyToMol(mol, true);
+			}
+			mol.markInterResBonds();
+
+			isDirty = new boolean[mol.residues.size()];
+			dirtyIndices = new int[mol.residues.size()];
+			isAssigned = new boolean[mol.residues.size()];
+		}
+
+		void markDirty(int resIndex) {
+			if (!isDirty[resIndex]) {
+				isDirty[resIndex] = true;
+				dirtyIndices[numDirty++] = resIndex;
+			}
+		}
+
+		/**
+		 * Call after applying DOFs that can move residues outside the assigned positions (eg, strand
+		 * translations/rotations or backbone perturbations), so the next build resets every residue.
+		 */
+		void markAllDirty() {
+			for (int i=0; i<isDirty.length; i++) {
+				markDirty(i);
+			}
+		}
+
+		void clearDirty() {
+			for (int i=0; i<numDirty; i++) {
+				isDirty[dirtyIndices[i]] = false;
+			}
+			numDirty = 0;
+		}
+	}
+
+	MoleculePool(SimpleConfSpace confSpace, Molecule molTemplate, MutAlignmentCache mutAlignmentCache) {
+
+		this.confSpace = confSpace;
+		this.molTemplate = molTemplate;
+		this.mutAlignmentCache = mutAlignmentCache;
+
+		resIndicesByPos = new int[confSpace.positions.size()];
+		isPosRes = new boolean[molTemplate.residues.size()];
+		for (SimpleConfSpace.Position pos : confSpace.positions) {
+			int resIndex = molTemplate.residues.findIndexOrThrow(pos.resNum);
+			resIndicesByPos[pos.index] = resIndex;
+			isPosRes[resIndex] = true;
+		}
+
+		entries = new ObjectPool<>((context) -> new Entry(molTemplate));
+	}
+
+	Entry checkout() {
+		synchronized (entries) {
+			return entries.checkout();
+		}
+	}
+
+	void release(Entry entry) {
+		synchronized (entries) {
+			entries.release(entry);
+		}
+	}
+
+	int getResIndex(int pos) {
+		return resIndicesByPos[pos];
+	}
+
+	/**
+	 * Poses the checked-out molecule in the specified conformation, without continuous flexibility.
+	 * The returned molecule is only valid until the next build with the same entry.
+	 */
+	Molecule build(Entry entry, RCTuple conf) {
+
+		Molecule mol = entry.mol;
+
+		// the assigned residues get rebuilt too, even if no earlier build touched them
+		for (int i=0; i<conf.size(); i++) {
+			int resIndex = resIndicesByPos[conf.pos.get(i)];
+			entry.isAssigned[resIndex] = true;
+			entry.markDirty(resIndex);
+		}
+
+		// put all the touched residues back the way the template has them
+		for (int i=0; i<entry.numDirty; i++) {
+			int resIndex = entry.dirtyIndices[i];
+			Residue templateRes = molTemplate.residues.get(resIndex);
+			Residue res = mol.residues.get(resIndex);
+			if (isPosRes[resIndex]) {
+				// updateResidue() marks intra-res bonds itself, so assigned residues start without them
+				resetResidue(templateRes, res, !entry.isAssigned[resIndex]);
+			} else {
+				System.arraycopy(templateRes.coords, 0, res.coords, 0, templateRes.coords.length);
+			}
+		}
+
+		// apply the residue confs
+		for (int i=0; i<conf.size(); i++) {
+			SimpleConfSpace.Position pos = confSpace.positions.get(conf.pos.get(i));
+			SimpleConfSpace.ResidueConf rc = pos.resConfs.get(conf.RCs.get(i));
+			Residue res = mol.residues.get(resIndicesByPos[pos.index]);
+			rc.updateResidue(pos.strand.templateLib, res, mutAlignmentCache);
+		}
+
+		// reconnect the inter-res bonds we broke, the same way Molecule.markInterResBonds() would
+		for (int i=0; i<entry.numDirty; i++) {
+			int resIndex = entry.dirtyIndices[i];
+			if (!isPosRes[resIndex]) {
+				continue;
+			}
+			Residue res = mol.residues.get(resIndex);
+			res.template.interResBonding.connectInterResBonds(res, true);
+			res.interResBondsMarked = true;
+			int nextIndex = resIndex + 1;
+			if (nextIndex < mol.residues.size() && !(isPosRes[nextIndex] && entry.isDirty[nextIndex])) {
+				Residue nextRes = mol.residues.get(nextIndex);
+				nextRes.template.interResBonding.connectInterResBonds(nextRes, true);
+			}
+		}
+
+		// only the assigned residues differ from the template now
+		entry.clearDirty();
+		for (int i=0; i<conf.size(); i++) {
+			int resIndex = resIndicesByPos[conf.pos.get(i)];
+			entry.isAssigned[resIndex] = false;
+			entry.markDirty(resIndex);
+		}
+
+		return mol;
+	}
+
+	private static void resetResidue(Residue templateRes, Residue res, boolean copyIntraBonds) {
+
+		// break the bonds to the neighbors, we'll reconnect them after all the updates
+		res.removeInterResBonds();
+
+		res.fullName = templateRes.fullName;
+		res.template = templateRes.template;
+		res.confProblems = new ArrayList<>(templateRes.confProblems);
+		res.pucker = templateRes.pucker;
+		res.secondaryStruct = templateRes.secondaryStruct;
+
+		// copy the atoms and intra-res bonds, like Residue.copyToMol()
+		res.atoms = new ArrayList<>(templateRes.atoms.size());
+		for (Atom atom : templateRes.atoms) {
+			atom.copyToRes(res);
+		}
+		if (copyIntraBonds) {
+			for (int i=0; i<templateRes.atoms.size(); i++) {
+				Atom templateAtom = templateRes.atoms.get(i);
+				Atom atom = res.atoms.get(i);
+				for (Atom templateBondedAtom : templateAtom.bonds) {
+					atom.bonds.add(res.atoms.get(templateBondedAtom.indexInRes));
+				}
+			}
+			res.intraResBondsMarked = templateRes.intraResBondsMarked;
+		} else {
+			res.intraResBondsMarked = false;
+		}
+
+		// reuse the coord buffer when we can
+		if (res.coords != null && res.coords.length == templateRes.coords.length) {
+			System.arraycopy(templateRes.coords, 0, res.coords, 0, templateRes.coords.length);
+		} else {
+			res.coords = Arrays.copyOf(templateRes.coords, templateRes.coords.length);
+		}
+	}
+}
@@ -360,6 +360,7 @@ public class SimpleConfSpace implements Serializable, ConfSpaceIteration {
 	private final Molecule molTemplate;
 
 	private final MutAlignmentCache mutAlignmentCache = new MutAlignmentCache();
+	private transient volatile MoleculePool moleculePool = null;
 
 	public SimpleConfSpace(List<Strand> strands, Map<Strand,List<StrandFlex>> strandFlex, double shellDist) {
 
@@ -818,13 +819,78 @@ public class SimpleConfSpace implements Serializable, ConfSpaceIteration {
 
 		checkTemplateIntegrity("makeMolecule AFTER makeDiscreteMolecule");
 
-		// figure out what conformational DOFs are specified by the conf
-		HashSet<String> confDOFNames = new HashSet<>();
+		ParametricMolecule pmol = makeParametricMolecule(mol, conf, null);
+
+		checkTemplateIntegrity("makeMolecule END (before return ParametricMolecule)");
+
+		return pmol;
+	}
+
+	/**
+	 * A molecule checked out of the conformation space's pool, see {@link #checkoutMolecule()}.
+	 * Close the checkout to return the molecule to the pool.
+	 */
+	public class MoleculeCheckout implements AutoCloseable {
+
+		private final MoleculePool pool;
+		private final MoleculePool.Entry entry;
+
+		private MoleculeCheckout(MoleculePool pool) {
+			this.pool = pool;
+			this.entry = pool.checkout();
+		}
+
+		/**
+		 * Like {@link #makeMolecule(RCTuple)}, but poses the checked-out molecule instead of
+		 * copying the whole template molecule.
+		 *
+		 * The molecule is reused by the next call, so only use it until then, e.g. when only the energy is kept.
+		 */
+		public ParametricMolecule make(RCTuple conf) {
+			return makeParametricMolecule(pool.build(entry, conf), conf, this);
+		}
+
+		@Override
+		public void close() {
+			pool.release(entry);
+		}
+	}
+
+	/**
+	 * Checks out a molecule that can be posed in any conformation, so the cost of each conformation
+	 * depends on the number of assigned positions rather than on the size of the molecule.
+	 */
+	public MoleculeCheckout checkoutMolecule() {
+		return new MoleculeCheckout(getMoleculePool());
+	}
+
+	private MoleculePool getMoleculePool() {
+		MoleculePool pool = moleculePool;
+		if (pool == null) {
+			synchronized (this) {
+				pool = moleculePool;
+				if (pool == null) {
+					pool = new MoleculePool(this, molTemplate, mutAlignmentCache);
+					moleculePool = pool;
+				}
+			}
+		}
+		return pool;
+	}
+
+	/** true if any of the RCs in the conf have bounds on the named DOF */
+	private boolean isConfDOF(RCTuple conf, String dofName) {
 		for (int i=0; i<conf.size(); i++) {
 			Position pos = positions.get(conf.pos.get(i));
 			ResidueConf resConf = pos.resConfs.get(conf.RCs.get(i));
-			confDOFNames.addAll(resConf.dofBounds.keySet());
+			if (resConf.dofBounds.containsKey(dofName)) {
+				return true;
+			}
 		}
+		return false;
+	}
+
+	private ParametricMolecule makeParametricMolecule(Molecule mol, RCTuple conf, MoleculeCheckout checkout) {
 
 		// OK now apply all DOF vals including puckers
 
@@ -835,7 +901,7 @@ public class SimpleConfSpace implements Serializable, ConfSpaceIteration {
 		for (Strand strand : getConfStrands(conf)) {
 			for (StrandFlex flex : strandFlex.get(strand)) {
 	 			for (DegreeOfFreedom dof : flex.makeDofs(strand, mol)) {
-					if (confDOFNames.contains(dof.getName())) {
+					if (isConfDOF(conf, dof.getName())) {
 						//DEEPer and CATS DOFS may not involve all positions in a strand
 						dofs.add(dof);
 					}
@@ -843,11 +909,18 @@ public class SimpleConfSpace implements Serializable, ConfSpaceIteration {
 			}
 		}
 
+		// backbone DOFs can move residues outside the conf, so the pool will have to reset them all
+		if (checkout != null && !dofs.isEmpty()) {
+			checkout.entry.markAllDirty();
+		}
+
 		// then, residue conf DOFs
 		for (int i=0; i<conf.size(); i++) {
 			Position pos = positions.get(conf.pos.get(i));
 			ResidueConf resConf = pos.resConfs.get(conf.RCs.get(i));
-			Residue res = mol.getResByPDBResNumber(pos.resNum);
+			Residue res = checkout != null
+				? mol.residues.get(checkout.pool.getResIndex(pos.index))
+				: mol.getResByPDBResNumber(pos.resNum);
 			
 			// make the residue DOFs
 			Strand.ResidueFlex resFlex = pos.strand.flexibility.get(pos.resNum);
@@ -890,8 +963,6 @@ public class SimpleConfSpace implements Serializable, ConfSpaceIteration {
 			}
 		}
 
-		checkTemplateIntegrity("makeMolecule END (before return ParametricMolecule)");
-
 		return new ParametricMolecule(mol, dofs, dofBounds);
 	}
 	
@@ -115,6 +115,16 @@ public class TupleMatrixDouble extends AbstractTupleMatrix<Double> {
     	}
     }
     
+    /** the one-body values, laid out by {@link #getOneBodyIndex(int, int)} */
+    protected double[] getOneBodyArray() {
+    	return oneBody;
+    }
+
+    /** the pairwise values, laid out by {@link #getPairwiseIndex(int, int, int, int)} */
+    protected double[] getPairwiseArray() {
+    	return pairwise;
+    }
+    
     public void fill(double[] vals) {
     	ArrayIterator<Double> iter = new ArrayIterator<>(vals);
     	fill(iter);
@@ -3,155 +3,412 @@ package edu.duke.cs.osprey.design;
 import edu.duke.cs.osprey.confspace.Sequence;
 import edu.duke.cs.osprey.kstar.KStarScoreWriter;
 import edu.duke.cs.osprey.kstar.SequenceAnalyzer;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.tools.MathTools;
+import org.sql2o.Connection;
 import org.sql2o.Sql2o;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.regions.RegionMetadata;
 import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.S3ClientBuilder;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.StorageClass;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Writes K* scores (and optionally, ensembles of the top conformations) to a design database.
+ *
+ * Batches of scores are inserted in one transaction over one long-lived connection.
+ * Ensemble analysis (which needs more minimizations) runs on a small bounded thread pool,
+ * so the caller doesn't wait for it, and minimizes on those threads rather than the design's task executor. Wrap this writer in an {@link edu.duke.cs.osprey.kstar.AsyncScoreWriter}
+ * to get the database inserts off the design search thread too.
+ */
 public class PostgresScoreWriter implements KStarScoreWriter {
 
+    /** One row of the affinities table */
+    public static class AffinityRow {
+
+        public final boolean isWt;
+        public final double kstarLower;
+        public final double kstarUpper;
+
+        public final double proteinLower;
+        public final double proteinUpper;
+        public final int proteinConfsEnumerated;
+        public final double proteinEpsilon;
+
+        public final double ligandLower;
+        public final double ligandUpper;
+        public final int ligandConfsEnumerated;
+        public final double ligandEpsilon;
+
+        public final double complexLower;
+        public final double complexUpper;
+        public final int complexConfsEnumerated;
+        public final double complexEpsilon;
+
+        public final String variances;
+
+        public AffinityRow(ScoreInfo info) {
+            isWt = info.sequenceNumber == 0;
+            kstarLower = MathTools.log10(info.kstarScore.lowerBound);
+            kstarUpper = MathTools.log10(info.kstarScore.upperBound);
+
+            proteinLower = MathTools.log10(info.kstarScore.protein.values.calcLowerBound());
+            proteinUpper = MathTools.log10(info.kstarScore.protein.values.calcUpperBound());
+            proteinConfsEnumerated = info.kstarScore.protein.numConfs;
+            proteinEpsilon = info.kstarScore.protein.values.getEffectiveEpsilon();
+
+            ligandLower = MathTools.log10(info.kstarScore.ligand.values.calcLowerBound());
+            ligandUpper = MathTools.log10(info.kstarScore.ligand.values.calcUpperBound());
+            ligandConfsEnumerated = info.kstarScore.ligand.numConfs;
+            ligandEpsilon = info.kstarScore.ligand.values.getEffectiveEpsilon();
+
+            complexLower = MathTools.log10(info.kstarScore.complex.values.calcLowerBound());
+            complexUpper = MathTools.log10(info.kstarScore.complex.values.calcUpperBound());
+            complexConfsEnumerated = info.kstarScore.complex.numConfs;
+            complexEpsilon = info.kstarScore.complex.values.getEffectiveEpsilon();
+
+            variances = info.sequence.toString(Sequence.Renderer.AssignmentMutations, info.sequence.calcCellSize() + 1).trim();
+        }
+    }
+
+    /**
+     * Where the design results go.
+     * Implementations must be safe to call from multiple threads.
+     */
+    public interface Store extends AutoCloseable {
+
+        /** returns the id of the new design */
+        int writeDesign(String name, List<String> inputs);
+
+        /** returns the ids of the new affinities, in the same order as the rows */
+        List<Integer> writeAffinities(int designId, List<AffinityRow> rows);
+
+        void writeStructure(int affinityId, String pdb);
+
+        @Override
+        default void close() {
+            // nothing to clean up by default
+        }
+    }
+
+    /** Stores results in a PostgreSQL database, and structures in S3 */
+    public static class SqlStore implements Store {
+
+        private final String designName;
+        private final Sql2o sql2o;
+        private final String s3BucketName;
+        private final S3Client s3Client;
+
+        // the connection is shared by all threads, guarded by this
+        private Connection con = null;
+
+        public SqlStore(PostgresConnectionInfo connectionInfo, S3Settings s3Settings, String designName) {
+            this.designName = designName;
+            this.s3Client = S3Client.builder().region(Region.of(s3Settings.region)).build();
+            this.s3BucketName = s3Settings.bucketName;
+            this.sql2o = new Sql2o(connectionInfo.connectionString, connectionInfo.username, connectionInfo.password);
+        }
+
+        private Connection connection() {
+            if (con == null) {
+                con = sql2o.open();
+            }
+            return con;
+        }
+
+        /** runs the block in one transaction, and drops the connection if anything goes wrong */
+        private <T> T transaction(SqlBlock<T> block) {
+            var con = connection();
+            try {
+                var jdbc = con.getJdbcConnection();
+                jdbc.setAutoCommit(false);
+                try {
+                    T result = block.run(con);
+                    jdbc.commit();
+                    return result;
+                } catch (Throwable t) {
+                    jdbc.rollback();
+                    throw t;
+                } finally {
+                    jdbc.setAutoCommit(true);
+                }
+            } catch (SQLException ex) {
+                close();
+                throw new RuntimeException("database transaction failed", ex);
+            } catch (RuntimeException ex) {
+                close();
+                throw ex;
+            }
+        }
+
+        private interface SqlBlock<T> {
+            T run(Connection con);
+        }
+
+        @Override
+        public synchronized int writeDesign(String name, List<String> inputs) {
+            return transaction(con -> {
+
+                var insertSql = "INSERT INTO designs (name, type) VALUES (:name, 'affinity')";
+                int designId;
+                try (var query = con.createQuery(insertSql, true)) {
+                    designId = query
+                            .addParameter("name", name)
+                            .executeUpdate()
+                            .getKey(Integer.class);
+                }
+
+                var inputSql = "INSERT INTO args (design, value) VALUES (:design, :value)";
+                try (var query = con.createQuery(inputSql, false)) {
+                    for (var input : inputs) {
+                        query.addParameter("design", designId)
+                                .addParameter("value", input)
+                                .addToBatch();
+                    }
+                    query.executeBatch();
+                }
+
+                return designId;
+            });
+        }
+
+        @Override
+        public synchronized List<Integer> writeAffinities(int designId, List<AffinityRow> rows) {
+            return transaction(con -> {
+
+                var insertSql =
+                        "INSERT INTO affinities " +
+                                "(design, is_wt, kstar_lower, kstar_upper, " +
+                                "protein_lower, protein_upper, protein_confs_enumerated, protein_epsilon, " +
+                                "ligand_lower, ligand_upper, ligand_confs_enumerated, ligand_epsilon, " +
+                                "complex_lower, complex_upper, complex_confs_enumerated, complex_epsilon, " +
+                                "variances) " +
+                                "VALUES " +
+                                "(:design, :is_wt, :kstar_lower, :kstar_upper, " +
+                                ":protein_lower, :protein_upper, :protein_confs_enumerated, :protein_epsilon, " +
+                                ":ligand_lower, :ligand_upper, :ligand_confs_enumerated, :ligand_epsilon, " +
+                                ":complex_lower, :complex_upper, :complex_confs_enumerated, :complex_epsilon, " +
+                                ":variances) ";
+
+                try (var query = con.createQuery(insertSql, true)) {
+                    for (var row : rows) {
+                        query.addParameter("design", designId)
+                                .addParameter("is_wt", row.isWt)
+                                .addParameter("kstar_lower", row.kstarLower)
+                                .addParameter("kstar_upper", row.kstarUpper)
+                                .addParameter("protein_lower", row.proteinLower)
+                                .addParameter("protein_upper", row.proteinUpper)
+                                .addParameter("protein_confs_enumerated", row.proteinConfsEnumerated)
+                                .addParameter("protein_epsilon", row.proteinEpsilon)
+                                .addParameter("ligand_lower", row.ligandLower)
+                                .addParameter("ligand_upper", row.ligandUpper)
+                                .addParameter("ligand_confs_enumerated", row.ligandConfsEnumerated)
+                                .addParameter("ligand_epsilon", row.ligandEpsilon)
+                                .addParameter("complex_lower", row.complexLower)
+                                .addParameter("complex_upper", row.complexUpper)
+                                .addParameter("complex_confs_enumerated", row.complexConfsEnumerated)
+                                .addParameter("complex_epsilon", row.complexEpsilon)
+                                .addParameter("variances", row.variances)
+                                .addToBatch();
+                    }
+                    return query.executeBatch().getKeys(Integer.class);
+                }
+            });
+        }
+
+        @Override
+        public void writeStructure(int affinityId, String pdb) {
+
+            // don't hold the connection while we're talking to S3
+            int structId;
+            synchronized (this) {
+                structId = transaction(con -> {
+                    var pdbSql = "INSERT INTO affinity_structures (affinity, structure) VALUES (:affinity, :structure)";
+                    try (var query = con.createQuery(pdbSql, true)) {
+                        return query
+                                .addParameter("affinity", affinityId)
+                                .addParameter("structure", "")
+                                .executeUpdate()
+                                .getKey(Integer.class);
+                    }
+                });
+            }
+
+            var s3Key = String.format("%s-%s.pdb", designName, structId);
+            var request = PutObjectRequest.builder()
+                    .bucket(s3BucketName)
+                    .storageClass(StorageClass.INTELLIGENT_TIERING)
+                    .key(s3Key)
+                    .build();
+
+            s3Client.putObject(request, RequestBody.fromString(pdb));
+
+            synchronized (this) {
+                transaction(con -> {
+                    var structureUpdateSql = "UPDATE affinity_structures set structure = :s3Key where id = :structId";
+                    try (var query = con.createQuery(structureUpdateSql, false)) {
+                        query.addParameter("s3Key", /*s3://{bucket}/{key}*/String.format("s3://%s/%s", s3BucketName, s3Key))
+                                .addParameter("structId", structId)
+                                .executeUpdate();
+                    }
+                    return null;
+                });
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (con != null) {
+                con.close();
+                con = null;
+            }
+        }
+    }
+
     private final String designName;
     private final List<String> inputs;
-    private final Sql2o sql2o;
+    private final Store store;
     private final int numConfsToSave;
-    private final String s3BucketName;
-    private final S3Client s3Client;
+    private final ThreadPoolExecutor analysisExecutor;
+    private final List<Future<?>> analyses = new ArrayList<>();
     int designId;
 
     public PostgresScoreWriter(PostgresConnectionInfo connectionInfo, S3Settings s3Settings,
                                String designName, List<String> inputs, int numConfsToSave) {
+        this(new SqlStore(connectionInfo, s3Settings, designName), designName, inputs, numConfsToSave, 1);
+    }
+
+    /**
+     * @param numAnalysisThreads how many ensemble analyses to run at once.
+     *                           If analyses fall behind, the caller runs the next one itself, so the queue stays bounded.
+     */
+    public PostgresScoreWriter(Store store, String designName, List<String> inputs, int numConfsToSave, int numAnalysisThreads) {
         this.designName = designName;
         this.inputs = inputs;
+        this.store = store;
         this.numConfsToSave = numConfsToSave;
-        this.s3Client = S3Client.builder().region(Region.of(s3Settings.region)).build();
-        this.s3BucketName = s3Settings.bucketName;
-        this.sql2o = new Sql2o(connectionInfo.connectionString, connectionInfo.username, connectionInfo.password);
+        if (numConfsToSave > 0) {
+            analysisExecutor = new ThreadPoolExecutor(
+                    numAnalysisThreads, numAnalysisThreads,
+                    0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(numAnalysisThreads*2),
+                    runnable -> {
+                        var thread = new Thread(runnable, "EnsembleAnalysis");
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.CallerRunsPolicy()
+            );
+        } else {
+            analysisExecutor = null;
+        }
     }
 
     @Override
     public void writeHeader() {
-        var insertSql = "INSERT INTO designs (name, type) VALUES (:name, 'affinity')";
-
-        try (var con = sql2o.open()) {
-            designId = con.createQuery(insertSql, true)
-                    .addParameter("name", designName)
-                    .executeUpdate()
-                    .getKey(Integer.class);
-        }
-
-        var inputSql = "INSERT INTO args (design, value) VALUES (:design, :value)";
-
-        try (var con = sql2o.open()) {
-            for (var input : inputs) {
-                con.createQuery(inputSql, true)
-                        .addParameter("design", designId)
-                        .addParameter("value", input)
-                        .executeUpdate();
-            }
-        }
+        designId = store.writeDesign(designName, inputs);
     }
 
     @Override
     public void writeScore(ScoreInfo info) {
-        var insertSql =
-                "INSERT INTO affinities " +
-                        "(design, is_wt, kstar_lower, kstar_upper, " +
-                        "protein_lower, protein_upper, protein_confs_enumerated, protein_epsilon, " +
-                        "ligand_lower, ligand_upper, ligand_confs_enumerated, ligand_epsilon, " +
-                        "complex_lower, complex_upper, complex_confs_enumerated, complex_epsilon, " +
-                        "variances) " +
-                        "VALUES " +
-                        "(:design, :is_wt, :kstar_lower, :kstar_upper, " +
-                        ":protein_lower, :protein_upper, :protein_confs_enumerated, :protein_epsilon, " +
-                        ":ligand_lower, :ligand_upper, :ligand_confs_enumerated, :ligand_epsilon, " +
-                        ":complex_lower, :complex_upper, :complex_confs_enumerated, :complex_epsilon, " +
-                        ":variances) ";
-
-        var design = designId;
-        var is_wt = info.sequenceNumber == 0;
-        var kstar_lower = MathTools.log10(info.kstarScore.lowerBound);
-        var kstar_upper = MathTools.log10(info.kstarScore.upperBound);
-
-        var protein_lower = MathTools.log10(info.kstarScore.protein.values.calcLowerBound());
-        var protein_upper = MathTools.log10(info.kstarScore.protein.values.calcUpperBound());
-        var protein_confs_enumerated = info.kstarScore.protein.numConfs;
-        var protein_epsilon = info.kstarScore.protein.values.getEffectiveEpsilon();
-
-        var ligand_lower = MathTools.log10(info.kstarScore.ligand.values.calcLowerBound());
-        var ligand_upper = MathTools.log10(info.kstarScore.ligand.values.calcUpperBound());
-        var ligand_confs_enumerated = info.kstarScore.ligand.numConfs;
-        var ligand_epsilon = info.kstarScore.ligand.values.getEffectiveEpsilon();
-
-        var complex_lower = MathTools.log10(info.kstarScore.complex.values.calcLowerBound());
-        var complex_upper = MathTools.log10(info.kstarScore.complex.values.calcUpperBound());
-        var complex_confs_enumerated = info.kstarScore.complex.numConfs;
-        var complex_epsilon = info.kstarScore.complex.values.getEffectiveEpsilon();
-
-        var variances = info.sequence.toString(Sequence.Renderer.AssignmentMutations, info.sequence.calcCellSize() + 1).trim();
-
-        int affinityId;
-        try (var con = sql2o.open()) {
-            affinityId =
-                con.createQuery(insertSql, true)
-                    .addParameter("design", design)
-                    .addParameter("is_wt", is_wt)
-                    .addParameter("kstar_lower", kstar_lower)
-                    .addParameter("kstar_upper", kstar_upper)
-                    .addParameter("protein_lower", protein_lower)
-                    .addParameter("protein_upper", protein_upper)
-                    .addParameter("protein_confs_enumerated", protein_confs_enumerated)
-                    .addParameter("protein_epsilon", protein_epsilon)
-                    .addParameter("ligand_lower", ligand_lower)
-                    .addParameter("ligand_upper", ligand_upper)
-                    .addParameter("ligand_confs_enumerated", ligand_confs_enumerated)
-                    .addParameter("ligand_epsilon", ligand_epsilon)
-                    .addParameter("complex_lower", complex_lower)
-                    .addParameter("complex_upper", complex_upper)
-                    .addParameter("complex_confs_enumerated", complex_confs_enumerated)
-                    .addParameter("complex_epsilon", complex_epsilon)
-                    .addParameter("variances", variances)
-                    .executeUpdate()
-                    .getKey(Integer.class);
+        writeScores(List.of(info));
+    }
+
+    @Override
+    public void writeScores(List<ScoreInfo> infos) {
+
+        var rows = new ArrayList<AffinityRow>(infos.size());
+        for (var info : infos) {
+            rows.add(new AffinityRow(info));
         }
+        var affinityIds = store.writeAffinities(designId, rows);
 
         if (numConfsToSave > 0) {
-            var analysis = new SequenceAnalyzer(info.kstar).analyze(info.sequence, numConfsToSave);
-            var pdb = analysis.ensemble.writePdbString(String.format("Top %d confs for sequence", numConfsToSave));
+            pruneAnalyses();
+            for (int i=0; i<infos.size(); i++) {
+                var info = infos.get(i);
+                int affinityId = affinityIds.get(i);
+                var future = analysisExecutor.submit(() -> {
+                    store.writeStructure(affinityId, analyzeEnsemble(info));
+                });
+                synchronized (analyses) {
+                    analyses.add(future);
+                }
+            }
+        }
+    }
 
-            var pdbSql = "INSERT INTO affinity_structures (affinity, structure) VALUES (:affinity, :structure)";
+    /** returns the PDB of the sequence's top conformations */
+    String analyzeEnsemble(ScoreInfo info) {
+        // minimize on this analysis thread, rather than on the design's task executor,
+        // since the design could be waiting on those tasks too
+        var analysis = new SequenceAnalyzer(info.kstar).analyze(info.sequence, numConfsToSave, null, new TaskExecutor());
+        return analysis.ensemble.writePdbString(String.format("Top %d confs for sequence", numConfsToSave));
+    }
 
-            int structId;
-            try (var con = sql2o.open()) {
-                structId = con.createQuery(pdbSql, true)
-                        .addParameter("affinity", affinityId)
-                        .addParameter("structure", "")
-                        .executeUpdate()
-                        .getKey(Integer.class);
-            }
+    /**
+     * Drops analyses that already finished successfully, so long designs don't keep a future for every sequence.
+     * Failed analyses stay, so {@link #finish()} can report them.
+     */
+    private void pruneAnalyses() {
+        synchronized (analyses) {
+            analyses.removeIf(PostgresScoreWriter::succeeded);
+        }
+    }
 
-            var s3Key = String.format("%s-%s.pdb", designName, structId);
-            var request = PutObjectRequest.builder()
-                    .bucket(s3BucketName)
-                    .storageClass(StorageClass.INTELLIGENT_TIERING)
-                    .key(s3Key)
-                    .build();
+    private static boolean succeeded(Future<?> future) {
+        if (!future.isDone() || future.isCancelled()) {
+            return false;
+        }
+        try {
+            future.get();
+            return true;
+        } catch (InterruptedException | ExecutionException ex) {
+            return false;
+        }
+    }
+
+    /** how many analyses are still tracked, ie, not yet known to have succeeded */
+    int numTrackedAnalyses() {
+        synchronized (analyses) {
+            return analyses.size();
+        }
+    }
 
-            var response = s3Client.putObject(request, RequestBody.fromString(pdb));
+    @Override
+    public void finish() {
 
-            var structureUpdateSql = "UPDATE affinity_structures set structure = :s3Key where id = :structId";
-            try (var con = sql2o.open()) {
-                con.createQuery(structureUpdateSql, false)
-                        .addParameter("s3Key", /*s3://{bucket}/{key}*/String.format("s3://%s/%s", s3BucketName, s3Key))
-                        .addParameter("structId", structId)
-                        .executeUpdate();
+        // wait for the ensemble analyses
+        List<Future<?>> futures;
+        synchronized (analyses) {
+            futures = new ArrayList<>(analyses);
+            analyses.clear();
+        }
+        for (var future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException ex) {
+                throw new RuntimeException("interrupted while waiting for ensemble analysis", ex);
+            } catch (ExecutionException ex) {
+                throw new RuntimeException("ensemble analysis failed", ex.getCause());
             }
         }
     }
+
+    @Override
+    public void close() {
+        if (analysisExecutor != null) {
+            analysisExecutor.shutdownNow();
+        }
+        store.close();
+    }
 }
@@ -18,6 +18,7 @@ import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
 import edu.duke.cs.osprey.energy.EnergyCalculator;
 import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
 import edu.duke.cs.osprey.energy.forcefield.amber.ForcefieldFileParser;
+import edu.duke.cs.osprey.kstar.AsyncScoreWriter;
 import edu.duke.cs.osprey.kstar.KStar;
 import edu.duke.cs.osprey.kstar.pfunc.GradientDescentPfunc;
 import edu.duke.cs.osprey.markstar.framework.MARKStarBoundFastQueues;
@@ -141,7 +142,12 @@ public class CommandBindingAffinity extends RunnableCommand {
             }
         }
 
-        printResults(kstar.run(minimizingECalc.tasks));
+        try {
+            printResults(kstar.run(minimizingECalc.tasks));
+        } finally {
+            // stop any background score writers, even if the design failed
+            kstar.settings.scoreWriters.close();
+        }
         return Main.Success;
     }
 
@@ -347,7 +353,8 @@ public class CommandBindingAffinity extends RunnableCommand {
             var s3ConnInfo = new S3Settings("us-east-1", "duke-osprey"); // TODO: get this from config
             var dbScoreWriter = new PostgresScoreWriter(pgsqlConnInfo, s3ConnInfo, delegate.design.getName(), List.of(designFile, commandLineArgs), delegate.numConfs);
 
-            builder.addScoreWriter(dbScoreWriter);
+            // write to the database in the background, so K* doesn't wait on it
+            builder.addScoreWriter(new AsyncScoreWriter(dbScoreWriter, delegate.getParallelism()));
         } else if (delegate.numConfs > 0) {
             var saveDir = delegate.saveDir;
             var scoreWriter = new StructureFileScoreWriter(saveDir, delegate.numConfs);
@@ -184,6 +184,14 @@ public class EnergyMatrix extends TupleMatrixDouble implements FragmentEnergies
         return energy;
     }
 
+    /**
+     * Fast primitive access to the energies, for inner loops. See {@link PrimitiveEnergyMatrix}.
+     * Subclasses that don't keep their energies in the usual arrays should override this.
+     */
+    public PrimitiveEnergyMatrix primitive() {
+    	return new PrimitiveEnergyMatrix(this, getOneBodyArray(), getPairwiseArray());
+    }
+
     @Override
 	public double getEnergy(int pos, int rc) {
     	return getOneBody(pos, rc);
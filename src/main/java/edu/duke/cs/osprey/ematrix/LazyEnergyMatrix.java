@@ -72,6 +72,12 @@ public class LazyEnergyMatrix extends EnergyMatrix {
 		this.nullVal = nullVal;
 	}
 	
+    @Override
+    public PrimitiveEnergyMatrix primitive() {
+    	// don't read the arrays directly, or we'd miss the lazy energy calculations
+    	return PrimitiveEnergyMatrix.onDemand(this);
+    }
+
     @Override
     public Double getOneBody(int res, int conf) {
     	double val = super.getOneBody(res, conf);
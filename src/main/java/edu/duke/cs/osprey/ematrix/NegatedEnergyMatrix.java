@@ -36,10 +36,23 @@ import edu.duke.cs.osprey.confspace.SimpleConfSpace;
 
 public class NegatedEnergyMatrix extends ProxyEnergyMatrix {
 
+	private PrimitiveEnergyMatrix primitive = null;
+
 	public NegatedEnergyMatrix(SimpleConfSpace confSpace, EnergyMatrix target) {
 		super(confSpace, target);
 	}
 
+	/**
+	 * Copies the negated energies the first time it's called, so later changes to the target won't show up.
+	 */
+	@Override
+	public synchronized PrimitiveEnergyMatrix primitive() {
+		if (primitive == null) {
+			primitive = PrimitiveEnergyMatrix.copyOf(this);
+		}
+		return primitive;
+	}
+
 	@Override
 	public double getConstTerm() {
 		return -super.getConstTerm();
@@ -0,0 +1,193 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.ematrix;
+
+
+/**
+ * Fast read-only access to the one-body and pairwise energies of an {@link EnergyMatrix},
+ * for the innermost loops of A* scorers and pruning.
+ *
+ * Energies come back as primitive doubles, and this class is final, so calls don't box
+ * and don't dispatch through the {@link edu.duke.cs.osprey.confspace.TupleMatrix} interface.
+ *
+ * When the energy matrix stores its energies in arrays, this class reads the same arrays directly,
+ * so later changes to the energy matrix show up here too. Energy matrices that compute energies on demand
+ * (eg {@link LazyEnergyMatrix}) get read through their usual methods instead, and have no pairwise rows.
+ *
+ * Higher-order terms are ignored.
+ */
+public final class PrimitiveEnergyMatrix {
+
+	public final EnergyMatrix emat;
+	public final int numPos;
+
+	private final int[] numRCs;
+	private final int[] oneBodyOffsets;
+	private final int[] pairwiseOffsets; // indexed by pos1*numPos + pos2, where pos1 > pos2
+
+	// null when the energy matrix computes energies on demand
+	// (these are final, so the JIT can hoist the null checks in the getters out of hot loops)
+	private final double[] oneBody;
+	private final double[] pairwise;
+
+	/**
+	 * Reads energies directly from the arrays, laid out the same way as {@link edu.duke.cs.osprey.confspace.TupleMatrixDouble}.
+	 */
+	public PrimitiveEnergyMatrix(EnergyMatrix emat, double[] oneBody, double[] pairwise) {
+
+		this.emat = emat;
+		this.numPos = emat.getNumPos();
+		this.oneBody = oneBody;
+		this.pairwise = pairwise;
+
+		numRCs = emat.getNumConfAtPos().clone();
+		oneBodyOffsets = new int[numPos];
+		pairwiseOffsets = new int[numPos*numPos];
+		for (int pos1=0; pos1<numPos; pos1++) {
+			oneBodyOffsets[pos1] = emat.getOneBodyIndex(pos1, 0);
+			for (int pos2=0; pos2<pos1; pos2++) {
+				pairwiseOffsets[pos1*numPos + pos2] = emat.getPairwiseIndex(pos1, 0, pos2, 0);
+			}
+		}
+	}
+
+	/**
+	 * Reads energies through the energy matrix's usual methods, eg when the energy matrix computes energies on demand.
+	 */
+	public static PrimitiveEnergyMatrix onDemand(EnergyMatrix emat) {
+		return new PrimitiveEnergyMatrix(emat, null, null);
+	}
+
+	/**
+	 * Copies all the energies out of the energy matrix, eg when the energy matrix transforms energies on the fly.
+	 */
+	public static PrimitiveEnergyMatrix copyOf(EnergyMatrix emat) {
+
+		double[] oneBody = new double[emat.getNumOneBody()];
+		double[] pairwise = new double[emat.getNumPairwise()];
+		int numPos = emat.getNumPos();
+		for (int pos1=0; pos1<numPos; pos1++) {
+			int n1 = emat.getNumConfAtPos(pos1);
+			for (int rc1=0; rc1<n1; rc1++) {
+				oneBody[emat.getOneBodyIndex(pos1, rc1)] = emat.getOneBody(pos1, rc1);
+				for (int pos2=0; pos2<pos1; pos2++) {
+					int n2 = emat.getNumConfAtPos(pos2);
+					for (int rc2=0; rc2<n2; rc2++) {
+						pairwise[emat.getPairwiseIndex(pos1, rc1, pos2, rc2)] = emat.getPairwise(pos1, rc1, pos2, rc2);
+					}
+				}
+			}
+		}
+
+		return new PrimitiveEnergyMatrix(emat, oneBody, pairwise);
+	}
+
+	/** true if the energies come from arrays, and pairwise rows are available */
+	public boolean hasArrays() {
+		return pairwise != null;
+	}
+
+	public double getConstTerm() {
+		return emat.getConstTerm();
+	}
+
+	public int getNumConfAtPos(int pos) {
+		return numRCs[pos];
+	}
+
+	public double getOneBody(int pos, int rc) {
+		if (oneBody == null) {
+			return emat.getOneBody(pos, rc);
+		}
+		return oneBody[oneBodyOffsets[pos] + rc];
+	}
+
+	public double getPairwise(int pos1, int rc1, int pos2, int rc2) {
+		if (pairwise == null) {
+			return emat.getPairwise(pos1, rc1, pos2, rc2);
+		}
+		assert (pos1 != pos2);
+		if (pos1 > pos2) {
+			return pairwise[pairwiseOffsets[pos1*numPos + pos2] + numRCs[pos2]*rc1 + rc2];
+		} else {
+			return pairwise[pairwiseOffsets[pos2*numPos + pos1] + numRCs[pos1]*rc2 + rc1];
+		}
+	}
+
+	/**
+	 * The array that holds the pairwise rows.
+	 *
+	 * The energy between (pos1,rc1) and (pos2,rc2) is at
+	 * {@code getPairwiseRowOffset(pos1, rc1, pos2) + rc2*getPairwiseRowStride(pos1, pos2)}.
+	 * When pos1 > pos2, the stride is 1, so the row is contiguous.
+	 */
+	public double[] getPairwiseRows() {
+		checkArrays();
+		return pairwise;
+	}
+
+	public int getPairwiseRowOffset(int pos1, int rc1, int pos2) {
+		checkArrays();
+		assert (pos1 != pos2);
+		if (pos1 > pos2) {
+			return pairwiseOffsets[pos1*numPos + pos2] + numRCs[pos2]*rc1;
+		} else {
+			return pairwiseOffsets[pos2*numPos + pos1] + rc1;
+		}
+	}
+
+	public int getPairwiseRowStride(int pos1, int pos2) {
+		checkArrays();
+		assert (pos1 != pos2);
+		if (pos1 > pos2) {
+			return 1;
+		} else {
+			return numRCs[pos1];
+		}
+	}
+
+	double[] oneBodyArray() {
+		return oneBody;
+	}
+
+	double[] pairwiseArray() {
+		return pairwise;
+	}
+
+	private void checkArrays() {
+		if (pairwise == null) {
+			throw new IllegalStateException("energy matrix computes energies on demand, so it has no pairwise rows");
+		}
+	}
+}
@@ -70,6 +70,16 @@ public class ProxyEnergyMatrix extends EnergyMatrix {
 		target.setPairwise(pos1, rc1, pos2, rc2, val);
 	}
 
+	@Override
+	public PrimitiveEnergyMatrix primitive() {
+		// read the target's arrays, but keep our own const term
+		PrimitiveEnergyMatrix targetPrimitive = target.primitive();
+		if (!targetPrimitive.hasArrays()) {
+			return PrimitiveEnergyMatrix.onDemand(this);
+		}
+		return new PrimitiveEnergyMatrix(this, targetPrimitive.oneBodyArray(), targetPrimitive.pairwiseArray());
+	}
+
 	@Override
 	public void setHigherOrder(RCTuple tup, Double val) {
 		super.setHigherOrder(tup, val);
@@ -352,40 +352,43 @@ public class SimplerEnergyMatrixCalculator {
 		public List<Double> run(Context ctx) {
 
 			// calculate all the fragment energies
-			List<Double> energies = new ArrayList<>();
-			for (RCTuple frag : fragments) {
-
-				double energy;
-
-				// are there any RCs are from two different backbone states that can't connect?
-				if (isParametricallyIncompatible(ctx.confEcalc, frag)) {
-
-					// yup, give this frag an infinite energy so we never choose it
-					energy = Double.POSITIVE_INFINITY;
-
-				} else {
-
-					// nope, calculate the usual fragment energy
-					switch (frag.size()) {
-						case 0: {
-							energy = ctx.confEcalc.calcShellEnergy(frag).energy;
-						} break;
-						case 1: {
-							energy = ctx.confEcalc.calcSingleEnergy(frag).energy;
-						} break;
-						case 2: {
-							energy = ctx.confEcalc.calcPairEnergy(frag).energy;
-						} break;
-						default: {
-							energy = ctx.confEcalc.calcEnergy(frag).energy;
+			// only the energies are kept, so the molecules can come from the conf space's pool
+			return ctx.confEcalc.calcEnergiesOnly(() -> {
+				List<Double> energies = new ArrayList<>();
+				for (RCTuple frag : fragments) {
+
+					double energy;
+
+					// are there any RCs are from two different backbone states that can't connect?
+					if (isParametricallyIncompatible(ctx.confEcalc, frag)) {
+
+						// yup, give this frag an infinite energy so we never choose it
+						energy = Double.POSITIVE_INFINITY;
+
+					} else {
+
+						// nope, calculate the usual fragment energy
+						switch (frag.size()) {
+							case 0: {
+								energy = ctx.confEcalc.calcShellEnergy(frag).energy;
+							} break;
+							case 1: {
+								energy = ctx.confEcalc.calcSingleEnergy(frag).energy;
+							} break;
+							case 2: {
+								energy = ctx.confEcalc.calcPairEnergy(frag).energy;
+							} break;
+							default: {
+								energy = ctx.confEcalc.calcEnergy(frag).energy;
+							}
 						}
 					}
-				}
 
-				energies.add(energy);
-			}
+					energies.add(energy);
+				}
 
-			return energies;
+				return energies;
+			});
 		}
 	}
 
@@ -0,0 +1,316 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.ematrix.epic;
+
+import cern.colt.matrix.DoubleMatrix1D;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ *
+ * A sum of EPIC terms compiled into one flat table of monomials in the DOF values,
+ * so evaluating the sum doesn't need to walk the terms, copy DOF values for each term,
+ * or touch a molecule at all.
+ * 
+ * Each term's series is in coordinates relative to the term's own center,
+ * so we re-expand all the terms around one shared reference point per DOF
+ * (eg, the center of the DOF bounds) and merge monomials that come out the same.
+ * Then every evaluation computes the powers of each DOF once, and all the monomials share them.
+ * 
+ * Only plain EPoly terms without SAPE can be compiled, see {@link #canCompile(List)}.
+ * Instances keep the current DOF values, so they're not thread-safe.
+ */
+public class CompiledEPIC implements Serializable {
+    
+    private static final long serialVersionUID = 2930461847326901862L;
+    
+    //monomials are keyed by their sorted DOF indices, packed into a long
+    private static final int MaxDegree = 6;
+    private static final int BitsPerDOF = 10;
+    private static final int MaxNumDOFs = (1 << BitsPerDOF) - 1;
+    
+    public final int numDOFs;
+    
+    private final double[] reference;//we evaluate monomials in u = x - reference
+    private final double constant;
+    
+    //the monomials, each as a coefficient times a product of DOF powers (factors)
+    private final double[] coeffs;
+    private final int[] factorStarts;//factors for monomial m are at indices [factorStarts[m], factorStarts[m+1])
+    private final int[] factorDOFs;
+    private final int[] factorExps;
+    
+    private final int[][] monomialsByDOF;//which monomials depend on each DOF
+    
+    //pows[dof*powStride + k] = u_dof^k
+    private final int powStride;
+    private final double[] pows;
+    
+    
+    public static boolean canCompile(List<EPoly> terms) {
+        for(EPoly term : terms){
+            if(term instanceof EPolyPC || term.sapeTerm != null || term.order > MaxDegree)
+                return false;
+        }
+        return true;
+    }
+    
+    
+    public CompiledEPIC(List<EPoly> terms, List<String> DOFNames, DoubleMatrix1D reference, boolean includeMinE) {
+        
+        if(!canCompile(terms))
+            throw new IllegalArgumentException("can only compile polynomial EPIC terms without SAPE");
+        if(DOFNames.size() > MaxNumDOFs)
+            throw new IllegalArgumentException("too many DOFs to compile EPIC terms: " + DOFNames.size());
+        
+        this.numDOFs = DOFNames.size();
+        this.reference = reference.toArray();
+        
+        //expand all the terms into one polynomial in u
+        Map<Long,Double> poly = new HashMap<>();
+        double minE = 0;
+        for(EPoly term : terms){
+            
+            int[] termDOFs = new int[term.numDOFs];
+            double[] shifts = new double[term.numDOFs];//z = u - shift
+            for(int i=0; i<term.numDOFs; i++){
+                termDOFs[i] = findDOF(DOFNames, term.DOFNames.get(i));
+                shifts[i] = term.center.get(i) - reference.get(termDOFs[i]);
+            }
+            
+            //enumerate the term's monomials in the same order as SeriesFitter.evalSeries
+            int[] count = new int[] { 0 };
+            int[] factors = new int[MaxDegree];
+            for(int degree=1; degree<=term.order; degree++)
+                expandDegree(term, termDOFs, shifts, factors, 0, degree, term.numDOFs - 1, count, poly);
+            
+            if(count[0] != term.coeffs.length){
+                throw new IllegalArgumentException("EPIC term has " + term.coeffs.length
+                        + " coefficients, but expected " + count[0]);
+            }
+            
+            if(includeMinE)
+                minE += term.minE;
+        }
+        
+        //the empty monomial is the constant
+        Double polyConstant = poly.remove(0L);
+        this.constant = minE + (polyConstant == null ? 0 : polyConstant);
+        
+        //flatten the monomials, in key order so the layout is deterministic
+        TreeMap<Long,Double> sortedPoly = new TreeMap<>(poly);
+        int numMonomials = sortedPoly.size();
+        coeffs = new double[numMonomials];
+        factorStarts = new int[numMonomials+1];
+        List<Integer> dofsList = new ArrayList<>();
+        List<Integer> expsList = new ArrayList<>();
+        List<List<Integer>> monomialsByDOFList = new ArrayList<>();
+        for(int dof=0; dof<numDOFs; dof++)
+            monomialsByDOFList.add(new ArrayList<>());
+        int maxExp = 1;
+        
+        int m = 0;
+        for(Map.Entry<Long,Double> entry : sortedPoly.entrySet()){
+            coeffs[m] = entry.getValue();
+            factorStarts[m] = dofsList.size();
+            
+            //unpack the DOFs, which are sorted, so equal DOFs are adjacent
+            long key = entry.getKey();
+            int prevDOF = -1;
+            while(key != 0){
+                int dof = (int)(key & MaxNumDOFs) - 1;
+                key >>>= BitsPerDOF;
+                if(dof == prevDOF){
+                    int last = expsList.size() - 1;
+                    expsList.set(last, expsList.get(last) + 1);
+                    maxExp = Math.max(maxExp, expsList.get(last));
+                }
+                else {
+                    dofsList.add(dof);
+                    expsList.add(1);
+                    monomialsByDOFList.get(dof).add(m);
+                    prevDOF = dof;
+                }
+            }
+            m++;
+        }
+        factorStarts[numMonomials] = dofsList.size();
+        
+        factorDOFs = dofsList.stream().mapToInt(i -> i).toArray();
+        factorExps = expsList.stream().mapToInt(i -> i).toArray();
+        monomialsByDOF = new int[numDOFs][];
+        for(int dof=0; dof<numDOFs; dof++)
+            monomialsByDOF[dof] = monomialsByDOFList.get(dof).stream().mapToInt(i -> i).toArray();
+        
+        powStride = maxExp + 1;
+        pows = new double[numDOFs*powStride];
+        setDOFs(reference);
+    }
+    
+    
+    private static int findDOF(List<String> DOFNames, String name) {
+        for(int d=0; d<DOFNames.size(); d++){
+            if(name.equalsIgnoreCase(DOFNames.get(d)))
+                return d;
+        }
+        throw new RuntimeException("ERROR: Degree of freedom in EPoly term not found in conf reference DOFs");
+    }
+    
+    
+    private static void expandDegree(EPoly term, int[] termDOFs, double[] shifts, int[] factors,
+            int depth, int degree, int maxDOF, int[] count, Map<Long,Double> poly) {
+        
+        if(depth == degree){
+            //z_f1*z_f2*...*z_fk with z = u - shift, so expand over which factors contribute u
+            double coeff = term.coeffs[count[0]++];
+            if(coeff != 0)
+                expandShifts(termDOFs, shifts, factors, degree, 0, coeff, new int[degree], 0, poly);
+            return;
+        }
+        
+        for(int i=0; i<=maxDOF; i++){
+            factors[depth] = i;
+            expandDegree(term, termDOFs, shifts, factors, depth+1, degree, i, count, poly);
+        }
+    }
+    
+    
+    private static void expandShifts(int[] termDOFs, double[] shifts, int[] factors, int degree,
+            int depth, double coeff, int[] uDOFs, int numUDOFs, Map<Long,Double> poly) {
+        
+        if(depth == degree){
+            poly.merge(makeKey(uDOFs, numUDOFs), coeff, Double::sum);
+            return;
+        }
+        
+        int i = factors[depth];
+        
+        //take u from this factor
+        uDOFs[numUDOFs] = termDOFs[i];
+        expandShifts(termDOFs, shifts, factors, degree, depth+1, coeff, uDOFs, numUDOFs+1, poly);
+        
+        //or take -shift
+        if(shifts[i] != 0)
+            expandShifts(termDOFs, shifts, factors, degree, depth+1, -coeff*shifts[i], uDOFs, numUDOFs, poly);
+    }
+    
+    
+    private static long makeKey(int[] dofs, int numDOFs) {
+        int[] sorted = Arrays.copyOf(dofs, numDOFs);
+        Arrays.sort(sorted);
+        long key = 0;
+        for(int i=numDOFs-1; i>=0; i--)
+            key = (key << BitsPerDOF) | (sorted[i] + 1);
+        return key;
+    }
+    
+    
+    public int getNumMonomials() {
+        return coeffs.length;
+    }
+    
+    
+    public void setDOFs(DoubleMatrix1D x) {
+        for(int dof=0; dof<numDOFs; dof++)
+            setDOF(dof, x.get(dof));
+    }
+    
+    
+    public void setDOF(int dof, double val) {
+        int i = dof*powStride;
+        double u = val - reference[dof];
+        pows[i] = 1;
+        for(int k=1; k<powStride; k++)
+            pows[i+k] = pows[i+k-1]*u;
+    }
+    
+    
+    private double evalMonomial(int m) {
+        double v = coeffs[m];
+        for(int f=factorStarts[m]; f<factorStarts[m+1]; f++)
+            v *= pows[factorDOFs[f]*powStride + factorExps[f]];
+        return v;
+    }
+    
+    
+    /** the energy at the current DOF values */
+    public double getEnergy() {
+        double E = constant;
+        for(int m=0; m<coeffs.length; m++)
+            E += evalMonomial(m);
+        return E;
+    }
+    
+    
+    /**
+     * the energy of just the monomials that depend on the DOF, at the current DOF values,
+     * so it differs from {@link #getEnergy()} by a constant as the DOF varies
+     */
+    public double getEnergyForDOF(int dof) {
+        double E = 0;
+        for(int m : monomialsByDOF[dof])
+            E += evalMonomial(m);
+        return E;
+    }
+    
+    
+    /** the energy at the current DOF values, and its gradient with respect to the DOF values */
+    public double getEnergyAndGradient(DoubleMatrix1D grad) {
+        
+        grad.assign(0);
+        
+        double E = constant;
+        for(int m=0; m<coeffs.length; m++){
+            E += evalMonomial(m);
+            
+            //d/du of c*u1^e1*u2^e2*... is c*e1*u1^(e1-1)*u2^e2*... + ...
+            for(int f=factorStarts[m]; f<factorStarts[m+1]; f++){
+                int dof = factorDOFs[f];
+                double g = coeffs[m]*factorExps[f]*pows[dof*powStride + factorExps[f] - 1];
+                for(int f2=factorStarts[m]; f2<factorStarts[m+1]; f2++){
+                    if(f2 != f)
+                        g *= pows[factorDOFs[f2]*powStride + factorExps[f2]];
+                }
+                grad.set(dof, grad.get(dof) + g);
+            }
+        }
+        
+        return E;
+    }
+}
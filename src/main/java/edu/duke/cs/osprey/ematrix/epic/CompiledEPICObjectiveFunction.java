@@ -0,0 +1,126 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.ematrix.epic;
+
+import cern.colt.matrix.DoubleFactory1D;
+import cern.colt.matrix.DoubleMatrix1D;
+import edu.duke.cs.osprey.confspace.ParametricMolecule;
+import edu.duke.cs.osprey.dof.DegreeOfFreedom;
+import edu.duke.cs.osprey.minimization.MoleculeModifierAndScorer;
+import edu.duke.cs.osprey.minimization.ObjectiveFunction;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * Objective function for minimizing a sum of EPIC terms, evaluated with a {@link CompiledEPIC}.
+ * Unlike a MoleculeObjectiveFunction on an EPICEnergyFunction, setting DOFs doesn't move the molecule,
+ * since the polynomials only need the DOF values.
+ * The molecule is just used for the DOF bounds and step sizes.
+ */
+public class CompiledEPICObjectiveFunction implements ObjectiveFunction {
+    
+    private static final long serialVersionUID = -3156740207364587217L;
+    
+    public final ParametricMolecule pmol;
+    public final CompiledEPIC epic;
+    
+    
+    public CompiledEPICObjectiveFunction(ParametricMolecule pmol, List<EPoly> terms, boolean includeMinE) {
+        
+        this.pmol = pmol;
+        
+        List<String> DOFNames = new ArrayList<>();
+        for(DegreeOfFreedom dof : pmol.dofs)
+            DOFNames.add(dof.getName());
+        
+        //expand the polynomials around the center of the voxel
+        DoubleMatrix1D center = DoubleFactory1D.dense.make(pmol.dofBounds.size());
+        pmol.dofBounds.getCenter(center);
+        
+        this.epic = new CompiledEPIC(terms, DOFNames, center, includeMinE);
+    }
+    
+    
+    @Override
+    public int getNumDOFs() {
+        return epic.numDOFs;
+    }
+    
+    @Override
+    public DoubleMatrix1D[] getConstraints() {
+        return pmol.dofBounds.getBounds();
+    }
+    
+    @Override
+    public void setDOFs(DoubleMatrix1D x) {
+        epic.setDOFs(x);
+    }
+    
+    @Override
+    public void setDOF(int dof, double val) {
+        epic.setDOF(dof, val);
+    }
+    
+    @Override
+    public double getValue(DoubleMatrix1D x) {
+        epic.setDOFs(x);
+        return epic.getEnergy();
+    }
+    
+    @Override
+    public double getValForDOF(int dof, double val) {
+        epic.setDOF(dof, val);
+        return epic.getEnergyForDOF(dof);
+    }
+    
+    /**
+     * Analytic gradient, for gradient-based minimizers.
+     * Writes the gradient at x into grad and returns the value at x.
+     */
+    public double getValueAndGradient(DoubleMatrix1D x, DoubleMatrix1D grad) {
+        epic.setDOFs(x);
+        return epic.getEnergyAndGradient(grad);
+    }
+    
+    @Override
+    public double getInitStepSize(int dof) {
+        return MoleculeModifierAndScorer.getInitStepSize(pmol.dofs.get(dof));
+    }
+    
+    @Override
+    public boolean isDOFAngle(int dof) {
+        return MoleculeModifierAndScorer.isDOFAngle(pmol.dofs.get(dof));
+    }
+}
@@ -40,6 +40,7 @@ import edu.duke.cs.osprey.confspace.TupleMatrixGeneric;
 import edu.duke.cs.osprey.minimization.CCDMinimizer;
 import edu.duke.cs.osprey.minimization.Minimizer;
 import edu.duke.cs.osprey.minimization.MoleculeObjectiveFunction;
+import edu.duke.cs.osprey.minimization.ObjectiveFunction;
 import java.util.ArrayList;
 
 /**
@@ -86,7 +87,11 @@ public class NewEPICMatrix extends TupleMatrixGeneric<EPoly> {
             return Double.POSITIVE_INFINITY;
         
         ParametricMolecule bpmol = confSpace.makeMolecule(RCTup);
-        MoleculeObjectiveFunction objFcn = new MoleculeObjectiveFunction(bpmol, efunc);
+        ObjectiveFunction objFcn;
+        if(CompiledEPIC.canCompile(efunc.terms))//pure polynomials don't need the molecule
+            objFcn = new CompiledEPICObjectiveFunction(bpmol, efunc.terms, includeMinE);
+        else
+            objFcn = new MoleculeObjectiveFunction(bpmol, efunc);
         
         Minimizer minim = new CCDMinimizer(objFcn,false);
         
@@ -133,6 +133,9 @@ public class ConfEnergyCalculator {
 	protected final AtomicLong numCalculations = new AtomicLong(0L);
 	protected final AtomicLong numConfDBReads = new AtomicLong(0L);
 
+	/** the pooled molecule for the current thread, only set while running {@link #calcEnergiesOnly(Supplier)} */
+	private final ThreadLocal<SimpleConfSpace.MoleculeCheckout> molCheckouts = new ThreadLocal<>();
+
 	protected ConfEnergyCalculator(SimpleConfSpace confSpace, TaskExecutor tasks) {
 		this.confSpace = confSpace;
 		this.ecalc = null;
@@ -296,7 +299,10 @@ public class ConfEnergyCalculator {
 	public EnergyCalculator.EnergiedParametricMolecule calcEnergy(RCTuple frag, ResidueInteractions inters) {
 
 		numCalculations.incrementAndGet();
-		ParametricMolecule pmol = confSpace.makeMolecule(frag);
+		SimpleConfSpace.MoleculeCheckout checkout = molCheckouts.get();
+		ParametricMolecule pmol = checkout != null
+			? checkout.make(frag)
+			: confSpace.makeMolecule(frag);
 
 		ResidueInteractionsApproximator approximator = null;
 		if (amat != null) {
@@ -307,6 +313,32 @@ public class ConfEnergyCalculator {
 		return ecalc.calcEnergy(pmol, inters, approximator, frag);
 	}
 
+	/**
+	 * Runs a task whose energy calculations only keep the energies, not the molecules, so
+	 * {@link #calcEnergy(RCTuple,ResidueInteractions)} can pose a molecule checked out of the
+	 * conformation space's pool instead of copying the template molecule for every fragment.
+	 *
+	 * The pooled molecule is reused by the next calculation on this thread, so the task must not
+	 * hold on to any molecules it gets back. The molecule is returned to the pool when the task finishes.
+	 *
+	 * @param task The task to run
+	 * @return The result of the task
+	 */
+	public <T> T calcEnergiesOnly(Supplier<T> task) {
+
+		// nothing to pool, or already pooling on this thread? just run the task
+		if (confSpace == null || molCheckouts.get() != null) {
+			return task.get();
+		}
+
+		try (SimpleConfSpace.MoleculeCheckout checkout = confSpace.checkoutMolecule()) {
+			molCheckouts.set(checkout);
+			return task.get();
+		} finally {
+			molCheckouts.remove();
+		}
+	}
+
 	/**
 	 * Asynchronous version of {@link #calcEnergy(RCTuple,ResidueInteractions)}.
 	 * 
@@ -355,7 +387,7 @@ public class ConfEnergyCalculator {
 
 		// no confDB? just compute the energy
 		if (table == null) {
-			return calcEnergy(frag, inters).energy;
+			return calcEnergiesOnly(() -> calcEnergy(frag, inters).energy);
 		}
 
 		// check the confDB for the energy
@@ -367,7 +399,7 @@ public class ConfEnergyCalculator {
 		}
 
 		// cache miss, compute the energy
-		double energy = calcEnergy(frag, inters).energy;
+		double energy = calcEnergiesOnly(() -> calcEnergy(frag, inters).energy);
 
 		// update the ConfDB
 		table.setUpperBound(conf, energy, TimeTools.getTimestampNs());
@@ -58,6 +58,11 @@ public class ApproximatedObjectiveFunction implements ObjectiveFunction {
 			void train(double value);
 			Addable makeIdentity(List<Integer> dofBlockIds, List<Integer> dofCounts);
 			void add(Addable other, double weight, double offset);
+
+			/** returns a read-only approximator that computes the same values, but maybe faster */
+			default Approximator flatten() {
+				return this;
+			}
 		}
 	}
 
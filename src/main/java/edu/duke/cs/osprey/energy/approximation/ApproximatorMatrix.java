@@ -38,6 +38,7 @@ import edu.duke.cs.osprey.confspace.TupleMatrixGeneric;
 import edu.duke.cs.osprey.dof.DofInfo;
 import edu.duke.cs.osprey.energy.ResidueInteractions;
 import edu.duke.cs.osprey.energy.approximation.ApproximatedObjectiveFunction.Approximator;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.tools.IOable;
 
 import java.io.*;
@@ -52,7 +53,18 @@ public class ApproximatorMatrix implements IOable {
 	public final SimpleConfSpace confSpace;
 
 	private final int[] offsets;
-	private final List<Map<String,Approximator.Addable>> fixedApproximators;
+	private final int numRCs;
+	private final Map<String,Integer> shellIndices;
+
+	// indexed by RC, then shell residue
+	private final Approximator.Addable[] fixedApproximators;
+
+	// all the fixed approximators for each RC, summed together, or null if they haven't been combined yet
+	private final Approximator.Addable[] fixedSums;
+
+	// the largest error of any fixed approximator in each sum
+	private final double[] fixedSumMaxErrors;
+
 	private final TupleMatrixGeneric<Approximator.Addable> tupleApproximators;
 
 	public ApproximatorMatrix(SimpleConfSpace confSpace) {
@@ -67,11 +79,18 @@ public class ApproximatorMatrix implements IOable {
 			offset += pos.resConfs.size();
 		}
 
-		fixedApproximators = new ArrayList<>(offset);
-		for (int i=0; i<offset; i++) {
-			fixedApproximators.add(new HashMap<>());
+		numRCs = offset;
+
+		// index the shell residues
+		shellIndices = new HashMap<>();
+		for (String resNum : confSpace.shellResNumbers) {
+			shellIndices.put(resNum, shellIndices.size());
 		}
 
+		fixedApproximators = new Approximator.Addable[numRCs*shellIndices.size()];
+		fixedSums = new Approximator.Addable[numRCs];
+		fixedSumMaxErrors = new double[numRCs];
+
 		tupleApproximators = new TupleMatrixGeneric<>(confSpace);
 	}
 
@@ -105,11 +124,28 @@ public class ApproximatorMatrix implements IOable {
 		return offsets[pos] + rc;
 	}
 
+	private int getFixedIndex(int pos, int rc, String fixedResNum) {
+		Integer shelli = shellIndices.get(fixedResNum);
+		if (shelli == null) {
+			return -1;
+		}
+		return getIndex(pos, rc)*shellIndices.size() + shelli;
+	}
+
 	public Approximator.Addable get(int pos1, int rc1, String fixedResNum) {
-		return fixedApproximators.get(getIndex(pos1, rc1)).get(fixedResNum);
+		int i = getFixedIndex(pos1, rc1, fixedResNum);
+		if (i < 0) {
+			return null;
+		}
+		return fixedApproximators[i];
 	}
 	public void set(int pos1, int rc1, String fixedResNum, Approximator.Addable approximator) {
-		fixedApproximators.get(getIndex(pos1, rc1)).put(fixedResNum, approximator);
+		int i = getFixedIndex(pos1, rc1, fixedResNum);
+		if (i < 0) {
+			throw new IllegalArgumentException("residue " + fixedResNum + " is not in the shell");
+		}
+		fixedApproximators[i] = approximator;
+		fixedSums[getIndex(pos1, rc1)] = null;
 	}
 	public Approximator.Addable get(SimpleConfSpace.Position pos1, SimpleConfSpace.ResidueConf rc1, String fixedResNum) {
 		return get(pos1.index, rc1.index, fixedResNum);
@@ -118,6 +154,76 @@ public class ApproximatorMatrix implements IOable {
 		set(pos1.index, rc1.index, fixedResNum, approximator);
 	}
 
+	/**
+	 * Returns the sum of the approximators for all the interactions between the RC and the shell residues,
+	 * or null if the sum hasn't been combined yet, or any of the approximators are missing.
+	 */
+	public Approximator.Addable getFixedSum(int pos1, int rc1) {
+		return fixedSums[getIndex(pos1, rc1)];
+	}
+
+	/**
+	 * Sums the approximators for all the interactions between each RC and the shell residues,
+	 * so {@link #get(RCTuple, ResidueInteractions, double)} can approximate the whole shell at once
+	 * instead of adding up the shell approximators again for every tuple.
+	 */
+	public void combineFixed(TaskExecutor tasks) {
+		for (SimpleConfSpace.Position pos1 : confSpace.positions) {
+			for (SimpleConfSpace.ResidueConf rc1 : pos1.resConfs) {
+				tasks.submit(
+					() -> combineFixed(pos1.index, rc1.index),
+					(sum) -> {
+						int i = getIndex(pos1.index, rc1.index);
+						if (sum != null) {
+							fixedSums[i] = sum.sum;
+							fixedSumMaxErrors[i] = sum.maxError;
+						} else {
+							fixedSums[i] = null;
+						}
+					}
+				);
+			}
+		}
+		tasks.waitForFinish();
+	}
+
+	private static class FixedSum {
+
+		final Approximator.Addable sum;
+		final double maxError;
+
+		FixedSum(Approximator.Addable sum, double maxError) {
+			this.sum = sum;
+			this.maxError = maxError;
+		}
+	}
+
+	private FixedSum combineFixed(int pos1, int rc1) {
+
+		int numShell = shellIndices.size();
+		if (numShell == 0) {
+			return null;
+		}
+
+		int start = getIndex(pos1, rc1)*numShell;
+		Approximator.Addable first = fixedApproximators[start];
+		if (first == null) {
+			return null;
+		}
+
+		Approximator.Addable sum = first.makeIdentity(first.dofBlockIds(), first.dofCounts());
+		double maxError = 0.0;
+		for (int i=start; i<start + numShell; i++) {
+			Approximator.Addable approximator = fixedApproximators[i];
+			if (approximator == null) {
+				return null;
+			}
+			sum.add(approximator, ResidueInteractions.Pair.IdentityWeight, ResidueInteractions.Pair.IdentityOffset);
+			maxError = Math.max(maxError, approximator.error());
+		}
+		return new FixedSum(sum, maxError);
+	}
+
 	private static class InteractionApproximator {
 
 		final ResidueInteractions.Pair inter;
@@ -129,9 +235,29 @@ public class ApproximatorMatrix implements IOable {
 		}
 	}
 
-	public ResidueInteractionsApproximator get(RCTuple tuple, ResidueInteractions inters, double errorBudget) {
+	/** the interactions between one design position and the shell residues */
+	private static class FixedInters {
+
+		final List<ResidueInteractions.Pair> inters = new ArrayList<>();
+		final List<String> fixedResNums = new ArrayList<>();
+		double offset = 0.0;
+		boolean sameWeights = true;
+		boolean allInShell = true;
+
+		void add(ResidueInteractions.Pair inter, String fixedResNum, boolean isInShell) {
+			if (!inters.isEmpty() && inter.weight != inters.get(0).weight) {
+				sameWeights = false;
+			}
+			if (!isInShell) {
+				allInShell = false;
+			}
+			inters.add(inter);
+			fixedResNums.add(fixedResNum);
+			offset += inter.offset;
+		}
+	}
 
-		// TODO: optimize me!
+	public ResidueInteractionsApproximator get(RCTuple tuple, ResidueInteractions inters, double errorBudget) {
 
 		DofInfo dofInfo = confSpace.makeDofInfo(tuple);
 
@@ -144,6 +270,7 @@ public class ApproximatorMatrix implements IOable {
 
 		// which residue interactions can be approximated?
 		List<InteractionApproximator> leftovers = new ArrayList<>();
+		FixedInters[] fixedInters = new FixedInters[dofInfo.positions.size()];
 		for (ResidueInteractions.Pair inter : inters) {
 
 			// find out if any design positions are involved in this residue interaction
@@ -173,13 +300,15 @@ public class ApproximatorMatrix implements IOable {
 
 			} else if (blockIndex1 != null || blockIndex2 != null) {
 
-				// fixed residue interaction
+				// fixed residue interaction, group them by design position so we can try the shell sums later
 				int blockIndex = blockIndex1 != null ? blockIndex1 : blockIndex2;
 				String fixedResNum = blockIndex1 != null ? inter.resNum2 : inter.resNum1;
 
-				SimpleConfSpace.Position pos = dofInfo.positions.get(blockIndex);
-				SimpleConfSpace.ResidueConf rc = dofInfo.resConfs.get(blockIndex);
-				approximator = get(pos, rc, fixedResNum);
+				if (fixedInters[blockIndex] == null) {
+					fixedInters[blockIndex] = new FixedInters();
+				}
+				fixedInters[blockIndex].add(inter, fixedResNum, shellIndices.containsKey(fixedResNum));
+				continue;
 
 			} else {
 
@@ -189,12 +318,35 @@ public class ApproximatorMatrix implements IOable {
 				);
 			}
 
-			if (approximator == null) {
-				builder.dontApproximate(inter);
-			} else if (approximator.error() <= errorBudgetPerInter) {
-				builder.approximate(inter, approximator);
-			} else {
-				leftovers.add(new InteractionApproximator(inter, approximator));
+			approximate(builder, leftovers, inter, approximator, errorBudgetPerInter);
+		}
+
+		// approximate the fixed residue interactions
+		for (int blockIndex=0; blockIndex<fixedInters.length; blockIndex++) {
+			FixedInters group = fixedInters[blockIndex];
+			if (group == null) {
+				continue;
+			}
+
+			SimpleConfSpace.Position pos = dofInfo.positions.get(blockIndex);
+			SimpleConfSpace.ResidueConf rc = dofInfo.resConfs.get(blockIndex);
+
+			// if the whole shell is here with the same weights, try the precombined sum first,
+			// but only if every interaction in it would have been approximated on its own too
+			Approximator.Addable sum = getFixedSum(pos.index, rc.index);
+			if (sum != null
+				&& group.sameWeights
+				&& group.allInShell
+				&& group.inters.size() == shellIndices.size()
+				&& fixedSumMaxErrors[getIndex(pos.index, rc.index)] <= errorBudgetPerInter
+			) {
+				builder.approximate(group.inters, sum, group.inters.get(0).weight, group.offset);
+				continue;
+			}
+
+			// otherwise, approximate the interactions one at a time
+			for (int i=0; i<group.inters.size(); i++) {
+				approximate(builder, leftovers, group.inters.get(i), get(pos, rc, group.fixedResNums.get(i)), errorBudgetPerInter);
 			}
 		}
 
@@ -237,6 +389,16 @@ public class ApproximatorMatrix implements IOable {
 		*/
 	}
 
+	private void approximate(ResidueInteractionsApproximator.Builder builder, List<InteractionApproximator> leftovers, ResidueInteractions.Pair inter, Approximator.Addable approximator, double errorBudgetPerInter) {
+		if (approximator == null) {
+			builder.dontApproximate(inter);
+		} else if (approximator.error() <= errorBudgetPerInter) {
+			builder.approximate(inter, approximator);
+		} else {
+			leftovers.add(new InteractionApproximator(inter, approximator));
+		}
+	}
+
 	private byte getType(Approximator approximator) {
 		if (approximator == null) {
 			return 0;
@@ -110,6 +110,7 @@ public class ApproximatorMatrixCalculator {
 		if (cacheFile != null && cacheFile.exists()) {
 			amat.readFrom(cacheFile);
 			log("read Approximator Matrix from file: %s", cacheFile.getAbsolutePath());
+			amat.combineFixed(confEcalc.tasks);
 			return amat;
 		}
 
@@ -163,6 +164,9 @@ public class ApproximatorMatrixCalculator {
 
 		confEcalc.tasks.waitForFinish();
 
+		// sum up the shell approximators for each RC, so tuples can use the whole shell at once
+		amat.combineFixed(confEcalc.tasks);
+
 		if (cacheFile != null) {
 			amat.writeTo(cacheFile);
 			log("wrote Approximator Matrix to file: %s", cacheFile.getAbsolutePath());
@@ -0,0 +1,119 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.energy.approximation;
+
+
+import cern.colt.matrix.DoubleMatrix1D;
+
+
+/**
+ * A read-only copy of a {@link QuadraticApproximator} with its coefficients in plain arrays,
+ * and the quadratic coefficients laid out as a dense symmetric matrix,
+ * so evaluating one dof during CCD is a single contiguous pass over one matrix row.
+ *
+ * Computes exactly the same values as the source approximator.
+ */
+public class FlatQuadraticApproximator implements ApproximatedObjectiveFunction.Approximator {
+
+	public final int numDofs;
+
+	private final double constant;
+	private final double[] linear;
+	private final double[] quadratic;
+	private final double maxe;
+
+	public FlatQuadraticApproximator(QuadraticApproximator src) {
+
+		numDofs = src.numDofs;
+		constant = src.coefficients.get(0);
+		maxe = src.error();
+
+		linear = new double[numDofs];
+		quadratic = new double[numDofs*numDofs];
+		int i = 1;
+		for (int d1=0; d1<numDofs; d1++) {
+			linear[d1] = src.coefficients.get(i++);
+		}
+		for (int d1=0; d1<numDofs; d1++) {
+			for (int d2=0; d2<=d1; d2++) {
+				double c = src.coefficients.get(i++);
+				quadratic[d1*numDofs + d2] = c;
+				quadratic[d2*numDofs + d1] = c;
+			}
+		}
+	}
+
+	@Override
+	public int numDofs() {
+		return numDofs;
+	}
+
+	@Override
+	public double getValue(DoubleMatrix1D x) {
+
+		if (x.size() != numDofs) {
+			throw new IllegalArgumentException(String.format("x is wrong size (%d), expected %d", x.size(), numDofs));
+		}
+
+		double v = constant;
+
+		for (int d1=0; d1<numDofs; d1++) {
+			int row = d1*numDofs;
+			double v1 = linear[d1];
+			for (int d2=0; d2<=d1; d2++) {
+				v1 += quadratic[row + d2]*x.getQuick(d2);
+			}
+			v += v1*x.getQuick(d1);
+		}
+
+		return v;
+	}
+
+	@Override
+	public double getValForDOF(int d1, double val, DoubleMatrix1D x) {
+
+		int row = d1*numDofs;
+		double v = linear[d1];
+		for (int d2=0; d2<numDofs; d2++) {
+			v += quadratic[row + d2]*x.getQuick(d2);
+		}
+
+		return v*x.get(d1) + constant;
+	}
+
+	@Override
+	public double error() {
+		return maxe;
+	}
+}
@@ -213,6 +213,11 @@ public class QuadraticApproximator implements ApproximatedObjectiveFunction.Appr
 		return new QuadraticApproximator(dofBlockIds, dofCounts);
 	}
 
+	@Override
+	public FlatQuadraticApproximator flatten() {
+		return new FlatQuadraticApproximator(this);
+	}
+
 	@Override
 	public void add(Addable src, double weight, double offset) {
 		if (src instanceof QuadraticApproximator) {
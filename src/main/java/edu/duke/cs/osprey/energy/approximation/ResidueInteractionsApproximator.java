@@ -36,6 +36,8 @@ import edu.duke.cs.osprey.dof.DofInfo;
 import edu.duke.cs.osprey.energy.approximation.ApproximatedObjectiveFunction.Approximator;
 import edu.duke.cs.osprey.energy.ResidueInteractions;
 
+import java.util.List;
+
 
 public class ResidueInteractionsApproximator {
 
@@ -69,6 +71,18 @@ public class ResidueInteractionsApproximator {
 			approxInters.add(inter);
 		}
 
+		/**
+		 * Approximates all the interactions at once, using an approximator that already sums them,
+		 * and the total of their offsets. The interactions must all have the same weight.
+		 */
+		public void approximate(List<ResidueInteractions.Pair> inters, Approximator.Addable sum, double weight, double offset) {
+			init(sum);
+			this.approximator.add(sum, weight, offset);
+			for (ResidueInteractions.Pair inter : inters) {
+				approxInters.add(inter);
+			}
+		}
+
 		public void dontApproximate(ResidueInteractions.Pair inter) {
 			ffInters.add(inter);
 		}
@@ -83,7 +97,7 @@ public class ResidueInteractionsApproximator {
 
 			if (approximator != null) {
 				return new ResidueInteractionsApproximator(
-					approximator,
+					approximator.flatten(),
 					ffInters,
 					approxInters
 				);
@@ -63,6 +63,8 @@ import edu.duke.cs.osprey.tools.StringParsing;
 public class EEF1 implements Serializable {
 	
 	private static final long serialVersionUID = -4783417295676415124L;
+
+	public static final String ParamsPath = "/config/eef1parm.dat";
 	
 	public static final double trigConst = 2.0/(4.0*Math.PI*Math.sqrt(Math.PI));
 	
@@ -91,7 +93,7 @@ public class EEF1 implements Serializable {
 	//		current function may be necessary
 	public void readEEF1parm() throws Exception {
 		
-		try (BufferedReader bufread = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/config/eef1parm.dat")))) {
+		try (BufferedReader bufread = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream(ParamsPath)))) {
 			
 			String curLine = null;
 			int tmpInt = 0;
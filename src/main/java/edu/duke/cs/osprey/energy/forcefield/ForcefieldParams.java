@@ -38,12 +38,17 @@ import edu.duke.cs.osprey.structure.Atom;
 import edu.duke.cs.osprey.structure.AtomNeighbors;
 import edu.duke.cs.osprey.structure.Residue;
 import edu.duke.cs.osprey.structure.Residues;
+import edu.duke.cs.osprey.tools.FileTools;
+import edu.duke.cs.osprey.tools.SnapshotFile;
 import one.util.streamex.EntryStream;
 import one.util.streamex.IntStreamEx;
 import one.util.streamex.StreamEx;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -122,6 +127,17 @@ public class ForcefieldParams implements Serializable {
     @Deprecated
     public double shellDistCutoff = Double.POSITIVE_INFINITY; //distance cutoff for interactions (angstroms)
     public SolvationForcefield solvationForcefield = SolvationForcefield.EEF1;
+    /**
+     * If finite, {@link ResidueForcefieldEnergy} smoothly switches off electrostatics and van der Waals
+     * for atom pairs farther apart than this distance (angstroms), and skips residue pairs that are
+     * entirely farther apart than the cutoffs. Use {@link ResidueForcefieldEnergy#getCutoffError()}
+     * to see how much energy the cutoffs lose for a conformation. Not used by the GPU energy functions.
+     */
+    public double cutoffDist = Double.POSITIVE_INFINITY;
+    /** the switching function starts at {@link #cutoffDist} minus this distance (angstroms) */
+    public double cutoffSwitchWidth = 2.0;
+    /** neighbor lists for the cutoffs include atom pairs this much farther apart (angstroms) */
+    public double cutoffSkin = 2.0;
 	private Map<String, VanDerWaalsRadius> vanDerWaalsMap;
 	private Map<String, BondLengthParameter> bondLengthByName;
 	private Map<String, AtomSymbolAndMass> atomNamesMap;
@@ -249,6 +265,18 @@ public class ForcefieldParams implements Serializable {
 		this(frcefld, new ForcefieldFileParser(ForcefieldParams.class.getResourceAsStream(frcefld.paramsPath)));
 	}
 
+	/**
+	 * Like {@link #ForcefieldParams(Forcefield)}, but skips parsing the parameter files
+	 * if the snapshot directory already has a snapshot of them, see {@link SnapshotFile}.
+	 */
+	public static ForcefieldParams fromSnapshot(Forcefield frcefld, File snapshotDir) {
+		SnapshotFile.Key key = new SnapshotFile.Key(ForcefieldParams.class.getName())
+			.add(frcefld.name())
+			.add(FileTools.readResource(frcefld.paramsPath))
+			.add(FileTools.readResource(EEF1.ParamsPath));
+		return SnapshotFile.loadOrMake(snapshotDir, "forcefield", key, ForcefieldParams.class, () -> new ForcefieldParams(frcefld));
+	}
+
 	public ForcefieldParams(Forcefield ffChoice, ForcefieldFileParser parameterFile) {
     	this.forcefld = ffChoice;
     	this.parameters = parameterFile;
@@ -272,6 +300,9 @@ public class ForcefieldParams implements Serializable {
         hVDW = other.hVDW;
         shellDistCutoff = other.shellDistCutoff;
         solvationForcefield = other.solvationForcefield;
+        cutoffDist = other.cutoffDist;
+        cutoffSwitchWidth = other.cutoffSwitchWidth;
+        cutoffSkin = other.cutoffSkin;
     }
 
 	private void readEEF() {
@@ -484,6 +515,11 @@ public class ForcefieldParams implements Serializable {
 	}
 
 
+	/** the names of the atom types, in order of their numeric types */
+	public List<String> getAtomTypeNames() {
+		return Collections.unmodifiableList(Arrays.asList(atomTypeNames));
+	}
+
 	// This function returns the numeric atom type based on the string atom type
 	// If atom type is 'x' then return atomTypeX which means it's a wildcard
 	public int atomTypeToInt(String s) {
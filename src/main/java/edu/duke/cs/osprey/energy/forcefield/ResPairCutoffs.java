@@ -0,0 +1,269 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.energy.forcefield;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams.SolvationForcefield;
+import edu.duke.cs.osprey.energy.forcefield.ResPairCache.ResPair;
+import edu.duke.cs.osprey.structure.Residue;
+import edu.duke.cs.osprey.structure.Residues;
+
+
+/**
+ * Distance cutoffs for {@link ResidueForcefieldEnergy}, see {@link ForcefieldParams#cutoffDist}.
+ *
+ * Electrostatics and van der Waals are smoothly switched off between
+ * {@code cutoffDist - cutoffSwitchWidth} and {@code cutoffDist}, so the energy stays differentiable.
+ * EEF1 solvation keeps its own cutoff, {@link ForcefieldParams#solvCutoff}.
+ *
+ * Residue pairs whose bounding spheres are farther apart than the cutoffs get skipped entirely.
+ * Otherwise, only atom pairs in each residue pair's neighbor list get evaluated.
+ * Neighbor lists include a skin distance on top of the cutoffs, so they only get rebuilt
+ * after some atom in a residue moves more than half the skin distance.
+ */
+class ResPairCutoffs implements Serializable {
+
+	private static final long serialVersionUID = 6204581135802935911L;
+
+	private final ResPair[] resPairs;
+
+	private final double switchOn2;
+	private final double switchOff2;
+	private final double switchNorm;
+
+	// atom pairs farther apart than this contribute nothing, with or without solvation
+	private final double cullDist;
+	private final double listDist2;
+	private final double halfSkin2;
+
+	// per residue: bounding spheres, and coords at the last neighbor list rebuild
+	private final double[] centers;
+	private final double[] radii;
+	private final double[][] refCoords;
+	private final int[] refVersions;
+	private final long[] sphereStamps;
+	private long stamp = 0;
+
+	// per residue pair: neighbor lists of atom pair indices
+	private final int[][] neighbors;
+	private final int[] numNeighbors;
+	private final int[] neighborVersions1;
+	private final int[] neighborVersions2;
+
+	private int numCulled = 0;
+	private int numRebuilds = 0;
+
+	public ResPairCutoffs(ForcefieldParams ffparams, Residues residues, ResPair[] resPairs) {
+
+		if (!(ffparams.cutoffSwitchWidth >= 0 && ffparams.cutoffSwitchWidth < ffparams.cutoffDist)) {
+			throw new IllegalArgumentException("cutoff switch width must be in [0,cutoff), not " + ffparams.cutoffSwitchWidth);
+		}
+		if (!(ffparams.cutoffSkin >= 0)) {
+			throw new IllegalArgumentException("cutoff skin must not be negative, not " + ffparams.cutoffSkin);
+		}
+
+		this.resPairs = resPairs;
+
+		double switchOn = ffparams.cutoffDist - ffparams.cutoffSwitchWidth;
+		switchOn2 = switchOn*switchOn;
+		switchOff2 = ffparams.cutoffDist*ffparams.cutoffDist;
+		double d = switchOff2 - switchOn2;
+		switchNorm = d > 0 ? 1.0/(d*d*d) : 0.0;
+
+		cullDist = ffparams.solvationForcefield == SolvationForcefield.EEF1
+			? Math.max(ffparams.cutoffDist, ForcefieldParams.solvCutoff)
+			: ffparams.cutoffDist;
+		double listDist = cullDist + ffparams.cutoffSkin;
+		listDist2 = listDist*listDist;
+		halfSkin2 = ffparams.cutoffSkin*ffparams.cutoffSkin/4;
+
+		int numRes = residues.size();
+		centers = new double[numRes*3];
+		radii = new double[numRes];
+		refCoords = new double[numRes][];
+		refVersions = new int[numRes];
+		sphereStamps = new long[numRes];
+		Arrays.fill(sphereStamps, -1);
+
+		neighbors = new int[resPairs.length][];
+		numNeighbors = new int[resPairs.length];
+		neighborVersions1 = new int[resPairs.length];
+		neighborVersions2 = new int[resPairs.length];
+	}
+
+	/** the switching function for squared distances, 1 inside the switching region, 0 outside the cutoff */
+	public double switching(double r2) {
+		if (r2 <= switchOn2) {
+			return 1.0;
+		} else if (r2 >= switchOff2) {
+			return 0.0;
+		}
+		double a = switchOff2 - r2;
+		return a*a*(switchOff2 + 2*r2 - 3*switchOn2)*switchNorm;
+	}
+
+	/** how many residue pair evaluations got skipped because the residues were too far apart */
+	public int getNumCulled() {
+		return numCulled;
+	}
+
+	/** how many times a residue pair neighbor list got rebuilt */
+	public int getNumRebuilds() {
+		return numRebuilds;
+	}
+
+	/**
+	 * Starts a new energy evaluation, after which residue bounding spheres and neighbor lists get updated
+	 * at most once, when first needed.
+	 */
+	public void startEvaluation() {
+		stamp++;
+	}
+
+	/**
+	 * Checks the residue pair against the cutoffs, rebuilding its neighbor list if needed.
+	 *
+	 * @return the neighbor list, of size {@link #getNumNeighbors}, or null if the whole residue pair is beyond the cutoffs
+	 */
+	public int[] getNeighbors(int i) {
+
+		ResPair pair = resPairs[i];
+		updateResidue(pair.resIndex1, pair.res1);
+		updateResidue(pair.resIndex2, pair.res2);
+
+		// cull the whole residue pair if the bounding spheres are far enough apart
+		if (pair.resIndex1 != pair.resIndex2) {
+			double dist = Math.sqrt(dist2(centers, pair.resIndex1*3, centers, pair.resIndex2*3));
+			if (dist - radii[pair.resIndex1] - radii[pair.resIndex2] > cullDist) {
+				numCulled++;
+				return null;
+			}
+		}
+
+		// rebuild the neighbor list if either residue moved too much
+		if (neighbors[i] == null
+			|| neighborVersions1[i] != refVersions[pair.resIndex1]
+			|| neighborVersions2[i] != refVersions[pair.resIndex2]) {
+			rebuildNeighbors(i);
+		}
+
+		return neighbors[i];
+	}
+
+	public int getNumNeighbors(int i) {
+		return numNeighbors[i];
+	}
+
+	private void updateResidue(int resIndex, Residue res) {
+
+		if (sphereStamps[resIndex] == stamp) {
+			return;
+		}
+		sphereStamps[resIndex] = stamp;
+
+		double[] coords = res.coords;
+		int numAtoms = coords.length/3;
+
+		// update the bounding sphere, centered on the centroid
+		double x = 0;
+		double y = 0;
+		double z = 0;
+		for (int i=0; i<numAtoms; i++) {
+			x += coords[i*3];
+			y += coords[i*3 + 1];
+			z += coords[i*3 + 2];
+		}
+		int c = resIndex*3;
+		centers[c] = x/numAtoms;
+		centers[c + 1] = y/numAtoms;
+		centers[c + 2] = z/numAtoms;
+		double maxR2 = 0;
+		for (int i=0; i<numAtoms; i++) {
+			maxR2 = Math.max(maxR2, dist2(coords, i*3, centers, c));
+		}
+		radii[resIndex] = Math.sqrt(maxR2);
+
+		// did any atom move past half the skin distance?
+		double[] ref = refCoords[resIndex];
+		boolean moved = ref == null || ref.length != coords.length;
+		for (int i=0; i<numAtoms && !moved; i++) {
+			moved = dist2(coords, i*3, ref, i*3) > halfSkin2;
+		}
+		if (moved) {
+			refCoords[resIndex] = coords.clone();
+			refVersions[resIndex]++;
+		}
+	}
+
+	private void rebuildNeighbors(int i) {
+
+		ResPair pair = resPairs[i];
+		numRebuilds++;
+
+		// use the reference coords, so atoms can move up to half the skin distance before the list is stale
+		double[] coords1 = refCoords[pair.resIndex1];
+		double[] coords2 = refCoords[pair.resIndex2];
+
+		int[] list = neighbors[i];
+		if (list == null) {
+			list = new int[pair.info.numAtomPairs];
+			neighbors[i] = list;
+		}
+		int num = 0;
+		for (int j=0; j<pair.info.numAtomPairs; j++) {
+			long atomPairFlags = pair.info.flags[j];
+			int atomOffset2 = (int)(atomPairFlags & 0xffff);
+			atomPairFlags >>= 16;
+			int atomOffset1 = (int)(atomPairFlags & 0xffff);
+			if (dist2(coords1, atomOffset1, coords2, atomOffset2) < listDist2) {
+				list[num++] = j;
+			}
+		}
+		numNeighbors[i] = num;
+		neighborVersions1[i] = refVersions[pair.resIndex1];
+		neighborVersions2[i] = refVersions[pair.resIndex2];
+	}
+
+	private static double dist2(double[] a, int i, double[] b, int j) {
+		double d = a[i] - b[j];
+		double r2 = d*d;
+		d = a[i + 1] - b[j + 1];
+		r2 += d*d;
+		d = a[i + 2] - b[j + 2];
+		r2 += d*d;
+		return r2;
+	}
+}
@@ -62,6 +62,10 @@ public class ResidueForcefieldEnergy implements EnergyFunction.DecomposableByDof
 
 	private double coulombFactor;
 	private double scaledCoulombFactor;
+
+	// null unless ForcefieldParams.cutoffDist is finite
+	private ResPairCutoffs cutoffs = null;
+	private int[] allResPairIndices = null;
 	
 	public ResidueForcefieldEnergy(ResPairCache resPairCache, ResidueInteractions inters, Molecule mol) {
 		this(resPairCache, inters, mol.residues);
@@ -102,6 +106,15 @@ public class ResidueForcefieldEnergy implements EnergyFunction.DecomposableByDof
 		// pre-compute some constants needed by getEnergy()
 		coulombFactor = ForcefieldParams.coulombConstant/resPairCache.ffparams.dielectric;
 		scaledCoulombFactor = coulombFactor*resPairCache.ffparams.forcefld.coulombScaling;
+
+		// set up distance cutoffs if needed
+		if (Double.isFinite(resPairCache.ffparams.cutoffDist)) {
+			cutoffs = new ResPairCutoffs(resPairCache.ffparams, this.residues, resPairs);
+			allResPairIndices = new int[resPairs.length];
+			for (int i=0; i<resPairs.length; i++) {
+				allResPairIndices[i] = i;
+			}
+		}
 	}
 
 	public ResidueForcefieldEnergy makeSubset(ResidueInteractions.Pair pair) {
@@ -114,9 +127,42 @@ public class ResidueForcefieldEnergy implements EnergyFunction.DecomposableByDof
 	
 	@Override
 	public double getEnergy() {
+		if (cutoffs != null) {
+			return getEnergyWithCutoffs(allResPairIndices);
+		}
 		return getEnergy(resPairs);
 	}
 
+	public boolean hasCutoffs() {
+		return cutoffs != null;
+	}
+
+	/**
+	 * Gets the energy with every atom pair, even if {@link ForcefieldParams#cutoffDist} is finite.
+	 */
+	public double getEnergyWithoutCutoffs() {
+		return getEnergy(resPairs);
+	}
+
+	/**
+	 * Gets the error of the distance cutoffs for the current conformation, ie
+	 * {@link #getEnergy()} - {@link #getEnergyWithoutCutoffs()}.
+	 * Zero when there are no cutoffs.
+	 *
+	 * This evaluates every atom pair, so it's just as slow as not using cutoffs at all.
+	 */
+	public double getCutoffError() {
+		if (cutoffs == null) {
+			return 0.0;
+		}
+		return getEnergy() - getEnergyWithoutCutoffs();
+	}
+
+	/** how many residue pair evaluations the cutoffs skipped entirely, so far */
+	public int getNumCulledResPairs() {
+		return cutoffs != null ? cutoffs.getNumCulled() : 0;
+	}
+
 	public List<ResPairEnergyContribution> getEnergyContributions(ResPair[] resPairs) {
 		var electrostaticContributions = getElectrostaticsEnergyContributions(resPairs);
 		var vdwContributions = getVanDerWaalsEnergyContributions(resPairs);
@@ -269,6 +315,118 @@ public class ResidueForcefieldEnergy implements EnergyFunction.DecomposableByDof
 		return energy;
 	}
 
+	private double getEnergyWithCutoffs(int[] resPairIndices) {
+
+		// same as getEnergy(ResPair[]), but only for atom pairs in the neighbor lists,
+		// and electrostatics and vdW get scaled by the switching function
+
+		if (isBroken) {
+			return Double.POSITIVE_INFINITY;
+		}
+
+		boolean useHEs = resPairCache.ffparams.hElect;
+		boolean useHvdW = resPairCache.ffparams.hVDW;
+		double coulombFactor = this.coulombFactor;
+		double scaledCoulombFactor = this.scaledCoulombFactor;
+		boolean distDepDielect = resPairCache.ffparams.distDepDielect;
+		boolean useEEF1 = resPairCache.ffparams.solvationForcefield == SolvationForcefield.EEF1;
+		ResPairCutoffs cutoffs = this.cutoffs;
+
+		cutoffs.startEvaluation();
+
+		double energy = 0;
+
+		for (int i : resPairIndices) {
+			ResPair pair = resPairs[i];
+
+			double resPairEnergy = 0;
+
+			int[] neighbors = cutoffs.getNeighbors(i);
+			if (neighbors != null) {
+
+				double[] coords1 = pair.res1.coords;
+				double[] coords2 = pair.res2.coords;
+				int numNeighbors = cutoffs.getNumNeighbors(i);
+				long[] flags = pair.info.flags;
+				double[] precomputed = pair.info.precomputed;
+				int numPrecomputed = pair.info.numPrecomputedPerAtomPair;
+
+				for (int n=0; n<numNeighbors; n++) {
+					int j = neighbors[n];
+					int pos = j*numPrecomputed;
+
+					long atomPairFlags = flags[j];
+					int atomOffset2 = (int)(atomPairFlags & 0xffff);
+					atomPairFlags >>= 16;
+					int atomOffset1 = (int)(atomPairFlags & 0xffff);
+					atomPairFlags >>= 46;
+					boolean isHeavyPair = (atomPairFlags & 0x1) == 0x1;
+					atomPairFlags >>= 1;
+					boolean is14Bonded = (atomPairFlags & 0x1) == 0x1;
+
+					double r2;
+					{
+						double d;
+						d = coords1[atomOffset1] - coords2[atomOffset2];
+						r2 = d*d;
+						d = coords1[atomOffset1 + 1] - coords2[atomOffset2 + 1];
+						r2 += d*d;
+						d = coords1[atomOffset1 + 2] - coords2[atomOffset2 + 2];
+						r2 += d*d;
+					}
+					double r = Math.sqrt(r2);
+
+					double switching = cutoffs.switching(r2);
+					if (switching > 0) {
+
+						double atomPairEnergy = 0;
+
+						// electrostatics
+						if (isHeavyPair || useHEs) {
+							double charge = precomputed[pos];
+							double factor = is14Bonded ? scaledCoulombFactor : coulombFactor;
+							if (distDepDielect) {
+								atomPairEnergy += factor*charge/r2;
+							} else {
+								atomPairEnergy += factor*charge/r;
+							}
+						}
+
+						// van der Waals
+						if (isHeavyPair || useHvdW) {
+							double Aij = precomputed[pos + 1];
+							double Bij = precomputed[pos + 2];
+							double r6 = r2*r2*r2;
+							double r12 = r6*r6;
+							atomPairEnergy += Aij/r12 - Bij/r6;
+						}
+
+						resPairEnergy += atomPairEnergy*switching;
+					}
+
+					// solvation keeps its own cutoff
+					if (useEEF1 && isHeavyPair && r2 < ForcefieldParams.solvCutoff2) {
+						pos += 3;
+						double radius1 = precomputed[pos++];
+						double lambda1 = precomputed[pos++];
+						double alpha1 = precomputed[pos++];
+						double radius2 = precomputed[pos++];
+						double lambda2 = precomputed[pos++];
+						double alpha2 = precomputed[pos];
+						double Xij = (r - radius1)/lambda1;
+						double Xji = (r - radius2)/lambda2;
+						resPairEnergy -= (alpha1*Math.exp(-Xij*Xij) + alpha2*Math.exp(-Xji*Xji))/r2;
+					}
+				}
+			}
+
+			// apply weights and offsets, even for culled pairs
+			energy += (resPairEnergy + pair.offset + pair.solvEnergy)*pair.weight;
+		}
+
+		return energy;
+	}
+
 	public double getElectrostaticsEnergy() {
 		return getElectrostaticsEnergy(resPairs);
 	}
@@ -777,9 +935,13 @@ public class ResidueForcefieldEnergy implements EnergyFunction.DecomposableByDof
 			private static final long serialVersionUID = 4664215035458391734L;
 			
 			private ResPair[] resPairs;
+			private int[] resPairIndices;
 			
 			@Override
 			public double getEnergy() {
+				if (cutoffs != null) {
+					return getEnergyWithCutoffs(resPairIndices);
+				}
 				return ResidueForcefieldEnergy.this.getEnergy(resPairs);
 			}
 		}
@@ -802,6 +964,7 @@ public class ResidueForcefieldEnergy implements EnergyFunction.DecomposableByDof
 				if (subset == null) {
 					subset = new Subset();
 					subset.resPairs = makeResPairsSubset(res);
+					subset.resPairIndices = makeResPairIndicesSubset(res);
 					cache.put(res, subset);
 				}
 				efuncs.add(subset);
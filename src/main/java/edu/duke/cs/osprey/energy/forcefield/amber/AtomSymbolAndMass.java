@@ -1,3 +1,5 @@
 package edu.duke.cs.osprey.energy.forcefield.amber;
 
-public record AtomSymbolAndMass(String KNDSYM, float AMASS/*, float ATPOL*/) { } // Polarity is not supplied, though it's in standard
+import java.io.Serializable;
+
+public record AtomSymbolAndMass(String KNDSYM, float AMASS/*, float ATPOL*/) implements Serializable { } // Polarity is not supplied, though it's in standard
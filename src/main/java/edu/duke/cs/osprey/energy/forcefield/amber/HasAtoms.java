@@ -1,7 +1,8 @@
 package edu.duke.cs.osprey.energy.forcefield.amber;
 
+import java.io.Serializable;
 import java.util.List;
 
-public interface HasAtoms {
+public interface HasAtoms extends Serializable {
     public List<AtomSymbolAndMass> atoms();
 }
@@ -39,12 +39,12 @@ import edu.duke.cs.osprey.astar.seq.RTs;
 import edu.duke.cs.osprey.astar.seq.nodes.SeqAStarNode;
 import edu.duke.cs.osprey.astar.seq.SeqAStarTree;
 import edu.duke.cs.osprey.astar.seq.order.SequentialSeqAStarOrder;
+import edu.duke.cs.osprey.astar.seq.scoring.MultiStateSeqHScorer;
 import edu.duke.cs.osprey.astar.seq.scoring.NOPSeqAStarScorer;
 import edu.duke.cs.osprey.astar.seq.scoring.SeqAStarScorer;
 import edu.duke.cs.osprey.confspace.*;
 import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
 import edu.duke.cs.osprey.tools.HashCalculator;
-import edu.duke.cs.osprey.tools.MathTools;
 
 import java.io.File;
 import java.io.FileWriter;
@@ -209,131 +209,6 @@ public class Comets {
 		}
 	}
 
-	/**
-	 * implements A* heuristic for partially-defined sequences
-	 * as described in COMETS paper, SI section B.2
-	 */
-	private class SeqHScorer implements SeqAStarScorer {
-
-		MathTools.Optimizer opt = MathTools.Optimizer.Minimize;
-
-		// collect conf space positions from all states
-		List<SimpleConfSpace.Position> allPositions = new ArrayList<>();
-
-		// the states associated with each position
-		List<WeightedState> statesByAllPosition = new ArrayList<>();
-
-		SeqHScorer() {
-			for (WeightedState wstate : objective.states) {
-				for (SimpleConfSpace.Position pos : wstate.state.confSpace.positions) {
-					allPositions.add(pos);
-					statesByAllPosition.add(wstate);
-				}
-			}
-		}
-
-		@Override
-		public double calc(SeqAStarNode.Assignments assignments) {
-
-			// TODO: if inner loops are independent of assignments, pre-compute them somehow?
-
-			// sum over all positions
-			double score = objective.offset;
-			for (int i1=0; i1<allPositions.size(); i1++) {
-				SimpleConfSpace.Position pos1 = allPositions.get(i1);
-
-				// optimize over res types at pos1
-				double bestPos1Energy = opt.initDouble();
-				for (SeqSpace.ResType rt1 : getRTs(pos1, assignments)) {
-
-					// sum over states (always just 1, due to how we build allPositions)
-					WeightedState wstate = statesByAllPosition.get(i1);
-
-					// min over RCs at (pos1,rt1,state)
-					double bestRC1Energy = opt.initDouble();
-					for (SimpleConfSpace.ResidueConf rc1 : getRCs(pos1, rt1, wstate.state)) {
-
-						double rc1Energy = 0.0;
-
-						// singles
-						rc1Energy += wstate.getSingleEnergy(pos1.index, rc1.index);
-
-						// pairs
-						for (int i2=0; i2<pos1.index; i2++) {
-							SimpleConfSpace.Position pos2 = wstate.state.confSpace.positions.get(i2);
-
-							// min over RTs at pos2
-							double bestRT2Energy = opt.initDouble();
-							for (SeqSpace.ResType rt2 : getRTs(pos2, assignments)) {
-
-								// min over RCs at (pos2,rt2,state)
-								double bestRC2Energy = opt.initDouble();
-								for (SimpleConfSpace.ResidueConf rc2 : getRCs(pos2, rt2, wstate.state)) {
-
-									double rc2Energy = wstate.getPairEnergy(pos1.index, rc1.index, pos2.index, rc2.index);
-
-									bestRC2Energy = opt.opt(bestRC2Energy, rc2Energy);
-								}
-
-								bestRT2Energy = opt.opt(bestRT2Energy, bestRC2Energy);
-							}
-
-							rc1Energy += bestRT2Energy;
-						}
-
-						bestRC1Energy = opt.opt(bestRC1Energy, rc1Energy);
-					}
-
-					bestPos1Energy = opt.opt(bestPos1Energy, bestRC1Energy);
-				}
-
-				score += bestPos1Energy;
-			}
-
-			return score;
-		}
-
-		List<SeqSpace.ResType> getRTs(SimpleConfSpace.Position confPos, SeqAStarNode.Assignments assignments) {
-
-			// TODO: pre-compute this somehow?
-
-			// map the conf pos to a sequence pos
-			SeqSpace.Position seqPos = seqSpace.getPosition(confPos.resNum);
-			if (seqPos != null) {
-
-				Integer assignedRT = assignments.getAssignment(seqPos.index);
-				if (assignedRT != null) {
-					// use just the assigned res type
-					return Collections.singletonList(seqPos.resTypes.get(assignedRT));
-				} else {
-					// use all the res types at the pos
-					return seqPos.resTypes;
-				}
-
-			} else {
-
-				// immutable position, use all the res types (should just be one)
-				assert (confPos.resTypes.size() == 1);
-
-				// use the null value to signal there's no res type here
-				return Collections.singletonList(null);
-			}
-		}
-
-		List<SimpleConfSpace.ResidueConf> getRCs(SimpleConfSpace.Position pos, SeqSpace.ResType rt, State state) {
-			// TODO: pre-compute this somehow?
-			if (rt != null) {
-				// mutable pos, grab the RCs that match the RT
-				return pos.resConfs.stream()
-					.filter(rc -> rc.template.name.equals(rt.name))
-					.collect(Collectors.toList());
-			} else {
-				// immutable pos, use all the RCs
-				return pos.resConfs;
-			}
-		}
-	}
-
 	private class ConfDBs extends ConfDB.DBs {
 
 		public Map<State,ConfDB.ConfTable> tables = new HashMap<>();
@@ -617,6 +492,12 @@ public class Comets {
 		/** File to which to log sequences as they are found */
 		private File logFile = null;
 
+		/**
+		 * True to score the states in parallel when computing the A* heuristic for sequences.
+		 * Helps when the objective has many states with many positions.
+		 */
+		private boolean parallelSequenceScoring = false;
+
 		public Builder(LME objective) {
 			this.objective = objective;
 		}
@@ -656,8 +537,13 @@ public class Comets {
 			return this;
 		}
 
+		public Builder setParallelSequenceScoring(boolean val) {
+			parallelSequenceScoring = val;
+			return this;
+		}
+
 		public Comets build() {
-			return new Comets(objective, constraints, objectiveWindowSize, objectiveWindowMax, maxSimultaneousMutations, minNumConfTrees, printToConsole, logFile);
+			return new Comets(objective, constraints, objectiveWindowSize, objectiveWindowMax, maxSimultaneousMutations, minNumConfTrees, printToConsole, logFile, parallelSequenceScoring);
 		}
 	}
 
@@ -670,6 +556,7 @@ public class Comets {
 	public final Integer minNumConfTrees;
 	public final boolean printToConsole;
 	public final File logFile;
+	public final boolean parallelSequenceScoring;
 
 	public final List<State> states;
 	public final SeqSpace seqSpace;
@@ -677,7 +564,7 @@ public class Comets {
 	private final Map<StateConfs.Key,StateConfs> stateConfsCache = new HashMap<>();
 	private final ConfSearchCache confTrees;
 
-	private Comets(LME objective, List<LME> constraints, double objectiveWindowSize, double objectiveWindowMax, int maxSimultaneousMutations, Integer minNumConfTrees, boolean printToConsole, File logFile) {
+	private Comets(LME objective, List<LME> constraints, double objectiveWindowSize, double objectiveWindowMax, int maxSimultaneousMutations, Integer minNumConfTrees, boolean printToConsole, File logFile, boolean parallelSequenceScoring) {
 
 		this.objective = objective;
 		this.constraints = constraints;
@@ -687,6 +574,7 @@ public class Comets {
 		this.minNumConfTrees = minNumConfTrees;
 		this.printToConsole = printToConsole;
 		this.logFile = logFile;
+		this.parallelSequenceScoring = parallelSequenceScoring;
 
 		// collect all the states from the objective,constraints
 		Set<State> statesSet = new LinkedHashSet<>();
@@ -715,6 +603,21 @@ public class Comets {
 		log("sequence space has %s sequences\n%s", formatBig(new RTs(seqSpace).getNumSequences()), seqSpace);
 	}
 
+	/**
+	 * makes the A* heuristic for partially-defined sequences
+	 * as described in COMETS paper, SI section B.2
+	 */
+	private SeqAStarScorer makeSeqHScorer() {
+		return new MultiStateSeqHScorer(
+			seqSpace,
+			objective.offset,
+			objective.states.stream()
+				.map(wstate -> new MultiStateSeqHScorer.StateTerm(wstate.state.confSpace, wstate.state.fragmentEnergies, Math.abs(wstate.weight)))
+				.collect(Collectors.toList()),
+			parallelSequenceScoring
+		);
+	}
+
 	/**
 	 * find the best sequences as ranked by the objective function
 	 *
@@ -735,7 +638,7 @@ public class Comets {
 			.setHeuristics(
 				new SequentialSeqAStarOrder(),
 				new NOPSeqAStarScorer(),
-				new SeqHScorer()
+				makeSeqHScorer()
 			)
 			.setNumMutable(maxSimultaneousMutations)
 			.build();
@@ -41,6 +41,7 @@ import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
 import edu.duke.cs.osprey.energy.EnergyCalculator;
 import edu.duke.cs.osprey.energy.ResidueForcefieldBreakdown;
 import edu.duke.cs.osprey.externalMemory.Queue;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.structure.PDBIO;
 
 import java.io.File;
@@ -155,8 +156,20 @@ public class ConfAnalyzer {
 
 	public final ConfEnergyCalculator confEcalc;
 
+	/** runs the ensemble minimizations, the energy calculator's own executor by default */
+	public final TaskExecutor tasks;
+
 	public ConfAnalyzer(ConfEnergyCalculator confEcalc) {
+		this(confEcalc, confEcalc.tasks);
+	}
+
+	/**
+	 * Use a different task executor than the energy calculator's,
+	 * eg to analyze ensembles while a design is still using the energy calculator.
+	 */
+	public ConfAnalyzer(ConfEnergyCalculator confEcalc, TaskExecutor tasks) {
 		this.confEcalc = confEcalc;
+		this.tasks = tasks;
 	}
 
 	public ConfAnalysis analyze(ConfSearch.ScoredConf conf) {
@@ -231,7 +244,7 @@ public class ConfAnalyzer {
 			analysis.analyses.set(fi, new ConfAnalysis(conf.getAssignments(), conf.getScore(), epmol));
 		}
 
-		confEcalc.tasks.waitForFinish();
+		tasks.waitForFinish();
 
 		return analysis;
 	}
@@ -251,7 +264,7 @@ public class ConfAnalyzer {
 			ConfSearch.ScoredConf conf = confs.next();
 
 			// minimize the conf (asynchronously if possible)
-			confEcalc.tasks.submit(
+			tasks.submit(
 				() -> confEcalc.calcEnergy(new RCTuple(conf.getAssignments())),
 				(epmol) -> {
 					while (analysis.analyses.size() <= fi) {
@@ -266,7 +279,7 @@ public class ConfAnalyzer {
 			);
 		}
 
-		confEcalc.tasks.waitForFinish();
+		tasks.waitForFinish();
 
 		return analysis;
 	}
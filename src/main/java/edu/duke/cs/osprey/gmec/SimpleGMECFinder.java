@@ -230,6 +230,9 @@ public class SimpleGMECFinder {
 		try (ConfDB confdb = ConfDB.makeIfNeeded(confEcalc.confSpace, confDBFile)) {
 			ConfDB.ConfTable confTable = null;
 			if (confdb != null) {
+				if (confEcalc.ecalc != null) {
+					confdb.flushInBackground(confEcalc.ecalc.parallelism);
+				}
 				confTable = confdb.new ConfTable(ConfDBTableName);
 			}
 
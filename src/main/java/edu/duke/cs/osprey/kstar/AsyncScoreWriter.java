@@ -0,0 +1,234 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.kstar;
+
+import edu.duke.cs.osprey.parallelism.BlockingTaskExecutor;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+
+/**
+ * Writes scores on a background thread, so slow writers (eg, databases, or ones that analyze
+ * conformation ensembles) don't hold up the design search. The thread comes from a {@link BlockingTaskExecutor},
+ * so it's a virtual thread when {@link Parallelism#blockingThreads} allows it.
+ *
+ * Scores are queued and handed to the wrapped writer in order, in batches of whatever has queued up
+ * since the last write. The queue is bounded, so if the wrapped writer falls too far behind,
+ * the search will wait for it to catch up rather than use unbounded memory.
+ *
+ * Call {@link #finish()} to wait for all the queued scores to be written,
+ * and {@link #close()} to stop the writer thread, even if the design failed.
+ * Any errors from the wrapped writer are re-thrown on the search thread at the next call.
+ */
+public class AsyncScoreWriter implements KStarScoreWriter {
+
+	public static final int DefaultQueueCapacity = 64;
+
+	private static final Object Header = new Object();
+
+	public final KStarScoreWriter writer;
+	public final int maxBatchSize;
+
+	private final BlockingQueue<Object> queue;
+	private final BlockingTaskExecutor tasks;
+	private final CountDownLatch finished = new CountDownLatch(1);
+	private volatile Thread thread = null;
+	private volatile boolean isClosed = false;
+
+	// guarded by this
+	private long numQueued = 0;
+	private long numWritten = 0;
+	private Throwable error = null;
+
+	public AsyncScoreWriter(KStarScoreWriter writer) {
+		this(writer, DefaultQueueCapacity, DefaultQueueCapacity);
+	}
+
+	public AsyncScoreWriter(KStarScoreWriter writer, Parallelism parallelism) {
+		this(writer, parallelism.makeBlockingTaskExecutor(1), DefaultQueueCapacity, DefaultQueueCapacity);
+	}
+
+	public AsyncScoreWriter(KStarScoreWriter writer, int queueCapacity, int maxBatchSize) {
+		this(writer, new BlockingTaskExecutor(1), queueCapacity, maxBatchSize);
+	}
+
+	/**
+	 * @param tasks runs the write loop, and gets cleaned up by {@link #close()}
+	 */
+	private AsyncScoreWriter(KStarScoreWriter writer, BlockingTaskExecutor tasks, int queueCapacity, int maxBatchSize) {
+
+		this.writer = writer;
+		this.maxBatchSize = maxBatchSize;
+		this.tasks = tasks;
+
+		queue = new ArrayBlockingQueue<>(queueCapacity);
+
+		tasks.submit(
+			() -> {
+				try {
+					writeLoop();
+				} finally {
+					finished.countDown();
+				}
+				return null;
+			},
+			(ignored) -> {}
+		);
+	}
+
+	@Override
+	public void writeHeader() {
+		enqueue(Header);
+	}
+
+	@Override
+	public void writeScore(ScoreInfo info) {
+		enqueue(info);
+	}
+
+	private void enqueue(Object event) {
+		checkError();
+		synchronized (this) {
+			numQueued++;
+		}
+		try {
+			queue.put(event);
+		} catch (InterruptedException ex) {
+			throw new RuntimeException("interrupted while queueing score", ex);
+		}
+	}
+
+	@Override
+	public void finish() {
+
+		// wait for the writer thread to catch up
+		synchronized (this) {
+			while (numWritten < numQueued && error == null) {
+				try {
+					wait();
+				} catch (InterruptedException ex) {
+					throw new RuntimeException("interrupted while waiting for scores to be written", ex);
+				}
+			}
+		}
+		checkError();
+
+		writer.finish();
+	}
+
+	@Override
+	public void close() {
+
+		// stop the writer thread, dropping any scores that haven't been written yet
+		isClosed = true;
+		Thread thread = this.thread;
+		if (thread != null) {
+			thread.interrupt();
+		}
+		try {
+			finished.await();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		tasks.clean();
+
+		writer.close();
+	}
+
+	private synchronized void checkError() {
+		if (error != null) {
+			throw new RuntimeException("score writer failed", error);
+		}
+	}
+
+	private void writeLoop() {
+
+		// let close() interrupt us
+		thread = Thread.currentThread();
+
+		List<Object> events = new ArrayList<>(maxBatchSize);
+		List<ScoreInfo> scores = new ArrayList<>(maxBatchSize);
+
+		while (!isClosed) {
+
+			// wait for the next event, then grab whatever else is waiting
+			try {
+				events.add(queue.take());
+			} catch (InterruptedException ex) {
+				return;
+			}
+			queue.drainTo(events, maxBatchSize - 1);
+
+			try {
+
+				// write runs of scores as batches, but keep headers in order
+				for (Object event : events) {
+					if (event == Header) {
+						flushScores(scores);
+						writer.writeHeader();
+					} else {
+						scores.add((ScoreInfo)event);
+					}
+				}
+				flushScores(scores);
+
+			} catch (Throwable t) {
+				synchronized (this) {
+					if (error == null) {
+						error = t;
+					}
+				}
+			}
+
+			synchronized (this) {
+				numWritten += events.size();
+				notifyAll();
+			}
+			events.clear();
+			scores.clear();
+		}
+	}
+
+	private void flushScores(List<ScoreInfo> scores) {
+		if (!scores.isEmpty()) {
+			writer.writeScores(new ArrayList<>(scores));
+			scores.clear();
+		}
+	}
+}
@@ -181,6 +181,11 @@ public class BBKStar {
 					confDBFile.delete();
 				}
 				confDB = new ConfDB(confSpace, confDBFile);
+
+				// don't make the pfunc threads wait on the disk
+				if (confEcalcMinimized != null && confEcalcMinimized.ecalc != null) {
+					confDB.flushInBackground(confEcalcMinimized.ecalc.parallelism);
+				}
 			}
 			return () -> {
 				if (confDB != null) {
@@ -709,6 +714,9 @@ public class BBKStar {
 					}
 				}
 
+				// wait for any asynchronous score writers
+				kstarSettings.scoreWriters.finish();
+
 				return scoredSequences;
 			}}}
 		}
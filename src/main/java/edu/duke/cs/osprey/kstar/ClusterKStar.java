@@ -0,0 +1,536 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.kstar;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.spi.impl.operationservice.Operation;
+import edu.duke.cs.osprey.coffee.ClusterMember;
+import edu.duke.cs.osprey.confspace.Sequence;
+import edu.duke.cs.osprey.kstar.pfunc.BoltzmannCalculator;
+import edu.duke.cs.osprey.kstar.pfunc.PartitionFunction;
+import edu.duke.cs.osprey.parallelism.Cluster;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+import edu.duke.cs.osprey.parallelism.WorkLatch;
+import edu.duke.cs.osprey.sofea.BigDecimalIO;
+import edu.duke.cs.osprey.tools.AutoCloseableNoEx;
+import edu.duke.cs.osprey.tools.IntRange;
+import edu.duke.cs.osprey.tools.MathTools;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+
+/**
+ * Runs K* on a cluster by partitioning the sequence space among the cluster members,
+ * rather than sending each partition function's energy calculations around the cluster.
+ *
+ * Sequences are grouped by their residue types at the first few mutable positions,
+ * so each group is a sub-tree of the sequence space. Groups are handed out to the members
+ * either all at once, or on demand as members finish their previous groups.
+ * Each member computes partition functions for its groups using only its local task executor,
+ * and sends the results for each sequence back to the director, which merges them into the
+ * global results. So the only cluster traffic is the group indices and one small message per sequence.
+ *
+ * Sequences in a group share the residue types at the prefix positions, so when all the prefix positions
+ * are on one strand, that strand's partition function is computed once per group and then read from the
+ * K* partition function cache.
+ *
+ * Each member gets its own ConfDB file, named after the configured one.
+ */
+public class ClusterKStar {
+
+	public enum Partitioning {
+
+		/** Each member gets a contiguous block of groups, decided before any work starts */
+		Static,
+
+		/** Members ask the director for the next group when they finish their current one */
+		Dynamic
+	}
+
+	public static class Builder {
+
+		private final KStar kstar;
+		private final ClusterMember member;
+
+		private Partitioning partitioning = Partitioning.Dynamic;
+
+		/**
+		 * Split the sequence space into at least this many groups per cluster member,
+		 * so dynamic partitioning has some room to balance the load.
+		 */
+		private int groupsPerMember = 4;
+
+		/** How long to wait for the other cluster members to finish their sequences */
+		private Duration timeout = Duration.ofDays(1);
+
+		public Builder(KStar kstar, ClusterMember member) {
+			this.kstar = kstar;
+			this.member = member;
+		}
+
+		public Builder setPartitioning(Partitioning val) {
+			partitioning = val;
+			return this;
+		}
+
+		public Builder setGroupsPerMember(int val) {
+			groupsPerMember = val;
+			return this;
+		}
+
+		public Builder setTimeout(Duration val) {
+			timeout = val;
+			return this;
+		}
+
+		public ClusterKStar build() {
+			return new ClusterKStar(kstar, member, partitioning, groupsPerMember, timeout);
+		}
+	}
+
+	public static final String ServiceName = "ClusterKStar";
+
+	public final KStar kstar;
+	public final ClusterMember member;
+	public final Partitioning partitioning;
+	public final int groupsPerMember;
+	public final Duration timeout;
+
+	private ClusterKStar(KStar kstar, ClusterMember member, Partitioning partitioning, int groupsPerMember, Duration timeout) {
+
+		if (groupsPerMember <= 0) {
+			throw new IllegalArgumentException("groups per member must be positive, not " + groupsPerMember);
+		}
+
+		this.kstar = kstar;
+		this.member = member;
+		this.partitioning = partitioning;
+		this.groupsPerMember = groupsPerMember;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Computes K* scores for this member's share of the sequence space.
+	 *
+	 * Every cluster member must call this method.
+	 *
+	 * @param tasks a local task executor for the partition functions, not a {@link Cluster} executor
+	 * @return on the director, the scores for all the sequences, in the same order as {@link KStar#run};
+	 *         on all other members, null
+	 */
+	public List<KStar.ScoredSequence> run(TaskExecutor tasks) {
+
+		if (tasks instanceof Cluster.Member || tasks instanceof Cluster.Client) {
+			throw new IllegalArgumentException("cluster K* computes partition functions locally, so it needs a local task executor");
+		}
+
+		// check the conf space infos to make sure we have all the inputs
+		kstar.protein.check();
+		kstar.ligand.check();
+		kstar.complex.check();
+
+		// reset any previous state
+		kstar.protein.clear();
+		kstar.ligand.clear();
+		kstar.complex.clear();
+
+		// collect all the sequences explicitly, in the same order as the single-node K*,
+		// so all the members agree on the sequence numbers without having to talk about it
+		List<Sequence> sequences = new ArrayList<>();
+		if (kstar.complex.confSpace.seqSpace().containsWildTypeSequence()) {
+			sequences.add(kstar.complex.confSpace.seqSpace().makeWildTypeSequence());
+		}
+		sequences.addAll(kstar.complex.confSpace.seqSpace().getMutants(kstar.settings.maxSimultaneousMutations, true));
+		int n = sequences.size();
+
+		List<List<Integer>> groups = groupByPrefix(sequences, groupsPerMember*member.cluster.numNodes);
+		member.log0("computing K* scores for %d sequences in %d groups to epsilon = %f ...", n, groups.size(), kstar.settings.epsilon);
+
+		// give each member its own ConfDB files, since they can't be shared
+		Map<KStar.ConfSpaceInfo,File> confDBFiles = new HashMap<>();
+		for (KStar.ConfSpaceInfo info : kstar.confSpaceInfos()) {
+			confDBFiles.put(info, info.confDBFile);
+			if (info.confDBFile != null) {
+				info.confDBFile = new File(info.confDBFile.getPath() + ".member" + member.id());
+			}
+		}
+
+		// the director collects the results
+		Merger merger = null;
+		if (member.isDirector()) {
+			merger = new Merger(kstar, sequences);
+			member.registerService(ServiceName, merger);
+			kstar.settings.scoreWriters.writeHeader();
+		}
+
+		ClusterMember.DynamicPartition<Integer> dynamicPartition = null;
+
+		try (TaskExecutor.ContextGroup ctxGroup = tasks.contextGroup()) {
+
+			// compute the wild type partition functions first (always at pos 0)
+			// only the director needs the results, unless we need the stability thresholds too
+			BigDecimal proteinStabilityThreshold = null;
+			BigDecimal ligandStabilityThreshold = null;
+			if (member.isDirector() || kstar.settings.stabilityThreshold != null) {
+
+				PartitionFunction.Result[] results = calcWildTypePfuncs(ctxGroup, sequences.get(0));
+				if (merger != null) {
+					merger.add(0, results[0], results[1], results[2]);
+				}
+
+				if (kstar.settings.stabilityThreshold != null) {
+					BigDecimal stabilityThresholdFactor = new BoltzmannCalculator(PartitionFunction.decimalPrecision).calc(kstar.settings.stabilityThreshold);
+					proteinStabilityThreshold = results[0].values.calcLowerBound().multiply(stabilityThresholdFactor);
+					ligandStabilityThreshold = results[1].values.calcLowerBound().multiply(stabilityThresholdFactor);
+				}
+			}
+
+			// partition the groups onto the cluster
+			Iterator<Integer> groupIndices;
+			switch (partitioning) {
+
+				case Static: {
+					IntRange range = member.simplePartition(groups.size());
+					groupIndices = IntStream.range(range.min, range.max).iterator();
+					member.barrier(timeout.toMillis(), TimeUnit.MILLISECONDS);
+				} break;
+
+				case Dynamic: {
+					dynamicPartition = member.dynamicPartition(IntStream.range(0, groups.size()).iterator());
+					member.barrier(timeout.toMillis(), TimeUnit.MILLISECONDS);
+					var partition = dynamicPartition;
+					groupIndices = new Iterator<>() {
+
+						Iterator<Integer> works = Collections.emptyIterator();
+
+						@Override
+						public boolean hasNext() {
+							if (!works.hasNext()) {
+								works = partition.nextWorks(1).iterator();
+							}
+							return works.hasNext();
+						}
+
+						@Override
+						public Integer next() {
+							if (!hasNext()) {
+								throw new NoSuchElementException();
+							}
+							return works.next();
+						}
+					};
+				} break;
+
+				default: throw new UnsupportedOperationException("unknown partitioning: " + partitioning);
+			}
+
+			// compute the partition functions for our groups
+			while (groupIndices.hasNext()) {
+				for (int sequenceNumber : groups.get(groupIndices.next())) {
+
+					PartitionFunction.Result[] results = calcPfuncs(ctxGroup, sequences.get(sequenceNumber), proteinStabilityThreshold, ligandStabilityThreshold);
+
+					// stream the results to the director
+					if (merger != null) {
+						merger.add(sequenceNumber, results[0], results[1], results[2]);
+					} else {
+						member.sendTo(new ResultsOperation(sequenceNumber, results[0], results[1], results[2]), member.directorAddress());
+					}
+				}
+			}
+
+			// wait for everyone else to finish
+			if (merger != null) {
+				merger.latch.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+			}
+			member.barrier(timeout.toMillis(), TimeUnit.MILLISECONDS);
+
+		} finally {
+
+			if (dynamicPartition != null) {
+				member.unregisterService(ClusterMember.DynamicPartition.ServiceName);
+			}
+			if (merger != null) {
+				member.unregisterService(ServiceName);
+			}
+
+			// restore the original ConfDB files
+			for (KStar.ConfSpaceInfo info : kstar.confSpaceInfos()) {
+				info.confDBFile = confDBFiles.get(info);
+			}
+		}
+
+		if (merger == null) {
+			return null;
+		}
+
+		// wait for any asynchronous score writers
+		kstar.settings.scoreWriters.finish();
+
+		member.log("finished K* scores for %d sequences", n);
+		return Arrays.asList(merger.scores);
+	}
+
+	/**
+	 * Like {@link KStar#run}, computes all three wild type partition functions without any short circuits,
+	 * since the stability thresholds for the other sequences depend on them.
+	 */
+	private PartitionFunction.Result[] calcWildTypePfuncs(TaskExecutor.ContextGroup ctxGroup, Sequence seq) {
+		try (AutoCloseableNoEx proteinCloser = kstar.protein.openConfDB()) {
+		try (AutoCloseableNoEx ligandCloser = kstar.ligand.openConfDB()) {
+		try (AutoCloseableNoEx complexCloser = kstar.complex.openConfDB()) {
+			return new PartitionFunction.Result[] {
+				kstar.protein.calcPfunc(ctxGroup, seq, BigDecimal.ZERO),
+				kstar.ligand.calcPfunc(ctxGroup, seq, BigDecimal.ZERO),
+				kstar.complex.calcPfunc(ctxGroup, seq, BigDecimal.ZERO)
+			};
+		}}}
+	}
+
+	private PartitionFunction.Result[] calcPfuncs(TaskExecutor.ContextGroup ctxGroup, Sequence seq, BigDecimal proteinStabilityThreshold, BigDecimal ligandStabilityThreshold) {
+
+		PartitionFunction.Result proteinResult;
+		PartitionFunction.Result ligandResult;
+		PartitionFunction.Result complexResult;
+
+		try (AutoCloseableNoEx proteinCloser = kstar.protein.openConfDB()) {
+		try (AutoCloseableNoEx ligandCloser = kstar.ligand.openConfDB()) {
+		try (AutoCloseableNoEx complexCloser = kstar.complex.openConfDB()) {
+
+			// get the pfuncs, with short circuits as needed
+			proteinResult = kstar.protein.calcPfunc(ctxGroup, seq, proteinStabilityThreshold);
+			if (!KStarScore.isLigandComplexUseful(proteinResult)) {
+				ligandResult = PartitionFunction.Result.makeAborted();
+				complexResult = PartitionFunction.Result.makeAborted();
+			} else {
+				ligandResult = kstar.ligand.calcPfunc(ctxGroup, seq, ligandStabilityThreshold);
+				if (!KStarScore.isComplexUseful(proteinResult, ligandResult)) {
+					complexResult = PartitionFunction.Result.makeAborted();
+				} else {
+					complexResult = kstar.complex.calcPfunc(ctxGroup, seq, BigDecimal.ZERO);
+				}
+			}
+		}}}
+
+		return new PartitionFunction.Result[] { proteinResult, ligandResult, complexResult };
+	}
+
+	/**
+	 * Groups all the sequences except the first one (ie, the wild type) by their residue types
+	 * at the first few sequence positions, using the shortest prefix that makes enough groups.
+	 */
+	static List<List<Integer>> groupByPrefix(List<Sequence> sequences, int minNumGroups) {
+
+		if (sequences.size() <= 1) {
+			return Collections.emptyList();
+		}
+
+		int numPos = sequences.get(0).rtIndices.length;
+		Map<List<Integer>,List<Integer>> groups = null;
+		for (int prefixLength=0; prefixLength<=numPos; prefixLength++) {
+
+			// keep the groups in sequence order, so the partitions are deterministic
+			groups = new LinkedHashMap<>();
+			for (int i=1; i<sequences.size(); i++) {
+				List<Integer> prefix = Arrays.stream(sequences.get(i).rtIndices, 0, prefixLength)
+					.boxed()
+					.collect(Collectors.toList());
+				groups.computeIfAbsent(prefix, key -> new ArrayList<>()).add(i);
+			}
+
+			if (groups.size() >= minNumGroups) {
+				break;
+			}
+		}
+
+		return new ArrayList<>(groups.values());
+	}
+
+	/**
+	 * Sorts scored sequences from best to worst, by K* score when there is one,
+	 * and by K* score lower bound otherwise.
+	 */
+	public static List<KStar.ScoredSequence> rank(List<KStar.ScoredSequence> scores) {
+		List<KStar.ScoredSequence> ranked = new ArrayList<>(scores);
+		ranked.sort((a, b) -> {
+
+			// sequences with scores come first
+			if (a.score.score != null && b.score.score != null) {
+				return MathTools.compare(b.score.score, a.score.score);
+			} else if (a.score.score != null) {
+				return -1;
+			} else if (b.score.score != null) {
+				return 1;
+			}
+
+			// then the rest by lower bound, with NaNs at the bottom
+			boolean aIsNaN = MathTools.isNaN(a.score.lowerBound);
+			boolean bIsNaN = MathTools.isNaN(b.score.lowerBound);
+			if (aIsNaN || bIsNaN) {
+				return Boolean.compare(aIsNaN, bIsNaN);
+			}
+			return MathTools.compare(b.score.lowerBound, a.score.lowerBound);
+		});
+		return ranked;
+	}
+
+	private static class Merger {
+
+		final KStar kstar;
+		final List<Sequence> sequences;
+		final KStar.ScoredSequence[] scores;
+		final WorkLatch latch;
+
+		Merger(KStar kstar, List<Sequence> sequences) {
+			this.kstar = kstar;
+			this.sequences = sequences;
+			scores = new KStar.ScoredSequence[sequences.size()];
+			latch = new WorkLatch(sequences.size());
+		}
+
+		void add(int sequenceNumber, PartitionFunction.Result proteinResult, PartitionFunction.Result ligandResult, PartitionFunction.Result complexResult) {
+
+			KStarScore kstarScore = new KStarScore(proteinResult, ligandResult, complexResult);
+			Sequence sequence = sequences.get(sequenceNumber);
+
+			// results can come in on different threads, and score writers aren't thread-safe
+			synchronized (this) {
+				if (scores[sequenceNumber] != null) {
+					throw new IllegalStateException("already have a score for sequence " + sequenceNumber);
+				}
+				scores[sequenceNumber] = new KStar.ScoredSequence(sequence, kstarScore);
+				kstar.settings.scoreWriters.writeScore(new KStarScoreWriter.ScoreInfo(
+					sequenceNumber,
+					sequences.size(),
+					sequence,
+					kstarScore,
+					kstar
+				));
+			}
+
+			latch.finished(1);
+		}
+	}
+
+	public static class ResultsOperation extends Operation {
+
+		private static final BigDecimalIO io = new BigDecimalIO.Variable();
+
+		private int sequenceNumber;
+		private PartitionFunction.Result proteinResult;
+		private PartitionFunction.Result ligandResult;
+		private PartitionFunction.Result complexResult;
+
+		@SuppressWarnings("unused") // used by hazelcast
+		public ResultsOperation() {
+			sequenceNumber = -1;
+			proteinResult = null;
+			ligandResult = null;
+			complexResult = null;
+		}
+
+		public ResultsOperation(int sequenceNumber, PartitionFunction.Result proteinResult, PartitionFunction.Result ligandResult, PartitionFunction.Result complexResult) {
+			this.sequenceNumber = sequenceNumber;
+			this.proteinResult = proteinResult;
+			this.ligandResult = ligandResult;
+			this.complexResult = complexResult;
+		}
+
+		@Override
+		public final boolean returnsResponse() {
+			return false;
+		}
+
+		@Override
+		public String getServiceName() {
+			return ServiceName;
+		}
+
+		@Override
+		protected void writeInternal(ObjectDataOutput out)
+		throws IOException {
+			super.writeInternal(out);
+
+			out.writeInt(sequenceNumber);
+			write(out, proteinResult);
+			write(out, ligandResult);
+			write(out, complexResult);
+		}
+
+		private static void write(ObjectDataOutput out, PartitionFunction.Result result)
+		throws IOException {
+			out.writeByte(result.status.ordinal());
+			out.writeInt(result.numConfs);
+			io.write(out, result.values.qstar);
+			io.write(out, result.values.qprime);
+			io.write(out, result.values.pstar);
+		}
+
+		@Override
+		protected void readInternal(ObjectDataInput in)
+		throws IOException {
+			super.readInternal(in);
+
+			sequenceNumber = in.readInt();
+			proteinResult = read(in);
+			ligandResult = read(in);
+			complexResult = read(in);
+		}
+
+		private static PartitionFunction.Result read(ObjectDataInput in)
+		throws IOException {
+			PartitionFunction.Status status = PartitionFunction.Status.values()[in.readByte()];
+			int numConfs = in.readInt();
+			PartitionFunction.Values values = new PartitionFunction.Values();
+			values.qstar = io.read(in);
+			values.qprime = io.read(in);
+			values.pstar = io.read(in);
+			return new PartitionFunction.Result(status, values, numConfs);
+		}
+
+		@Override
+		public final void run() {
+			Merger merger = getService();
+			merger.add(sequenceNumber, proteinResult, ligandResult, complexResult);
+		}
+	}
+}
@@ -288,7 +288,7 @@ public class KStar {
 			confDBFile = new File(String.format(settings.confDBPattern, id));
 		}
 
-		private void check() {
+		void check() {
 			if (confEcalc == null) {
 				throw new InitException(type, "confEcalc");
 			}
@@ -297,12 +297,17 @@ public class KStar {
 			}
 		}
 
-		private AutoCloseableNoEx openConfDB() {
+		AutoCloseableNoEx openConfDB() {
 			if (confDBFile != null) {
 				if (!settings.resume) {
 					confDBFile.delete();
 				}
 				confDB = new ConfDB(confSpace, confDBFile);
+
+				// don't make the pfunc threads wait on the disk
+				if (confEcalc != null && confEcalc.ecalc != null) {
+					confDB.flushInBackground(confEcalc.ecalc.parallelism);
+				}
 			}
 			return () -> {
 				if (confDB != null) {
@@ -584,6 +589,9 @@ public class KStar {
 					scorer.score(i, proteinResult, ligandResult, complexResult);
 				}
 
+			// wait for any asynchronous score writers
+			settings.scoreWriters.finish();
+
 			return scores;
 		}
 	}
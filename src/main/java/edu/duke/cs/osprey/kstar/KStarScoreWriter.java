@@ -40,8 +40,9 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
-public interface KStarScoreWriter {
+public interface KStarScoreWriter extends AutoCloseable {
 
 	public static class ScoreInfo {
 
@@ -69,6 +70,34 @@ public interface KStarScoreWriter {
 	public void writeHeader();
 	public void writeScore(ScoreInfo info);
 
+	/**
+	 * Write several scores at once, in order.
+	 * Writers that can do a batch of scores more cheaply than one score at a time
+	 * (eg, database inserts in one transaction) should override this.
+	 */
+	public default void writeScores(List<ScoreInfo> infos) {
+		for (ScoreInfo info : infos) {
+			writeScore(info);
+		}
+	}
+
+	/**
+	 * Called after the last score has been written.
+	 * Writers that do any work asynchronously should wait for it to finish here.
+	 */
+	public default void finish() {
+		// nothing to do by default
+	}
+
+	/**
+	 * Releases any threads or connections held by the writer.
+	 * Called whether the design finished normally or not, so don't wait for pending work here.
+	 */
+	@Override
+	public default void close() {
+		// nothing to clean up by default
+	}
+
 	public static class Writers extends ArrayList<KStarScoreWriter> {
 
 		private static final long serialVersionUID = 1239885431627352405L;
@@ -84,6 +113,18 @@ public interface KStarScoreWriter {
 				writer.writeScore(info);
 			}
 		}
+
+		public void finish() {
+			for (KStarScoreWriter writer : this) {
+				writer.finish();
+			}
+		}
+
+		public void close() {
+			for (KStarScoreWriter writer : this) {
+				writer.close();
+			}
+		}
 	}
 
 	public static class Nop implements KStarScoreWriter {
@@ -35,6 +35,7 @@ package edu.duke.cs.osprey.kstar;
 import edu.duke.cs.osprey.confspace.*;
 import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
 import edu.duke.cs.osprey.gmec.ConfAnalyzer;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
 
 import java.io.File;
 import java.util.*;
@@ -185,6 +186,15 @@ public class SequenceAnalyzer {
 	 * Useful for LUTE, whose KStar settings use the LUTE energy calculator, which can't return atomic models.
 	 */
 	public Analysis analyze(Sequence sequence, int numConfs, ConfEnergyCalculator confEcalc) {
+		return analyze(sequence, numConfs, confEcalc, null);
+	}
+
+	/**
+	 * Analyzes the sequence with the given energy calculator (or the design's, if null),
+	 * running the minimizations on the given task executor (or the energy calculator's, if null).
+	 * Useful for analyzing sequences while the design is still running on the energy calculator's executor.
+	 */
+	public Analysis analyze(Sequence sequence, int numConfs, ConfEnergyCalculator confEcalc, TaskExecutor tasks) {
 
 		ConfSpaceInfo info = finder.apply(sequence);
 
@@ -200,8 +210,12 @@ public class SequenceAnalyzer {
 				confEcalc = info.confEcalc;
 			}
 
+			if (tasks == null) {
+				tasks = confEcalc.tasks;
+			}
+
 			// return the analysis
-			ConfAnalyzer analyzer = new ConfAnalyzer(confEcalc);
+			ConfAnalyzer analyzer = new ConfAnalyzer(confEcalc, tasks);
 			ConfAnalyzer.EnsembleAnalysis ensemble = analyzer.analyzeEnsemble(econfs, numConfs);
 			return new Analysis(info, sequence, ensemble);
 		}
@@ -34,6 +34,7 @@ package edu.duke.cs.osprey.kstar.emat;
 
 import edu.duke.cs.osprey.confspace.HigherTupleFinder;
 import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.PrimitiveEnergyMatrix;
 import edu.duke.cs.osprey.kstar.KSSearchProblem;
 
 @SuppressWarnings("serial")
@@ -48,6 +49,13 @@ public class ReducedEnergyMatrix extends EnergyMatrix {
 	}
     
     
+    @Override
+    public PrimitiveEnergyMatrix primitive() {
+    	// positions get mapped on the fly, so don't read the arrays directly
+    	return PrimitiveEnergyMatrix.onDemand(this);
+    }
+    
+    
     @Override
     public Double getOneBody(int res, int index) {
     	
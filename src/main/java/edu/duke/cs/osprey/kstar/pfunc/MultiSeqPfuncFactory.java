@@ -0,0 +1,64 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.kstar.pfunc;
+
+import edu.duke.cs.osprey.astar.conf.MultiSeqConfTree;
+import edu.duke.cs.osprey.astar.conf.RCs;
+import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
+import edu.duke.cs.osprey.kstar.KStar;
+
+
+/**
+ * Makes partition functions whose conformation searches all come from one {@link MultiSeqConfTree},
+ * so sequences computed one after another (eg by {@link KStar} or {@link edu.duke.cs.osprey.kstar.BBKStar})
+ * reuse the shared parts of the search tree.
+ *
+ * Each partition function uses one search per sequence, so build the tree with the default
+ * {@link MultiSeqConfTree.Builder#setNumSearchesPerSequence} of 1.
+ */
+public class MultiSeqPfuncFactory implements KStar.PfuncFactory {
+
+	public final ConfEnergyCalculator confEcalc;
+	public final MultiSeqConfTree tree;
+
+	public MultiSeqPfuncFactory(ConfEnergyCalculator confEcalc, MultiSeqConfTree tree) {
+		this.confEcalc = confEcalc;
+		this.tree = tree;
+	}
+
+	@Override
+	public PartitionFunction make(RCs rcs) {
+		return new GradientDescentPfunc(confEcalc, tree.makeConfSearch(rcs), rcs.getNumConformations());
+	}
+}
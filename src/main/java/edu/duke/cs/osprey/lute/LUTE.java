@@ -50,6 +50,11 @@ import smile.regression.LASSO;
 import java.io.File;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -109,6 +114,25 @@ public class LUTE {
 			}
 		},
 
+		/**
+		 * ordinary least squares via conjugate gradient, fitted online
+		 *
+		 * instead of minimizing a whole round of samples and then solving the linear system from scratch,
+		 * each sample is added to the system as soon as its energy arrives, and conjugate gradient
+		 * is re-run periodically from the previous solution while the other samples are still minimizing.
+		 * The stopping criteria are checked after every re-fit, so sampling can stop mid-round.
+		 *
+		 * Use with {@link LUTE#fit}, which handles the streaming. On a plain {@link LinearSystem},
+		 * this fitter works just like {@link #OLSCG}.
+		 */
+		StreamingOLSCG(true, true) {
+
+			@Override
+			public double[] fit(LinearSystem system, LinearSystem.BInfo binfo, double[] x0, TaskExecutor tasks) {
+				return OLSCG.fit(system, binfo, x0, tasks);
+			}
+		},
+
 		/**
 		 * least absolute shrinkage and selection operator
 		 *
@@ -148,9 +172,15 @@ public class LUTE {
 		};
 
 		public final boolean normalize;
+		public final boolean streaming;
 
 		private Fitter(boolean normalize) {
+			this(normalize, false);
+		}
+
+		private Fitter(boolean normalize, boolean streaming) {
 			this.normalize = normalize;
+			this.streaming = streaming;
 		}
 
 		public abstract double[] fit(LinearSystem system, LinearSystem.BInfo binfo, double[] x0, TaskExecutor tasks);
@@ -175,16 +205,20 @@ public class LUTE {
 		public Errors errors = null;
 
 		public LinearSystem(TuplesIndex tuples, ConfSampler.Samples samples, Map<int[],Double> confEnergies) {
+			this(tuples, samples.getAllConfs(), confEnergies);
+		}
+
+		public LinearSystem(TuplesIndex tuples, Collection<int[]> confs, Map<int[],Double> confEnergies) {
 
 			this.tuples = tuples;
 
 			// linearize the conformations
-			confs = new ArrayList<>(samples.getAllConfs());
+			this.confs = new ArrayList<>(confs);
 
 			// linearize the conf energies
-			this.confEnergies = new double[confs.size()];
-			for (int c=0; c<confs.size(); c++) {
-				this.confEnergies[c] = confEnergies.get(confs.get(c));
+			this.confEnergies = new double[this.confs.size()];
+			for (int c=0; c<this.confs.size(); c++) {
+				this.confEnergies[c] = confEnergies.get(this.confs.get(c));
 			}
 		}
 
@@ -368,6 +402,227 @@ public class LUTE {
 		}
 	}
 
+	/**
+	 * A linear system for LUTE that grows one conformation at a time.
+	 *
+	 * A^tb and the per-tuple conf counts (the diagonal of A^tA) are updated as each conformation is added,
+	 * and A^tA is applied implicitly from the cached tuple indices of each conformation,
+	 * since an explicit A^tA would be dense in the number of tuples.
+	 */
+	public static class StreamingSystem {
+
+		public final TuplesIndex tuples;
+
+		private final List<int[]> confs = new ArrayList<>();
+		private final List<int[]> confTuples = new ArrayList<>();
+		private double[] confEnergies = new double[16];
+
+		private final double[] Atb;
+		private final int[] numConfsByTuple;
+		private int numUncoveredTuples;
+
+		private double minEnergy = Double.POSITIVE_INFINITY;
+		private double maxEnergy = Double.NEGATIVE_INFINITY;
+
+		public double[] tupleEnergies = null;
+		public double tupleEnergyOffset = 0.0;
+
+		public StreamingSystem(TuplesIndex tuples) {
+			this.tuples = tuples;
+			Atb = new double[tuples.size()];
+			numConfsByTuple = new int[tuples.size()];
+			numUncoveredTuples = tuples.size();
+		}
+
+		public int size() {
+			return confs.size();
+		}
+
+		public List<int[]> getConfs() {
+			return Collections.unmodifiableList(confs);
+		}
+
+		/** true if every tuple appears in at least one conformation, so the fit constrains every tuple energy */
+		public boolean coversAllTuples() {
+			return numUncoveredTuples == 0;
+		}
+
+		/** how many tuples appear in at least one conformation */
+		public int numCoveredTuples() {
+			return tuples.size() - numUncoveredTuples;
+		}
+
+		public void add(int[] conf, double energy) {
+
+			// cache the tuple indices, so we don't have to look them up again for every multiplication
+			final boolean throwIfMissingSingle = false; // we're not fitting singles
+			final boolean throwIfMissingPair = true; // we always fit to dense pairs, confs shouldn't be using pruned pairs
+			List<Integer> indices = new ArrayList<>();
+			tuples.forEachIn(conf, throwIfMissingSingle, throwIfMissingPair, indices::add);
+			int[] t = new int[indices.size()];
+			for (int i=0; i<t.length; i++) {
+				t[i] = indices.get(i);
+			}
+
+			// update A^tb and the diagonal of A^tA
+			for (int ti : t) {
+				Atb[ti] += energy;
+				if (numConfsByTuple[ti]++ == 0) {
+					numUncoveredTuples--;
+				}
+			}
+
+			int c = confs.size();
+			if (c == confEnergies.length) {
+				confEnergies = Arrays.copyOf(confEnergies, confEnergies.length*2);
+			}
+			confEnergies[c] = energy;
+			confs.add(conf);
+			confTuples.add(t);
+
+			minEnergy = Math.min(minEnergy, energy);
+			maxEnergy = Math.max(maxEnergy, energy);
+		}
+
+		private double[] multA(double[] x, int numConfs, TaskExecutor tasks) {
+			double[] out = new double[numConfs];
+			forEachPartition(numConfs, tasks, (startC, stopC) -> {
+				for (int c=startC; c<stopC; c++) {
+					double sum = 0.0;
+					for (int t : confTuples.get(c)) {
+						sum += x[t];
+					}
+					out[c] = sum;
+				}
+				return null;
+			}, (ignored) -> {});
+			return out;
+		}
+
+		private double[] multAt(double[] x, int numConfs, TaskExecutor tasks) {
+			int numTuples = tuples.size();
+			double[] out = new double[numTuples];
+			forEachPartition(numConfs, tasks, (startC, stopC) -> {
+				double[] threadOut = new double[numTuples];
+				for (int c=startC; c<stopC; c++) {
+					double xc = x[c];
+					for (int t : confTuples.get(c)) {
+						threadOut[t] += xc;
+					}
+				}
+				return threadOut;
+			}, (threadOut) -> {
+				for (int t=0; t<numTuples; t++) {
+					out[t] += threadOut[t];
+				}
+			});
+			return out;
+		}
+
+		private interface PartitionTask<T> {
+			T run(int startC, int stopC);
+		}
+
+		/** runs on the caller thread if tasks is null */
+		private <T> void forEachPartition(int numConfs, TaskExecutor tasks, PartitionTask<T> task, TaskExecutor.TaskListener<T> listener) {
+
+			if (tasks == null) {
+				listener.onFinished(task.run(0, numConfs));
+				return;
+			}
+
+			// partition the confs equally among the threads
+			int numThreads = tasks.getParallelism();
+			int partitionSize = numConfs/numThreads;
+			for (int i=0; i<numThreads; i++) {
+				int startC = i*partitionSize;
+				int stopC;
+				if (i == numThreads - 1) {
+					stopC = numConfs;
+				} else {
+					stopC = (i+1)*partitionSize;
+				}
+				tasks.submit(() -> task.run(startC, stopC), listener);
+			}
+			tasks.waitForFinish();
+		}
+
+		/**
+		 * Fits the tuple energies to the conformations added so far by solving A^tAx = A^tb with conjugate gradient,
+		 * starting from the previous fit (if any), in the same normalized space {@link Fitter#OLSCG} uses.
+		 *
+		 * @param tasks where to run the multiplications, or null to run them on the caller thread
+		 */
+		public void fit(double[] oldTupleEnergies, TaskExecutor tasks) {
+
+			final int numConfs = confs.size();
+			final int numTuples = tuples.size();
+
+			// normalize b to [0,1]
+			double offset = minEnergy;
+			double scale = maxEnergy - minEnergy;
+			if (!(scale > 0.0)) {
+				scale = 1.0;
+			}
+
+			// normalized A^tb = (A^tb - offset*A^t1)/scale, and A^t1 is just the tuple conf counts
+			double[] normAtb = new double[numTuples];
+			for (int t=0; t<numTuples; t++) {
+				normAtb[t] = (Atb[t] - offset*numConfsByTuple[t])/scale;
+			}
+
+			// warm start from the old fit, if any
+			double[] x0 = new double[numTuples];
+			if (oldTupleEnergies != null) {
+				int n = Math.min(oldTupleEnergies.length, numTuples);
+				for (int t=0; t<n; t++) {
+					x0[t] = oldTupleEnergies[t]/scale;
+				}
+			}
+
+			RealLinearOperator AtA = new RealLinearOperator() {
+
+				@Override
+				public int getRowDimension() {
+					return numTuples;
+				}
+
+				@Override
+				public int getColumnDimension() {
+					return numTuples;
+				}
+
+				@Override
+				public RealVector operate(RealVector vx)
+					throws DimensionMismatchException {
+					double[] x = ((ArrayRealVector)vx).getDataRef();
+					return new ArrayRealVector(multAt(multA(x, numConfs, tasks), numConfs, tasks), false);
+				}
+			};
+
+			ConjugateGradient cg = new ConjugateGradient(100000, 1e-6, false);
+			double[] x = ((ArrayRealVector)cg.solve(AtA, new ArrayRealVector(normAtb, false), new ArrayRealVector(x0, false))).getDataRef();
+
+			// go back to un-normalized space
+			double[] energies = new double[numTuples];
+			for (int t=0; t<numTuples; t++) {
+				energies[t] = x[t]*scale;
+			}
+			tupleEnergies = energies;
+			tupleEnergyOffset = offset;
+		}
+
+		/** calculates the errors of the given fit on the conformations added so far */
+		public Errors calcErrors(double[] tupleEnergies, double tupleEnergyOffset, TaskExecutor tasks) {
+			int numConfs = confs.size();
+			double[] residual = multA(tupleEnergies, numConfs, tasks);
+			for (int c=0; c<numConfs; c++) {
+				residual[c] = residual[c] + tupleEnergyOffset - confEnergies[c];
+			}
+			return new Errors(residual);
+		}
+	}
+
 	public static class Errors {
 
 		public final double[] residual;
@@ -408,7 +663,38 @@ public class LUTE {
 		}
 	}
 
+	public static class Builder {
+
+		private final SimpleConfSpace confSpace;
+
+		/**
+		 * How many more training conformations (as a fraction of the current number) must arrive
+		 * before {@link Fitter#StreamingOLSCG} re-fits mid-round.
+		 *
+		 * Growing the re-fit interval geometrically keeps the total re-fitting cost within
+		 * a constant factor of one fit over all the samples.
+		 */
+		private double streamingRefitFraction = 0.1;
+
+		public Builder(SimpleConfSpace confSpace) {
+			this.confSpace = confSpace;
+		}
+
+		public Builder setStreamingRefitFraction(double val) {
+			if (val <= 0.0) {
+				throw new IllegalArgumentException("streaming re-fit fraction must be positive, not " + val);
+			}
+			streamingRefitFraction = val;
+			return this;
+		}
+
+		public LUTE build() {
+			return new LUTE(confSpace, streamingRefitFraction);
+		}
+	}
+
 	public final SimpleConfSpace confSpace;
+	public final double streamingRefitFraction;
 
 	public final TuplesIndex tuplesIndex;
 	public final ConfSampler.Samples trainingSet;
@@ -419,8 +705,13 @@ public class LUTE {
 	private Map<int[],Double> energies = null;
 
 	public LUTE(SimpleConfSpace confSpace) {
+		this(confSpace, 0.1);
+	}
+
+	private LUTE(SimpleConfSpace confSpace, double streamingRefitFraction) {
 
 		this.confSpace = confSpace;
+		this.streamingRefitFraction = streamingRefitFraction;
 
 		tuplesIndex = new TuplesIndex(confSpace);
 		trainingSet = new ConfSampler.Samples(tuplesIndex);
@@ -773,6 +1064,11 @@ public class LUTE {
 
 	public void fit(ConfEnergyCalculator confEcalc, ConfDB.ConfTable confTable, ConfSampler sampler, Fitter fitter, double maxTrainingRMSE, double maxOverfittingScore) {
 
+		if (fitter.streaming) {
+			fitStreaming(confEcalc, confTable, sampler, maxTrainingRMSE, maxOverfittingScore);
+			return;
+		}
+
 		energies = new Conf.Map<>();
 		double overfittingScore;
 
@@ -866,11 +1162,208 @@ public class LUTE {
 			samplesPerTuple++;
 		}
 
+		reportFit(sw, samplesPerTuple, trainingSet.size(), testSet.size(), overfittingScore, maxOverfittingScore);
+	}
+
+	private void fitStreaming(ConfEnergyCalculator confEcalc, ConfDB.ConfTable confTable, ConfSampler sampler, double maxTrainingRMSE, double maxOverfittingScore) {
+
+		energies = new Conf.Map<>();
+
+		Stopwatch sw = new Stopwatch().start();
+
+		// previously computed energies come back from the conf table quickly,
+		// but tuples may have been added since the last fit, so rebuild the systems from scratch
+		StreamingSystem training = new StreamingSystem(tuplesIndex);
+		StreamingSystem test = new StreamingSystem(tuplesIndex);
+
+		// get the old fit, if any
+		double[] oldTupleEnergies = null;
+		if (trainingSystem != null) {
+			oldTupleEnergies = trainingSystem.tupleEnergies;
+		}
+
+		class State {
+			double[] tupleEnergies;
+			double tupleEnergyOffset = 0.0;
+			int lastFitSize = 0;
+			Errors trainingErrors = null;
+			Errors testErrors = null;
+			double overfittingScore = Double.POSITIVE_INFINITY;
+			int numSampledTuples = 0;
+			volatile boolean isFinished = false;
+
+			boolean coversSampledTuples() {
+				// the sampler can give up on some tuples (eg, if every conf containing it is pruned),
+				// so only wait for the tuples that actually have training samples, like the batch fit does
+				return training.numCoveredTuples() >= numSampledTuples;
+			}
+
+			void refit(TaskExecutor tasks) {
+				training.fit(tupleEnergies, tasks);
+				tupleEnergies = training.tupleEnergies;
+				tupleEnergyOffset = training.tupleEnergyOffset;
+				lastFitSize = training.size();
+				trainingErrors = training.calcErrors(tupleEnergies, tupleEnergyOffset, tasks);
+				testErrors = test.size() > 0 ? test.calcErrors(tupleEnergies, tupleEnergyOffset, tasks) : null;
+				overfittingScore = testErrors == null
+					? Double.POSITIVE_INFINITY
+					: calcOverfittingScore(trainingErrors, testErrors);
+			}
+
+			boolean canStop() {
+
+				// don't trust fits that leave some tuple energies unconstrained
+				if (!coversSampledTuples() || testErrors == null) {
+					return false;
+				}
+
+				// training RMSE only rises with more samples (mostly)
+				// if we've already exceeded the max, don't bother fixing overfitting
+				if (trainingErrors.rms > maxTrainingRMSE) {
+					return true;
+				}
+
+				// if we're not overfitting, then we're done
+				return overfittingScore <= maxOverfittingScore;
+			}
+		}
+		State state = new State();
+		state.tupleEnergies = oldTupleEnergies;
+
+		// fold samples into the fit on a separate thread, so re-fitting doesn't hold up the task listener thread
+		// NOTE: only the fit thread touches the streaming systems until all its fits for the round have finished
+		ExecutorService fitThread = Executors.newSingleThreadExecutor((runnable) -> {
+			Thread thread = new Thread(runnable, "LUTE-streaming-fit");
+			thread.setDaemon(true);
+			return thread;
+		});
+		Queue<Future<?>> fits = new ConcurrentLinkedQueue<>();
+
+		int samplesPerTuple = 1;
+		try {
+			while (true) {
+
+				// sample the training and test sets
+				logf("\nsampling at least %d confs per tuple for %d tuples...", samplesPerTuple, tuplesIndex.size());
+				Stopwatch samplingSw = new Stopwatch().start();
+				sampler.sampleConfsForTuples(trainingSet, samplesPerTuple);
+				sampler.sampleConfsForTuples(testSet, samplesPerTuple);
+				log(" done in %s", samplingSw.stop().getTime(2));
+				state.numSampledTuples = trainingSet.countTuplesWithAtLeast(1);
+
+				// alternate between training and test confs, so both sets fill in evenly
+				// and the overfitting score means something mid-round
+				Set<int[]> trainingConfs = trainingSet.getAllConfs();
+				Set<int[]> testConfs = testSet.getAllConfs();
+				List<int[]> newConfs = new ArrayList<>();
+				Set<int[]> queuedConfs = new Conf.Set();
+				Iterator<int[]> trainingIter = trainingConfs.iterator();
+				Iterator<int[]> testIter = testConfs.iterator();
+				while (trainingIter.hasNext() || testIter.hasNext()) {
+					for (Iterator<int[]> iter : Arrays.asList(trainingIter, testIter)) {
+						if (iter.hasNext()) {
+							int[] conf = iter.next();
+							if (!energies.containsKey(conf) && queuedConfs.add(conf)) {
+								newConfs.add(conf);
+							}
+						}
+					}
+				}
+
+				// calculate energies for all the new samples, and fold them into the fit as they arrive
+				Progress progress = new Progress(newConfs.size());
+				progress.setReportMemory(true);
+				log("calculating energies for %d more samples...", newConfs.size());
+
+				for (int[] conf : newConfs) {
+
+					// if the fit is already good enough, don't bother with the rest of the samples
+					if (state.isFinished) {
+						break;
+					}
+
+					confEcalc.calcEnergyAsync(new RCTuple(conf), confTable, (energy) -> {
+
+						energies.put(conf, energy);
+						progress.incrementProgress();
+
+						fits.add(fitThread.submit(() -> {
+
+							if (trainingConfs.contains(conf)) {
+								training.add(conf, energy);
+							}
+							if (testConfs.contains(conf)) {
+								test.add(conf, energy);
+							}
+
+							// re-fit while the other samples are still minimizing
+							if (!state.isFinished && state.coversSampledTuples() && training.size() >= state.lastFitSize*(1.0 + streamingRefitFraction)) {
+								state.refit(null);
+								if (state.canStop()) {
+									state.isFinished = true;
+								}
+							}
+						}));
+					});
+				}
+				confEcalc.tasks.waitForFinish();
+
+				// wait for the fit thread to catch up, and pass along any exceptions it threw
+				Future<?> fit;
+				while ((fit = fits.poll()) != null) {
+					try {
+						fit.get();
+					} catch (InterruptedException ex) {
+						throw new RuntimeException(ex);
+					} catch (ExecutionException ex) {
+						throw new RuntimeException("can't fit LUTE samples", ex.getCause());
+					}
+				}
+
+				// do a final fit on everything that arrived
+				// make sure we get a thread pool intended for the CPU rather than the GPU
+				try (ThreadPoolTaskExecutor tasks = new ThreadPoolTaskExecutor()) {
+					tasks.start(confEcalc.ecalc.parallelism.numThreads);
+
+					logf("fitting %d confs to %d tuples ...", training.size(), tuplesIndex.size());
+					Stopwatch trainingSw = new Stopwatch().start();
+					state.refit(tasks);
+					logf(" done in %s", trainingSw.stop().getTime(2));
+
+					// make the usual linear systems from the samples with energies
+					trainingSystem = new LinearSystem(tuplesIndex, training.getConfs(), energies);
+					trainingSystem.setTupleEnergies(state.tupleEnergies, state.tupleEnergyOffset, tasks);
+					testSystem = new LinearSystem(tuplesIndex, test.getConfs(), energies);
+					testSystem.setTupleEnergies(state.tupleEnergies, state.tupleEnergyOffset, tasks);
+				}
+
+				log("    RMS errors:  train %.4f    test %.4f    overfitting score: %.4f",
+					trainingSystem.errors.rms,
+					testSystem.errors.rms,
+					calcOverfittingScore()
+				);
+
+				if (state.isFinished || state.canStop()) {
+					break;
+				}
+
+				samplesPerTuple++;
+			}
+		} finally {
+			fitThread.shutdownNow();
+		}
+
+		// if we stopped early, not every sampled conf was fitted
+		reportFit(sw, samplesPerTuple, training.size(), test.size(), calcOverfittingScore(), maxOverfittingScore);
+	}
+
+	private void reportFit(Stopwatch sw, int samplesPerTuple, int numTrainingConfs, int numTestConfs, double overfittingScore, double maxOverfittingScore) {
+
 		log("\nLUTE fitting finished in %s:\n", sw.stop().getTime(2));
 		log("sampled at least %d confs per tuple for %d tuples", samplesPerTuple, tuplesIndex.size());
 		log("sampled %d training confs, %d test confs, %d confs total (%.2f%% overlap)",
-			trainingSet.size(), testSet.size(), energies.size(),
-			100.0*(trainingSet.size() + testSet.size() - energies.size())/energies.size()
+			numTrainingConfs, numTestConfs, energies.size(),
+			100.0*(numTrainingConfs + numTestConfs - energies.size())/energies.size()
 		);
 		log("training errors: %s", trainingSystem.errors);
 		log("    test errors: %s", testSystem.errors);
@@ -901,9 +1394,13 @@ public class LUTE {
 	}
 
 	public double calcOverfittingScore() {
+		return calcOverfittingScore(trainingSystem.errors, testSystem.errors);
+	}
+
+	private static double calcOverfittingScore(Errors trainingErrors, Errors testErrors) {
 
-		double num = testSystem.errors.rms;
-		double denom = trainingSystem.errors.rms;
+		double num = testErrors.rms;
+		double denom = trainingErrors.rms;
 
 		if (num == 0.0 && denom == 0.0) {
 			// technically undefined, but let's assume we're not overfitting at all in this case
@@ -45,11 +45,27 @@ public class LUTEConfEnergyCalculator extends ConfEnergyCalculator implements Fr
 	public final LUTEState state;
 	public final TuplesIndex tuples;
 
+	/** dense copy of the tuple energies for fast lookups, or null if the tuples can't be compiled or the table would be too big */
+	public final LUTEEnergyTable table;
+
 	public LUTEConfEnergyCalculator(SimpleConfSpace confSpace, LUTEState state) {
+		this(confSpace, state, LUTEEnergyTable.DefaultMaxBytes);
+	}
+
+	/**
+	 * @param maxTableBytes the biggest dense energy table to build,
+	 *                      otherwise energies are looked up in the tuples index instead
+	 */
+	public LUTEConfEnergyCalculator(SimpleConfSpace confSpace, LUTEState state, long maxTableBytes) {
 		super(confSpace, new TaskExecutor()); // TODO: parallelism?
 
 		this.state = state;
 		this.tuples = new TuplesIndex(confSpace, state.tuples);
+		if (LUTEEnergyTable.canCompile(state) && LUTEEnergyTable.estimateBytes(confSpace, state) <= maxTableBytes) {
+			this.table = new LUTEEnergyTable(confSpace, state);
+		} else {
+			this.table = null;
+		}
 	}
 
 	private static class NotSupportedByLUTEException extends RuntimeException {
@@ -97,6 +113,14 @@ public class LUTEConfEnergyCalculator extends ConfEnergyCalculator implements Fr
 
 		numCalculations.incrementAndGet();
 
+		if (table != null) {
+			double energy = table.calcEnergy(conf);
+			if (!Double.isNaN(energy)) {
+				return energy;
+			}
+			// otherwise, the conf has a missing pair, so fall through to the tuples index to report it
+		}
+
 		final boolean throwIfMissingSingle = false; // we're not fitting singles
 		final boolean throwIfMissingPair = true; // we always fit to dense pairs, confs shouldn't be using pruned pairs
 
@@ -123,15 +147,25 @@ public class LUTEConfEnergyCalculator extends ConfEnergyCalculator implements Fr
 
 	@Override
 	public double getEnergy(int pos, int rc) {
+		if (table != null) {
+			return table.getSingle(pos, rc);
+		}
 		return getEnergy(tuples.getIndex(pos, rc));
 	}
 
 	@Override
 	public double getEnergy(int pos1, int rc1, int pos2, int rc2) {
+		if (table != null) {
+			double energy = table.getPair(pos1, rc1, pos2, rc2);
+			return Double.isNaN(energy) ? 0.0 : energy;
+		}
 		return getEnergy(tuples.getIndex(pos1, rc1, pos2, rc2));
 	}
 
 	public double getEnergy(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+		if (table != null) {
+			return table.getTriple(pos1, rc1, pos2, rc2, pos3, rc3);
+		}
 		return getEnergy(tuples.getIndex(pos1, rc1, pos2, rc2, pos3, rc3));
 	}
 
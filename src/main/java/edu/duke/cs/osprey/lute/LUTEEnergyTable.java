@@ -0,0 +1,372 @@
+/*
+** This file is part of OSPREY 3.0
+**
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+**
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+**
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+**
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+**
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+**
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+package edu.duke.cs.osprey.lute;
+
+import edu.duke.cs.osprey.astar.conf.ConfIndex;
+import edu.duke.cs.osprey.confspace.Conf;
+import edu.duke.cs.osprey.confspace.RCTuple;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * LUTE tuple energies laid out in dense arrays, one block per position, position pair, and position triple,
+ * so an energy lookup is just an offset table read plus some arithmetic, rather than a hash lookup.
+ *
+ * Missing pairs are stored as NaN, since LUTE pairs are supposed to be dense and a missing pair means
+ * the pair was pruned. Missing singles and triples are just zero, since LUTE only fits some of those.
+ *
+ * Only position triples that have at least one triple tuple get a block.
+ * Triple blocks grow with the cube of the RCs per position though, so check {@link #estimateBytes}
+ * before building a table for a big conf space.
+ */
+public class LUTEEnergyTable {
+
+	/** the default limit on the size of the dense table, above which callers should use the tuples index instead */
+	public static final long DefaultMaxBytes = 256L*1024*1024; // 256 MiB
+
+	public final int numPos;
+	public final double offset;
+
+	private final int[] numRCs;
+
+	private final int[] singleOffsets;
+	private final double[] singles;
+
+	private final int[] pairOffsets;
+	private final double[] pairs;
+
+	// -1 where the position triple has no tuples
+	private final int[] tripleOffsets;
+	private final double[] triples;
+
+	/** true if all the tuples are singles, pairs, or triples */
+	public static boolean canCompile(LUTEState state) {
+		for (RCTuple tuple : state.tuples) {
+			if (tuple.size() > 3) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Estimates how much memory the dense table for these tuples would use, without allocating it.
+	 *
+	 * @return the size in bytes, or Long.MAX_VALUE if the table would be too big to index with ints
+	 */
+	public static long estimateBytes(SimpleConfSpace confSpace, LUTEState state) {
+
+		int numPos = confSpace.positions.size();
+		int[] numRCs = new int[numPos];
+		for (int pos=0; pos<numPos; pos++) {
+			numRCs[pos] = confSpace.positions.get(pos).resConfs.size();
+		}
+
+		long numOffsets = numPos + (long)numPos*numPos + (long)numPos*numPos*numPos;
+
+		long numSingles = 0;
+		long numPairs = 0;
+		for (int pos1=0; pos1<numPos; pos1++) {
+			numSingles += numRCs[pos1];
+			for (int pos2=0; pos2<pos1; pos2++) {
+				numPairs += (long)numRCs[pos1]*numRCs[pos2];
+			}
+		}
+
+		// only position triples with tuples get blocks
+		long numTriples = 0;
+		Set<Set<Integer>> posTriples = new HashSet<>();
+		for (RCTuple tuple : state.tuples) {
+			if (tuple.size() == 3 && posTriples.add(new HashSet<>(tuple.pos))) {
+				numTriples += (long)numRCs[tuple.pos.get(0)]*numRCs[tuple.pos.get(1)]*numRCs[tuple.pos.get(2)];
+			}
+		}
+
+		for (long size : new long[] { numOffsets, numSingles, numPairs, numTriples }) {
+			if (size > Integer.MAX_VALUE) {
+				return Long.MAX_VALUE;
+			}
+		}
+
+		return numOffsets*Integer.BYTES + (numSingles + numPairs + numTriples)*Double.BYTES;
+	}
+
+	public LUTEEnergyTable(SimpleConfSpace confSpace, LUTEState state) {
+
+		if (!canCompile(state)) {
+			throw new IllegalArgumentException("LUTE energy table only supports tuples up to triples");
+		}
+
+		numPos = confSpace.positions.size();
+		offset = state.tupleEnergyOffset;
+
+		numRCs = new int[numPos];
+		for (int pos=0; pos<numPos; pos++) {
+			numRCs[pos] = confSpace.positions.get(pos).resConfs.size();
+		}
+
+		// lay out the singles
+		singleOffsets = new int[numPos];
+		int size = 0;
+		for (int pos=0; pos<numPos; pos++) {
+			singleOffsets[pos] = size;
+			size += numRCs[pos];
+		}
+		singles = new double[size];
+
+		// lay out the pairs
+		pairOffsets = new int[numPos*numPos];
+		long longSize = 0;
+		for (int pos1=0; pos1<numPos; pos1++) {
+			for (int pos2=0; pos2<pos1; pos2++) {
+				pairOffsets[pos1*numPos + pos2] = checkSize(longSize);
+				longSize += (long)numRCs[pos1]*numRCs[pos2];
+			}
+		}
+		pairs = new double[checkSize(longSize)];
+		Arrays.fill(pairs, Double.NaN);
+
+		// lay out the triples, but only for position triples that have any tuples
+		tripleOffsets = new int[numPos*numPos*numPos];
+		Arrays.fill(tripleOffsets, -1);
+		for (RCTuple tuple : state.tuples) {
+			if (tuple.size() == 3) {
+				tripleOffsets[tripleOffsetIndex(tuple.pos.get(0), tuple.pos.get(1), tuple.pos.get(2))] = 0;
+			}
+		}
+		longSize = 0;
+		for (int pos1=0; pos1<numPos; pos1++) {
+			for (int pos2=0; pos2<pos1; pos2++) {
+				for (int pos3=0; pos3<pos2; pos3++) {
+					int i = (pos1*numPos + pos2)*numPos + pos3;
+					if (tripleOffsets[i] >= 0) {
+						tripleOffsets[i] = checkSize(longSize);
+						longSize += (long)numRCs[pos1]*numRCs[pos2]*numRCs[pos3];
+					}
+				}
+			}
+		}
+		triples = new double[checkSize(longSize)];
+
+		// copy the energies
+		for (int t=0; t<state.tuples.length; t++) {
+			RCTuple tuple = state.tuples[t];
+			double energy = state.tupleEnergies[t];
+			switch (tuple.size()) {
+				case 1:
+					singles[singleIndex(tuple.pos.get(0), tuple.RCs.get(0))] = energy;
+				break;
+				case 2:
+					pairs[pairIndex(tuple.pos.get(0), tuple.RCs.get(0), tuple.pos.get(1), tuple.RCs.get(1))] = energy;
+				break;
+				case 3:
+					triples[tripleIndex(
+						tuple.pos.get(0), tuple.RCs.get(0),
+						tuple.pos.get(1), tuple.RCs.get(1),
+						tuple.pos.get(2), tuple.RCs.get(2)
+					)] = energy;
+				break;
+			}
+		}
+	}
+
+	private static int checkSize(long size) {
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("LUTE tuples too big for a dense table");
+		}
+		return (int)size;
+	}
+
+	private int singleIndex(int pos, int rc) {
+		return singleOffsets[pos] + rc;
+	}
+
+	private int pairIndex(int pos1, int rc1, int pos2, int rc2) {
+		if (pos1 < pos2) {
+			int swap = pos1; pos1 = pos2; pos2 = swap;
+			swap = rc1; rc1 = rc2; rc2 = swap;
+		}
+		return pairOffsets[pos1*numPos + pos2] + rc1*numRCs[pos2] + rc2;
+	}
+
+	private int tripleOffsetIndex(int pos1, int pos2, int pos3) {
+		// sort the positions descending
+		if (pos1 < pos2) { int swap = pos1; pos1 = pos2; pos2 = swap; }
+		if (pos2 < pos3) { int swap = pos2; pos2 = pos3; pos3 = swap; }
+		if (pos1 < pos2) { int swap = pos1; pos1 = pos2; pos2 = swap; }
+		return (pos1*numPos + pos2)*numPos + pos3;
+	}
+
+	/** returns -1 if the position triple has no tuples */
+	private int tripleIndex(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+
+		// sort the assignments by position, descending
+		if (pos1 < pos2) {
+			int swap = pos1; pos1 = pos2; pos2 = swap;
+			swap = rc1; rc1 = rc2; rc2 = swap;
+		}
+		if (pos2 < pos3) {
+			int swap = pos2; pos2 = pos3; pos3 = swap;
+			swap = rc2; rc2 = rc3; rc3 = swap;
+		}
+		if (pos1 < pos2) {
+			int swap = pos1; pos1 = pos2; pos2 = swap;
+			swap = rc1; rc1 = rc2; rc2 = swap;
+		}
+
+		int offset = tripleOffsets[(pos1*numPos + pos2)*numPos + pos3];
+		if (offset < 0) {
+			return -1;
+		}
+		return offset + (rc1*numRCs[pos2] + rc2)*numRCs[pos3] + rc3;
+	}
+
+	public double getSingle(int pos, int rc) {
+		return singles[singleIndex(pos, rc)];
+	}
+
+	/** returns NaN if the pair isn't in the LUTE tuple set */
+	public double getPair(int pos1, int rc1, int pos2, int rc2) {
+		return pairs[pairIndex(pos1, rc1, pos2, rc2)];
+	}
+
+	/** returns 0 if the triple isn't in the LUTE tuple set */
+	public double getTriple(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+		int i = tripleIndex(pos1, rc1, pos2, rc2, pos3, rc3);
+		if (i < 0) {
+			return 0.0;
+		}
+		return triples[i];
+	}
+
+	/**
+	 * Calculates the LUTE energy of the assigned positions in the conformation.
+	 *
+	 * @return the energy, or NaN if the conformation has a pair that isn't in the LUTE tuple set
+	 */
+	public double calcEnergy(int[] conf) {
+
+		double energy = offset;
+
+		for (int pos1=0; pos1<numPos; pos1++) {
+			int rc1 = conf[pos1];
+			if (rc1 == Conf.Unassigned) {
+				continue;
+			}
+
+			energy += singles[singleOffsets[pos1] + rc1];
+
+			for (int pos2=0; pos2<pos1; pos2++) {
+				int rc2 = conf[pos2];
+				if (rc2 == Conf.Unassigned) {
+					continue;
+				}
+
+				energy += pairs[pairOffsets[pos1*numPos + pos2] + rc1*numRCs[pos2] + rc2];
+
+				for (int pos3=0; pos3<pos2; pos3++) {
+					int rc3 = conf[pos3];
+					if (rc3 == Conf.Unassigned) {
+						continue;
+					}
+
+					int tripleOffset = tripleOffsets[(pos1*numPos + pos2)*numPos + pos3];
+					if (tripleOffset >= 0) {
+						energy += triples[tripleOffset + (rc1*numRCs[pos2] + rc2)*numRCs[pos3] + rc3];
+					}
+				}
+			}
+		}
+
+		// NaN pairs propagate to the sum
+		return energy;
+	}
+
+	/**
+	 * Calculates the LUTE energy of the defined positions in the conf index, without allocating anything.
+	 *
+	 * @return the energy, or NaN if the conformation has a pair that isn't in the LUTE tuple set
+	 */
+	public double calcEnergy(ConfIndex index) {
+
+		double energy = offset;
+
+		for (int i=0; i<index.numDefined; i++) {
+			int pos1 = index.definedPos[i];
+			int rc1 = index.definedRCs[i];
+
+			energy += getSingle(pos1, rc1);
+
+			for (int j=0; j<i; j++) {
+				int pos2 = index.definedPos[j];
+				int rc2 = index.definedRCs[j];
+
+				energy += getPair(pos1, rc1, pos2, rc2);
+
+				for (int k=0; k<j; k++) {
+					energy += getTriple(pos1, rc1, pos2, rc2, index.definedPos[k], index.definedRCs[k]);
+				}
+			}
+		}
+
+		return energy;
+	}
+
+	/**
+	 * Calculates how much the LUTE energy changes when the next position is assigned,
+	 * ie, all the tuples that include the next assignment and only defined positions otherwise.
+	 *
+	 * @return the energy difference, or NaN if the assignment makes a pair that isn't in the LUTE tuple set
+	 */
+	public double calcDifferential(ConfIndex index, int nextPos, int nextRc) {
+
+		double energy = getSingle(nextPos, nextRc);
+
+		for (int i=0; i<index.numDefined; i++) {
+			int pos1 = index.definedPos[i];
+			int rc1 = index.definedRCs[i];
+
+			energy += getPair(nextPos, nextRc, pos1, rc1);
+
+			for (int j=0; j<i; j++) {
+				energy += getTriple(nextPos, nextRc, pos1, rc1, index.definedPos[j], index.definedRCs[j]);
+			}
+		}
+
+		return energy;
+	}
+}
@@ -37,6 +37,7 @@ import edu.duke.cs.osprey.astar.conf.RCs;
 import edu.duke.cs.osprey.astar.conf.scoring.AStarScorer;
 import edu.duke.cs.osprey.confspace.Conf;
 import edu.duke.cs.osprey.confspace.TuplesIndex;
+import edu.duke.cs.osprey.tools.MathTools;
 
 
 public class LUTEGScorer implements AStarScorer {
@@ -55,6 +56,11 @@ public class LUTEGScorer implements AStarScorer {
 	@Override
 	public double calc(ConfIndex confIndex, RCs rcs) {
 
+		// use the dense table if we can, no need to make a conf
+		if (ecalc.table != null) {
+			return toScore(ecalc.table.calcEnergy(confIndex));
+		}
+
 		/* convert the conf index into a conf
 			yeah, we'll take a slight performance hit doing this,
 			but the higher-order tuple indices are optimized around fast pos->rc lookups,
@@ -69,4 +75,24 @@ public class LUTEGScorer implements AStarScorer {
 			return Double.POSITIVE_INFINITY;
 		}
 	}
+
+	@Override
+	public double calcDifferential(ConfIndex confIndex, RCs rcs, int nextPos, int nextRc) {
+
+		if (ecalc.table == null) {
+			return calc(confIndex.assign(nextPos, nextRc), rcs);
+		}
+
+		// modify the parent node's g-score with just the tuples that include the new assignment
+		double gscore = confIndex.node.getGScore(MathTools.Optimizer.Minimize);
+		return toScore(gscore + ecalc.table.calcDifferential(confIndex, nextPos, nextRc));
+	}
+
+	private static double toScore(double energy) {
+		if (Double.isNaN(energy)) {
+			// conf has a pruned tuple, can't score it
+			return Double.POSITIVE_INFINITY;
+		}
+		return energy;
+	}
 }
@@ -47,6 +47,7 @@ import edu.duke.cs.osprey.kstar.KStarScoreWriter;
 import edu.duke.cs.osprey.kstar.pfunc.BoltzmannCalculator;
 import edu.duke.cs.osprey.kstar.pfunc.PartitionFunction;
 import edu.duke.cs.osprey.markstar.framework.MARKStarBound;
+import edu.duke.cs.osprey.markstar.framework.MARKStarBoundContinuous;
 import edu.duke.cs.osprey.markstar.framework.MARKStarBoundFastQueues;
 import edu.duke.cs.osprey.markstar.framework.MARKStarBoundRigid;
 import edu.duke.cs.osprey.parallelism.Parallelism;
@@ -136,6 +137,22 @@ public class MARKStar {
 			private int maxNumConfs = -1;
 			private boolean reduceMinimizations = true;
 
+			/**
+			 * If true, use a scheduler that keeps every thread busy with the best leaf or internal node,
+			 * instead of alternating between phases of leaf minimizations and internal node expansions.
+			 */
+			private boolean useContinuousScheduler = false;
+
+			/**
+			 * How long the continuous scheduler dispatches work before letting the pfunc check its stopping criteria.
+			 */
+			private double continuousRoundSeconds = MARKStarBoundContinuous.DefaultRoundSeconds;
+
+			/**
+			 * Weight of the newest task time in the continuous scheduler's running averages of task times.
+			 */
+			private double continuousTimeAverageWeight = MARKStarBoundContinuous.DefaultTimeAverageWeight;
+
 			public Builder setEpsilon(double val) {
 				epsilon = val;
 				return this;
@@ -197,13 +214,29 @@ public class MARKStar {
 
 			public Settings build() {
 				return new Settings(epsilon, stabilityThreshold, maxSimultaneousMutations, scoreWriters,
-						showPfuncProgress, energyMatrixCachePattern, parallelism, maxNumConfs, reduceMinimizations);
+						showPfuncProgress, energyMatrixCachePattern, parallelism, maxNumConfs, reduceMinimizations,
+						useContinuousScheduler, continuousRoundSeconds, continuousTimeAverageWeight);
 			}
 
 			public Builder setReduceMinimizations(boolean reudceMinimizations) {
 			    this.reduceMinimizations = reudceMinimizations;
 			    return this;
 			}
+
+			public Builder setUseContinuousScheduler(boolean val) {
+				useContinuousScheduler = val;
+				return this;
+			}
+
+			public Builder setContinuousRoundSeconds(double val) {
+				continuousRoundSeconds = val;
+				return this;
+			}
+
+			public Builder setContinuousTimeAverageWeight(double val) {
+				continuousTimeAverageWeight = val;
+				return this;
+			}
 		}
 
 		public final double epsilon;
@@ -215,10 +248,22 @@ public class MARKStar {
 		public final Parallelism parallelism;
 		public final int maxNumConfs;
 		public final boolean reduceMinimizations;
+		public final boolean useContinuousScheduler;
+		public final double continuousRoundSeconds;
+		public final double continuousTimeAverageWeight;
 
 		public Settings(double epsilon, Double stabilityThreshold, int maxSimultaneousMutations,
 						KStarScoreWriter.Writers scoreWriters, boolean dumpPfuncConfs, String energyMatrixCachePattern,
 						Parallelism parallelism, int maxNumConfs, boolean reduceMinimizations) {
+			this(epsilon, stabilityThreshold, maxSimultaneousMutations, scoreWriters, dumpPfuncConfs,
+				energyMatrixCachePattern, parallelism, maxNumConfs, reduceMinimizations, false,
+				MARKStarBoundContinuous.DefaultRoundSeconds, MARKStarBoundContinuous.DefaultTimeAverageWeight);
+		}
+
+		public Settings(double epsilon, Double stabilityThreshold, int maxSimultaneousMutations,
+						KStarScoreWriter.Writers scoreWriters, boolean dumpPfuncConfs, String energyMatrixCachePattern,
+						Parallelism parallelism, int maxNumConfs, boolean reduceMinimizations, boolean useContinuousScheduler,
+						double continuousRoundSeconds, double continuousTimeAverageWeight) {
 			this.epsilon = epsilon;
 			this.stabilityThreshold = stabilityThreshold;
 			this.maxSimultaneousMutations = maxSimultaneousMutations;
@@ -228,6 +273,9 @@ public class MARKStar {
 			this.parallelism = parallelism;
 			this.maxNumConfs = maxNumConfs;
 			this.reduceMinimizations = reduceMinimizations;
+			this.useContinuousScheduler = useContinuousScheduler;
+			this.continuousRoundSeconds = continuousRoundSeconds;
+			this.continuousTimeAverageWeight = continuousTimeAverageWeight;
 		}
 
 		public String applyEnergyMatrixCachePattern(String type) {
@@ -337,9 +385,15 @@ public class MARKStar {
 			// cache miss, need to compute the partition function
 
 			// make the partition function
-			MARKStarBoundFastQueues pfunc = new MARKStarBoundFastQueues(confSpace, rigidEmat, minimizingEmat, minimizingConfEcalc, sequence.makeRCs(confSpace),
-			//MARKStarBoundRigid pfunc = new MARKStarBoundRigid(confSpace, rigidEmat, minimizingEmat, minimizingConfEcalc, sequence.makeRCs(confSpace),
+			MARKStarBound pfunc;
+			if (settings.useContinuousScheduler) {
+				pfunc = new MARKStarBoundContinuous(confSpace, rigidEmat, minimizingEmat, minimizingConfEcalc, sequence.makeRCs(confSpace),
+					settings.parallelism, settings.continuousRoundSeconds, settings.continuousTimeAverageWeight);
+			} else {
+				pfunc = new MARKStarBoundFastQueues(confSpace, rigidEmat, minimizingEmat, minimizingConfEcalc, sequence.makeRCs(confSpace),
+				//MARKStarBoundRigid pfunc = new MARKStarBoundRigid(confSpace, rigidEmat, minimizingEmat, minimizingConfEcalc, sequence.makeRCs(confSpace),
 					settings.parallelism);
+			}
 			confSearchFactory = (emat, rcs) -> {
 				ConfAStarTree.Builder builder = new ConfAStarTree.Builder(emat, rcs)
 						.setTraditional();
@@ -520,6 +574,9 @@ public class MARKStar {
 			scorer.score(i, proteinResult, ligandResult, complexResult);
 		}
 
+		// wait for any asynchronous score writers
+		settings.scoreWriters.finish();
+
 		return scores;
 	}
 	public Iterable<ConfSpaceInfo> confSpaceInfos() {
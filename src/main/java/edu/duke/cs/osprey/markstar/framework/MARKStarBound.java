@@ -35,6 +35,7 @@ package edu.duke.cs.osprey.markstar.framework;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
@@ -102,7 +103,7 @@ public class MARKStarBound implements PartitionFunction.WithConfDB {
     protected int numInternalNodesProcessed = 0;
 
     private boolean printMinimizedConfs;
-    private MARKStarProgress progress;
+    protected MARKStarProgress progress;
     public String stateName = String.format("%4f",Math.random());
     private int numPartialMinimizations;
     private ArrayList<Integer> minList;
@@ -257,6 +258,7 @@ public class MARKStarBound implements PartitionFunction.WithConfDB {
             status = Status.Unstable;
         loopTasks.waitForFinish();
         minimizingEcalc.tasks.waitForFinish();
+        finishCompute();
         BigDecimal averageReduction = BigDecimal.ZERO;
         int totalMinimizations = numConfsEnergied + numPartialMinimizations;
         if(totalMinimizations> 0)
@@ -277,6 +279,14 @@ public class MARKStarBound implements PartitionFunction.WithConfDB {
         }
     }
 
+    /**
+     * Called by {@link #compute(int)} after all the tasks have finished, but before the bounds are read from the tree.
+     * Schedulers that hold back tree updates should apply them here.
+     */
+    protected void finishCompute() {
+        // the phased scheduler applies everything before tightenBoundInPhases() returns
+    }
+
     protected void debugPrint(String s) {
         if(debug)
             System.out.println(s);
@@ -904,73 +914,7 @@ public class MARKStarBound implements PartitionFunction.WithConfDB {
                 continue;
             }
 
-            loopTasks.submit(() -> {
-
-                try (ObjectPool.Checkout<ScoreContext> checkout = contexts.autoCheckout()) {
-                    Stopwatch partialTime = new Stopwatch().start();
-                    ScoreContext context = checkout.get();
-                    node.index(context.index);
-                    Node child = node.assign(nextPos, nextRc);
-
-                    // score the child node differentially against the parent node
-                    if (child.getLevel() < RCs.getNumPos()) {
-                        double confCorrection = correctionMatrix.confE(child.assignments);
-                        double diff = confCorrection;
-                        double rigiddiff = context.rigidscorer.calcDifferential(context.index, RCs, nextPos, nextRc);
-                        double hdiff = context.hscorer.calcDifferential(context.index, RCs, nextPos, nextRc);
-                        double maxhdiff = -context.negatedhscorer.calcDifferential(context.index, RCs, nextPos, nextRc);
-                        child.gscore = diff;
-                        //Correct for incorrect gscore.
-                        rigiddiff=rigiddiff-node.gscore+node.rigidScore;
-                        child.rigidScore = rigiddiff;
-
-                        double confLowerBound = child.gscore + hdiff;
-                        double confUpperbound = rigiddiff + maxhdiff;
-                        child.computeNumConformations(RCs);
-                        double lowerbound = minimizingEmat.confE(child.assignments);
-                        if(diff < confCorrection) {
-                            recordCorrection(confLowerBound, confCorrection - diff);
-                            confLowerBound = confCorrection + hdiff;
-                        }
-
-                        // PartialFixCache (Phase 4): For now, use original upper bound (parallel version)
-                        // TODO: Implement quick upper bound tightening via PartialFixCache
-                        double quickUpperBound = confUpperbound;
-
-                        child.setBoundsFromConfLowerAndUpper(confLowerBound, quickUpperBound);
-                        progress.reportInternalNode(child.level, child.gscore, child.getHScore(), queue.size(), children.size(), epsilonBound);
-                    }
-                    if (child.getLevel() == RCs.getNumPos()) {
-                        double confRigid = context.rigidscorer.calcDifferential(context.index, RCs, nextPos, nextRc);
-                        confRigid=confRigid-node.gscore+node.rigidScore;
-
-                        child.computeNumConformations(RCs); // Shouldn't this always eval to 1, given that we are looking at leaf nodes?
-                        double confCorrection = correctionMatrix.confE(child.assignments);
-                        double lowerbound = minimizingEmat.confE(child.assignments);
-
-                        if(lowerbound < confCorrection) {
-                            recordCorrection(lowerbound, confCorrection - lowerbound);
-                        }
-                        checkBounds(confCorrection,confRigid);
-
-                        // PartialFixCache (Phase 4): For now, use rigid upper bound for leaf (parallel version)
-                        // TODO: Implement quick upper bound tightening via PartialFixCache
-                        double quickUpperBound = confRigid;
-
-                        child.setBoundsFromConfLowerAndUpper(confCorrection, quickUpperBound);
-                        child.gscore = confCorrection;
-                        child.rigidScore = confRigid;
-                        numConfsScored++;
-                        progress.reportLeafNode(child.gscore, queue.size(), epsilonBound);
-                    }
-                    partialTime.stop();
-                    loopPartialTime+=partialTime.getTimeS();
-
-
-                    return child;
-                }
-
-            }, (Node child) -> {
+            loopTasks.submit(() -> scoreChild(node, nextPos, nextRc, children), (Node child) -> {
                 if(Double.isNaN(child.rigidScore))
                     System.out.println("Huh!?");
                 MARKStarNode MARKStarNodeChild = curNode.makeChild(child);
@@ -989,8 +933,101 @@ public class MARKStarBound implements PartitionFunction.WithConfDB {
         }
     }
 
+    /**
+     * Scores the child of node that assigns nextRc at nextPos, differentially against the parent.
+     * Safe to call from task threads: all scorer state comes from the context pool.
+     * The siblings collected so far are only used for progress reporting.
+     */
+    protected Node scoreChild(Node node, int nextPos, int nextRc, Collection<?> children) {
+        try (ObjectPool.Checkout<ScoreContext> checkout = contexts.autoCheckout()) {
+            Stopwatch partialTime = new Stopwatch().start();
+            ScoreContext context = checkout.get();
+            node.index(context.index);
+            Node child = node.assign(nextPos, nextRc);
+
+            // score the child node differentially against the parent node
+            if (child.getLevel() < RCs.getNumPos()) {
+                double confCorrection = correctionMatrix.confE(child.assignments);
+                double diff = confCorrection;
+                double rigiddiff = context.rigidscorer.calcDifferential(context.index, RCs, nextPos, nextRc);
+                double hdiff = context.hscorer.calcDifferential(context.index, RCs, nextPos, nextRc);
+                double maxhdiff = -context.negatedhscorer.calcDifferential(context.index, RCs, nextPos, nextRc);
+                child.gscore = diff;
+                //Correct for incorrect gscore.
+                rigiddiff=rigiddiff-node.gscore+node.rigidScore;
+                child.rigidScore = rigiddiff;
+
+                double confLowerBound = child.gscore + hdiff;
+                double confUpperbound = rigiddiff + maxhdiff;
+                child.computeNumConformations(RCs);
+                double lowerbound = minimizingEmat.confE(child.assignments);
+                if(diff < confCorrection) {
+                    recordCorrection(confLowerBound, confCorrection - diff);
+                    confLowerBound = confCorrection + hdiff;
+                }
+
+                // PartialFixCache (Phase 4): For now, use original upper bound (parallel version)
+                // TODO: Implement quick upper bound tightening via PartialFixCache
+                double quickUpperBound = confUpperbound;
+
+                child.setBoundsFromConfLowerAndUpper(confLowerBound, quickUpperBound);
+                progress.reportInternalNode(child.level, child.gscore, child.getHScore(), queue.size(), children.size(), epsilonBound);
+            }
+            if (child.getLevel() == RCs.getNumPos()) {
+                double confRigid = context.rigidscorer.calcDifferential(context.index, RCs, nextPos, nextRc);
+                confRigid=confRigid-node.gscore+node.rigidScore;
+
+                child.computeNumConformations(RCs); // Shouldn't this always eval to 1, given that we are looking at leaf nodes?
+                double confCorrection = correctionMatrix.confE(child.assignments);
+                double lowerbound = minimizingEmat.confE(child.assignments);
+
+                if(lowerbound < confCorrection) {
+                    recordCorrection(lowerbound, confCorrection - lowerbound);
+                }
+                checkBounds(confCorrection,confRigid);
+
+                // PartialFixCache (Phase 4): For now, use rigid upper bound for leaf (parallel version)
+                // TODO: Implement quick upper bound tightening via PartialFixCache
+                double quickUpperBound = confRigid;
+
+                child.setBoundsFromConfLowerAndUpper(confCorrection, quickUpperBound);
+                child.gscore = confCorrection;
+                child.rigidScore = confRigid;
+                numConfsScored++;
+                progress.reportLeafNode(child.gscore, queue.size(), epsilonBound);
+            }
+            partialTime.stop();
+            loopPartialTime+=partialTime.getTimeS();
+
+
+            return child;
+        }
+    }
+
 
     protected void processFullConfNode(List<MARKStarNode> newNodes, MARKStarNode curNode, Node node) {
+        if (correctInsteadOfMinimizing(newNodes, curNode, node)) {
+            return;
+        }
+        loopTasks.submit(() -> {
+            minimizeFullConfNode(curNode, node);
+            return null;
+        },
+                // Dummy function. We're not doing anything here.
+                (Node child) -> {
+                    progress.reportLeafNode(node.gscore, queue.size(), epsilonBound);
+                    if(!node.isMinimized())
+                        newNodes.add(curNode);
+
+                });
+    }
+
+    /**
+     * Tightens the bounds of a full conformation using energy corrections (or the PartialFixCache)
+     * when that beats minimizing it. Corrected nodes are added to newNodes.
+     * @return true if the node was corrected and should not be minimized
+     */
+    protected boolean correctInsteadOfMinimizing(List<MARKStarNode> newNodes, MARKStarNode curNode, Node node) {
         double confCorrection = correctionMatrix.confE(node.assignments);
         double pairwiseLowerBound = node.getConfLowerBound();
         double currentGscore = node.gscore;
@@ -1069,94 +1106,106 @@ public class MARKStarBound implements PartitionFunction.WithConfDB {
                 + " upper: " + String.format("%.6f", currentUpper) + " -> " + String.format("%.6f", quickUpperBound)
                 + " (-" + String.format("%.6f", currentUpper - quickUpperBound) + ")"
                 + " finalGap=" + String.format("%.6f", finalGap));
-            return;
+            return true;
         }
-        loopTasks.submit(() -> {
-            try (ObjectPool.Checkout<ScoreContext> checkout = contexts.autoCheckout()) {
-                ScoreContext context = checkout.get();
-                node.index(context.index);
-
-                ConfSearch.ScoredConf conf = new ConfSearch.ScoredConf(node.assignments, node.getConfLowerBound());
-                Stopwatch minimizationTimer = new Stopwatch().start();
-                ConfAnalyzer.ConfAnalysis analysis = confAnalyzer.analyze(conf);
-                minimizationTimer.stop();
-
-                // LOG: Detailed minimization info
-                // double pairwiseEstimate = node.getConfLowerBound();
-                // double minimizedEnergy = analysis.epmol.energy;
-                // double energyGap = minimizedEnergy - pairwiseEstimate;
-                // System.out.println("[MINIMIZE] conf=" + SimpleConfSpace.formatConfRCs(node.assignments)
-                //     + " pairwise=" + String.format("%.6f", pairwiseEstimate)
-                //     + " minimized=" + String.format("%.6f", minimizedEnergy)
-                //     + " gap=" + String.format("%.6f", energyGap)
-                //     + " time=" + String.format("%.2f", minimizationTimer.getTimeMs()) + "ms");
-                
-                // record the conf energy in the ConfDB, if needed
-                ConfDB.ConfTable confTable = confTable();
-                if (confTable != null) {
-                	long timestamp = TimeTools.getTimestampNs();
-                	confTable.setLowerBound(conf.getAssignments(), conf.getScore(), timestamp);
-                    confTable.setUpperBound(conf.getAssignments(), analysis.epmol.energy, timestamp);
-                }
-                
-                Stopwatch correctionTimer = new Stopwatch().start();
-                computeEnergyCorrection(analysis, conf, context.ecalc);
-
-                double energy = analysis.epmol.energy;
-                double newConfUpper = energy;
-                double newConfLower = energy;
-                // Record pre-minimization bounds so we can parse out how much minimization helped for upper and lower bounds
-                double oldConfUpper = node.getConfUpperBound();
-                double oldConfLower = node.getConfLowerBound();
-                checkConfLowerBound(node, energy);
-                if (newConfUpper > oldConfUpper) {
-                    System.err.println("Upper bounds got worse after minimization:" + newConfUpper
-                            + " > " + (oldConfUpper)+". Rejecting minimized energy.");
-                    System.err.println("Node info: "+node);
-
-                    newConfUpper = oldConfUpper;
-                    newConfLower = oldConfUpper;
-                }
-
-                // RESTORED: Use minimized energy directly (original logic)
-                // Do NOT re-apply correction after minimization
-                curNode.setBoundsFromConfLowerAndUpper(newConfLower, newConfUpper);
-                double oldgscore = node.gscore;
-                node.gscore = newConfLower;
-
-                // LOG: Final bounds after minimization
-                // System.out.println("[MINIMIZED_FINAL] conf=" + SimpleConfSpace.formatConfRCs(node.assignments)
-                //     + " minimized=" + String.format("%.6f", energy)
-                //     + " finalLower=" + String.format("%.6f", newConfLower)
-                //     + " finalUpper=" + String.format("%.6f", newConfUpper)
-                //     + " oldGscore=" + String.format("%.6f", oldgscore));
-
-                String out = "Energy = " + String.format("%6.3e", energy) + ", [" + (node.getConfLowerBound()) + "," + (node.getConfUpperBound()) + "]";
-                debugPrint(out);
-                curNode.markUpdated();
-                synchronized(this) {
-                    numConfsEnergied++;
-                    minList.set(conf.getAssignments().length-1,minList.get(conf.getAssignments().length-1)+1);
-                    recordReduction(oldConfLower, oldConfUpper, energy);
-                    printMinimizationOutput(node, newConfLower, oldgscore);
-
-                    // PRIORITY QUEUE DUMP: After first minimization
-                    if (numConfsEnergied == 1) {
-                        dumpPriorityQueueAfterFirstMinimization(node, energy, newConfLower, newConfUpper);
-                    }
-                }
+        return false;
+    }
 
+    /**
+     * Minimizes the full conformation at node, computes energy corrections from the result,
+     * and tightens the node's bounds to the minimized energy.
+     * Blocks until the minimization is done, so callers should run this on a task thread.
+     */
+    protected void minimizeFullConfNode(MARKStarNode curNode, Node node) {
+        applyMinimizedEnergy(curNode, node, minimizeFullConf(node));
+    }
 
+    /**
+     * Minimizes the full conformation at node and computes energy corrections from the result,
+     * but leaves the tree alone.
+     * @return the minimized energy
+     */
+    protected double minimizeFullConf(Node node) {
+        try (ObjectPool.Checkout<ScoreContext> checkout = contexts.autoCheckout()) {
+            ScoreContext context = checkout.get();
+            node.index(context.index);
+
+            ConfSearch.ScoredConf conf = new ConfSearch.ScoredConf(node.assignments, node.getConfLowerBound());
+            Stopwatch minimizationTimer = new Stopwatch().start();
+            ConfAnalyzer.ConfAnalysis analysis = confAnalyzer.analyze(conf);
+            minimizationTimer.stop();
+
+            // LOG: Detailed minimization info
+            // double pairwiseEstimate = node.getConfLowerBound();
+            // double minimizedEnergy = analysis.epmol.energy;
+            // double energyGap = minimizedEnergy - pairwiseEstimate;
+            // System.out.println("[MINIMIZE] conf=" + SimpleConfSpace.formatConfRCs(node.assignments)
+            //     + " pairwise=" + String.format("%.6f", pairwiseEstimate)
+            //     + " minimized=" + String.format("%.6f", minimizedEnergy)
+            //     + " gap=" + String.format("%.6f", energyGap)
+            //     + " time=" + String.format("%.2f", minimizationTimer.getTimeMs()) + "ms");
+            
+            // record the conf energy in the ConfDB, if needed
+            ConfDB.ConfTable confTable = confTable();
+            if (confTable != null) {
+            	long timestamp = TimeTools.getTimestampNs();
+            	confTable.setLowerBound(conf.getAssignments(), conf.getScore(), timestamp);
+                confTable.setUpperBound(conf.getAssignments(), analysis.epmol.energy, timestamp);
             }
-            return null;
-        },
-                // Dummy function. We're not doing anything here.
-                (Node child) -> {
-                    progress.reportLeafNode(node.gscore, queue.size(), epsilonBound);
-                    if(!node.isMinimized())
-                        newNodes.add(curNode);
+            
+            Stopwatch correctionTimer = new Stopwatch().start();
+            computeEnergyCorrection(analysis, conf, context.ecalc);
 
-                });
+            return analysis.epmol.energy;
+        }
+    }
+
+    /**
+     * Tightens the bounds of the full conformation at node to its minimized energy.
+     */
+    protected void applyMinimizedEnergy(MARKStarNode curNode, Node node, double energy) {
+        double newConfUpper = energy;
+        double newConfLower = energy;
+        // Record pre-minimization bounds so we can parse out how much minimization helped for upper and lower bounds
+        double oldConfUpper = node.getConfUpperBound();
+        double oldConfLower = node.getConfLowerBound();
+        checkConfLowerBound(node, energy);
+        if (newConfUpper > oldConfUpper) {
+            System.err.println("Upper bounds got worse after minimization:" + newConfUpper
+                    + " > " + (oldConfUpper)+". Rejecting minimized energy.");
+            System.err.println("Node info: "+node);
+
+            newConfUpper = oldConfUpper;
+            newConfLower = oldConfUpper;
+        }
+
+        // RESTORED: Use minimized energy directly (original logic)
+        // Do NOT re-apply correction after minimization
+        curNode.setBoundsFromConfLowerAndUpper(newConfLower, newConfUpper);
+        double oldgscore = node.gscore;
+        node.gscore = newConfLower;
+
+        // LOG: Final bounds after minimization
+        // System.out.println("[MINIMIZED_FINAL] conf=" + SimpleConfSpace.formatConfRCs(node.assignments)
+        //     + " minimized=" + String.format("%.6f", energy)
+        //     + " finalLower=" + String.format("%.6f", newConfLower)
+        //     + " finalUpper=" + String.format("%.6f", newConfUpper)
+        //     + " oldGscore=" + String.format("%.6f", oldgscore));
+
+        String out = "Energy = " + String.format("%6.3e", energy) + ", [" + (node.getConfLowerBound()) + "," + (node.getConfUpperBound()) + "]";
+        debugPrint(out);
+        curNode.markUpdated();
+        synchronized(this) {
+            numConfsEnergied++;
+            minList.set(node.assignments.length-1,minList.get(node.assignments.length-1)+1);
+            recordReduction(oldConfLower, oldConfUpper, energy);
+            printMinimizationOutput(node, newConfLower, oldgscore);
+
+            // PRIORITY QUEUE DUMP: After first minimization
+            if (numConfsEnergied == 1) {
+                dumpPriorityQueueAfterFirstMinimization(node, energy, newConfLower, newConfUpper);
+            }
+        }
     }
 
     private void printMinimizationOutput(Node node, double newConfLower, double oldgscore) {
@@ -1470,7 +1519,7 @@ public class MARKStarBound implements PartitionFunction.WithConfDB {
         //System.out.println("Current epsilon:"+epsilonBound);
     }
 
-    private boolean hasPrunedPair(ConfIndex confIndex, int nextPos, int nextRc) {
+    protected boolean hasPrunedPair(ConfIndex confIndex, int nextPos, int nextRc) {
 
         // do we even have pruned pairs?
         PruningMatrix pmat = RCs.getPruneMat();
@@ -0,0 +1,360 @@
+/*
+** This file is part of OSPREY 3.0
+**
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+**
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+**
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+**
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+**
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+**
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+package edu.duke.cs.osprey.markstar.framework;
+
+import edu.duke.cs.osprey.astar.conf.ConfIndex;
+import edu.duke.cs.osprey.astar.conf.RCs;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
+import edu.duke.cs.osprey.kstar.pfunc.PartitionFunction;
+import edu.duke.cs.osprey.markstar.framework.MARKStarNode.Node;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+import edu.duke.cs.osprey.tools.MathTools;
+import edu.duke.cs.osprey.tools.Stopwatch;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * MARK* without phases: instead of alternating between a batch of leaf minimizations and a batch of
+ * internal node expansions (and waiting for the slowest task in each batch), this bound keeps every
+ * thread busy with whichever node currently promises the largest pfunc bound reduction per second.
+ *
+ * Tasks only compute: minimized energies and scored children come back to the scheduler thread,
+ * which is the only thread that changes the tree, so {@link #updateBound()} always sees a consistent tree.
+ * Expanded children are added to their parent all at once, and in-flight tasks are drained before
+ * the scheduler accepts a bound as converged.
+ */
+public class MARKStarBoundContinuous extends MARKStarBound {
+
+    public static final double DefaultRoundSeconds = 1.0;
+    public static final double DefaultTimeAverageWeight = 0.2;
+
+    /** Max time one call to tightenBoundInPhases() schedules work before letting compute() check its stopping criteria */
+    public final double roundSeconds;
+
+    /** Weight of the newest sample in the running averages of task times */
+    public final double timeAverageWeight;
+
+    private final Queue<MARKStarNode> leafQueue = new PriorityQueue<>();
+    private final Queue<MARKStarNode> internalQueue = new PriorityQueue<>();
+
+    // tree updates from finished tasks, waiting to be applied on the scheduler thread
+    private final Queue<Runnable> finishedTasks = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger numTasksInFlight = new AtomicInteger(0);
+    private final ReentrantLock taskLock = new ReentrantLock();
+    private final Condition taskFinished = taskLock.newCondition();
+
+    // running averages of seconds per task, NaN until we've timed at least one task
+    private double leafSeconds = Double.NaN;
+    private double internalSeconds = Double.NaN;
+
+    private final ConfIndex schedulerIndex;
+
+    public MARKStarBoundContinuous(SimpleConfSpace confSpace, EnergyMatrix rigidEmat, EnergyMatrix minimizingEmat,
+                                   ConfEnergyCalculator minimizingConfEcalc, RCs rcs, Parallelism parallelism) {
+        this(confSpace, rigidEmat, minimizingEmat, minimizingConfEcalc, rcs, parallelism, DefaultRoundSeconds, DefaultTimeAverageWeight);
+    }
+
+    public MARKStarBoundContinuous(SimpleConfSpace confSpace, EnergyMatrix rigidEmat, EnergyMatrix minimizingEmat,
+                                   ConfEnergyCalculator minimizingConfEcalc, RCs rcs, Parallelism parallelism,
+                                   double roundSeconds, double timeAverageWeight) {
+        super(confSpace, rigidEmat, minimizingEmat, minimizingConfEcalc, rcs, parallelism);
+        if (roundSeconds <= 0) {
+            throw new IllegalArgumentException("round seconds must be positive, not " + roundSeconds);
+        }
+        if (timeAverageWeight <= 0 || timeAverageWeight > 1) {
+            throw new IllegalArgumentException("time average weight must be in (0,1], not " + timeAverageWeight);
+        }
+        this.roundSeconds = roundSeconds;
+        this.timeAverageWeight = timeAverageWeight;
+        this.schedulerIndex = new ConfIndex(rcs.getNumPos());
+    }
+
+    @Override
+    protected void tightenBoundInPhases() {
+
+        Stopwatch roundWatch = new Stopwatch().start();
+        int numThreads = Math.max(1, parallelism.getParallelism());
+        int numNodes = 0;
+
+        // pick up anything left over from the initial leaf search, or from the last call to compute()
+        sortNodes(queue);
+        queue.clear();
+
+        while (true) {
+
+            applyFinishedTasks();
+            updateBound();
+            if (epsilonBound <= targetEpsilon) {
+
+                // the bound is already sound, but the results still in flight can only tighten it,
+                // and compute() shouldn't return while tasks are still working on the tree
+                drainTasks();
+                updateBound();
+                if (epsilonBound <= targetEpsilon) {
+                    break;
+                }
+            }
+
+            // top up the executor so no thread sits idle
+            // (but only by as many tasks as there are free threads, so new nodes get sorted in between)
+            int numFreeThreads = numThreads - numTasksInFlight.get();
+            for (int i=0; i<numFreeThreads; i++) {
+                MARKStarNode next = pollBestNode();
+                if (next == null) {
+                    break;
+                }
+                dispatch(next);
+                numNodes++;
+            }
+
+            if (roundWatch.getTimeS() >= roundSeconds) {
+                break;
+            }
+            if (numTasksInFlight.get() == 0 && finishedTasks.isEmpty() && leafQueue.isEmpty() && internalQueue.isEmpty()) {
+                // nothing running and nothing left to schedule
+                break;
+            }
+            if (numTasksInFlight.get() < numThreads && !finishedTasks.isEmpty()) {
+                // apply the results right away, no need to wait
+                continue;
+            }
+
+            waitForTask();
+        }
+
+        roundWatch.stop();
+        leafTimeAverage = Double.isNaN(leafSeconds) ? 0 : leafSeconds;
+        internalTimeAverage = Double.isNaN(internalSeconds) ? 0 : internalSeconds;
+        profilePrint(String.format("Dispatched %d nodes in %s, %d tasks in flight, bounds are now [%12.6e,%12.6e]",
+            numNodes, roundWatch.getTime(2), numTasksInFlight.get(), rootNode.getLowerBound(), rootNode.getUpperBound()
+        ));
+    }
+
+    @Override
+    protected void finishCompute() {
+
+        // a round can end on its time limit with results still queued,
+        // so apply them before compute() reads the bounds
+        drainTasks();
+        updateBound();
+    }
+
+    private void sortNodes(Collection<MARKStarNode> nodes) {
+        for (MARKStarNode node : nodes) {
+            sortNode(node);
+        }
+    }
+
+    private void sortNode(MARKStarNode curNode) {
+        Node node = curNode.getConfSearchNode();
+        if (node.getLevel() < RCs.getNumPos()) {
+            internalQueue.add(curNode);
+        } else if (shouldMinimize(node)) {
+            correctedNode(new ArrayList<>(), curNode, node);
+            leafQueue.add(curNode);
+        }
+    }
+
+    /**
+     * Picks the best leaf or internal node by expected bound reduction per second.
+     * Until both task types have been timed, fall back to comparing the error bounds directly.
+     */
+    private MARKStarNode pollBestNode() {
+        MARKStarNode leaf = leafQueue.peek();
+        MARKStarNode internal = internalQueue.peek();
+        if (leaf == null) {
+            return internalQueue.poll();
+        }
+        if (internal == null) {
+            return leafQueue.poll();
+        }
+        BigDecimal leafRate = leaf.getErrorBound();
+        BigDecimal internalRate = internal.getErrorBound();
+        if (!Double.isNaN(leafSeconds) && !Double.isNaN(internalSeconds)) {
+            leafRate = MathTools.bigDivide(leafRate, new BigDecimal(Math.max(leafSeconds, 1e-9)), PartitionFunction.decimalPrecision);
+            internalRate = MathTools.bigDivide(internalRate, new BigDecimal(Math.max(internalSeconds, 1e-9)), PartitionFunction.decimalPrecision);
+        }
+        if (MathTools.isLessThan(internalRate, leafRate)) {
+            return leafQueue.poll();
+        }
+        return internalQueue.poll();
+    }
+
+    private void dispatch(MARKStarNode curNode) {
+        Node node = curNode.getConfSearchNode();
+        curNode.markUpdated();
+
+        if (node.getLevel() == RCs.getNumPos()) {
+
+            // corrections can sometimes replace the minimization entirely
+            List<MARKStarNode> correctedNodes = new ArrayList<>();
+            if (correctInsteadOfMinimizing(correctedNodes, curNode, node)) {
+                sortNodes(correctedNodes);
+                return;
+            }
+
+            submit(() -> {
+                Stopwatch taskWatch = new Stopwatch().start();
+                double energy = minimizeFullConf(node);
+                double seconds = taskWatch.stop().getTimeS();
+                return () -> {
+                    leafSeconds = updateAverage(leafSeconds, seconds);
+                    applyMinimizedEnergy(curNode, node, energy);
+                    progress.reportLeafNode(node.gscore, leafQueue.size(), epsilonBound);
+                    if (!node.isMinimized()) {
+                        sortNode(curNode);
+                    }
+                };
+            });
+
+        } else if (!MathTools.isGreaterThan(curNode.getLowerBound(), BigDecimal.ONE) &&
+            MathTools.isGreaterThan(
+                MathTools.bigDivide(curNode.getUpperBound(), rootNode.getUpperBound(), PartitionFunction.decimalPrecision),
+                new BigDecimal(1 - targetEpsilon)
+            )
+        ) {
+
+            // no lower bound here yet, dive for a leaf like the phased scheduler does
+            // the dive adds nodes to the tree as it goes, so it has to run here on the scheduler thread
+            List<MARKStarNode> newNodes = new ArrayList<>();
+            boundLowestBoundConfUnderNode(curNode, newNodes);
+            sortNodes(newNodes);
+            numInternalNodesProcessed++;
+
+        } else {
+
+            // pick the next position here, so the ordering doesn't need to be thread-safe
+            node.index(schedulerIndex);
+            int nextPos = order.getNextPos(schedulerIndex, RCs);
+            List<Integer> nextRCs = new ArrayList<>();
+            for (int nextRc : RCs.get(nextPos)) {
+                if (hasPrunedPair(schedulerIndex, nextPos, nextRc)) {
+                    continue;
+                }
+                if (pruner != null && pruner.isPruned(node, nextPos, nextRc)) {
+                    continue;
+                }
+                nextRCs.add(nextRc);
+            }
+
+            // score all the children in one task, so we can time the whole expansion
+            submit(() -> {
+                Stopwatch taskWatch = new Stopwatch().start();
+                List<Node> children = new ArrayList<>(nextRCs.size());
+                for (int nextRc : nextRCs) {
+                    children.add(scoreChild(node, nextPos, nextRc, children));
+                }
+                double seconds = taskWatch.stop().getTimeS();
+                return () -> {
+                    internalSeconds = updateAverage(internalSeconds, seconds);
+                    for (MARKStarNode markStarChild : curNode.makeChildren(children)) {
+                        if (!markStarChild.getConfSearchNode().isMinimized()) {
+                            sortNode(markStarChild);
+                        } else {
+                            markStarChild.computeEpsilonErrorBounds();
+                        }
+                    }
+                    curNode.markUpdated();
+                };
+            });
+            numInternalNodesProcessed++;
+        }
+    }
+
+    /**
+     * Runs the task on the loop executor. The task returns the tree update,
+     * which runs later on the scheduler thread.
+     */
+    private void submit(TaskExecutor.Task<Runnable> task) {
+        numTasksInFlight.incrementAndGet();
+        loopTasks.submit(task, (treeUpdate) -> {
+            finishedTasks.add(treeUpdate);
+            numTasksInFlight.decrementAndGet();
+            taskLock.lock();
+            try {
+                taskFinished.signalAll();
+            } finally {
+                taskLock.unlock();
+            }
+        });
+    }
+
+    private void applyFinishedTasks() {
+        Runnable treeUpdate;
+        while ((treeUpdate = finishedTasks.poll()) != null) {
+            treeUpdate.run();
+        }
+    }
+
+    /**
+     * Waits for all the in-flight tasks to finish, and applies their results.
+     */
+    private void drainTasks() {
+        while (numTasksInFlight.get() > 0) {
+            waitForTask();
+            applyFinishedTasks();
+        }
+        applyFinishedTasks();
+    }
+
+    private double updateAverage(double average, double sample) {
+        if (Double.isNaN(average)) {
+            return sample;
+        }
+        return average*(1 - timeAverageWeight) + sample*timeAverageWeight;
+    }
+
+    private void waitForTask() {
+        taskLock.lock();
+        try {
+            // poll with a timeout, since tasks can finish between our last check and the wait
+            if (finishedTasks.isEmpty()) {
+                taskFinished.await(10, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            taskLock.unlock();
+        }
+    }
+}
@@ -352,6 +352,22 @@ public class MARKStarNode implements Comparable<MARKStarNode> {
         return newChild;
     }
 
+    /**
+     * Makes MARKStarNodes for all the children at once, and only then adds them to this node,
+     * so bound computations never see a partial list of children.
+     */
+    public List<MARKStarNode> makeChildren(List<Node> newChildren) {
+        List<MARKStarNode> markStarChildren = new ArrayList<>(newChildren.size());
+        for (Node child : newChildren) {
+            markStarChildren.add(new MARKStarNode(child, this));
+        }
+        if(children == null)
+            children = new CopyOnWriteArrayList<>(markStarChildren);
+        else
+            children.addAll(markStarChildren);
+        return markStarChildren;
+    }
+
     public void setBoundsFromConfLowerAndUpper(double lowerBound, double upperBound) {
         confSearchNode.updateConfLowerBound(lowerBound);
         confSearchNode.updateConfUpperBound(upperBound);
@@ -0,0 +1,193 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.parallelism;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A task executor for tasks that spend most of their time blocked, eg waiting on I/O or other cluster members,
+ * rather than computing. Tasks here don't take threads away from the compute task executors.
+ *
+ * When the JVM supports virtual threads (Java 21+), each task runs on its own virtual thread,
+ * so thousands of blocked tasks only need a handful of carrier threads. On older JVMs, tasks run on
+ * an elastic pool of platform threads that grows as needed and shrinks when idle.
+ *
+ * Listeners all run on one listener thread, just like {@link ThreadPoolTaskExecutor}.
+ */
+public class BlockingTaskExecutor extends ConcurrentTaskExecutor {
+
+	private static final AtomicInteger nextId = new AtomicInteger(0);
+
+	/** true if this JVM can make virtual threads */
+	public static boolean hasVirtualThreads() {
+		return findVirtualThreadFactory() != null;
+	}
+
+	private static Method findVirtualThreadFactory() {
+		// the build targets Java 17, so look for the Java 21 API at runtime
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException ex) {
+			return null;
+		}
+	}
+
+	/** at most this many tasks run at once, or 0 for no limit */
+	public final int maxConcurrentTasks;
+
+	public final boolean isVirtual;
+
+	private final int poolId = nextId.getAndIncrement();
+	private final ExecutorService workers;
+	private final ThreadPoolExecutor listener;
+	private final Semaphore permits;
+
+	/**
+	 * @param maxConcurrentTasks at most this many tasks run at once, or 0 for no limit.
+	 *                           Submitting a task blocks when the limit is reached.
+	 */
+	public BlockingTaskExecutor(int maxConcurrentTasks) {
+		this(maxConcurrentTasks, true);
+	}
+
+	/**
+	 * @param maxConcurrentTasks at most this many tasks run at once, or 0 for no limit.
+	 *                           Submitting a task blocks when the limit is reached.
+	 * @param useVirtualThreads run tasks on virtual threads, if the JVM has them
+	 */
+	public BlockingTaskExecutor(int maxConcurrentTasks, boolean useVirtualThreads) {
+
+		this.maxConcurrentTasks = maxConcurrentTasks;
+
+		ExecutorService virtualWorkers = useVirtualThreads ? makeVirtualExecutor() : null;
+		if (virtualWorkers != null) {
+			workers = virtualWorkers;
+			isVirtual = true;
+		} else {
+			AtomicInteger threadId = new AtomicInteger(0);
+			workers = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), (runnable) -> {
+				Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+				thread.setDaemon(true);
+				thread.setName(String.format("blocking-%d-%d", poolId, threadId.getAndIncrement()));
+				return thread;
+			});
+			isVirtual = false;
+		}
+
+		// use an unbounded queue for the listener thread
+		// let task results pile up until the listener thread can process them
+		listener = new ThreadPoolExecutor(1, 1, 0, TimeUnit.DAYS, new LinkedBlockingQueue<>(), (runnable) -> {
+			Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+			thread.setDaemon(true);
+			thread.setName(String.format("blocking-%d-listener", poolId));
+			return thread;
+		});
+		listener.prestartAllCoreThreads();
+
+		if (maxConcurrentTasks > 0) {
+			permits = new Semaphore(maxConcurrentTasks);
+		} else {
+			permits = null;
+		}
+	}
+
+	private static ExecutorService makeVirtualExecutor() {
+		Method factory = findVirtualThreadFactory();
+		if (factory == null) {
+			return null;
+		}
+		try {
+			return (ExecutorService)factory.invoke(null);
+		} catch (ReflectiveOperationException ex) {
+			// virtual threads are there, but we can't use them (eg, preview features are disabled)
+			return null;
+		}
+	}
+
+	@Override
+	public void clean() {
+		workers.shutdown();
+		listener.shutdown();
+	}
+
+	@Override
+	public int getParallelism() {
+		if (maxConcurrentTasks > 0) {
+			return maxConcurrentTasks;
+		}
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public <T> void submit(Task<T> task, TaskListener<T> listener) {
+
+		checkException();
+
+		if (permits != null) {
+			try {
+				permits.acquire();
+			} catch (InterruptedException ex) {
+				throw new RuntimeException("can't submit task", ex);
+			}
+		}
+
+		startedTask();
+
+		workers.execute(() -> {
+
+			// run the task
+			T result;
+			try {
+				result = runTask(task);
+			} catch (Throwable t) {
+				releasePermit();
+				taskFailure(task, listener, t);
+				return;
+			}
+			releasePermit();
+
+			// send the result to the listener thread
+			this.listener.execute(() -> taskSuccess(task, listener, result));
+		});
+	}
+
+	private void releasePermit() {
+		if (permits != null) {
+			permits.release();
+		}
+	}
+}
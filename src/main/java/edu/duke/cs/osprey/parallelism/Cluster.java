@@ -27,6 +27,16 @@ public class Cluster {
 
 	public static final boolean DefaultClientIsMember = true;
 
+	/** How cluster members talk to each other */
+	public enum Transport {
+
+		/** Over the network, using Hazelcast */
+		Hazelcast,
+
+		/** Directly, with no serialization, when all the members are in the same JVM */
+		InProcess
+	}
+
 	// TODO: configure deserialization protection with a whitelist?
 	// see: https://docs.hazelcast.org/docs/latest/manual/html-single/index.html#untrusted-deserialization-protection
 
@@ -34,6 +44,7 @@ public class Cluster {
 	public final int nodeId;
 	public final int numNodes;
 	public final boolean clientIsMember;
+	public final Transport transport;
 
 	public final String id;
 
@@ -42,11 +53,16 @@ public class Cluster {
 	}
 
 	public Cluster(String name, String jobId, int nodeId, int numNodes, boolean clientIsMember) {
+		this(name, jobId, nodeId, numNodes, clientIsMember, Transport.Hazelcast);
+	}
+
+	public Cluster(String name, String jobId, int nodeId, int numNodes, boolean clientIsMember, Transport transport) {
 
 		this.name = name;
 		this.nodeId = nodeId;
 		this.numNodes = numNodes;
 		this.clientIsMember = clientIsMember;
+		this.transport = transport;
 
 		// append the job id to the cluster name,
 		// so the cluster id will be unique on the local network
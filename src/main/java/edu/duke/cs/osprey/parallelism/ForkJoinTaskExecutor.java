@@ -0,0 +1,345 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.parallelism;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A task executor backed by a work-stealing {@link ForkJoinPool}.
+ *
+ * Unlike {@link ThreadPoolTaskExecutor}, submitting a task doesn't block waiting for a thread to be ready
+ * (unless a limit on pending tasks is set), and multiple threads can submit tasks at once without contention.
+ *
+ * Tasks submitted at {@link #DefaultPriority} go straight into the pool as {@link ForkJoinTask}s,
+ * so they never contend on a shared queue. Tasks with any other priority wait in a lane for their priority,
+ * and each worker that picks one up runs the oldest task from the highest-priority lane instead.
+ * So prioritized tasks run in priority order among themselves, but not relative to default-priority tasks.
+ *
+ * Listeners run on listener lanes. Each lane is a single thread, so listeners in the same lane never run concurrently,
+ * and {@link #submit(Task, TaskListener)} always uses lane 0, which gives the same guarantees as {@link ThreadPoolTaskExecutor}.
+ * Listeners that do their own synchronization can use other lanes, or {@link #InWorker} to run right after the task
+ * on the worker thread itself.
+ *
+ * Lots of small tasks can be submitted together with {@link #submitBatch}, so they only pay for queuing once.
+ */
+public class ForkJoinTaskExecutor extends ConcurrentTaskExecutor {
+
+	public static class Builder {
+
+		/** The number of worker threads */
+		private int numThreads = Parallelism.getMaxNumCPUs();
+
+		/** The number of listener threads */
+		private int numListenerLanes = 1;
+
+		/**
+		 * Block submissions when this many tasks are waiting for, or running on, a worker thread.
+		 * Set to 0 to never block.
+		 */
+		private int maxPendingTasks = 0;
+
+		public Builder setNumThreads(int val) {
+			numThreads = val;
+			return this;
+		}
+
+		public Builder setNumListenerLanes(int val) {
+			numListenerLanes = val;
+			return this;
+		}
+
+		public Builder setMaxPendingTasks(int val) {
+			maxPendingTasks = val;
+			return this;
+		}
+
+		public ForkJoinTaskExecutor build() {
+			return new ForkJoinTaskExecutor(numThreads, numListenerLanes, maxPendingTasks);
+		}
+	}
+
+	/** the priority used by {@link #submit(Task, TaskListener)} */
+	public static final int DefaultPriority = 0;
+
+	/** use this lane to run listeners on the worker thread, right after the task */
+	public static final int InWorker = -1;
+
+	private static final AtomicInteger nextId = new AtomicInteger(0);
+
+	public final int numThreads;
+	public final int numListenerLanes;
+	public final int maxPendingTasks;
+
+	private final int poolId = nextId.getAndIncrement();
+	private final ForkJoinPool pool;
+	private final ThreadPoolExecutor[] lanes;
+
+	// one FIFO lane per non-default priority, highest priority first
+	private final ConcurrentSkipListMap<Integer,Queue<Runnable>> priorityLanes = new ConcurrentSkipListMap<>(Comparator.reverseOrder());
+
+	// tasks that have been submitted, but haven't finished running on a worker yet
+	private final Object pendingLock = new Object();
+	private int numPendingTasks = 0;
+
+	public ForkJoinTaskExecutor(int numThreads, int numListenerLanes, int maxPendingTasks) {
+
+		if (numThreads <= 0) {
+			throw new IllegalArgumentException("need at least one thread");
+		}
+		if (numListenerLanes <= 0) {
+			throw new IllegalArgumentException("need at least one listener lane");
+		}
+
+		this.numThreads = numThreads;
+		this.numListenerLanes = numListenerLanes;
+		this.maxPendingTasks = maxPendingTasks;
+
+		AtomicInteger threadId = new AtomicInteger(0);
+		pool = new ForkJoinPool(
+			numThreads,
+			(p) -> {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+				thread.setDaemon(true);
+				thread.setName(String.format("forkjoin-%d-%d", poolId, threadId.getAndIncrement()));
+				return thread;
+			},
+			null,
+			true // async mode, since tasks are never joined
+		);
+
+		// use unbounded queues for the listener threads
+		// let task results pile up until the listener threads can process them
+		lanes = new ThreadPoolExecutor[numListenerLanes];
+		for (int i=0; i<numListenerLanes; i++) {
+			final int lane = i;
+			lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.DAYS, new LinkedBlockingQueue<>(), (runnable) -> {
+				Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+				thread.setDaemon(true);
+				thread.setName(String.format("forkjoin-%d-listener-%d", poolId, lane));
+				return thread;
+			});
+			lanes[i].prestartAllCoreThreads();
+		}
+	}
+
+	@Override
+	public void clean() {
+		pool.shutdown();
+		for (ThreadPoolExecutor lane : lanes) {
+			lane.shutdown();
+		}
+	}
+
+	@Override
+	public int getParallelism() {
+		return numThreads;
+	}
+
+	@Override
+	public <T> void submit(Task<T> task, TaskListener<T> listener) {
+		submit(task, listener, DefaultPriority, 0);
+	}
+
+	public <T> void submit(Task<T> task, TaskListener<T> listener, int priority) {
+		submit(task, listener, priority, 0);
+	}
+
+	/**
+	 * @param lane the listener lane, or {@link #InWorker} to run the listener on the worker thread
+	 */
+	public <T> void submit(Task<T> task, TaskListener<T> listener, int priority, int lane) {
+
+		checkLane(lane);
+		checkException();
+		reserve(1);
+		startedTask();
+
+		enqueue(priority, () -> {
+
+			// run the task
+			T result = null;
+			Throwable failure = null;
+			try {
+				result = runTask(task);
+			} catch (Throwable t) {
+				failure = t;
+			}
+			release(1);
+
+			if (failure != null) {
+				taskFailure(task, listener, failure);
+				return;
+			}
+
+			// send the result to the listener
+			final T finalResult = result;
+			try {
+				finish(lane, () -> taskSuccess(task, listener, finalResult));
+			} catch (Throwable t) {
+				// the listener lane didn't take the result, eg after clean()
+				taskFailure(task, listener, t);
+			}
+		});
+	}
+
+	public <T> void submitBatch(List<? extends Task<T>> tasks, TaskListener<T> listener) {
+		submitBatch(tasks, listener, DefaultPriority, 0);
+	}
+
+	/**
+	 * Runs the tasks one after another on the same worker thread, then sends all the results to the listener lane together.
+	 * Each task still counts separately, eg for {@link #getNumRunningTasks()}, and the listener gets called once per task.
+	 *
+	 * @param lane the listener lane, or {@link #InWorker} to run the listener on the worker thread
+	 */
+	public <T> void submitBatch(List<? extends Task<T>> tasks, TaskListener<T> listener, int priority, int lane) {
+
+		checkLane(lane);
+		checkException();
+
+		int numTasks = tasks.size();
+		if (numTasks <= 0) {
+			return;
+		}
+
+		reserve(numTasks);
+		for (int i=0; i<numTasks; i++) {
+			startedTask();
+		}
+
+		enqueue(priority, () -> {
+
+			List<T> results = new ArrayList<>(numTasks);
+			int numRun = 0;
+			try {
+
+				// run the tasks
+				for (Task<T> task : tasks) {
+					results.add(runTask(task));
+					numRun++;
+				}
+
+			} catch (Throwable t) {
+
+				// the task that failed reports the error, but the rest of the batch just gets dropped
+				taskFailure(tasks.get(numRun), listener, t);
+				for (int i=numRun + 1; i<numTasks; i++) {
+					finishedTask();
+				}
+			}
+			release(numTasks);
+
+			// send the results to the listener
+			final int numSucceeded = numRun;
+			try {
+				finish(lane, () -> {
+					for (int i=0; i<numSucceeded; i++) {
+						taskSuccess(tasks.get(i), listener, results.get(i));
+					}
+				});
+			} catch (Throwable t) {
+				// the listener lane didn't take the results, eg after clean()
+				for (int i=0; i<numSucceeded; i++) {
+					taskFailure(tasks.get(i), listener, t);
+				}
+			}
+		});
+	}
+
+	private void checkLane(int lane) {
+		if (lane != InWorker && (lane < 0 || lane >= lanes.length)) {
+			throw new IllegalArgumentException("invalid listener lane: " + lane);
+		}
+	}
+
+	private void enqueue(int priority, Runnable work) {
+
+		if (priority == DefaultPriority) {
+			pool.execute(ForkJoinTask.adapt(work));
+			return;
+		}
+
+		// every prioritized submission adds one pool task, which runs whichever prioritized work is best by then
+		priorityLanes.computeIfAbsent(priority, key -> new ConcurrentLinkedQueue<>()).add(work);
+		pool.execute(ForkJoinTask.adapt(this::runHighestPriority));
+	}
+
+	private void runHighestPriority() {
+		for (Map.Entry<Integer,Queue<Runnable>> entry : priorityLanes.entrySet()) {
+			Runnable work = entry.getValue().poll();
+			if (work != null) {
+				work.run();
+				return;
+			}
+		}
+	}
+
+	private void finish(int lane, Runnable listener) {
+		if (lane == InWorker) {
+			listener.run();
+		} else {
+			lanes[lane].execute(listener);
+		}
+	}
+
+	private void reserve(int numTasks) {
+		synchronized (pendingLock) {
+			if (maxPendingTasks > 0) {
+				// let oversized batches through when nothing else is pending, or we'd wait forever
+				while (numPendingTasks > 0 && numPendingTasks + numTasks > maxPendingTasks) {
+					try {
+						pendingLock.wait(400);
+					} catch (InterruptedException ex) {
+						throw new RuntimeException("can't submit task", ex);
+					}
+				}
+			}
+			numPendingTasks += numTasks;
+		}
+	}
+
+	private void release(int numTasks) {
+		synchronized (pendingLock) {
+			numPendingTasks -= numTasks;
+			pendingLock.notifyAll();
+		}
+	}
+}
@@ -50,6 +50,9 @@ public class Parallelism {
 		/** The number of simultaneous tasks that should be given to each GPU */
 		private int numStreamsPerGpu = 1;
 
+		/** How to run tasks that mostly block, eg on I/O or other cluster members */
+		private BlockingThreads blockingThreads = BlockingThreads.Virtual;
+
 		public Builder setNumCpus(int val) {
 			numCpus = val;
 			return this;
@@ -65,11 +68,33 @@ public class Parallelism {
 			return this;
 		}
 
+		public Builder setBlockingThreads(BlockingThreads val) {
+			blockingThreads = val;
+			return this;
+		}
+
 		public Parallelism build() {
-			return new Parallelism(numCpus, numGpus, numStreamsPerGpu);
+			return new Parallelism(numCpus, numGpus, numStreamsPerGpu, blockingThreads);
 		}
 	}
 
+	/**
+	 * How to run tasks that mostly block (eg, ConfDB flushes, score writers),
+	 * see {@link #makeBlockingTaskExecutor(int)}.
+	 * Either way, compute tasks stay on the fixed pool of {@link #numThreads} threads.
+	 */
+	public static enum BlockingThreads {
+
+		/** Each blocked task gets a platform thread from an elastic pool */
+		Platform,
+
+		/**
+		 * Each blocked task gets a virtual thread, so blocked tasks only need a handful of carrier threads.
+		 * Falls back to platform threads when the JVM doesn't have virtual threads (before Java 21).
+		 */
+		Virtual
+	}
+
 	public static enum Type {
 		
 		Cpu {
@@ -121,15 +146,21 @@ public class Parallelism {
 	public final int numThreads;
 	public final int numGpus;
 	public final int numStreamsPerGpu;
+	public final BlockingThreads blockingThreads;
 
 	public final Type type;
 
 	public static final Parallelism SingleThreaded = new Parallelism(1, 0, 0);
 
 	public Parallelism(int numThreads, int numGpus, int numStreamsPerGpu) {
+		this(numThreads, numGpus, numStreamsPerGpu, BlockingThreads.Virtual);
+	}
+
+	public Parallelism(int numThreads, int numGpus, int numStreamsPerGpu, BlockingThreads blockingThreads) {
 		this.numThreads = numThreads;
 		this.numGpus = numGpus;
 		this.numStreamsPerGpu = numStreamsPerGpu;
+		this.blockingThreads = blockingThreads;
 
 		// prefer gpus over threads
 		if (numGpus > 0) {
@@ -171,4 +202,28 @@ public class Parallelism {
 			return new TaskExecutor();
 		}
 	}
+
+	/**
+	 * Makes a TaskExecutor for tasks that mostly block (eg, on I/O or other cluster members), see {@link BlockingTaskExecutor}.
+	 * These tasks run on the threads chosen by {@link #blockingThreads}, so they don't take threads away from compute tasks.
+	 * @param maxConcurrentTasks at most this many tasks run at once, or 0 for no limit
+	 */
+	public BlockingTaskExecutor makeBlockingTaskExecutor(int maxConcurrentTasks) {
+		return new BlockingTaskExecutor(maxConcurrentTasks, blockingThreads == BlockingThreads.Virtual);
+	}
+
+	/**
+	 * Makes a TaskExecutor backed by a work-stealing thread pool, see {@link ForkJoinTaskExecutor}
+	 * @param numListenerLanes number of listener threads, tasks submitted with the plain TaskExecutor API use just the first one
+	 */
+	public TaskExecutor makeWorkStealingTaskExecutor(int numListenerLanes) {
+		if (getParallelism() > 1) {
+			return new ForkJoinTaskExecutor.Builder()
+				.setNumThreads(getParallelism())
+				.setNumListenerLanes(numListenerLanes)
+				.build();
+		} else {
+			return new TaskExecutor();
+		}
+	}
 }
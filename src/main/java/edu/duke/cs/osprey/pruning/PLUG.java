@@ -61,6 +61,9 @@ public class PLUG {
 
 	public final SimpleConfSpace confSpace;
 
+	/** linear constraints for RCs and RC pairs, shared by all the tuples that contain them, or null to calculate every tuple directly */
+	public final PLUGCache cache;
+
 	/** max num iterations of generalized Newton iteration to find a "boundary" point where the violation function is zero */
 	public int maxNumIterations = 30;
 
@@ -74,8 +77,17 @@ public class PLUG {
 	private final AtomConnectivity connectivity;
 
 	public PLUG(SimpleConfSpace confSpace) {
+		this(confSpace, new PLUGCache(confSpace));
+	}
+
+	public PLUG(SimpleConfSpace confSpace, PLUGCache cache) {
+
+		if (cache != null && !cache.matches(confSpace)) {
+			throw new IllegalArgumentException("PLUG cache doesn't match the conformation space");
+		}
 
 		this.confSpace = confSpace;
+		this.cache = cache;
 
 		// load probe
 		this.probe = new Probe();
@@ -222,21 +234,24 @@ public class PLUG {
 
 	public boolean shouldPruneTuple(RCTuple tuple, double tolerance) {
 
-		// make the molecule and get all the residue interactions for the tuple
+		// make the molecule for the tuple
 		ParametricMolecule pmol = confSpace.makeMolecule(tuple);
-
-		ResidueInteractions inters = ResInterGen.of(confSpace)
-			.addIntras(tuple)
-			.addInters(tuple)
-			.addShell(tuple)
-			.make();
-
 		Voxel voxel = new Voxel(pmol);
 
 		try {
 
 			// get linear constraints for each atom pair
-			List<LinearConstraint> constraints = getLinearConstraints(voxel, inters, tolerance);
+			List<LinearConstraint> constraints;
+			if (cache != null && isCacheable(pmol)) {
+				constraints = getCachedLinearConstraints(tuple, voxel, tolerance);
+			} else {
+				ResidueInteractions inters = ResInterGen.of(confSpace)
+					.addIntras(tuple)
+					.addInters(tuple)
+					.addShell(tuple)
+					.make();
+				constraints = getLinearConstraints(voxel, inters, tolerance);
+			}
 
 			// no constraints? don't prune
 			if (constraints.isEmpty()) {
@@ -262,6 +277,72 @@ public class PLUG {
 		}
 	}
 
+	/**
+	 * Constraints can only be shared between tuples when every DOF moves just one residue,
+	 * since then the atom pairs for an RC or RC pair don't depend on the rest of the tuple
+	 */
+	private static boolean isCacheable(ParametricMolecule pmol) {
+		for (DegreeOfFreedom dof : pmol.dofs) {
+			if (dof.getResidue() == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private List<LinearConstraint> getCachedLinearConstraints(RCTuple tuple, Voxel voxel, double tolerance) {
+
+		Map<String,Integer> dofIndices = DegreeOfFreedom.nameToIndexMap(voxel.pmol.dofs);
+		List<LinearConstraint> constraints = new ArrayList<>();
+
+		for (int i1=0; i1<tuple.size(); i1++) {
+			int pos1 = tuple.pos.get(i1);
+			int rc1 = tuple.RCs.get(i1);
+
+			// intra and shell atom pairs
+			cache.getSingle(pos1, rc1, tolerance, () -> calcConstraints(
+				new RCTuple(pos1, rc1),
+				ResInterGen.of(confSpace)
+					.addIntra(pos1)
+					.addShell(pos1)
+					.make(),
+				tolerance
+			)).addTo(constraints, dofIndices);
+
+			for (int i2=0; i2<i1; i2++) {
+				int pos2 = tuple.pos.get(i2);
+				int rc2 = tuple.RCs.get(i2);
+
+				// atom pairs between the residues
+				cache.getPair(pos1, rc1, pos2, rc2, tolerance, () -> calcConstraints(
+					new RCTuple(pos2, rc2, pos1, rc1),
+					ResInterGen.of(confSpace)
+						.addInter(pos1, pos2)
+						.make(),
+					tolerance
+				)).addTo(constraints, dofIndices);
+			}
+		}
+
+		return constraints;
+	}
+
+	private PLUGCache.Constraints calcConstraints(RCTuple tuple, ResidueInteractions inters, double tolerance) {
+
+		Voxel voxel = new Voxel(confSpace.makeMolecule(tuple));
+
+		String[] dofNames = new String[voxel.numDofs];
+		for (int d=0; d<voxel.numDofs; d++) {
+			dofNames[d] = voxel.getDof(d).getName();
+		}
+
+		try {
+			return PLUGCache.Constraints.of(dofNames, getLinearConstraints(voxel, inters, tolerance));
+		} catch (NoFeasibleSolutionException ex) {
+			return PLUGCache.Constraints.infeasible();
+		}
+	}
+
 	private class AtomVoxel {
 
 		final Atom atom;
@@ -430,6 +511,11 @@ public class PLUG {
 		return constraints;
 	}
 
+	/** the linear constraints for the atom pairs in the interactions, over all the DOFs of the tuple's voxel */
+	public List<LinearConstraint> getLinearConstraints(RCTuple tuple, ResidueInteractions inters, double tolerance) {
+		return getLinearConstraints(new Voxel(confSpace.makeMolecule(tuple)), inters, tolerance);
+	}
+
 	public LinearConstraint getLinearConstraint(AtomPairVoxel voxel, double tolerance) {
 
 		BoundaryPoint p = findBoundaryNewton(voxel, tolerance);
@@ -461,11 +547,12 @@ public class PLUG {
 		//    x* is the boundary point where the atom pair overlap is approx 0
 		//    g is the gradient at x*
 		// ie, the tangent hyperplane (d-1 linear subspace) to the isosurface at this point in the violation function
-		RealVector u = new ArrayRealVector(n);
+		// the boundary point only has the atom pair's dofs, so map them back to the voxel's dofs for the LP
+		RealVector u = new ArrayRealVector(voxel.voxel.numDofs);
 		double w = 0.0;
 		for (int d=0; d<n; d++) {
 			double g = -p.gradient[d];
-			u.setEntry(d, g);
+			u.setEntry(voxel.dofIndices.get(d), g);
 			w += p.dofValues[d]*g;
 		}
 
@@ -0,0 +1,312 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.pruning;
+
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.structure.Residue;
+import edu.duke.cs.osprey.tools.ObjectIO;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
+import org.apache.commons.math3.optim.linear.LinearConstraint;
+import org.apache.commons.math3.optim.linear.NoFeasibleSolutionException;
+import org.apache.commons.math3.optim.linear.Relationship;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+
+/**
+ * Remembers the PLUG linear constraints for single RCs and RC pairs,
+ * so pruning higher-order tuples doesn't have to find the same atom pair boundary points again.
+ *
+ * The constraints for an RC come from its intra and shell atom pairs,
+ * and the constraints for an RC pair come from the atom pairs between the two residues,
+ * so the constraints for any tuple are the union of the constraints for its RCs and RC pairs.
+ * Constraints are stored over DOF names, so they can be mapped into any tuple's voxel.
+ *
+ * The cache is safe to use from many threads at once, and stops taking new entries
+ * once it holds {@link #maxNumEntries}, rather than evicting old ones,
+ * since singles are looked up far more often than any one pair.
+ *
+ * The constraints also depend on the Newton settings in {@link PLUG},
+ * so don't share a cache between PLUG instances with different settings.
+ */
+public class PLUGCache implements Serializable {
+
+	private static final long serialVersionUID = 2519371820958813263L;
+
+	public static final int DefaultMaxNumEntries = 1000000;
+
+	/** linear constraints u.x >= w over named DOFs, for one RC or RC pair */
+	public static class Constraints implements Serializable {
+
+		private static final long serialVersionUID = -6107438962117201473L;
+
+		/** null if the constraints are always violated in the voxel */
+		public final String[] dofNames;
+		public final double[][] u;
+		public final double[] w;
+
+		private Constraints(String[] dofNames, double[][] u, double[] w) {
+			this.dofNames = dofNames;
+			this.u = u;
+			this.w = w;
+		}
+
+		public static Constraints infeasible() {
+			return new Constraints(null, null, null);
+		}
+
+		public static Constraints of(String[] dofNames, List<LinearConstraint> constraints) {
+			double[][] u = new double[constraints.size()][];
+			double[] w = new double[constraints.size()];
+			for (int i=0; i<constraints.size(); i++) {
+				LinearConstraint constraint = constraints.get(i);
+				if (constraint.getRelationship() != Relationship.GEQ) {
+					throw new IllegalArgumentException("PLUG constraints should all be >=, not " + constraint.getRelationship());
+				}
+				u[i] = constraint.getCoefficients().toArray();
+				w[i] = constraint.getValue();
+			}
+			return new Constraints(dofNames, u, w);
+		}
+
+		public boolean isInfeasible() {
+			return dofNames == null;
+		}
+
+		public int size() {
+			return isInfeasible() ? 0 : w.length;
+		}
+
+		/**
+		 * Adds these constraints to the list, mapped into the DOF indices of another voxel
+		 *
+		 * @throws NoFeasibleSolutionException if the constraints are always violated
+		 */
+		public void addTo(List<LinearConstraint> constraints, Map<String,Integer> dofIndices) {
+
+			if (isInfeasible()) {
+				throw new NoFeasibleSolutionException();
+			}
+
+			// map our dofs to the other voxel's dofs
+			int[] indices = new int[dofNames.length];
+			for (int d=0; d<dofNames.length; d++) {
+				Integer index = dofIndices.get(dofNames[d]);
+				if (index == null) {
+					throw new IllegalArgumentException("voxel has no DOF named " + dofNames[d]);
+				}
+				indices[d] = index;
+			}
+
+			for (int i=0; i<w.length; i++) {
+				RealVector v = new ArrayRealVector(dofIndices.size());
+				for (int d=0; d<dofNames.length; d++) {
+					v.setEntry(indices[d], u[i][d]);
+				}
+				constraints.add(new LinearConstraint(v, Relationship.GEQ, w[i]));
+			}
+		}
+	}
+
+	private static class Key implements Serializable {
+
+		private static final long serialVersionUID = 4682094386711263908L;
+
+		final double tolerance;
+		final int pos1;
+		final int rc1;
+		final int pos2;
+		final int rc2;
+
+		Key(double tolerance, int pos1, int rc1, int pos2, int rc2) {
+			this.tolerance = tolerance;
+			// keep pairs in a canonical order
+			if (pos2 >= 0 && pos2 < pos1) {
+				this.pos1 = pos2;
+				this.rc1 = rc2;
+				this.pos2 = pos1;
+				this.rc2 = rc1;
+			} else {
+				this.pos1 = pos1;
+				this.rc1 = rc1;
+				this.pos2 = pos2;
+				this.rc2 = rc2;
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			int h = Double.hashCode(tolerance);
+			h = h*31 + pos1;
+			h = h*31 + rc1;
+			h = h*31 + pos2;
+			h = h*31 + rc2;
+			return h;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key && equals((Key)other);
+		}
+
+		public boolean equals(Key other) {
+			return this.tolerance == other.tolerance
+				&& this.pos1 == other.pos1
+				&& this.rc1 == other.rc1
+				&& this.pos2 == other.pos2
+				&& this.rc2 == other.rc2;
+		}
+	}
+
+	public final int maxNumEntries;
+
+	private final int[] numConfAtPos;
+	private final int confSpaceHash;
+	private final ConcurrentHashMap<Key,Constraints> entries = new ConcurrentHashMap<>();
+
+	public PLUGCache(SimpleConfSpace confSpace) {
+		this(confSpace, DefaultMaxNumEntries);
+	}
+
+	public PLUGCache(SimpleConfSpace confSpace, int maxNumEntries) {
+		this.maxNumEntries = maxNumEntries;
+		numConfAtPos = new int[confSpace.numPos()];
+		for (int pos=0; pos<numConfAtPos.length; pos++) {
+			numConfAtPos[pos] = confSpace.numConf(pos);
+		}
+		confSpaceHash = hashConfSpace(confSpace);
+	}
+
+	/**
+	 * Hashes everything the PLUG constraints depend on: the residue conformations and their voxels,
+	 * the shell residues, and the atom coordinates of the strands.
+	 * RC counts alone can't tell apart two conformation spaces with different residues or rotamers.
+	 */
+	private static int hashConfSpace(SimpleConfSpace confSpace) {
+
+		int h = 0;
+
+		for (SimpleConfSpace.Position pos : confSpace.positions) {
+			h = h*31 + pos.resNum.hashCode();
+			for (SimpleConfSpace.ResidueConf rc : pos.resConfs) {
+				h = h*31 + rc.template.name.hashCode();
+				h = h*31 + rc.type.hashCode();
+				h = h*31 + (rc.rotamerIndex != null ? rc.rotamerIndex : -1);
+				// iterate the voxel in name order, so the hash doesn't depend on HashMap order
+				for (Map.Entry<String,double[]> entry : new TreeMap<>(rc.dofBounds).entrySet()) {
+					h = h*31 + entry.getKey().hashCode();
+					h = h*31 + Arrays.hashCode(entry.getValue());
+				}
+			}
+		}
+
+		h = h*31 + new TreeSet<>(confSpace.shellResNumbers).hashCode();
+
+		for (Strand strand : confSpace.strands) {
+			for (Residue res : strand.mol.residues) {
+				h = h*31 + Arrays.hashCode(res.coords);
+			}
+		}
+
+		return h;
+	}
+
+	public boolean matches(SimpleConfSpace confSpace) {
+
+		if (confSpace.numPos() != numConfAtPos.length) {
+			return false;
+		}
+
+		for (int pos=0; pos<numConfAtPos.length; pos++) {
+			if (confSpace.numConf(pos) != numConfAtPos[pos]) {
+				return false;
+			}
+		}
+
+		return hashConfSpace(confSpace) == confSpaceHash;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public Constraints getSingle(int pos, int rc, double tolerance, Supplier<Constraints> calculator) {
+		return get(new Key(tolerance, pos, rc, -1, -1), calculator);
+	}
+
+	public Constraints getPair(int pos1, int rc1, int pos2, int rc2, double tolerance, Supplier<Constraints> calculator) {
+		return get(new Key(tolerance, pos1, rc1, pos2, rc2), calculator);
+	}
+
+	private Constraints get(Key key, Supplier<Constraints> calculator) {
+
+		Constraints constraints = entries.get(key);
+		if (constraints != null) {
+			return constraints;
+		}
+
+		// calculate outside of the map, so other threads aren't blocked on a slow calculation
+		// two threads might race to calculate the same entry, but they'll get the same answer
+		constraints = calculator.get();
+
+		if (entries.size() < maxNumEntries) {
+			Constraints existing = entries.putIfAbsent(key, constraints);
+			if (existing != null) {
+				return existing;
+			}
+		}
+
+		return constraints;
+	}
+
+	public void write(File file) {
+		try {
+			ObjectIO.write(this, file);
+			System.out.println(String.format("wrote PLUG cache with %d entries to file: %s", size(), file.getAbsolutePath()));
+		} catch (ObjectIO.CantWriteException ex) {
+			ex.printStackTrace(System.out);
+			System.out.println("WARNING: can't write PLUG cache, will have to be created again next time");
+		}
+	}
+}
@@ -0,0 +1,722 @@
+/*
+** This file is part of OSPREY 3.0
+**
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+**
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+**
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+**
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+**
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+**
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+package edu.duke.cs.osprey.pruning;
+
+import edu.duke.cs.osprey.confspace.RCTuple;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.TupleTree;
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+import edu.duke.cs.osprey.tools.Progress;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Goldstein DEE over packed data structures.
+ *
+ * Same pruning criteria as {@link SimpleDEE}, but the unpruned witness RCs for each (pos, rc, witness pos)
+ * are packed into 64-bit words, and the pair energies are copied into one contiguous block per position pair,
+ * so the min-over-witnesses loops walk set bits and flat arrays instead of doing a
+ * {@link PruningMatrix} lookup and two {@link EnergyMatrix} lookups per witness.
+ * Pruned triples are read out of the pruning matrix into bit masks once per position triple too.
+ *
+ * Work is split across threads by position (singles) or position pair (pairs and triples).
+ * When running on more than one thread, prunings found in one pass are applied when the pass finishes.
+ * When running on one thread, prunings are applied immediately, exactly like {@link SimpleDEE}.
+ */
+public class PackedDEE extends SimpleDEE {
+
+	private static final int WordBits = 64;
+
+	private final int numPos;
+	private final int[] numRCs;
+	private final int[] numWords;
+	private final String[][] templateNames;
+
+	// energies, copied out of the energy matrix
+	private final double[][] oneBody; // [pos][rc]
+	private final double[][][] pairs; // [pos1][pos2][rc1*numRCs[pos2] + rc2], for both orders of pos1,pos2
+
+	private Masks masks = null;
+	private Masks competitorMasks = null;
+
+	/** bit masks of unpruned singles and pairs */
+	private class Masks {
+
+		final long[][] singles; // [pos][word]
+		final long[][][] pairs; // [pos1][pos2][rc1*numWords[pos2] + word]
+
+		Masks(PruningMatrix pmat) {
+
+			singles = new long[numPos][];
+			for (int pos=0; pos<numPos; pos++) {
+				singles[pos] = new long[numWords[pos]];
+				for (int rc=0; rc<numRCs[pos]; rc++) {
+					if (!pmat.isSinglePruned(pos, rc)) {
+						setBit(singles[pos], 0, rc);
+					}
+				}
+			}
+
+			pairs = new long[numPos][numPos][];
+			for (int pos1=0; pos1<numPos; pos1++) {
+				for (int pos2=0; pos2<numPos; pos2++) {
+					if (pos1 == pos2) {
+						continue;
+					}
+					long[] words = new long[numRCs[pos1]*numWords[pos2]];
+					for (int rc1=0; rc1<numRCs[pos1]; rc1++) {
+						for (int rc2=0; rc2<numRCs[pos2]; rc2++) {
+							if (!pmat.isPairPruned(pos1, rc1, pos2, rc2)) {
+								setBit(words, rc1*numWords[pos2], rc2);
+							}
+						}
+					}
+					pairs[pos1][pos2] = words;
+				}
+			}
+		}
+
+		boolean isSingleUnpruned(int pos, int rc) {
+			return getBit(singles[pos], 0, rc);
+		}
+
+		boolean isPairUnpruned(int pos1, int rc1, int pos2, int rc2) {
+			return getBit(pairs[pos1][pos2], rc1*numWords[pos2], rc2);
+		}
+
+		void pruneSingle(int pos, int rc) {
+			clearBit(singles[pos], 0, rc);
+			for (int pos2=0; pos2<numPos; pos2++) {
+				if (pos2 == pos) {
+					continue;
+				}
+				for (int i=0; i<numWords[pos2]; i++) {
+					pairs[pos][pos2][rc*numWords[pos2] + i] = 0;
+				}
+				for (int rc2=0; rc2<numRCs[pos2]; rc2++) {
+					clearBit(pairs[pos2][pos], rc2*numWords[pos], rc);
+				}
+			}
+		}
+
+		void prunePair(int pos1, int rc1, int pos2, int rc2) {
+			clearBit(pairs[pos1][pos2], rc1*numWords[pos2], rc2);
+			clearBit(pairs[pos2][pos1], rc2*numWords[pos1], rc1);
+		}
+	}
+
+	private static boolean getBit(long[] words, int offset, int i) {
+		return (words[offset + i/WordBits] & (1L << (i % WordBits))) != 0;
+	}
+
+	private static void setBit(long[] words, int offset, int i) {
+		words[offset + i/WordBits] |= 1L << (i % WordBits);
+	}
+
+	private static void clearBit(long[] words, int offset, int i) {
+		words[offset + i/WordBits] &= ~(1L << (i % WordBits));
+	}
+
+	public PackedDEE(SimpleConfSpace confSpace, EnergyMatrix emat, PruningMatrix pmat) {
+		this(confSpace, emat, pmat, pmat);
+	}
+
+	public PackedDEE(SimpleConfSpace confSpace, EnergyMatrix emat, PruningMatrix pmat, PruningMatrix competitors) {
+		super(confSpace, emat, pmat, competitors);
+
+		numPos = confSpace.positions.size();
+		numRCs = new int[numPos];
+		numWords = new int[numPos];
+		templateNames = new String[numPos][];
+		for (int pos=0; pos<numPos; pos++) {
+			SimpleConfSpace.Position confPos = confSpace.positions.get(pos);
+			numRCs[pos] = confPos.resConfs.size();
+			numWords[pos] = (numRCs[pos] + WordBits - 1)/WordBits;
+			templateNames[pos] = new String[numRCs[pos]];
+			for (int rc=0; rc<numRCs[pos]; rc++) {
+				templateNames[pos][rc] = confPos.resConfs.get(rc).template.name;
+			}
+		}
+
+		oneBody = new double[numPos][];
+		for (int pos=0; pos<numPos; pos++) {
+			oneBody[pos] = new double[numRCs[pos]];
+			for (int rc=0; rc<numRCs[pos]; rc++) {
+				oneBody[pos][rc] = emat.getOneBody(pos, rc);
+			}
+		}
+
+		pairs = new double[numPos][numPos][];
+		for (int pos1=0; pos1<numPos; pos1++) {
+			for (int pos2=0; pos2<numPos; pos2++) {
+				if (pos1 == pos2) {
+					continue;
+				}
+				double[] block = new double[numRCs[pos1]*numRCs[pos2]];
+				for (int rc1=0; rc1<numRCs[pos1]; rc1++) {
+					for (int rc2=0; rc2<numRCs[pos2]; rc2++) {
+						block[rc1*numRCs[pos2] + rc2] = emat.getPairwise(pos1, rc1, pos2, rc2);
+					}
+				}
+				pairs[pos1][pos2] = block;
+			}
+		}
+	}
+
+	/** re-read the pruning matrices, since other pruners could have changed them since our last pass */
+	private void updateMasks() {
+		masks = new Masks(pmat);
+		if (competitors == pmat) {
+			// competitors see our prunings as we make them, just like SimpleDEE
+			competitorMasks = masks;
+		} else {
+			competitorMasks = new Masks(competitors);
+		}
+	}
+
+	/**
+	 * bit mask of the pruned triples in the matrix at pos1 > pos2 > pos3,
+	 * indexed by {@link #tripleIndex}, so the Goldstein loops don't need a tuple lookup per triple
+	 */
+	private long[] prunedTriples(PruningMatrix pmat, int pos1, int pos2, int pos3) {
+
+		long[] words = new long[(numRCs[pos1]*numRCs[pos2]*numRCs[pos3] + WordBits - 1)/WordBits];
+		if (!pmat.hasHigherOrderTuples()) {
+			return words;
+		}
+
+		// triples are stored in the tuple tree of their two lowest positions, in sorted order
+		RCTuple tuple = new RCTuple(pos3, 0, pos2, 0, pos1, 0);
+		for (int rc3=0; rc3<numRCs[pos3]; rc3++) {
+			tuple.RCs.set(0, rc3);
+			for (int rc2=0; rc2<numRCs[pos2]; rc2++) {
+				TupleTree<Boolean> tree = pmat.getHigherOrderTuples(pos3, rc3, pos2, rc2);
+				if (tree == null) {
+					continue;
+				}
+				tuple.RCs.set(1, rc2);
+				for (int rc1=0; rc1<numRCs[pos1]; rc1++) {
+					tuple.RCs.set(2, rc1);
+					Boolean val = tree.get(tuple);
+					if (val != null && val) {
+						setBit(words, 0, tripleIndex(pos2, pos3, rc1, rc2, rc3));
+					}
+				}
+			}
+		}
+
+		return words;
+	}
+
+	private int tripleIndex(int pos2, int pos3, int rc1, int rc2, int rc3) {
+		return (rc1*numRCs[pos2] + rc2)*numRCs[pos3] + rc3;
+	}
+
+	private boolean typesMatch(int pos, int candidateRc, int competitorRc) {
+		return templateNames[pos][candidateRc].equals(templateNames[pos][competitorRc]);
+	}
+
+	/**
+	 * min over unpruned witness RCs of the candidate-competitor energy difference
+	 * @param witnessMask unpruned witnesses, in words [maskOffset, maskOffset + numWords[witnessPos])
+	 */
+	private double minWitnessDiff(long[] witnessMask, int maskOffset, int witnessPos, WitnessDiff diff) {
+		double minEnergyDiff = Double.POSITIVE_INFINITY;
+		for (int i=0; i<numWords[witnessPos]; i++) {
+			long bits = witnessMask[maskOffset + i];
+			while (bits != 0) {
+				int witnessRc = i*WordBits + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				minEnergyDiff = Math.min(minEnergyDiff, diff.calc(witnessRc));
+			}
+		}
+		return minEnergyDiff;
+	}
+
+	private interface WitnessDiff {
+		double calc(int witnessRc);
+	}
+
+	private interface Pruner {
+		void prune(int[] tuple);
+	}
+
+	private interface WorkUnit {
+		void run(Pruner pruner);
+	}
+
+	private void applyPrune(int[] tuple) {
+		switch (tuple.length) {
+			case 2:
+				pmat.pruneSingle(tuple[0], tuple[1]);
+				masks.pruneSingle(tuple[0], tuple[1]);
+			break;
+			case 4:
+				pmat.prunePair(tuple[0], tuple[1], tuple[2], tuple[3]);
+				masks.prunePair(tuple[0], tuple[1], tuple[2], tuple[3]);
+			break;
+			case 6:
+				// triples don't show up in the witness masks
+				pmat.pruneTriple(tuple[0], tuple[1], tuple[2], tuple[3], tuple[4], tuple[5]);
+			break;
+			default:
+				throw new IllegalArgumentException("unsupported tuple size: " + tuple.length);
+		}
+	}
+
+	private void runUnits(List<WorkUnit> units, Parallelism parallelism, boolean showProgress) {
+
+		Progress progress = showProgress ? new Progress(units.size()) : null;
+
+		if (parallelism.getParallelism() <= 1) {
+			for (WorkUnit unit : units) {
+				unit.run(this::applyPrune);
+				if (progress != null) {
+					progress.incrementProgress();
+				}
+			}
+			return;
+		}
+
+		// the task threads only read the masks, so collect the prunings and apply them at the end
+		List<int[]> prunedTuples = new ArrayList<>();
+		try (TaskExecutor tasks = parallelism.makeTaskExecutor()) {
+			for (WorkUnit unit : units) {
+				tasks.submit(
+					() -> {
+						List<int[]> out = new ArrayList<>();
+						unit.run(out::add);
+						return out;
+					},
+					(out) -> {
+						prunedTuples.addAll(out);
+						if (progress != null) {
+							progress.incrementProgress();
+						}
+					}
+				);
+			}
+			tasks.waitForFinish();
+		}
+		for (int[] tuple : prunedTuples) {
+			applyPrune(tuple);
+		}
+	}
+
+	@Override
+	public void pruneSinglesGoldstein(double energyDiffThreshold, boolean typeDependent) {
+		pruneSinglesGoldstein(energyDiffThreshold, typeDependent, Parallelism.makeCpu(1));
+	}
+
+	public void pruneSinglesGoldstein(double energyDiffThreshold, boolean typeDependent, Parallelism parallelism) {
+
+		updateMasks();
+
+		List<WorkUnit> units = new ArrayList<>();
+		for (int pos=0; pos<numPos; pos++) {
+			final int candidatePos = pos;
+			units.add((pruner) -> {
+				for (int candidateRc=0; candidateRc<numRCs[candidatePos]; candidateRc++) {
+
+					if (!masks.isSingleUnpruned(candidatePos, candidateRc)) {
+						continue;
+					}
+
+					for (int competitorRc=0; competitorRc<numRCs[candidatePos]; competitorRc++) {
+
+						if (!competitorMasks.isSingleUnpruned(candidatePos, competitorRc)) {
+							continue;
+						}
+
+						// don't compete against self
+						if (competitorRc == candidateRc) {
+							continue;
+						}
+
+						// skip unmatched types if needed
+						if (typeDependent && !typesMatch(candidatePos, candidateRc, competitorRc)) {
+							continue;
+						}
+
+						// start with singles energy diff
+						double energyDiffSum = 0
+							+ oneBody[candidatePos][candidateRc]
+							- oneBody[candidatePos][competitorRc];
+
+						// sum over witness positions
+						for (int witnessPos=0; witnessPos<numPos; witnessPos++) {
+
+							// witness pos can't be candidate pos
+							if (witnessPos == candidatePos) {
+								continue;
+							}
+
+							double[] block = pairs[candidatePos][witnessPos];
+							int candidateOffset = candidateRc*numRCs[witnessPos];
+							int competitorOffset = competitorRc*numRCs[witnessPos];
+							energyDiffSum += minWitnessDiff(
+								masks.pairs[candidatePos][witnessPos], candidateRc*numWords[witnessPos], witnessPos,
+								(witnessRc) -> 0
+									+ block[candidateOffset + witnessRc]
+									- block[competitorOffset + witnessRc]
+							);
+							if (energyDiffSum == Double.POSITIVE_INFINITY) {
+								break;
+							}
+						}
+
+						// if we found a suitable competitor, prune the candidate
+						if (energyDiffSum > energyDiffThreshold) {
+							pruner.prune(new int[] { candidatePos, candidateRc });
+							break;
+						}
+					}
+				}
+			});
+		}
+
+		// singles are so fast, we don't need to bother with progress
+		runUnits(units, parallelism, false);
+	}
+
+	@Override
+	public void prunePairsGoldstein(double energyDiffThreshold, boolean typeDependent, Parallelism parallelism) {
+
+		updateMasks();
+
+		List<WorkUnit> units = new ArrayList<>();
+		for (int pos1=1; pos1<numPos; pos1++) {
+			for (int pos2=0; pos2<pos1; pos2++) {
+				final int candidatePos1 = pos1;
+				final int candidatePos2 = pos2;
+				units.add((pruner) -> {
+
+					// each witness needs to be unpruned with both candidate RCs
+					long[][] witnessMasks = new long[numPos][];
+					for (int witnessPos=0; witnessPos<numPos; witnessPos++) {
+						witnessMasks[witnessPos] = new long[numWords[witnessPos]];
+					}
+
+					for (int candidateRc1=0; candidateRc1<numRCs[candidatePos1]; candidateRc1++) {
+						for (int candidateRc2=0; candidateRc2<numRCs[candidatePos2]; candidateRc2++) {
+
+							if (!masks.isPairUnpruned(candidatePos1, candidateRc1, candidatePos2, candidateRc2)) {
+								continue;
+							}
+
+							for (int witnessPos=0; witnessPos<numPos; witnessPos++) {
+								if (witnessPos == candidatePos1 || witnessPos == candidatePos2) {
+									continue;
+								}
+								long[] mask1 = masks.pairs[candidatePos1][witnessPos];
+								long[] mask2 = masks.pairs[candidatePos2][witnessPos];
+								int offset1 = candidateRc1*numWords[witnessPos];
+								int offset2 = candidateRc2*numWords[witnessPos];
+								for (int i=0; i<numWords[witnessPos]; i++) {
+									witnessMasks[witnessPos][i] = mask1[offset1 + i] & mask2[offset2 + i];
+								}
+							}
+
+							if (hasPairCompetitor(
+								candidatePos1, candidateRc1, candidatePos2, candidateRc2,
+								witnessMasks, energyDiffThreshold, typeDependent
+							)) {
+								pruner.prune(new int[] { candidatePos1, candidateRc1, candidatePos2, candidateRc2 });
+							}
+						}
+					}
+				});
+			}
+		}
+
+		runUnits(units, parallelism, true);
+	}
+
+	private boolean hasPairCompetitor(int candidatePos1, int candidateRc1, int candidatePos2, int candidateRc2, long[][] witnessMasks, double energyDiffThreshold, boolean typeDependent) {
+
+		for (int competitorRc1=0; competitorRc1<numRCs[candidatePos1]; competitorRc1++) {
+			for (int competitorRc2=0; competitorRc2<numRCs[candidatePos2]; competitorRc2++) {
+
+				if (!competitorMasks.isPairUnpruned(candidatePos1, competitorRc1, candidatePos2, competitorRc2)) {
+					continue;
+				}
+
+				// don't compete against self
+				if (competitorRc1 == candidateRc1 && competitorRc2 == candidateRc2) {
+					continue;
+				}
+
+				// skip unmatched types if needed
+				if (typeDependent) {
+					if (!typesMatch(candidatePos1, candidateRc1, competitorRc1)
+						|| !typesMatch(candidatePos2, candidateRc2, competitorRc2)) {
+						continue;
+					}
+				}
+
+				// start with fragment energy diff
+				double[] block12 = pairs[candidatePos1][candidatePos2];
+				double energyDiffSum = 0
+					+ oneBody[candidatePos1][candidateRc1]
+					+ oneBody[candidatePos2][candidateRc2]
+					+ block12[candidateRc1*numRCs[candidatePos2] + candidateRc2]
+					- oneBody[candidatePos1][competitorRc1]
+					- oneBody[candidatePos2][competitorRc2]
+					- block12[competitorRc1*numRCs[candidatePos2] + competitorRc2];
+
+				// sum over witness positions
+				for (int witnessPos=0; witnessPos<numPos; witnessPos++) {
+
+					// witness pos can't be candidate pos
+					if (witnessPos == candidatePos1 || witnessPos == candidatePos2) {
+						continue;
+					}
+
+					double[] block1 = pairs[candidatePos1][witnessPos];
+					double[] block2 = pairs[candidatePos2][witnessPos];
+					int candidateOffset1 = candidateRc1*numRCs[witnessPos];
+					int candidateOffset2 = candidateRc2*numRCs[witnessPos];
+					int competitorOffset1 = competitorRc1*numRCs[witnessPos];
+					int competitorOffset2 = competitorRc2*numRCs[witnessPos];
+					energyDiffSum += minWitnessDiff(
+						witnessMasks[witnessPos], 0, witnessPos,
+						(witnessRc) -> 0
+							+ block1[candidateOffset1 + witnessRc]
+							+ block2[candidateOffset2 + witnessRc]
+							- block1[competitorOffset1 + witnessRc]
+							- block2[competitorOffset2 + witnessRc]
+					);
+					if (energyDiffSum == Double.POSITIVE_INFINITY) {
+						break;
+					}
+				}
+
+				if (energyDiffSum > energyDiffThreshold) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	@Override
+	public void pruneTriplesGoldstein(double energyDiffThreshold, boolean typeDependent, Parallelism parallelism) {
+
+		updateMasks();
+
+		// on one thread, prunings are applied as soon as we find them, so the triple masks should see them too
+		boolean pruneImmediately = parallelism.getParallelism() <= 1;
+
+		List<WorkUnit> units = new ArrayList<>();
+		for (int pos1=2; pos1<numPos; pos1++) {
+			for (int pos2=1; pos2<pos1; pos2++) {
+				final int candidatePos1 = pos1;
+				final int candidatePos2 = pos2;
+				units.add((pruner) -> {
+
+					long[][] witnessMasks = new long[numPos][];
+					for (int witnessPos=0; witnessPos<numPos; witnessPos++) {
+						witnessMasks[witnessPos] = new long[numWords[witnessPos]];
+					}
+
+					for (int candidatePos3=0; candidatePos3<candidatePos2; candidatePos3++) {
+
+						// only this unit touches triples at these positions, so a snapshot of the pruned triples stays current
+						long[] prunedTriples = prunedTriples(pmat, candidatePos1, candidatePos2, candidatePos3);
+						long[] competitorPrunedTriples = competitors == pmat
+							? prunedTriples
+							: prunedTriples(competitors, candidatePos1, candidatePos2, candidatePos3);
+
+						// the triple competitors only depend on the positions, so find them once
+						List<int[]> competitorRCs = new ArrayList<>();
+						for (int rc1=0; rc1<numRCs[candidatePos1]; rc1++) {
+							for (int rc2=0; rc2<numRCs[candidatePos2]; rc2++) {
+								if (!competitorMasks.isPairUnpruned(candidatePos1, rc1, candidatePos2, rc2)) {
+									continue;
+								}
+								for (int rc3=0; rc3<numRCs[candidatePos3]; rc3++) {
+									if (!competitorMasks.isPairUnpruned(candidatePos1, rc1, candidatePos3, rc3)
+										|| !competitorMasks.isPairUnpruned(candidatePos2, rc2, candidatePos3, rc3)
+										|| getBit(competitorPrunedTriples, 0, tripleIndex(candidatePos2, candidatePos3, rc1, rc2, rc3))) {
+										continue;
+									}
+									competitorRCs.add(new int[] { rc1, rc2, rc3 });
+								}
+							}
+						}
+
+						for (int candidateRc1=0; candidateRc1<numRCs[candidatePos1]; candidateRc1++) {
+							for (int candidateRc2=0; candidateRc2<numRCs[candidatePos2]; candidateRc2++) {
+
+								if (!masks.isPairUnpruned(candidatePos1, candidateRc1, candidatePos2, candidateRc2)) {
+									continue;
+								}
+
+								for (int candidateRc3=0; candidateRc3<numRCs[candidatePos3]; candidateRc3++) {
+
+									if (!masks.isPairUnpruned(candidatePos1, candidateRc1, candidatePos3, candidateRc3)
+										|| !masks.isPairUnpruned(candidatePos2, candidateRc2, candidatePos3, candidateRc3)
+										|| getBit(prunedTriples, 0, tripleIndex(candidatePos2, candidatePos3, candidateRc1, candidateRc2, candidateRc3))) {
+										continue;
+									}
+
+									for (int witnessPos=0; witnessPos<numPos; witnessPos++) {
+										if (witnessPos == candidatePos1 || witnessPos == candidatePos2 || witnessPos == candidatePos3) {
+											continue;
+										}
+										long[] mask1 = masks.pairs[candidatePos1][witnessPos];
+										long[] mask2 = masks.pairs[candidatePos2][witnessPos];
+										long[] mask3 = masks.pairs[candidatePos3][witnessPos];
+										int offset1 = candidateRc1*numWords[witnessPos];
+										int offset2 = candidateRc2*numWords[witnessPos];
+										int offset3 = candidateRc3*numWords[witnessPos];
+										for (int i=0; i<numWords[witnessPos]; i++) {
+											witnessMasks[witnessPos][i] = mask1[offset1 + i] & mask2[offset2 + i] & mask3[offset3 + i];
+										}
+									}
+
+									int[] candidatePos = { candidatePos1, candidatePos2, candidatePos3 };
+									int[] candidateRCs = { candidateRc1, candidateRc2, candidateRc3 };
+									if (hasTripleCompetitor(candidatePos, candidateRCs, competitorRCs, competitorPrunedTriples, witnessMasks, energyDiffThreshold, typeDependent)) {
+										pruner.prune(new int[] { candidatePos1, candidateRc1, candidatePos2, candidateRc2, candidatePos3, candidateRc3 });
+										if (pruneImmediately) {
+											setBit(prunedTriples, 0, tripleIndex(candidatePos2, candidatePos3, candidateRc1, candidateRc2, candidateRc3));
+										}
+									}
+								}
+							}
+						}
+					}
+				});
+			}
+		}
+
+		runUnits(units, parallelism, true);
+	}
+
+	private boolean hasTripleCompetitor(int[] candidatePos, int[] candidateRCs, List<int[]> competitorRCs, long[] competitorPrunedTriples, long[][] witnessMasks, double energyDiffThreshold, boolean typeDependent) {
+
+		int pos1 = candidatePos[0];
+		int pos2 = candidatePos[1];
+		int pos3 = candidatePos[2];
+		int candidateRc1 = candidateRCs[0];
+		int candidateRc2 = candidateRCs[1];
+		int candidateRc3 = candidateRCs[2];
+
+		for (int[] competitor : competitorRCs) {
+			int competitorRc1 = competitor[0];
+			int competitorRc2 = competitor[1];
+			int competitorRc3 = competitor[2];
+
+			// don't compete against self
+			if (competitorRc1 == candidateRc1 && competitorRc2 == candidateRc2 && competitorRc3 == candidateRc3) {
+				continue;
+			}
+
+			// when we're our own competitors, competitor triples can get pruned while we work
+			if (getBit(competitorPrunedTriples, 0, tripleIndex(pos2, pos3, competitorRc1, competitorRc2, competitorRc3))) {
+				continue;
+			}
+
+			// skip unmatched types if needed
+			if (typeDependent) {
+				if (!typesMatch(pos1, candidateRc1, competitorRc1)
+					|| !typesMatch(pos2, candidateRc2, competitorRc2)
+					|| !typesMatch(pos3, candidateRc3, competitorRc3)) {
+					continue;
+				}
+			}
+
+			// start with fragment energy diff
+			double[] block12 = pairs[pos1][pos2];
+			double[] block13 = pairs[pos1][pos3];
+			double[] block23 = pairs[pos2][pos3];
+			double energyDiffSum = 0
+				+ oneBody[pos1][candidateRc1]
+				+ oneBody[pos2][candidateRc2]
+				+ oneBody[pos3][candidateRc3]
+				+ block12[candidateRc1*numRCs[pos2] + candidateRc2]
+				+ block13[candidateRc1*numRCs[pos3] + candidateRc3]
+				+ block23[candidateRc2*numRCs[pos3] + candidateRc3]
+				- oneBody[pos1][competitorRc1]
+				- oneBody[pos2][competitorRc2]
+				- oneBody[pos3][competitorRc3]
+				- block12[competitorRc1*numRCs[pos2] + competitorRc2]
+				- block13[competitorRc1*numRCs[pos3] + competitorRc3]
+				- block23[competitorRc2*numRCs[pos3] + competitorRc3];
+
+			// sum over witness positions
+			for (int witnessPos=0; witnessPos<numPos; witnessPos++) {
+
+				// witness pos can't be candidate pos
+				if (witnessPos == pos1 || witnessPos == pos2 || witnessPos == pos3) {
+					continue;
+				}
+
+				double[] block1 = pairs[pos1][witnessPos];
+				double[] block2 = pairs[pos2][witnessPos];
+				double[] block3 = pairs[pos3][witnessPos];
+				int candidateOffset1 = candidateRc1*numRCs[witnessPos];
+				int candidateOffset2 = candidateRc2*numRCs[witnessPos];
+				int candidateOffset3 = candidateRc3*numRCs[witnessPos];
+				int competitorOffset1 = competitorRc1*numRCs[witnessPos];
+				int competitorOffset2 = competitorRc2*numRCs[witnessPos];
+				int competitorOffset3 = competitorRc3*numRCs[witnessPos];
+				energyDiffSum += minWitnessDiff(
+					witnessMasks[witnessPos], 0, witnessPos,
+					(witnessRc) -> 0
+						+ block1[candidateOffset1 + witnessRc]
+						+ block2[candidateOffset2 + witnessRc]
+						+ block3[candidateOffset3 + witnessRc]
+						- block1[competitorOffset1 + witnessRc]
+						- block2[competitorOffset2 + witnessRc]
+						- block3[competitorOffset3 + witnessRc]
+				);
+				if (energyDiffSum == Double.POSITIVE_INFINITY) {
+					break;
+				}
+			}
+
+			if (energyDiffSum > energyDiffThreshold) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
@@ -35,6 +35,7 @@ package edu.duke.cs.osprey.pruning;
 import edu.duke.cs.osprey.astar.conf.RCs;
 import edu.duke.cs.osprey.confspace.SimpleConfSpace;
 import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.PrimitiveEnergyMatrix;
 import edu.duke.cs.osprey.parallelism.Parallelism;
 import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.restypes.ResidueTemplate;
@@ -157,7 +158,9 @@ public class SimpleDEE {
 		private boolean pairsTransitivePruning = false;
 		private boolean triplesTransitivePruning = false;
 		private boolean showProgress = false;
+		private boolean packed = false;
 		private File cacheFile = null;
+		private File plugCacheFile = null;
 		private Parallelism parallelism = Parallelism.makeCpu(1);
 
 		public Runner setSinglesThreshold(Double val) {
@@ -262,11 +265,37 @@ public class SimpleDEE {
 			return this;
 		}
 
+		/**
+		 * Use {@link PackedDEE} for the Goldstein criteria, which is much faster for pairs and triples
+		 * on large conformation spaces, at the cost of an extra copy of the energy matrix.
+		 */
+		public Runner setPacked(boolean val) {
+			packed = val;
+			return this;
+		}
+
+		/**
+		 * Saves the pruning matrix to this file, and reads it back next time.
+		 * The cached pruning matrix is only checked against the conformation space, not the thresholds,
+		 * so use a different file for each set of thresholds.
+		 * Unless {@link #setPlugCacheFile} says otherwise, PLUG constraints are saved
+		 * in the same path with a ".plug" suffix.
+		 */
 		public Runner setCacheFile(File val) {
 			cacheFile = val;
 			return this;
 		}
 
+		/**
+		 * Saves the PLUG constraints to this file, and reads them back the next time PLUG runs.
+		 * The constraints don't depend on the pruning thresholds, so runs on the same conformation space
+		 * with different thresholds (and different pruning matrix cache files) can share this file.
+		 */
+		public Runner setPlugCacheFile(File val) {
+			plugCacheFile = val;
+			return this;
+		}
+
 		public Runner setParallelism(Parallelism val) {
 			parallelism = val;
 			return this;
@@ -334,7 +363,7 @@ public class SimpleDEE {
 				}
 				PruningMatrix competitors = new PruningMatrix(pmat);
 				{
-					SimpleDEE dee = new SimpleDEE(confSpace, emat, competitors);
+					SimpleDEE dee = makeDEE(confSpace, emat, competitors, competitors);
 					if (singlesGoldsteinDiffThreshold != null) {
 						dee.pruneSinglesGoldstein(0, typeDependent);
 					}
@@ -347,7 +376,7 @@ public class SimpleDEE {
 					}
 				}
 
-				SimpleDEE dee = new SimpleDEE(confSpace, emat, pmat, competitors);
+				SimpleDEE dee = makeDEE(confSpace, emat, pmat, competitors);
 
 				for (int i=0; i<numIterations; i++) {
 
@@ -388,8 +417,21 @@ public class SimpleDEE {
 				if (showProgress) {
 					System.out.println("Pruning with PLUG...");
 				}
+				File plugCacheFile = this.plugCacheFile;
+				if (plugCacheFile == null && cacheFile != null) {
+					plugCacheFile = new File(cacheFile.getPath() + ".plug");
+				}
+				PLUGCache plugCache = plugCacheFile != null
+					? ObjectIO.readOrMake(
+						plugCacheFile,
+						PLUGCache.class,
+						"PLUG cache",
+						(cache) -> cache.matches(confSpace),
+						(context) -> new PLUGCache(confSpace)
+					)
+					: new PLUGCache(confSpace);
 				try (TaskExecutor tasks = parallelism.makeTaskExecutor()) {
-					PLUG plug = new PLUG(confSpace);
+					PLUG plug = new PLUG(confSpace, plugCache);
 					if (singlesPlugThreshold != null) {
 						plug.pruneSingles(pmat, singlesPlugThreshold, tasks);
 						maybeReport.accept("PLUG Singles");
@@ -403,6 +445,9 @@ public class SimpleDEE {
 						maybeReport.accept("PLUG Triples");
 					}
 				}
+				if (plugCacheFile != null) {
+					plugCache.write(plugCacheFile);
+				}
 
 				transitivePruning(confSpace, pmat, maybeReport);
 			}
@@ -425,6 +470,14 @@ public class SimpleDEE {
 			return pmat;
 		}
 
+		private SimpleDEE makeDEE(SimpleConfSpace confSpace, EnergyMatrix emat, PruningMatrix pmat, PruningMatrix competitors) {
+			if (packed) {
+				return new PackedDEE(confSpace, emat, pmat, competitors);
+			} else {
+				return new SimpleDEE(confSpace, emat, pmat, competitors);
+			}
+		}
+
 		private void transitivePruning(SimpleConfSpace confSpace, PruningMatrix pmat, Consumer<String> maybeReport) {
 			if (singlesTransitivePruning || pairsTransitivePruning || triplesTransitivePruning) {
 				if (showProgress) {
@@ -454,6 +507,8 @@ public class SimpleDEE {
 	public final PruningMatrix pmat;
 	public final PruningMatrix competitors;
 
+	private final PrimitiveEnergyMatrix energies;
+
 	public SimpleDEE(SimpleConfSpace confSpace, EnergyMatrix emat, PruningMatrix pmat) {
 		this(confSpace, emat, pmat, pmat);
 	}
@@ -463,6 +518,8 @@ public class SimpleDEE {
 		this.emat = emat;
 		this.pmat = pmat;
 		this.competitors = competitors;
+
+		energies = emat.primitive();
 	}
 
 	private ResidueTemplate getTemplate(int pos, int rc) {
@@ -471,7 +528,7 @@ public class SimpleDEE {
 
 	public void pruneSinglesByThreshold(double energyThreshold) {
 		pmat.forEachUnprunedSingle((pos, rc) -> {
-			if (emat.getOneBody(pos, rc) > energyThreshold) {
+			if (energies.getOneBody(pos, rc) > energyThreshold) {
 				pmat.pruneSingle(pos, rc);
 			}
 			return PruningMatrix.IteratorCommand.Continue;
@@ -480,7 +537,7 @@ public class SimpleDEE {
 
 	public void prunePairsByThreshold(double energyThreshold) {
 		pmat.forEachUnprunedPair((pos1, rc1, pos2, rc2) -> {
-			if (emat.getPairwise(pos1, rc1, pos2, rc2) > energyThreshold) {
+			if (energies.getPairwise(pos1, rc1, pos2, rc2) > energyThreshold) {
 				pmat.prunePair(pos1, rc1, pos2, rc2);
 			}
 			return PruningMatrix.IteratorCommand.Continue;
@@ -510,8 +567,8 @@ public class SimpleDEE {
 
 				// start with singles energy diff
 				double energyDiffSum = 0
-					+ emat.getOneBody(candidatePos, candidateRc)
-					- emat.getOneBody(competitorPos, competitorRc);
+					+ energies.getOneBody(candidatePos, candidateRc)
+					- energies.getOneBody(competitorPos, competitorRc);
 
 				// sum over witness positions
 				for (int witnessPos=0; witnessPos<confSpace.positions.size(); witnessPos++) {
@@ -533,8 +590,8 @@ public class SimpleDEE {
 
 						// compute the energy diff between the candidate and competitor, from the point of view of the witness
 						double energyDiff = 0
-							+ emat.getPairwise(candidatePos, candidateRc, witnessPos, witnessRc)
-							- emat.getPairwise(competitorPos, competitorRc, witnessPos, witnessRc);
+							+ energies.getPairwise(candidatePos, candidateRc, witnessPos, witnessRc)
+							- energies.getPairwise(competitorPos, competitorRc, witnessPos, witnessRc);
 						minEnergyDiff = Math.min(minEnergyDiff, energyDiff);
 					}
 
@@ -600,12 +657,12 @@ public class SimpleDEE {
 
 							// start with fragment energy diff
 							double energyDiffSum = 0
-								+ emat.getOneBody(candidatePos1, candidateRc1)
-								+ emat.getOneBody(candidatePos2, candidateRc2)
-								+ emat.getPairwise(candidatePos1, candidateRc1, candidatePos2, candidateRc2)
-								- emat.getOneBody(competitorPos1, competitorRc1)
-								- emat.getOneBody(competitorPos2, competitorRc2)
-								- emat.getPairwise(competitorPos1, competitorRc1, competitorPos2, competitorRc2);
+								+ energies.getOneBody(candidatePos1, candidateRc1)
+								+ energies.getOneBody(candidatePos2, candidateRc2)
+								+ energies.getPairwise(candidatePos1, candidateRc1, candidatePos2, candidateRc2)
+								- energies.getOneBody(competitorPos1, competitorRc1)
+								- energies.getOneBody(competitorPos2, competitorRc2)
+								- energies.getPairwise(competitorPos1, competitorRc1, competitorPos2, competitorRc2);
 
 							// sum over witness positions
 							for (int witnessPos=0; witnessPos<confSpace.positions.size(); witnessPos++) {
@@ -628,10 +685,10 @@ public class SimpleDEE {
 
 									// compute the energy diff between the candidate and competitor, from the point of view of the witness
 									double energyDiff = 0
-										+ emat.getPairwise(candidatePos1, candidateRc1, witnessPos, witnessRc)
-										+ emat.getPairwise(candidatePos2, candidateRc2, witnessPos, witnessRc)
-										- emat.getPairwise(competitorPos1, competitorRc1, witnessPos, witnessRc)
-										- emat.getPairwise(competitorPos2, competitorRc2, witnessPos, witnessRc);
+										+ energies.getPairwise(candidatePos1, candidateRc1, witnessPos, witnessRc)
+										+ energies.getPairwise(candidatePos2, candidateRc2, witnessPos, witnessRc)
+										- energies.getPairwise(competitorPos1, competitorRc1, witnessPos, witnessRc)
+										- energies.getPairwise(competitorPos2, competitorRc2, witnessPos, witnessRc);
 									minEnergyDiff = Math.min(minEnergyDiff, energyDiff);
 								}
 								energyDiffSum += minEnergyDiff;
@@ -703,18 +760,18 @@ public class SimpleDEE {
 
 							// start with fragment energy diff
 							double energyDiffSum = 0
-								+ emat.getOneBody(candidatePos1, candidateRc1)
-								+ emat.getOneBody(candidatePos2, candidateRc2)
-								+ emat.getOneBody(candidatePos3, candidateRc3)
-								+ emat.getPairwise(candidatePos1, candidateRc1, candidatePos2, candidateRc2)
-								+ emat.getPairwise(candidatePos1, candidateRc1, candidatePos3, candidateRc3)
-								+ emat.getPairwise(candidatePos2, candidateRc2, candidatePos3, candidateRc3)
-								- emat.getOneBody(competitorPos1, competitorRc1)
-								- emat.getOneBody(competitorPos2, competitorRc2)
-								- emat.getOneBody(competitorPos3, competitorRc3)
-								- emat.getPairwise(competitorPos1, competitorRc1, competitorPos2, competitorRc2)
-								- emat.getPairwise(competitorPos1, competitorRc1, competitorPos3, competitorRc3)
-								- emat.getPairwise(competitorPos2, competitorRc2, competitorPos3, competitorRc3);
+								+ energies.getOneBody(candidatePos1, candidateRc1)
+								+ energies.getOneBody(candidatePos2, candidateRc2)
+								+ energies.getOneBody(candidatePos3, candidateRc3)
+								+ energies.getPairwise(candidatePos1, candidateRc1, candidatePos2, candidateRc2)
+								+ energies.getPairwise(candidatePos1, candidateRc1, candidatePos3, candidateRc3)
+								+ energies.getPairwise(candidatePos2, candidateRc2, candidatePos3, candidateRc3)
+								- energies.getOneBody(competitorPos1, competitorRc1)
+								- energies.getOneBody(competitorPos2, competitorRc2)
+								- energies.getOneBody(competitorPos3, competitorRc3)
+								- energies.getPairwise(competitorPos1, competitorRc1, competitorPos2, competitorRc2)
+								- energies.getPairwise(competitorPos1, competitorRc1, competitorPos3, competitorRc3)
+								- energies.getPairwise(competitorPos2, competitorRc2, competitorPos3, competitorRc3);
 
 							// sum over witness positions
 							for (int witnessPos=0; witnessPos<confSpace.positions.size(); witnessPos++) {
@@ -738,12 +795,12 @@ public class SimpleDEE {
 
 									// compute the energy diff between the candidate and competitor, from the point of view of the witness
 									double energyDiff = 0
-										+ emat.getPairwise(candidatePos1, candidateRc1, witnessPos, witnessRc)
-										+ emat.getPairwise(candidatePos2, candidateRc2, witnessPos, witnessRc)
-										+ emat.getPairwise(candidatePos3, candidateRc3, witnessPos, witnessRc)
-										- emat.getPairwise(competitorPos1, competitorRc1, witnessPos, witnessRc)
-										- emat.getPairwise(competitorPos2, competitorRc2, witnessPos, witnessRc)
-										- emat.getPairwise(competitorPos3, competitorRc3, witnessPos, witnessRc);
+										+ energies.getPairwise(candidatePos1, candidateRc1, witnessPos, witnessRc)
+										+ energies.getPairwise(candidatePos2, candidateRc2, witnessPos, witnessRc)
+										+ energies.getPairwise(candidatePos3, candidateRc3, witnessPos, witnessRc)
+										- energies.getPairwise(competitorPos1, competitorRc1, witnessPos, witnessRc)
+										- energies.getPairwise(competitorPos2, competitorRc2, witnessPos, witnessRc)
+										- energies.getPairwise(competitorPos3, competitorRc3, witnessPos, witnessRc);
 									minEnergyDiff = Math.min(minEnergyDiff, energyDiff);
 								}
 								energyDiffSum += minEnergyDiff;
@@ -37,7 +37,9 @@ import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
 import edu.duke.cs.osprey.structure.Molecule;
 import edu.duke.cs.osprey.structure.Residue;
 import edu.duke.cs.osprey.tools.FileTools;
+import edu.duke.cs.osprey.tools.SnapshotFile;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.*;
 
@@ -84,6 +86,12 @@ public class ResidueTemplateLibrary implements Serializable {
 
 		private List<Molecule> molsForRotamers = listOf();
 
+		/**
+		 * If set, read the library from a snapshot in this directory instead of parsing all the texts,
+		 * or write a snapshot there for next time. See {@link SnapshotFile}.
+		 */
+		private File snapshotDir = null;
+
 		public Builder() {
 			this(new ForcefieldParams());
 		}
@@ -217,7 +225,43 @@ public class ResidueTemplateLibrary implements Serializable {
 			return this;
 		}
 
+		/**
+		 * Snapshots are keyed by the forcefield atom types and the contents of all the texts, so changing any input
+		 * makes a new snapshot. Libraries loaded from a snapshot always use the forcefield params given to this builder.
+		 * For the fastest startup, get the forcefield params from a snapshot too,
+		 * using {@link ForcefieldParams#fromSnapshot}.
+		 */
+		public Builder setSnapshotDir(File val) {
+			snapshotDir = val;
+			return this;
+		}
+
 		public ResidueTemplateLibrary build() {
+
+			if (snapshotDir != null && molsForRotamers.isEmpty()) {
+				SnapshotFile.Key key = new SnapshotFile.Key(ResidueTemplateLibrary.class.getName())
+					.add(ffparams.forcefld.name())
+					.add(ffparams.getAtomTypeNames()) // templates store atom types by index
+					.add(templatesTexts)
+					.add(templateCoordsTexts)
+					.add(rotamersTexts)
+					.add(backboneDependentRotamersTexts)
+					.add(entropyTexts)
+					.add(makeDAminoAcidTemplates);
+				ResidueTemplateLibrary snapshot = SnapshotFile.loadOrMake(snapshotDir, "templates", key, ResidueTemplateLibrary.class, this::make);
+
+				// the snapshot has its own copy of the forcefield params, which could be stale,
+				// eg if the caller changed any settings, so swap in the params we were given
+				if (snapshot.ffparams != ffparams) {
+					return new ResidueTemplateLibrary(ffparams, snapshot);
+				}
+				return snapshot;
+			}
+
+			return make();
+		}
+
+		private ResidueTemplateLibrary make() {
 			return new ResidueTemplateLibrary(
 					ffparams,
 					templatesTexts,
@@ -241,6 +285,15 @@ public class ResidueTemplateLibrary implements Serializable {
 	public final ResidueEntropies residueEntropies = new ResidueEntropies();
 	public int totalNumRotamers;//total number of rotamers read in from rotamer library file(s), starts at 0
 
+	/** copies the templates from the other library, but uses the given forcefield params */
+	private ResidueTemplateLibrary(ForcefieldParams ffparams, ResidueTemplateLibrary other) {
+		this.ffparams = ffparams;
+		templates.addAll(other.templates);
+		wildTypeTemplates.putAll(other.wildTypeTemplates);
+		residueEntropies.setAll(other.residueEntropies);
+		totalNumRotamers = other.totalNumRotamers;
+	}
+
 	private ResidueTemplateLibrary(ForcefieldParams ffparams, List<String> templatesTexts, List<String> templateCoordTexts, List<String> rotamersTexts, List<String> backboneDependentRotamerTexts, List<String> resEntropyTexts, boolean makeDAminoAcids, List<Molecule> molsForRotamers) {
 
 		this.ffparams = ffparams;
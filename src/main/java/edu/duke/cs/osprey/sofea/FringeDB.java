@@ -38,6 +38,8 @@ import edu.duke.cs.osprey.tools.*;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.NoSuchElementException;
 import java.util.stream.IntStream;
 
@@ -56,11 +58,26 @@ import java.util.stream.IntStream;
  * The FIFO queue is implemented by a fixed-size circular buffer.
  * If the queue fills up, no new child nodes can be written, but
  * the current queue can continue to be swept as many times as needed.
+ *
+ * A transaction can be read by one thread while another thread writes to it and commits it,
+ * since reads only touch entries at the head of the queue, and writes only touch free space after the tail.
+ *
+ * The database can also be memory-mapped (see {@link #createMapped} and {@link #openMapped}),
+ * in which case nodes are decoded straight out of the mapped file, and commits are memory copies
+ * instead of write syscalls. The mapping is split into segments that each hold a whole number of entries,
+ * so files larger than 2 GiB work too. Databases created by {@link #createMapped} pad each entry
+ * to a multiple of 8 bytes, but any database file can be opened either way.
  */
 public class FringeDB implements AutoCloseable {
 
 	static final byte[] Magic = { 'f', 'r', 'i', 'n', 'g', 'e', 'd', 'b' };
 
+	/** a single memory mapping can't be bigger than 2 GiB, so map big files in segments at most this big */
+	static final long MaxSegmentBytes = 1024L*1024L*1024L; // 1 GiB
+
+	/** entries in databases made by createMapped() are padded to a multiple of this many bytes */
+	static final int EntryAlignment = 8;
+
 
 	private class IOState {
 
@@ -124,8 +141,26 @@ public class FringeDB implements AutoCloseable {
 	private final long posEntries;
 	private final long maxNumEntries;
 
+	// the memory-mapped entries, or null if not mapped
+	private final MappedByteBuffer[] segments;
+	private final long entriesPerSegment;
+
 	/** create a new fringe node database, reserving the desired spase on the filesystem */
 	public static FringeDB create(MultiStateConfSpace confSpace, File file, long sizeBytes) {
+		writeHeader(confSpace, file, sizeBytes, false);
+		return open(confSpace, file);
+	}
+
+	/**
+	 * create a new fringe node database with aligned entries, reserving the desired space on the filesystem,
+	 * and open it with memory-mapped I/O
+	 */
+	public static FringeDB createMapped(MultiStateConfSpace confSpace, File file, long sizeBytes) {
+		writeHeader(confSpace, file, sizeBytes, true);
+		return openMapped(confSpace, file);
+	}
+
+	private static void writeHeader(MultiStateConfSpace confSpace, File file, long sizeBytes, boolean alignEntries) {
 
 		if (sizeBytes <= 0) {
 			throw new IllegalArgumentException("invalid FringeDB size: " + sizeBytes + " bytes");
@@ -151,7 +186,13 @@ public class FringeDB implements AutoCloseable {
 				.mapToInt(state -> state.confSpace.numPos())
 				.max()
 				.orElse(0);
-			io.writeInt(confEncoding.numBytes*maxConfSize);
+			int confBytes = confEncoding.numBytes*maxConfSize;
+			if (alignEntries) {
+				// pad the conf so whole entries are aligned
+				int otherBytes = getStateEncoding(confSpace).numBytes + BigExp.NumBytes;
+				confBytes = MathTools.roundUpToMultiple(otherBytes + confBytes, EntryAlignment) - otherBytes;
+			}
+			io.writeInt(confBytes);
 
 			// write the entry read/write state
 			io.writeLong(0);
@@ -190,8 +231,14 @@ public class FringeDB implements AutoCloseable {
 				ex
 			);
 		}
+	}
 
-		return open(confSpace, file);
+	private static IntEncoding getStateEncoding(MultiStateConfSpace confSpace) {
+		return IntEncoding.get(confSpace.states.stream()
+			.mapToInt(state -> state.index)
+			.max()
+			.orElse(0)
+		);
 	}
 
 	private static IntEncoding getConfEncoding(MultiStateConfSpace confSpace) {
@@ -215,20 +262,28 @@ public class FringeDB implements AutoCloseable {
 
 	/** open an existing fringe node database */
 	public static FringeDB open(MultiStateConfSpace confSpace, File file) {
-		return new FringeDB(confSpace, file);
+		return new FringeDB(confSpace, file, 0);
 	}
 
-	private FringeDB(MultiStateConfSpace confSpace, File file) {
+	/** open an existing fringe node database with memory-mapped I/O */
+	public static FringeDB openMapped(MultiStateConfSpace confSpace, File file) {
+		return openMapped(confSpace, file, MaxSegmentBytes);
+	}
+
+	static FringeDB openMapped(MultiStateConfSpace confSpace, File file, long maxSegmentBytes) {
+		return new FringeDB(confSpace, file, maxSegmentBytes);
+	}
+
+	/**
+	 * @param maxSegmentBytes max size of each memory-mapped segment, or 0 to use file I/O instead
+	 */
+	private FringeDB(MultiStateConfSpace confSpace, File file, long maxSegmentBytes) {
 
 		this.confSpace = confSpace;
 		this.file = file;
 
 		// figure out the encodings
-		stateEncoding = IntEncoding.get(confSpace.states.stream()
-			.mapToInt(state -> state.index)
-			.max()
-			.orElse(0)
-		);
+		stateEncoding = getStateEncoding(confSpace);
 		confEncoding = getConfEncoding(confSpace);
 
 		// open the file and read the header
@@ -289,6 +344,21 @@ public class FringeDB implements AutoCloseable {
 			// how many entries can we have?
 			maxNumEntries = (file.length() - posEntries)/entryBytes;
 
+			// map the entries if needed, so no entry straddles two segments
+			if (maxSegmentBytes > 0) {
+				entriesPerSegment = Math.max(1, Math.min(maxSegmentBytes, Integer.MAX_VALUE)/entryBytes);
+				int numSegments = (int)((maxNumEntries + entriesPerSegment - 1)/entriesPerSegment);
+				segments = new MappedByteBuffer[numSegments];
+				for (int i=0; i<numSegments; i++) {
+					long firstEntry = i*entriesPerSegment;
+					long numEntries = Math.min(entriesPerSegment, maxNumEntries - firstEntry);
+					segments[i] = io.getChannel().map(FileChannel.MapMode.READ_WRITE, posEntries + firstEntry*entryBytes, numEntries*entryBytes);
+				}
+			} else {
+				entriesPerSegment = 0;
+				segments = null;
+			}
+
 		} catch (IOException ex) {
 			throw new RuntimeException("can't open db file: " + file.getAbsolutePath(), ex);
 		}
@@ -307,6 +377,11 @@ public class FringeDB implements AutoCloseable {
 		return stateEncoding.numBytes + confBytes + BigExp.NumBytes;
 	}
 
+	/** true if the database uses memory-mapped I/O */
+	public boolean isMapped() {
+		return segments != null;
+	}
+
 	/**
 	 * Returns the total number of nodes in the database
 	 */
@@ -348,6 +423,7 @@ public class FringeDB implements AutoCloseable {
 
 	public class Transaction {
 
+		// NOTE: synchronize on iostate to share the transaction between a reader thread and a writer thread
 		private final IOState iostate = FringeDB.this.iostate.copy();
 
 		private MultiStateConfSpace.State state;
@@ -363,39 +439,107 @@ public class FringeDB implements AutoCloseable {
 		private final int maxWrittenEntries = writeBuf.capacity()/entryBytes;
 		private int writtenEntries = 0;
 
+		// our own views of the mapped segments, so the reader and writer positions don't interfere
+		private final ByteBuffer[] readSegments;
+		private final ByteBuffer[] writeSegments;
+
 		private Transaction() {
 			// keep the constructor private
 
 			readBuf.limit(0);
+
+			if (segments != null) {
+				readSegments = new ByteBuffer[segments.length];
+				writeSegments = new ByteBuffer[segments.length];
+				for (int i=0; i<segments.length; i++) {
+					readSegments[i] = segments[i].duplicate();
+					writeSegments[i] = segments[i].duplicate();
+				}
+			} else {
+				readSegments = null;
+				writeSegments = null;
+			}
 		}
 
 		/** number of unread nodes left in this sweep */
 		public long numNodesToRead() {
-			return iostate.numToRead;
+			synchronized (iostate) {
+				return iostate.numToRead;
+			}
 		}
 
 		/** returns true if there are no remaining nodes to read in this sweep, false otherwise */
 		public boolean hasNodesToRead() {
-			return iostate.numToRead > 0;
+			synchronized (iostate) {
+				return iostate.numToRead > 0;
+			}
 		}
 
-		/** reads and removes the node at the head of the queue */
+		/**
+		 * reads and removes the node at the head of the queue
+		 *
+		 * Only one thread should read at a time, but reading doesn't block writes or commits.
+		 */
 		public void readNode() {
 
-			if (iostate.numToRead <= 0) {
+			// only the reader changes the read index, so we don't need to hold the lock during the read
+			long readIndex;
+			long numWaiting;
+			synchronized (iostate) {
+				readIndex = iostate.readIndex;
+				numWaiting = iostate.numToRead;
+			}
+
+			if (numWaiting <= 0) {
 				throw new NoSuchElementException("out of fringe nodes to read");
 			}
 
+			if (readSegments != null) {
+				readMappedEntry(readIndex);
+			} else {
+				readEntry(readIndex, numWaiting);
+			}
+
+			// advance the read offset, wrapping if needed
+			synchronized (iostate) {
+				iostate.advanceRead(1);
+			}
+		}
+
+		/** decodes the entry directly from the mapped file, without copying it anywhere first */
+		private void readMappedEntry(long index) {
+
+			ByteBuffer in = readSegments[(int)(index/entriesPerSegment)];
+			in.position((int)(index % entriesPerSegment)*entryBytes);
+
+			state = confSpace.states.get(stateEncoding.read(in));
+
+			// read the conf, and undo the shift
+			conf = new int[state.confSpace.numPos()];
+			for (int i=0; i<conf.length; i++) {
+				conf[i] = confEncoding.read(in) - 1;
+			}
+
+			// skip the conf padding, if any
+			in.position(in.position() + confBytes - confEncoding.numBytes*conf.length);
+
+			double fp = in.getDouble();
+			int exp = in.getInt();
+			zSumUpper = new BigExp(fp, exp);
+		}
+
+		private void readEntry(long readIndex, long numWaiting) {
+
 			try {
 
 				// if the read buffer is empty, fill it up
 				if (readBuf.position() == readBuf.limit()) {
 
 					// what's the most entries we could read without wrapping around?
-					long numToRead = maxNumEntries - iostate.readIndex;
+					long numToRead = maxNumEntries - readIndex;
 
 					// but don't read more entries than are waiting
-					numToRead = Math.min(numToRead, iostate.numToRead);
+					numToRead = Math.min(numToRead, numWaiting);
 
 					// but don't read more than the buffer
 					numToRead = Math.min(numToRead, maxReadEntries);
@@ -403,8 +547,7 @@ public class FringeDB implements AutoCloseable {
 					try {
 
 						int readSize = (int)(numToRead*entryBytes);
-						io.seek(posEntries + iostate.readIndex*entryBytes);
-						io.readFully(readBuf.array(), 0, readSize);
+						readFully(ByteBuffer.wrap(readBuf.array(), 0, readSize), posEntries + readIndex*entryBytes);
 						readBuf.position(0);
 						readBuf.limit(readSize);
 
@@ -426,15 +569,15 @@ public class FringeDB implements AutoCloseable {
 									+ "\n\tend read pos=%d"
 									+ "\n\tcapacity=%d",
 								maxReadEntries,
-								iostate.numToRead,
-								maxNumEntries - iostate.readIndex,
+								numWaiting,
+								maxNumEntries - readIndex,
 								numToRead,
 								posEntries,
-								iostate.readIndex,
+								readIndex,
 								entryBytes,
-								posEntries + iostate.readIndex*entryBytes,
+								posEntries + readIndex*entryBytes,
 								numToRead*entryBytes,
-								posEntries + iostate.readIndex*entryBytes + numToRead*entryBytes,
+								posEntries + readIndex*entryBytes + numToRead*entryBytes,
 								io.length()
 							),
 							ex
@@ -463,9 +606,6 @@ public class FringeDB implements AutoCloseable {
 			} catch (IOException ex) {
 				throw new RuntimeException("can't advance to next fringe node", ex);
 			}
-
-			// advance the read offset, wrapping if needed
-			iostate.advanceRead(1);
 		}
 
 		public MultiStateConfSpace.State state() {
@@ -497,7 +637,9 @@ public class FringeDB implements AutoCloseable {
 		 * Is there enough room in the transaction write buffer to add more nodes?
 		 */
 		public boolean txHasRoomFor(int count) {
-			return writtenEntries + count <= maxWrittenEntries;
+			synchronized (iostate) {
+				return writtenEntries + count <= maxWrittenEntries;
+			}
 		}
 
 		private void writeEntry(int stateIndex, int[] conf, BigExp zSumUpper, DataOutput out) {
@@ -535,8 +677,10 @@ public class FringeDB implements AutoCloseable {
 			}
 
 			writeEntry(state.index, Conf.make(state.confSpace), zSumUpper, writeOut);
-			writtenEntries++;
-			updateZMax(state.index, zSumUpper);
+			synchronized (iostate) {
+				writtenEntries++;
+				updateZMax(state.index, zSumUpper);
+			}
 		}
 
 		/**
@@ -549,17 +693,21 @@ public class FringeDB implements AutoCloseable {
 			}
 
 			writeEntry(state.index, conf, zSumUpper, writeOut);
-			writtenEntries++;
-			updateZMax(state.index, zSumUpper);
+			synchronized (iostate) {
+				writtenEntries++;
+				updateZMax(state.index, zSumUpper);
+			}
 		}
 
 		/**
 		 * Is there enough room in the database to add more nodes?
 		 */
 		public boolean dbHasRoomFor(int count) {
-			long usedEntries = iostate.numToRead + iostate.numWritten + writtenEntries;
-			long freeEntries = maxNumEntries - usedEntries;
-			return count <= freeEntries;
+			synchronized (iostate) {
+				long usedEntries = iostate.numToRead + iostate.numWritten + writtenEntries;
+				long freeEntries = maxNumEntries - usedEntries;
+				return count <= freeEntries;
+			}
 		}
 
 		/**
@@ -572,61 +720,82 @@ public class FringeDB implements AutoCloseable {
 		/**
 		 * Flushes all pending writes to the database file.
 		 * All writes are flushed to the underlying storage device by the time this method returns.
+		 *
+		 * Commits should happen on the same thread that writes nodes,
+		 * but a reader thread can keep reading nodes during the commit.
 		 */
 		public void commit() {
 
-			// short circuit
-			if (writtenEntries <= 0 && iostate.numToRead == FringeDB.this.iostate.numToRead) {
-				return;
-			}
+			int numEntries;
+			long writeIndex;
+			synchronized (iostate) {
+
+				// short circuit
+				if (writtenEntries <= 0 && iostate.numToRead == FringeDB.this.iostate.numToRead) {
+					return;
+				}
 
-			if (!dbHasRoomForCommit()) {
-				throw new IllegalStateException("transaction too big to commit");
+				if (!dbHasRoomForCommit()) {
+					throw new IllegalStateException("transaction too big to commit");
+				}
+
+				numEntries = writtenEntries;
+				writeIndex = iostate.writeIndex;
 			}
 
 			try {
 
-				// write the replacement entries
-				writeBuf.flip();
-				long maxNumToWriteAtOnce = maxNumEntries - iostate.writeIndex;
-				if (writtenEntries <= maxNumToWriteAtOnce) {
+				// write the replacement entries, into free space the reader never touches
+				long maxNumToWriteAtOnce = maxNumEntries - writeIndex;
+				if (writeSegments != null) {
+
+					// just copy into the mapped file
+					writeMappedEntries(writeIndex, numEntries);
+
+				} else if (numEntries <= maxNumToWriteAtOnce) {
 
 					// write it all in one pass
-					io.seek(posEntries + iostate.writeIndex*entryBytes);
-					io.write(writeBuf.array(), 0, writtenEntries*entryBytes);
-					iostate.advanceWrite(writtenEntries);
+					writeFully(ByteBuffer.wrap(writeBuf.array(), 0, numEntries*entryBytes), posEntries + writeIndex*entryBytes);
 
 				} else {
 
 					// write in two passes
 					int numWrittenPass1 = (int)maxNumToWriteAtOnce;
-					io.seek(posEntries + iostate.writeIndex*entryBytes);
-					io.write(writeBuf.array(), 0, numWrittenPass1*entryBytes);
-					iostate.advanceWrite(numWrittenPass1);
-
-					int numWrittenPass2 = writtenEntries - (int)maxNumToWriteAtOnce;
-					io.seek(posEntries + iostate.writeIndex*entryBytes);
-					io.write(writeBuf.array(), numWrittenPass1*entryBytes, numWrittenPass2*entryBytes);
-					iostate.advanceWrite(numWrittenPass2);
+					writeFully(ByteBuffer.wrap(writeBuf.array(), 0, numWrittenPass1*entryBytes), posEntries + writeIndex*entryBytes);
+
+					int numWrittenPass2 = numEntries - (int)maxNumToWriteAtOnce;
+					writeFully(ByteBuffer.wrap(writeBuf.array(), numWrittenPass1*entryBytes, numWrittenPass2*entryBytes), posEntries);
 				}
 				writeBuf.clear();
-				writtenEntries = 0;
+
+				// update the io state
+				IOState committed;
+				synchronized (iostate) {
+					iostate.advanceWrite(numEntries);
+					writtenEntries = 0;
+					committed = iostate.copy();
+				}
 
 				// write zSumMax
-				io.seek(posZStats + BigExp.NumBytes*confSpace.states.size());
+				ByteBuffer zStatsBuf = ByteBuffer.allocate(BigExp.NumBytes*confSpace.states.size());
+				DataOutput zStatsOut = new DataOutputStream(new ByteBufferOutputStream(zStatsBuf));
 				for (MultiStateConfSpace.State state : confSpace.states) {
-					iostate.writeZSumMax[state.index].writeTo(io);
+					committed.writeZSumMax[state.index].writeTo(zStatsOut);
 				}
+				zStatsBuf.flip();
+				writeFully(zStatsBuf, posZStats + BigExp.NumBytes*confSpace.states.size());
 
 				// persist io state
-				io.seek(posIOState);
-				io.writeLong(iostate.readIndex);
-				io.writeLong(iostate.numToRead);
-				io.writeLong(iostate.writeIndex);
-				io.writeLong(iostate.numWritten);
+				ByteBuffer ioStateBuf = ByteBuffer.allocate(Long.BYTES*4);
+				ioStateBuf.putLong(committed.readIndex);
+				ioStateBuf.putLong(committed.numToRead);
+				ioStateBuf.putLong(committed.writeIndex);
+				ioStateBuf.putLong(committed.numWritten);
+				ioStateBuf.flip();
+				writeFully(ioStateBuf, posIOState);
 
 				// copy io state outside of transaction
-				iostate.copyTo(FringeDB.this.iostate);
+				committed.copyTo(FringeDB.this.iostate);
 
 				// flush changes to storage
 				io.getChannel().force(false);
@@ -635,6 +804,52 @@ public class FringeDB implements AutoCloseable {
 				throw new RuntimeException("commit failed", ex);
 			}
 		}
+
+		private void writeMappedEntries(long index, int numEntries) {
+
+			int srcOffset = 0;
+			while (numEntries > 0) {
+
+				// write as many entries as we can without leaving the segment or wrapping around
+				int segmenti = (int)(index/entriesPerSegment);
+				long segmentEntryIndex = index % entriesPerSegment;
+				int count = (int)Math.min(numEntries, Math.min(
+					entriesPerSegment - segmentEntryIndex,
+					maxNumEntries - index
+				));
+
+				ByteBuffer out = writeSegments[segmenti];
+				int offset = (int)segmentEntryIndex*entryBytes;
+				int length = count*entryBytes;
+				out.position(offset);
+				out.put(writeBuf.array(), srcOffset, length);
+
+				// flush the entries to storage, since forcing the file channel doesn't cover mapped writes
+				segments[segmenti].force(offset, length);
+
+				srcOffset += length;
+				numEntries -= count;
+				index = (index + count) % maxNumEntries;
+			}
+		}
+	}
+
+	private void readFully(ByteBuffer buf, long pos)
+	throws IOException {
+		while (buf.hasRemaining()) {
+			int numRead = io.getChannel().read(buf, pos);
+			if (numRead < 0) {
+				throw new EOFException();
+			}
+			pos += numRead;
+		}
+	}
+
+	private void writeFully(ByteBuffer buf, long pos)
+	throws IOException {
+		while (buf.hasRemaining()) {
+			pos += io.getChannel().write(buf, pos);
+		}
 	}
 
 	/** starts a new transaction in the current sweep */
@@ -143,16 +143,24 @@ public class RCDB implements AutoCloseable {
 		}
 
 		public void update(int pos, int rc, Consumer<BigDecimalBounds> updater) {
+			updateById(getId(pos, rc), updater);
+		}
+
+		private void updateById(int id, Consumer<BigDecimalBounds> updater) {
 
-			BigDecimalBounds sum = getZSumBounds(pos, rc);
+			// get the sum, or [0,0]
+			BigDecimalBounds sum = map.get(id);
+			if (sum == null) {
+				sum = new BigDecimalBounds(BigDecimal.ZERO, BigDecimal.ZERO);
+			}
 
 			updater.accept(sum);
 
 			// save the sum, if it's not [0,0]
 			if (isZero(sum)) {
-				map.remove(getId(pos, rc));
+				map.remove(id);
 			} else {
-				map.put(getId(pos, rc), sum);
+				map.put(id, sum);
 			}
 		}
 
@@ -215,7 +223,7 @@ public class RCDB implements AutoCloseable {
 		}
 	}
 
-	public Table table(MultiStateConfSpace.State state, Sequence seq) {
+	public synchronized Table table(MultiStateConfSpace.State state, Sequence seq) {
 		String id = String.format("%d[%s]", state.index, seq.toString(Sequence.Renderer.ResType));
 		return tables.computeIfAbsent(id, key -> new Table(state, seq, id));
 	}
@@ -270,8 +278,117 @@ public class RCDB implements AutoCloseable {
 		}
 	}
 
-	// TODO: implement transactions
 	public void commit() {
 		db.commit();
 	}
+
+	/**
+	 * Buffers RC zSum updates in memory until commit, so many threads can record updates
+	 * without touching the database. Every update is just an addition to the bounds,
+	 * so buffered updates can be applied in any order.
+	 */
+	public class Transaction {
+
+		private class Deltas {
+
+			final Table table;
+			final Map<Integer,BigDecimalBounds> byRC = new HashMap<>();
+
+			Deltas(Table table) {
+				this.table = table;
+			}
+
+			void update(int pos, int rc, Consumer<BigDecimalBounds> updater) {
+				updater.accept(byRC.computeIfAbsent(table.getId(pos, rc), id -> new BigDecimalBounds(BigDecimal.ZERO, BigDecimal.ZERO)));
+			}
+		}
+
+		private final Map<String,Deltas> deltasByTable = new HashMap<>();
+
+		private Transaction() {
+			// keep the constructor private
+		}
+
+		private Deltas deltas(MultiStateConfSpace.State state, Sequence seq) {
+			Table table = table(state, seq);
+			return deltasByTable.computeIfAbsent(table.id, id -> new Deltas(table));
+		}
+
+		public synchronized void addZSumUpper(MultiStateConfSpace.State state, Sequence seq, int[] conf, int pos, BigDecimal zSumUpper) {
+
+			if (!MathTools.isFinite(zSumUpper)) {
+				throw new IllegalArgumentException("Z must be finite: " + zSumUpper);
+			}
+
+			deltas(state, seq).update(pos, conf[pos], delta ->
+				delta.upper = bigMath().set(delta.upper).add(zSumUpper).get()
+			);
+		}
+
+		public synchronized void subZSumUpper(MultiStateConfSpace.State state, Sequence seq, int[] conf, int pos, BigDecimal zSumUpper) {
+
+			if (!MathTools.isFinite(zSumUpper)) {
+				throw new IllegalArgumentException("Z must be finite: " + zSumUpper);
+			}
+
+			deltas(state, seq).update(pos, conf[pos], delta ->
+				delta.upper = bigMath().set(delta.upper).sub(zSumUpper).get()
+			);
+		}
+
+		public synchronized void addZPath(MultiStateConfSpace.State state, Sequence seq, int[] conf, int pos, BigDecimal zPath, BigDecimal zSumUpper) {
+
+			if (!MathTools.isFinite(zPath) || !MathTools.isFinite(zSumUpper)) {
+				throw new IllegalArgumentException("Z must be finite: " + zPath + ", " + zSumUpper);
+			}
+
+			Deltas deltas = deltas(state, seq);
+			for (int posi=0; posi<state.confSpace.numPos(); posi++) {
+				deltas.update(posi, conf[posi], delta -> {
+					delta.lower = bigMath().set(delta.lower).add(zPath).get();
+					delta.upper = bigMath().set(delta.upper).add(zPath).get();
+				});
+			}
+
+			// subtract off the zSumUpper only on the last position to be assigned (ie, the leaf node)
+			deltas.update(pos, conf[pos], delta ->
+				delta.upper = bigMath().set(delta.upper).sub(zSumUpper).get()
+			);
+		}
+
+		public synchronized boolean isEmpty() {
+			return deltasByTable.isEmpty();
+		}
+
+		/** applies all the buffered updates to the database, then clears the buffer */
+		public synchronized void commit() {
+
+			// short circuit
+			if (deltasByTable.isEmpty()) {
+				return;
+			}
+
+			synchronized (RCDB.this) {
+
+				for (Deltas deltas : deltasByTable.values()) {
+					for (Map.Entry<Integer,BigDecimalBounds> entry : deltas.byRC.entrySet()) {
+						BigDecimalBounds delta = entry.getValue();
+						deltas.table.updateById(entry.getKey(), sum -> {
+							sum.lower = bigMath().set(sum.lower).add(delta.lower).get();
+							sum.upper = bigMath().set(sum.upper).add(delta.upper).get();
+						});
+					}
+				}
+
+				RCDB.this.commit();
+			}
+
+			deltasByTable.clear();
+		}
+	}
+
+	/** starts a new transaction */
+	public Transaction transaction() {
+		return new Transaction();
+	}
 }
@@ -52,8 +52,15 @@ import java.math.BigInteger;
 import java.math.MathContext;
 import java.math.RoundingMode;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -110,6 +117,12 @@ public class Sofea {
 		 */
 		private long fringedbUpperBytes = 1024*1024; // 1 MiB
 
+		/**
+		 * True to memory-map the fringe databases, so sweeps decode nodes straight from the page cache.
+		 * Needs enough address space to map both databases, but that's not a problem on 64-bit JVMs.
+		 */
+		private boolean fringedbMapped = false;
+
 		/**
 		 * File for the Residue Conformation (RC) database, or null to skip tracking RC info.
 		 */
@@ -157,6 +170,13 @@ public class Sofea {
 		 */
 		private double negligableFreeEnergy = -1.0;
 
+		/**
+		 * True to overlap fringe database I/O with node processing during each pass:
+		 * a reader thread streams fringe nodes into a buffer ahead of the workers,
+		 * and a writer thread writes the results to the databases and commits them in batches.
+		 */
+		private boolean pipelined = false;
+
 		public Builder(MultiStateConfSpace confSpace) {
 
 			this.confSpace = confSpace;
@@ -216,6 +236,11 @@ public class Sofea {
 			return this;
 		}
 
+		public Builder setFringeDBMapped(boolean val) {
+			fringedbMapped = val;
+			return this;
+		}
+
 		public Builder setRCDBFile(File val) {
 			rcdbFile = val;
 			return this;
@@ -251,6 +276,11 @@ public class Sofea {
 			return this;
 		}
 
+		public Builder setPipelined(boolean val) {
+			pipelined = val;
+			return this;
+		}
+
 		public Sofea build() {
 
 			// make sure all the states are configured
@@ -271,13 +301,15 @@ public class Sofea {
 				fringedbLowerBytes,
 				fringedbUpperFile,
 				fringedbUpperBytes,
+				fringedbMapped,
 				rcdbFile,
 				showProgress,
 				performanceLogFile,
 				sweepIncrement,
 				maxCriterionCheckSeconds,
 				maxNumMinimizations,
-				negligableFreeEnergy
+				negligableFreeEnergy,
+				pipelined
 			);
 		}
 	}
@@ -352,6 +384,7 @@ public class Sofea {
 	public final long fringedbLowerBytes;
 	public final File fringedbUpperFile;
 	public final long fringedbUpperBytes;
+	public final boolean fringedbMapped;
 	public final File rcdbFile;
 	public final boolean showProgress;
 	public final File performanceLogFile;
@@ -359,6 +392,7 @@ public class Sofea {
 	public final int maxCriterionCheckSeconds;
 	public final long maxNumMinimizations;
 	public final double negligableFreeEnergy;
+	public final boolean pipelined;
 
 	public final MathContext mathContext = BigExp.mathContext;
 	public final BoltzmannCalculator bcalc;
@@ -370,9 +404,10 @@ public class Sofea {
 
 	private Sofea(
 		MultiStateConfSpace confSpace, List<StateConfig> stateConfigs, File seqdbFile, MathContext seqdbMathContext,
-		File fringedbLowerFile, long fringedbLowerBytes, File fringedbUpperFile, long fringedbUpperBytes, File rcdbFile,
+		File fringedbLowerFile, long fringedbLowerBytes, File fringedbUpperFile, long fringedbUpperBytes, boolean fringedbMapped, File rcdbFile,
 		boolean showProgress, File performanceLogFile,
-		double sweepIncrement, int maxCriterionCheckSeconds, long maxNumMinimizations, double negligableFreeEnergy
+		double sweepIncrement, int maxCriterionCheckSeconds, long maxNumMinimizations, double negligableFreeEnergy,
+		boolean pipelined
 	) {
 
 		this.confSpace = confSpace;
@@ -383,6 +418,7 @@ public class Sofea {
 		this.fringedbLowerBytes = fringedbLowerBytes;
 		this.fringedbUpperFile = fringedbUpperFile;
 		this.fringedbUpperBytes = fringedbUpperBytes;
+		this.fringedbMapped = fringedbMapped;
 		this.rcdbFile = rcdbFile;
 		this.showProgress = showProgress;
 		this.performanceLogFile = performanceLogFile;
@@ -390,6 +426,7 @@ public class Sofea {
 		this.maxCriterionCheckSeconds = maxCriterionCheckSeconds;
 		this.maxNumMinimizations = maxNumMinimizations;
 		this.negligableFreeEnergy = negligableFreeEnergy;
+		this.pipelined = pipelined;
 
 		bcalc = new BoltzmannCalculator(mathContext);
 
@@ -428,20 +465,27 @@ public class Sofea {
 	}
 
 	public FringeDB openFringeDBLower() {
-		if (fringedbLowerFile.exists()) {
-			return FringeDB.open(confSpace, fringedbLowerFile);
-		} else {
-			log("Allocating %d bytes for %s", fringedbLowerBytes, fringedbLowerFile);
-			return FringeDB.create(confSpace, fringedbLowerFile, fringedbLowerBytes);
-		}
+		return openFringeDB(fringedbLowerFile, fringedbLowerBytes);
 	}
 
 	public FringeDB openFringeDBUpper() {
-		if (fringedbUpperFile.exists()) {
-			return FringeDB.open(confSpace, fringedbUpperFile);
+		return openFringeDB(fringedbUpperFile, fringedbUpperBytes);
+	}
+
+	private FringeDB openFringeDB(File file, long sizeBytes) {
+		if (file.exists()) {
+			if (fringedbMapped) {
+				return FringeDB.openMapped(confSpace, file);
+			} else {
+				return FringeDB.open(confSpace, file);
+			}
 		} else {
-			log("Allocating %d bytes for %s", fringedbUpperBytes, fringedbUpperFile);
-			return FringeDB.create(confSpace, fringedbUpperFile, fringedbUpperBytes);
+			log("Allocating %d bytes for %s", sizeBytes, file);
+			if (fringedbMapped) {
+				return FringeDB.createMapped(confSpace, file, sizeBytes);
+			} else {
+				return FringeDB.create(confSpace, file, sizeBytes);
+			}
 		}
 	}
 
@@ -661,12 +705,12 @@ public class Sofea {
 			// zSumUpper should already be normalized
 		}
 
-		boolean replacePass1(FringeDB.Transaction fringetx, SeqDB.Transaction seqtx, RCDB rcdb) {
+		boolean replacePass1(FringeDB.Transaction fringetx, SeqDB.Transaction seqtx, RCDB.Transaction rctx) {
 
 			// flush transactions if needed
 			boolean flush = !fringetx.txHasRoomFor(replacementNodes.size());
 			if (flush) {
-				flushTransactions(fringetx, seqtx);
+				flushTransactions(fringetx, seqtx, rctx);
 			}
 
 			StateInfo stateInfo = stateInfos.get(state.index);
@@ -688,19 +732,19 @@ public class Sofea {
 			seqtx.subZSumUpper(state, stateInfo.makeSeq(conf), zSumUpper);
 
 			// update rcdb if needed
-			if (rcdb != null) {
-				updateRCDBPass1(rcdb);
+			if (rctx != null) {
+				updateRCDBPass1(rctx);
 			}
 
 			return flush;
 		}
 
-		boolean requeuePass1(FringeDB.Transaction fringetx, SeqDB.Transaction seqtx, RCDB rcdb) {
+		boolean requeuePass1(FringeDB.Transaction fringetx, SeqDB.Transaction seqtx, RCDB.Transaction rctx) {
 
 			// flush transactions if needed
 			boolean flush = !fringetx.txHasRoomFor(1);
 			if (flush) {
-				flushTransactions(fringetx, seqtx);
+				flushTransactions(fringetx, seqtx, rctx);
 			}
 
 			if (replacementNodes.isEmpty() && zPaths.isEmpty()) {
@@ -739,27 +783,27 @@ public class Sofea {
 				seqtx.subZSumUpper(state, seq, zSumUpper);
 
 				// update rcdb if needed
-				if (rcdb != null ) {
-					updateRCDBPass1(rcdb);
+				if (rctx != null) {
+					updateRCDBPass1(rctx);
 				}
 			}
 
 			return flush;
 		}
 
-		void updateRCDBPass1(RCDB rcdb) {
+		void updateRCDBPass1(RCDB.Transaction rctx) {
 
 			StateInfo stateInfo = stateInfos.get(state.index);
 
 			for (RCInfo rcInfo : rcInfos) {
 
 				// add zSumUppers for all encountered nodes
-				rcdb.addZSumUpper(state, stateInfo.makeSeq(rcInfo.conf), rcInfo.conf, rcInfo.pos, rcInfo.zSumUpper);
+				rctx.addZSumUpper(state, stateInfo.makeSeq(rcInfo.conf), rcInfo.conf, rcInfo.pos, rcInfo.zSumUpper);
 
 				// and subtract from the parent nodes if needed
 				if (rcInfo.parentPos != Conf.Unassigned) {
 					Conf.unassignFor(rcInfo.conf, rcInfo.pos, () ->
-						rcdb.subZSumUpper(state, stateInfo.makeSeq(rcInfo.conf), rcInfo.conf, rcInfo.parentPos, rcInfo.zSumUpperInParent)
+						rctx.subZSumUpper(state, stateInfo.makeSeq(rcInfo.conf), rcInfo.conf, rcInfo.parentPos, rcInfo.zSumUpperInParent)
 					);
 				}
 			}
@@ -767,16 +811,16 @@ public class Sofea {
 			// subtract the current node, unless it's a root node
 			int pos = stateInfo.getLastAssignedPos(conf);
 			if (pos >= 0) {
-				rcdb.subZSumUpper(state, stateInfo.makeSeq(conf), conf, pos, zSumUpper.toBigDecimal());
+				rctx.subZSumUpper(state, stateInfo.makeSeq(conf), conf, pos, zSumUpper.toBigDecimal());
 			}
 		}
 
-		boolean replacePass2(FringeDB.Transaction fringetx, SeqDB.Transaction seqtx, RCDB rcdb) {
+		boolean replacePass2(FringeDB.Transaction fringetx, SeqDB.Transaction seqtx, RCDB.Transaction rctx) {
 
 			// flush transactions if needed
 			boolean flush = !fringetx.txHasRoomFor(replacementNodes.size());
 			if (flush) {
-				flushTransactions(fringetx, seqtx);
+				flushTransactions(fringetx, seqtx, rctx);
 			}
 
 			StateInfo stateInfo = stateInfos.get(state.index);
@@ -794,18 +838,18 @@ public class Sofea {
 			}
 
 			// update rcdb if needed
-			if (rcdb != null) {
+			if (rctx != null) {
 				for (ZPath zPath : zPaths) {
 
 					// add to the lower bound for all the RCs in this conf
 					int pos = stateInfo.getLastAssignedPos(zPath.conf);
-					rcdb.addZPath(state, stateInfo.makeSeq(zPath.conf), zPath.conf, pos, zPath.zPath.toBigDecimal(), zPath.zSumUpper.toBigDecimal());
+					rctx.addZPath(state, stateInfo.makeSeq(zPath.conf), zPath.conf, pos, zPath.zPath.toBigDecimal(), zPath.zSumUpper.toBigDecimal());
 
 					// subtract from the upper bound for the parent node
 					Conf.unassignFor(zPath.conf, pos, () -> {
 						int parentPos = stateInfo.getLastAssignedPos(zPath.conf);
 						if (parentPos >= 0) {
-							rcdb.subZSumUpper(state, stateInfo.makeSeq(zPath.conf), zPath.conf, parentPos, zPath.zSumUpper.toBigDecimal());
+							rctx.subZSumUpper(state, stateInfo.makeSeq(zPath.conf), zPath.conf, parentPos, zPath.zSumUpper.toBigDecimal());
 						}
 					});
 				}
@@ -814,12 +858,12 @@ public class Sofea {
 			return flush;
 		}
 
-		boolean requeuePass2(FringeDB.Transaction fringetx, SeqDB.Transaction seqtx, RCDB rcdb) {
+		boolean requeuePass2(FringeDB.Transaction fringetx, SeqDB.Transaction seqtx, RCDB.Transaction rctx) {
 
 			// flush transactions if needed
 			boolean flush = !fringetx.txHasRoomFor(1);
 			if (flush) {
-				flushTransactions(fringetx, seqtx);
+				flushTransactions(fringetx, seqtx, rctx);
 			}
 
 			normalize();
@@ -851,7 +895,7 @@ public class Sofea {
 			return flush;
 		}
 
-		boolean flushTransactions(FringeDB.Transaction fringetx, SeqDB.Transaction seqtx) {
+		boolean flushTransactions(FringeDB.Transaction fringetx, SeqDB.Transaction seqtx, RCDB.Transaction rctx) {
 
 			// make sure we didn't overflow the buffer entirely
 			if (replacementNodes.size() > fringetx.maxWriteBufferNodes()) {
@@ -860,10 +904,12 @@ public class Sofea {
 				));
 			}
 
-			// commit both transactions at the same time
+			// commit all the transactions at the same time
 			fringetx.commit();
 			seqtx.commit();
-			// TODO: make transactions for RCDB
+			if (rctx != null) {
+				rctx.commit();
+			}
 
 			return true;
 		}
@@ -892,6 +938,195 @@ public class Sofea {
 		}
 	}
 
+	/**
+	 * Overlaps fringe database I/O with node processing during a pass.
+	 *
+	 * A reader thread streams nodes from the fringe DB into a bounded buffer ahead of the workers,
+	 * and a writer thread applies finished nodes to the fringe DB, seq DB, and RC DB transactions,
+	 * committing them in batches whenever the fringe DB write buffer fills up.
+	 * So neither the workers nor the task listener ever wait on file I/O.
+	 */
+	private class FringePipeline {
+
+		final FringeDB.Transaction fringetx;
+		final Consumer<NodeTransaction> onRead;
+
+		final BlockingQueue<NodeTransaction> readQueue;
+		final BlockingQueue<Runnable> writeQueue = new LinkedBlockingQueue<>();
+		final Runnable endOfWrites = () -> {};
+
+		final Thread readThread;
+		final Thread writeThread;
+
+		volatile boolean stopReading = false;
+		volatile boolean abandoned = false;
+		volatile boolean readingFinished = false;
+		volatile Throwable error = null;
+
+		/** nodes that will be written by pending writes, but the fringe DB doesn't know about yet */
+		int numReservedNodes = 0;
+
+		/**
+		 * @param onRead called on the reader thread (while synchronized on Sofea) for every node read
+		 */
+		FringePipeline(FringeDB.Transaction fringetx, int bufferNodes, Consumer<NodeTransaction> onRead) {
+
+			this.fringetx = fringetx;
+			this.onRead = onRead;
+
+			readQueue = new ArrayBlockingQueue<>(bufferNodes);
+
+			readThread = new Thread(this::read, "Sofea-FringeReader");
+			readThread.setDaemon(true);
+			writeThread = new Thread(this::write, "Sofea-FringeWriter");
+			writeThread.setDaemon(true);
+
+			readThread.start();
+			writeThread.start();
+		}
+
+		private void read() {
+			try {
+				while (!stopReading && fringetx.hasNodesToRead()) {
+
+					fringetx.readNode();
+					NodeTransaction nodetx = new NodeTransaction(
+						fringetx.state(),
+						fringetx.conf(),
+						fringetx.zSumUpper()
+					);
+					synchronized (Sofea.this) { // don't race the listener thread
+						onRead.accept(nodetx);
+					}
+
+					// wait for room in the buffer, but once a node is read, it has to be processed
+					while (!readQueue.offer(nodetx, 10, TimeUnit.MILLISECONDS)) {
+						if (abandoned) {
+							return;
+						}
+					}
+				}
+			} catch (Throwable t) {
+				error = t;
+			} finally {
+				readingFinished = true;
+			}
+		}
+
+		private void write() {
+			while (true) {
+
+				Runnable op;
+				try {
+					op = writeQueue.take();
+				} catch (InterruptedException ex) {
+					error = ex;
+					return;
+				}
+
+				if (op == endOfWrites) {
+					break;
+				}
+
+				// after an error, keep draining the queue so nobody waits on us, but stop writing
+				if (error != null) {
+					continue;
+				}
+
+				try {
+					op.run();
+				} catch (Throwable t) {
+					error = t;
+				}
+			}
+		}
+
+		/** stop reading new nodes, but nodes already read will still be returned by {@link #nextNode} */
+		void stopReading() {
+			stopReading = true;
+		}
+
+		/**
+		 * Returns the next node read from the fringe DB, or null if there are no more nodes.
+		 * Calls whileWaiting periodically if the reader hasn't caught up yet.
+		 */
+		NodeTransaction nextNode(Runnable whileWaiting) {
+			while (true) {
+
+				checkError();
+
+				// NOTE: check the reader state before polling, so we can't miss the last node
+				boolean finished = readingFinished;
+
+				NodeTransaction nodetx = readQueue.poll();
+				if (nodetx != null) {
+					return nodetx;
+				}
+				if (finished) {
+					return null;
+				}
+
+				whileWaiting.run();
+
+				try {
+					nodetx = readQueue.poll(10, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException ex) {
+					throw new RuntimeException(ex);
+				}
+				if (nodetx != null) {
+					return nodetx;
+				}
+			}
+		}
+
+		/**
+		 * Queues a write that adds numNodes nodes to the fringe DB.
+		 * Call while synchronized on Sofea, so the reservation is visible to the fringe DB space checks.
+		 */
+		void write(int numNodes, Runnable op) {
+			numReservedNodes += numNodes;
+			writeQueue.add(() -> {
+				op.run();
+				synchronized (Sofea.this) {
+					numReservedNodes -= numNodes;
+				}
+			});
+		}
+
+		/** waits for the reader to stop and all the pending writes to finish */
+		void finish() {
+
+			stopReading = true;
+			writeQueue.add(endOfWrites);
+			try {
+				readThread.join();
+				writeThread.join();
+			} catch (InterruptedException ex) {
+				throw new RuntimeException(ex);
+			}
+
+			checkError();
+		}
+
+		/** stops the threads without waiting for the buffered nodes to be processed, eg after an exception */
+		void abandon() {
+			stopReading = true;
+			abandoned = true;
+			writeQueue.add(endOfWrites);
+		}
+
+		private void checkError() {
+			if (error != null) {
+				throw new RuntimeException("fringe pipeline failed", error);
+			}
+		}
+	}
+
+	private int pipelineBufferNodes(TaskExecutor tasks) {
+		// keep enough nodes buffered to feed all the workers, with some to spare
+		return Math.max(16, tasks.getParallelism()*4);
+	}
+
 	private Double[] initGThresholds(FringeDB fringedb) {
 		return confSpace.states.stream()
 			.map(state -> {
@@ -1307,83 +1542,134 @@ public class Sofea {
 
 		FringeDB.Transaction fringetx = fringedb.transaction();
 		SeqDB.Transaction seqtx = seqdb.transaction();
+		RCDB.Transaction rctx = rcdb != null ? rcdb.transaction() : null;
 		long numNodesToRead = fringetx.numNodesToRead();
 
 		// keep track of how many nodes are in outstanding tasks, and hence unknown to FringeDB's size counters
 		// NOTE: use a size-one array instead of a plain var, since Java's compiler is kinda dumb about lambdas
 		int[] nodesInFlight = { 0 };
 
-		// keep processing nodes until we get told to stop
-		while (true) {
+		// in pipelined mode, hand the fringe I/O off to other threads
+		FringePipeline pipeline = null;
+		if (pipelined) {
+			pipeline = new FringePipeline(fringetx, pipelineBufferNodes(tasks), nodetx -> {
+				stats[nodetx.state.index].read++;
+				nodesInFlight[0]++;
+			});
+		}
+		final FringePipeline fpipeline = pipeline;
 
-			// stop this pass if we hit our time quota
-			if (stopwatch.getTimeS() > targetSeconds) {
-				break;
+		// writes to the databases go through the pipeline, if any
+		// NOTE: call while synchronized on Sofea
+		BiConsumer<Integer,Runnable> write = (numNodes, op) -> {
+			if (fpipeline != null) {
+				fpipeline.write(numNodes, op);
+			} else {
+				op.run();
 			}
+		};
+		Supplier<Integer> otherNodesInFlight = () ->
+			nodesInFlight[0] + (fpipeline != null ? fpipeline.numReservedNodes : 0);
 
-			// read the next node and make a transaction for it
-			final NodeTransaction nodetx;
-			synchronized (Sofea.this) { // don't race the listener thread
-				if (!fringetx.hasNodesToRead()) {
-					break;
+		try {
+
+			// keep processing nodes until we get told to stop
+			while (true) {
+
+				// stop this pass if we hit our time quota
+				if (stopwatch.getTimeS() > targetSeconds) {
+					if (pipeline == null) {
+						break;
+					}
+					// but finish the nodes the pipeline already read
+					pipeline.stopReading();
 				}
-				fringetx.readNode();
-				stats[fringetx.state().index].read++;
-				nodesInFlight[0]++;
-				nodetx = new NodeTransaction(
-					fringetx.state(),
-					fringetx.conf(),
-					fringetx.zSumUpper()
-				);
-			}
 
-			// check the node filter in the criterion
-			if (criterion != null && criterion.filterNode(nodetx.state, nodetx.conf, bcalc) == Criterion.Filter.Requeue) {
-				synchronized (Sofea.this) { // don't race the listener thread
-					stats[nodetx.state.index].requeuedByFilter++;
-					nodesInFlight[0]--;
-					nodetx.requeuePass1(fringetx, seqtx, rcdb);
+				// read the next node and make a transaction for it
+				final NodeTransaction nodetx;
+				if (pipeline != null) {
+					nodetx = pipeline.nextNode(() -> {});
+					if (nodetx == null) {
+						break;
+					}
+				} else {
+					synchronized (Sofea.this) { // don't race the listener thread
+						if (!fringetx.hasNodesToRead()) {
+							break;
+						}
+						fringetx.readNode();
+						stats[fringetx.state().index].read++;
+						nodesInFlight[0]++;
+						nodetx = new NodeTransaction(
+							fringetx.state(),
+							fringetx.conf(),
+							fringetx.zSumUpper()
+						);
+					}
 				}
-				continue;
-			}
 
-			// process nodes with tasks (possibly in parallel)
-			tasks.submit(
-				() -> refineZSumUpper(
-					nodetx,
-					zThresholds[nodetx.state.index],
-					nodetx.index,
-					nodetx.zSumUpper
-				),
-				(result) -> {
+				// check the node filter in the criterion
+				if (criterion != null && criterion.filterNode(nodetx.state, nodetx.conf, bcalc) == Criterion.Filter.Requeue) {
+					synchronized (Sofea.this) { // don't race the listener thread
+						stats[nodetx.state.index].requeuedByFilter++;
+						nodesInFlight[0]--;
+						write.accept(1, () -> nodetx.requeuePass1(fringetx, seqtx, rctx));
+					}
+					continue;
+				}
 
-					synchronized (Sofea.this) { // don't race the main thread
+				// process nodes with tasks (possibly in parallel)
+				tasks.submit(
+					() -> refineZSumUpper(
+						nodetx,
+						zThresholds[nodetx.state.index],
+						nodetx.index,
+						nodetx.zSumUpper
+					),
+					(result) -> {
 
-						nodesInFlight[0]--;
+						synchronized (Sofea.this) { // don't race the main thread
 
-						if (result == NodeResult.Saved) {
+							nodesInFlight[0]--;
 
-							stats[nodetx.state.index].requeuedByThreshold++;
-							nodetx.requeuePass1(fringetx, seqtx, rcdb);
+							if (result == NodeResult.Saved) {
 
-						} else if (nodetx.hasRoomToReplace(fringetx, nodesInFlight[0])) {
+								stats[nodetx.state.index].requeuedByThreshold++;
+								write.accept(1, () -> nodetx.requeuePass1(fringetx, seqtx, rctx));
 
-							stats[nodetx.state.index].expanded++;
-							stats[nodetx.state.index].added += nodetx.numReplacementNodes();
-							nodetx.replacePass1(fringetx, seqtx, rcdb);
+							} else if (nodetx.hasRoomToReplace(fringetx, otherNodesInFlight.get())) {
 
-						} else {
+								stats[nodetx.state.index].expanded++;
+								stats[nodetx.state.index].added += nodetx.numReplacementNodes();
+								write.accept(nodetx.numReplacementNodes(), () -> nodetx.replacePass1(fringetx, seqtx, rctx));
 
-							stats[nodetx.state.index].requeuedForSpace++;
-							nodetx.requeuePass1(fringetx, seqtx, rcdb);
+							} else {
+
+								stats[nodetx.state.index].requeuedForSpace++;
+								write.accept(1, () -> nodetx.requeuePass1(fringetx, seqtx, rctx));
+							}
 						}
 					}
-				}
-			);
+				);
+			}
+			tasks.waitForFinish();
+
+			if (pipeline != null) {
+				pipeline.finish();
+				pipeline = null;
+			}
+
+		} finally {
+			if (pipeline != null) {
+				pipeline.abandon();
+			}
 		}
-		tasks.waitForFinish();
+
 		fringetx.commit();
 		seqtx.commit();
+		if (rctx != null) {
+			rctx.commit();
+		}
 
 		// show stats if needed
 		if (showProgress) {
@@ -1534,6 +1820,7 @@ public class Sofea {
 		FringeDB.Transaction fringetx = fringedb.transaction();
 		long numNodesToRead = fringetx.numNodesToRead();
 		SeqDB.Transaction seqtx = seqdb.transaction();
+		RCDB.Transaction rctx = rcdb != null ? rcdb.transaction() : null;
 
 		// keep track of how many nodes are in outstanding tasks, and hence unknown to FringeDB's size counters
 		// NOTE: use a size-one array instead of a plain var, since Java's compiler is kinda dumb about lambdas
@@ -1545,6 +1832,28 @@ public class Sofea {
 			stats[state.index] = new StateStats();
 		}
 
+		// in pipelined mode, hand the fringe I/O off to other threads
+		FringePipeline pipeline = null;
+		if (pipelined) {
+			pipeline = new FringePipeline(fringetx, pipelineBufferNodes(tasks), nodetx -> {
+				stats[nodetx.state.index].read++;
+				nodesInFlight[0]++;
+			});
+		}
+		final FringePipeline fpipeline = pipeline;
+
+		// writes to the databases go through the pipeline, if any
+		// NOTE: call while synchronized on Sofea
+		BiConsumer<Integer,Runnable> write = (numNodes, op) -> {
+			if (fpipeline != null) {
+				fpipeline.write(numNodes, op);
+			} else {
+				op.run();
+			}
+		};
+		Supplier<Integer> otherNodesInFlight = () ->
+			nodesInFlight[0] + (fpipeline != null ? fpipeline.numReservedNodes : 0);
+
 		// set up a queue to submit minimization jobs
 		// that runs on the main thread, since the listener thread can't submit jobs
 		Deque<NodeTransaction> minimizationQueue = new ArrayDeque<>();
@@ -1578,115 +1887,143 @@ public class Sofea {
 							stats[nodetx.state.index].expanded++;
 							stats[nodetx.state.index].added += nodetx.numReplacementNodes();
 							stats[nodetx.state.index].minimized += nodetx.zPaths.size();
-							nodetx.replacePass2(fringetx, seqtx, rcdb);
+							write.accept(nodetx.numReplacementNodes(), () -> nodetx.replacePass2(fringetx, seqtx, rctx));
 						}
 					}
 				);
 			}
 		};
 
-		// keep processing nodes until we get told to stop
-		while (true) {
+		try {
 
-			// stop this pass if we hit our time quota
-			if (stopwatch.getTimeS() > targetSeconds) {
-				break;
-			}
+			// keep processing nodes until we get told to stop
+			while (true) {
 
-			processMinimizationQueue.run();
+				// stop this pass if we hit our time quota
+				if (stopwatch.getTimeS() > targetSeconds) {
+					if (pipeline == null) {
+						break;
+					}
+					// but finish the nodes the pipeline already read
+					pipeline.stopReading();
+				}
 
-			// read the next node and make a transaction for it
-			final NodeTransaction nodetx;
-			synchronized (Sofea.this) { // don't race the listener thread
-				if (!fringetx.hasNodesToRead()) {
-					break;
+				processMinimizationQueue.run();
+
+				// read the next node and make a transaction for it
+				final NodeTransaction nodetx;
+				if (pipeline != null) {
+					// keep the minimizations flowing while we wait on the reader
+					nodetx = pipeline.nextNode(processMinimizationQueue);
+					if (nodetx == null) {
+						break;
+					}
+				} else {
+					synchronized (Sofea.this) { // don't race the listener thread
+						if (!fringetx.hasNodesToRead()) {
+							break;
+						}
+						fringetx.readNode();
+						stats[fringetx.state().index].read++;
+						nodesInFlight[0]++;
+						nodetx = new NodeTransaction(
+							fringetx.state(),
+							fringetx.conf(),
+							fringetx.zSumUpper()
+						);
+					}
 				}
-				fringetx.readNode();
-				stats[fringetx.state().index].read++;
-				nodesInFlight[0]++;
-				nodetx = new NodeTransaction(
-					fringetx.state(),
-					fringetx.conf(),
-					fringetx.zSumUpper()
-				);
-			}
 
-			// check the node filter in the criterion
-			if (criterion != null && criterion.filterNode(nodetx.state, nodetx.conf, bcalc) == Criterion.Filter.Requeue) {
-				synchronized (Sofea.this) { // don't race the listener thread
-					nodesInFlight[0]--;
-					stats[nodetx.state.index].requeuedByFilter++;
-					nodetx.requeuePass2(fringetx, seqtx, rcdb);
+				// check the node filter in the criterion
+				if (criterion != null && criterion.filterNode(nodetx.state, nodetx.conf, bcalc) == Criterion.Filter.Requeue) {
+					synchronized (Sofea.this) { // don't race the listener thread
+						nodesInFlight[0]--;
+						stats[nodetx.state.index].requeuedByFilter++;
+						write.accept(1, () -> nodetx.requeuePass2(fringetx, seqtx, rctx));
+					}
+					continue;
 				}
-				continue;
-			}
 
-			// try to expand the node (possibly in parallel)
-			tasks.submit(
-				() -> refineZSumLower(
-					nodetx,
-					zThresholds[nodetx.state.index],
-					nodetx.index,
-					nodetx.zSumUpper
-				),
-				(result) -> {
+				// try to expand the node (possibly in parallel)
+				tasks.submit(
+					() -> refineZSumLower(
+						nodetx,
+						zThresholds[nodetx.state.index],
+						nodetx.index,
+						nodetx.zSumUpper
+					),
+					(result) -> {
+
+						boolean needsMinimization = false;
 
-					boolean needsMinimization = false;
+						synchronized (Sofea.this) { // don't race the main thread
 
-					synchronized (Sofea.this) { // don't race the main thread
+							nodesInFlight[0]--;
 
-						nodesInFlight[0]--;
+							if (result == NodeResult.Saved) {
 
-						if (result == NodeResult.Saved) {
+								stats[nodetx.state.index].requeuedByThreshold++;
+								write.accept(1, () -> nodetx.requeuePass2(fringetx, seqtx, rctx));
 
-							stats[nodetx.state.index].requeuedByThreshold++;
-							nodetx.requeuePass2(fringetx, seqtx, rcdb);
+							} else if (nodetx.hasRoomToReplace(fringetx, otherNodesInFlight.get())) {
 
-						} else if (nodetx.hasRoomToReplace(fringetx, nodesInFlight[0])) {
+								if (nodetx.zPaths.isEmpty()) {
 
-							if (nodetx.zPaths.isEmpty()) {
+									// no minimizations needed
+									stats[nodetx.state.index].expanded++;
+									stats[nodetx.state.index].added += nodetx.numReplacementNodes();
+									write.accept(nodetx.numReplacementNodes(), () -> nodetx.replacePass2(fringetx, seqtx, rctx));
 
-								// no minimizations needed
-								stats[nodetx.state.index].expanded++;
-								stats[nodetx.state.index].added += nodetx.numReplacementNodes();
-								nodetx.replacePass2(fringetx, seqtx, rcdb);
+								} else {
+
+									// now we know we won't have to throw away info, we can do the minimizations
+									nodesInFlight[0] += nodetx.replacementNodes.size();
+									needsMinimization = true;
+								}
 
 							} else {
 
-								// now we know we won't have to throw away info, we can do the minimizations
-								nodesInFlight[0] += nodetx.replacementNodes.size();
-								needsMinimization = true;
+								stats[nodetx.state.index].requeuedForSpace++;
+								write.accept(1, () -> nodetx.requeuePass2(fringetx, seqtx, rctx));
 							}
-
-						} else {
-
-							stats[nodetx.state.index].requeuedForSpace++;
-							nodetx.requeuePass2(fringetx, seqtx, rcdb);
 						}
-					}
 
-					if (needsMinimization) {
-						// but tell the main thread to send the tasks,
-						// since the listener thread can deadlock if it tries
-						synchronized (minimizationQueue) {
-							minimizationQueue.add(nodetx);
+						if (needsMinimization) {
+							// but tell the main thread to send the tasks,
+							// since the listener thread can deadlock if it tries
+							synchronized (minimizationQueue) {
+								minimizationQueue.add(nodetx);
+							}
 						}
 					}
-				}
-			);
-		}
-		tasks.waitForFinish();
+				);
+			}
+			tasks.waitForFinish();
+
+			// do one last flush of the minimization queue
+			processMinimizationQueue.run();
+			tasks.waitForFinish();
+
+			// there shouldn't be any leftover minimizations
+			assert (minimizationQueue.isEmpty());
+			assert (nodesInFlight[0] == 0);
 
-		// do one last flush of the minimization queue
-		processMinimizationQueue.run();
-		tasks.waitForFinish();
+			if (pipeline != null) {
+				pipeline.finish();
+				pipeline = null;
+			}
 
-		// there shouldn't be any leftover minimizations
-		assert (minimizationQueue.isEmpty());
-		assert (nodesInFlight[0] == 0);
+		} finally {
+			if (pipeline != null) {
+				pipeline.abandon();
+			}
+		}
 
 		fringetx.commit();
 		seqtx.commit();
+		if (rctx != null) {
+			rctx.commit();
+		}
 
 		// show stats if needed
 		if (showProgress) {
@@ -0,0 +1,297 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.tools;
+
+import edu.duke.cs.osprey.Osprey;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static edu.duke.cs.osprey.tools.Log.log;
+
+
+/**
+ * Binary snapshots of expensive-to-build startup objects (like parsed forcefield parameters and template libraries),
+ * so short-lived processes can skip the parsing.
+ *
+ * A snapshot is only used if its key matches, where the key is a hash of everything the object was built from,
+ * eg the contents of the resource files, plus the snapshot format version and the Osprey version.
+ * Otherwise, the object gets built the usual way, and the snapshot gets (re)written.
+ *
+ * Snapshots are plain Java serialization behind a small header, so reading one still builds every object on the heap,
+ * it just skips parsing the text files. The file is memory-mapped only to avoid copying it into a buffer first.
+ * Snapshots are written atomically, so many processes can share one snapshot directory safely.
+ *
+ * Since a snapshot directory could be shared, reads only accept Osprey classes,
+ * plus the few JDK types that startup objects are built from, see {@link #Filter}.
+ */
+public class SnapshotFile {
+
+	/** bump this when the snapshot file format changes */
+	public static final int Version = 1;
+
+	private static final long Magic = 0x4f53505253534e50L; // OSPRSSNP
+	private static final int HeaderBytes = Long.BYTES + Integer.BYTES + Key.NumBytes;
+
+	private static final Set<String> AllowedLangClasses = new HashSet<>(Arrays.asList(
+		"java.lang.Object",
+		"java.lang.String",
+		"java.lang.Enum",
+		"java.lang.Number",
+		"java.lang.Boolean",
+		"java.lang.Character",
+		"java.lang.Byte",
+		"java.lang.Short",
+		"java.lang.Integer",
+		"java.lang.Long",
+		"java.lang.Float",
+		"java.lang.Double"
+	));
+
+	/**
+	 * Only lets Osprey classes, primitive types, boxed primitives, strings,
+	 * and the java.util collections through, and rejects everything else in the snapshot.
+	 */
+	public static final ObjectInputFilter Filter = (info) -> {
+
+		Class<?> c = info.serialClass();
+		if (c == null) {
+			// not a class check, eg array length or graph depth
+			return ObjectInputFilter.Status.UNDECIDED;
+		}
+
+		while (c.isArray()) {
+			c = c.getComponentType();
+		}
+		if (c.isPrimitive()) {
+			return ObjectInputFilter.Status.ALLOWED;
+		}
+
+		String name = c.getName();
+		if (name.startsWith("edu.duke.cs.osprey.")
+			|| AllowedLangClasses.contains(name)
+			|| c.getPackageName().equals("java.util")) {
+			return ObjectInputFilter.Status.ALLOWED;
+		}
+
+		return ObjectInputFilter.Status.REJECTED;
+	};
+
+	public static class Key {
+
+		public static final int NumBytes = 32;
+
+		private final MessageDigest digest;
+		private byte[] bytes = null;
+
+		public Key(String name) {
+			try {
+				digest = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException ex) {
+				throw new Error("JVM doesn't support SHA-256", ex);
+			}
+			add(name);
+			add(Version);
+			add(Osprey.INSTANCE.getVersion());
+		}
+
+		public Key add(String val) {
+			if (val == null) {
+				add(-1);
+			} else {
+				byte[] b = val.getBytes(StandardCharsets.UTF_8);
+				add(b.length);
+				update(b);
+			}
+			return this;
+		}
+
+		public Key add(int val) {
+			update(ByteBuffer.allocate(Integer.BYTES).putInt(val).array());
+			return this;
+		}
+
+		public Key add(boolean val) {
+			return add(val ? 1 : 0);
+		}
+
+		public Key add(double val) {
+			update(ByteBuffer.allocate(Double.BYTES).putDouble(val).array());
+			return this;
+		}
+
+		public Key add(Iterable<String> vals) {
+			int num = 0;
+			for (String val : vals) {
+				add(val);
+				num++;
+			}
+			return add(num);
+		}
+
+		private void update(byte[] b) {
+			if (bytes != null) {
+				throw new IllegalStateException("key already finished");
+			}
+			digest.update(b);
+		}
+
+		public byte[] bytes() {
+			if (bytes == null) {
+				bytes = digest.digest();
+			}
+			return bytes;
+		}
+
+		/** a short name for files, the full key is checked when reading */
+		public String toFilename(String prefix) {
+			StringBuilder buf = new StringBuilder(prefix);
+			buf.append('-');
+			for (int i=0; i<8; i++) {
+				buf.append(String.format("%02x", bytes()[i]));
+			}
+			buf.append(".snapshot");
+			return buf.toString();
+		}
+	}
+
+	/**
+	 * Reads the object from a snapshot in the directory if there's one with a matching key,
+	 * otherwise makes the object and writes a snapshot for next time.
+	 */
+	public static <T extends Serializable> T loadOrMake(File dir, String prefix, Key key, Class<T> type, Supplier<T> maker) {
+
+		File file = new File(dir, key.toFilename(prefix));
+
+		T obj = read(file, key, type);
+		if (obj != null) {
+			return obj;
+		}
+
+		obj = maker.get();
+		try {
+			write(file, key, obj);
+		} catch (IOException ex) {
+			// not being able to cache isn't fatal, we'll just rebuild next time
+			log("can't write snapshot %s: %s", file, ex.getMessage());
+		} catch (StackOverflowError ex) {
+			log("can't write snapshot %s: stack overflow, consider increasing -Xss", file);
+		}
+		return obj;
+	}
+
+	/**
+	 * Reads the object from the snapshot file.
+	 *
+	 * @return the object, or null if the file is missing, has a different key, or is unreadable
+	 */
+	public static <T extends Serializable> T read(File file, Key key, Class<T> type) {
+
+		if (!file.exists()) {
+			return null;
+		}
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+			if (channel.size() < HeaderBytes) {
+				return null;
+			}
+			ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			// check the header
+			if (buf.getLong() != Magic || buf.getInt() != Version) {
+				return null;
+			}
+			byte[] fileKey = new byte[Key.NumBytes];
+			buf.get(fileKey);
+			if (!Arrays.equals(fileKey, key.bytes())) {
+				return null;
+			}
+
+			try (ObjectInputStream in = new ObjectInputStream(new ByteBufferInputStream(buf))) {
+				in.setObjectInputFilter(Filter);
+				Object obj = in.readObject();
+				if (!type.isInstance(obj)) {
+					return null;
+				}
+				return type.cast(obj);
+			}
+
+		} catch (IOException | ClassNotFoundException | RuntimeException ex) {
+			// stale or corrupt snapshot, just rebuild
+			log("can't read snapshot %s: %s", file, ex.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the object to the snapshot file, atomically if the filesystem allows it.
+	 */
+	public static void write(File file, Key key, Serializable obj)
+	throws IOException {
+
+		File dir = file.getAbsoluteFile().getParentFile();
+		dir.mkdirs();
+		Path tmp = Files.createTempFile(dir.toPath(), file.getName(), ".tmp");
+
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp.toFile())))) {
+				out.writeLong(Magic);
+				out.writeInt(Version);
+				out.write(key.bytes());
+				ObjectOutputStream objOut = new ObjectOutputStream(out);
+				objOut.writeObject(obj);
+				objOut.flush();
+			}
+
+			try {
+				Files.move(tmp, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+}
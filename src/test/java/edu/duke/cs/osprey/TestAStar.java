@@ -226,6 +226,34 @@ public class TestAStar extends TestBase {
 		checkDagkRigid(tree, search);
 	}
 	
+	@Test
+	public void testDagkRigidStaticScoreOrderMPLPNode5IterWarm() {
+		SearchProblem search = makeSearchProblemDagkRigid();
+		
+		ConfAStarTree tree = new ConfAStarTree.Builder(search.emat, search.pruneMat)
+			.setCustom(
+				new StaticScoreHMeanAStarOrder(),
+				new PairwiseGScorer(search.emat),
+				new MPLPPairwiseHScorer(new NodeUpdater(), search.emat, 5, 0.0001, 2)
+			).build();
+		
+		checkDagkRigid(tree, search);
+	}
+	
+	@Test
+	public void testDagkRigidStaticScoreOrderMPLPEdge20IterWarm() {
+		SearchProblem search = makeSearchProblemDagkRigid();
+		
+		ConfAStarTree tree = new ConfAStarTree.Builder(search.emat, search.pruneMat)
+			.setCustom(
+				new StaticScoreHMeanAStarOrder(),
+				new PairwiseGScorer(search.emat),
+				new MPLPPairwiseHScorer(new EdgeUpdater(), search.emat, 20, 0.0001, 3)
+			).build();
+		
+		checkDagkRigid(tree, search);
+	}
+	
 	
 	// RIGID TESTS (with pruning)
 	
@@ -367,6 +395,20 @@ public class TestAStar extends TestBase {
 		checkDagkRigidInf(tree, search);
 	}
 	
+	@Test
+	public void testDagkRigidInfStaticScoreOrderMPLPNode5IterWarm() {
+		SearchProblem search = makeSearchProblemDagkRigidInf();
+		
+		ConfAStarTree tree = new ConfAStarTree.Builder(search.emat, search.pruneMat)
+			.setCustom(
+				new StaticScoreHMeanAStarOrder(),
+				new PairwiseGScorer(search.emat),
+				new MPLPPairwiseHScorer(new NodeUpdater(), search.emat, 5, 0.0001, 2)
+			).build();
+		
+		checkDagkRigidInf(tree, search);
+	}
+	
 	
 	// CONTINUOUS TESTS
 	
@@ -37,6 +37,7 @@ import static org.hamcrest.MatcherAssert.*;
 
 import edu.duke.cs.osprey.astar.conf.ConfAStarTree;
 import edu.duke.cs.osprey.astar.conf.ConfRanker;
+import edu.duke.cs.osprey.astar.conf.RCs;
 import edu.duke.cs.osprey.confspace.ConfSearch;
 import edu.duke.cs.osprey.confspace.SimpleConfSpace;
 import edu.duke.cs.osprey.confspace.Strand;
@@ -65,6 +66,30 @@ public class TestConfRanker {
 	}
 	@Test public void tinyDiscrete1CC8() { checkEveryConf(makeTinyDiscrete1CC8()); }
 
+	@Test
+	public void positionWithNoRCs() {
+
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+			.addStrand(makeTinyDiscrete1CC8())
+			.build();
+		EnergyMatrix emat = calcEmat(confSpace);
+
+		// prune every RC at the last position, so there are no conformations at all
+		RCs rcs = new RCs(confSpace, (pos, resConf) -> pos.index != 2);
+		assertThat(rcs.getNumConformations(), is(BigInteger.ZERO));
+
+		ConfRanker ranker = new ConfRanker.Builder(confSpace, emat)
+			.setRCs(rcs)
+			.build();
+
+		for (double score : new double[] { -1e9, 0.0, 1e9 }) {
+			assertThat(ranker.getNumConfsAtMost(score), is(BigInteger.ZERO));
+			ConfRanker.RankBounds bounds = ranker.getNumConfsAtMost(score, 60*1000);
+			assertThat(bounds.lower, is(BigInteger.ZERO));
+			assertThat(bounds.upper, is(BigInteger.ZERO));
+		}
+	}
+
 	public static Strand makeSmall1CC8() {
 
 		// 2268 confs
@@ -86,6 +111,29 @@ public class TestConfRanker {
 		return strand;
 	}
 	@Test public void medium1CC8() { assertThat(getZeroRank(makeMedium1CC8()), is(new BigInteger("40306"))); }
+	@Test public void medium1CC8Parallel() { assertThat(getZeroRank(makeMedium1CC8(), Parallelism.makeCpu(4)), is(new BigInteger("40306"))); }
+
+	@Test
+	public void medium1CC8TimeBudget() {
+
+		ConfRanker ranker = makeRanker(makeMedium1CC8(), Parallelism.makeCpu(2));
+		BigInteger rank = new BigInteger("40306");
+
+		// no time at all, so nothing should be classified
+		ConfRanker.RankBounds bounds = ranker.getNumConfsAtMost(0.0, 0);
+		assertThat(bounds.lower, is(BigInteger.ZERO));
+		assertThat(bounds.upper, is(ranker.rcs.getNumConformations()));
+
+		// a little time, the bounds should still be certified
+		bounds = ranker.getNumConfsAtMost(0.0, 1);
+		assertThat(bounds.lower, lessThanOrEqualTo(rank));
+		assertThat(bounds.upper, greaterThanOrEqualTo(rank));
+
+		// plenty of time, the bounds should be exact
+		bounds = ranker.getNumConfsAtMost(0.0, 60*1000);
+		assertThat(bounds.isExact(), is(true));
+		assertThat(bounds.lower, is(rank));
+	}
 
 	public static Strand makeLarge1CC8() {
 
@@ -116,22 +164,25 @@ public class TestConfRanker {
 	// dynamic heuristic:             rank 21039231, finished in 4.53 s
 	// optimized dynamic heuristic:   rank 21039231, finished in 1.16 s
 
-	private void checkEveryConf(Strand strand) {
-
-		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
-			.addStrand(strand)
-			.build();
-
-		// compute an emat
-		EnergyMatrix emat;
+	private static EnergyMatrix calcEmat(SimpleConfSpace confSpace) {
 		try (EnergyCalculator ecalc = new EnergyCalculator.Builder(confSpace, new ForcefieldParams())
 			.setParallelism(Parallelism.makeCpu(4))
 			.build()) {
 
-			emat = new SimplerEnergyMatrixCalculator.Builder(confSpace, ecalc)
+			return new SimplerEnergyMatrixCalculator.Builder(confSpace, ecalc)
 				.build()
 				.calcEnergyMatrix();
 		}
+	}
+
+	private void checkEveryConf(Strand strand) {
+
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+
+		// compute an emat
+		EnergyMatrix emat = calcEmat(confSpace);
 
 		// make the ranker
 		ConfRanker ranker = new ConfRanker.Builder(confSpace, emat)
@@ -163,27 +214,12 @@ public class TestConfRanker {
 	}
 
 	public BigInteger getZeroRank(Strand strand) {
+		return getZeroRank(strand, Parallelism.makeCpu(1));
+	}
 
-		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
-			.addStrand(strand)
-			.build();
-
-		//log("confs: %s", formatBig(new RCs(confSpace).getNumConformations()));
-
-		// compute an emat
-		EnergyMatrix emat;
-		try (EnergyCalculator ecalc = new EnergyCalculator.Builder(confSpace, new ForcefieldParams())
-			.setParallelism(Parallelism.makeCpu(4))
-			.build()) {
-
-			emat = new SimplerEnergyMatrixCalculator.Builder(confSpace, ecalc)
-				.build()
-				.calcEnergyMatrix();
-		}
+	public BigInteger getZeroRank(Strand strand, Parallelism parallelism) {
 
-		// make the ranker
-		ConfRanker ranker = new ConfRanker.Builder(confSpace, emat)
-			.build();
+		ConfRanker ranker = makeRanker(strand, parallelism);
 
 		/*
 		ranker.reportProgress = true;
@@ -195,4 +231,21 @@ public class TestConfRanker {
 
 		return ranker.getNumConfsAtMost(0.0);
 	}
+
+	private ConfRanker makeRanker(Strand strand, Parallelism parallelism) {
+
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+
+		//log("confs: %s", formatBig(new RCs(confSpace).getNumConformations()));
+
+		// compute an emat
+		EnergyMatrix emat = calcEmat(confSpace);
+
+		// make the ranker
+		return new ConfRanker.Builder(confSpace, emat)
+			.setParallelism(parallelism)
+			.build();
+	}
 }
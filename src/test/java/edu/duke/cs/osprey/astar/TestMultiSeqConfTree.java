@@ -0,0 +1,298 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.astar;
+
+import edu.duke.cs.osprey.astar.conf.ConfAStarTree;
+import edu.duke.cs.osprey.astar.conf.MultiSeqConfTree;
+import edu.duke.cs.osprey.confspace.ConfSearch;
+import edu.duke.cs.osprey.confspace.Sequence;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.SimplerEnergyMatrixCalculator;
+import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
+import edu.duke.cs.osprey.energy.EnergyCalculator;
+import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
+import edu.duke.cs.osprey.kstar.pfunc.GradientDescentPfunc;
+import edu.duke.cs.osprey.kstar.pfunc.MultiSeqPfuncFactory;
+import edu.duke.cs.osprey.kstar.pfunc.PartitionFunction;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+import edu.duke.cs.osprey.structure.PDBIO;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static edu.duke.cs.osprey.TestBase.isAbsolutely;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+
+public class TestMultiSeqConfTree {
+
+	private static SimpleConfSpace makeConfSpace() {
+
+		Strand strand = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+		for (String resNum : Arrays.asList("A2", "A3")) {
+			strand.flexibility.get(resNum).setLibraryRotamers(Strand.WildType, "VAL", "LEU");
+		}
+		for (String resNum : Arrays.asList("A4", "A5", "A6")) {
+			strand.flexibility.get(resNum).setLibraryRotamers(Strand.WildType);
+		}
+		return new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+	}
+
+	private static EnergyMatrix calcEmat(SimpleConfSpace confSpace) {
+		try (EnergyCalculator ecalc = new EnergyCalculator.Builder(confSpace, new ForcefieldParams())
+			.setParallelism(Parallelism.makeCpu(4))
+			.build()
+		) {
+			return new SimplerEnergyMatrixCalculator.Builder(confSpace, ecalc)
+				.build()
+				.calcEnergyMatrix();
+		}
+	}
+
+	private static List<Sequence> makeSequences(SimpleConfSpace confSpace) {
+		List<Sequence> sequences = new ArrayList<>();
+		for (String type2 : Arrays.asList(Strand.WildType, "VAL", "LEU")) {
+			for (String type3 : Arrays.asList(Strand.WildType, "VAL", "LEU")) {
+				Sequence seq = confSpace.seqSpace.makeWildTypeSequence();
+				if (!type2.equals(Strand.WildType)) {
+					seq.set("A2", type2);
+				}
+				if (!type3.equals(Strand.WildType)) {
+					seq.set("A3", type3);
+				}
+				if (!sequences.contains(seq)) {
+					sequences.add(seq);
+				}
+			}
+		}
+		return sequences;
+	}
+
+	private static List<ConfSearch.ScoredConf> enumerate(ConfSearch search) {
+		List<ConfSearch.ScoredConf> confs = new ArrayList<>();
+		while (true) {
+			ConfSearch.ScoredConf conf = search.nextConf();
+			if (conf == null) {
+				break;
+			}
+			confs.add(conf);
+		}
+		return confs;
+	}
+
+	@Test
+	public void small1CC8() {
+
+		SimpleConfSpace confSpace = makeConfSpace();
+		EnergyMatrix emat = calcEmat(confSpace);
+		List<Sequence> sequences = makeSequences(confSpace);
+
+		MultiSeqConfTree tree = new MultiSeqConfTree.Builder(emat, confSpace)
+			.addSequences(sequences)
+			.build();
+
+		// interleave the searches, so they really do share nodes
+		List<ConfSearch> searches = new ArrayList<>();
+		List<List<ConfSearch.ScoredConf>> confs = new ArrayList<>();
+		for (Sequence seq : sequences) {
+			searches.add(tree.makeConfSearch(seq));
+			confs.add(new ArrayList<>());
+		}
+		boolean isDone = false;
+		while (!isDone) {
+			isDone = true;
+			for (int i=0; i<searches.size(); i++) {
+				ConfSearch.ScoredConf conf = searches.get(i).nextConf();
+				if (conf != null) {
+					confs.get(i).add(conf);
+					isDone = false;
+				}
+			}
+		}
+		assertThat(tree.getNumReusedExpansions(), greaterThan(0L));
+
+		// each sequence should get the same confs as a single-sequence search, in the same order
+		for (int i=0; i<sequences.size(); i++) {
+			Sequence seq = sequences.get(i);
+
+			List<ConfSearch.ScoredConf> expected = enumerate(new ConfAStarTree.Builder(emat, seq.makeRCs(confSpace))
+				.setTraditional()
+				.build()
+			);
+
+			List<ConfSearch.ScoredConf> observed = confs.get(i);
+			assertThat(seq.toString(), observed.size(), is(expected.size()));
+			for (int c=0; c<expected.size(); c++) {
+				assertThat(observed.get(c).getScore(), isAbsolutely(expected.get(c).getScore(), 1e-9));
+			}
+		}
+	}
+
+	@Test
+	public void fewerNodesThanSeparateSearches() {
+
+		SimpleConfSpace confSpace = makeConfSpace();
+		EnergyMatrix emat = calcEmat(confSpace);
+		List<Sequence> sequences = makeSequences(confSpace);
+
+		// enumerate every sequence with its own A* tree
+		long numSeparateExpansions = 0;
+		long numSeparateConfs = 0;
+		for (Sequence seq : sequences) {
+			ConfAStarTree astar = new ConfAStarTree.Builder(emat, seq.makeRCs(confSpace))
+				.setTraditional()
+				.build();
+			astar.initProgress();
+			numSeparateConfs += enumerate(astar).size();
+			numSeparateExpansions += astar.getProgress().getNumNodesExpanded();
+		}
+
+		// enumerate every sequence with one shared tree
+		MultiSeqConfTree tree = new MultiSeqConfTree.Builder(emat, confSpace)
+			.addSequences(sequences)
+			.build();
+		long numSharedConfs = 0;
+		for (Sequence seq : sequences) {
+			numSharedConfs += enumerate(tree.makeConfSearch(seq)).size();
+		}
+
+		assertThat(numSharedConfs, is(numSeparateConfs));
+		assertThat(tree.getNumSharedExpansions(), greaterThan(0L));
+		assertThat(tree.getNumExpansions(), lessThan(numSeparateExpansions));
+	}
+
+	@Test
+	public void forgetsSharedChildren() {
+
+		SimpleConfSpace confSpace = makeConfSpace();
+		EnergyMatrix emat = calcEmat(confSpace);
+		List<Sequence> sequences = makeSequences(confSpace);
+
+		// with one search per sequence, a second round of searches has to expand the shared nodes again
+		MultiSeqConfTree tree = new MultiSeqConfTree.Builder(emat, confSpace)
+			.addSequences(sequences)
+			.build();
+		for (Sequence seq : sequences) {
+			enumerate(tree.makeConfSearch(seq));
+		}
+		long numSharedExpansions = tree.getNumSharedExpansions();
+		assertThat(numSharedExpansions, greaterThan(0L));
+		for (Sequence seq : sequences) {
+			enumerate(tree.makeConfSearch(seq));
+		}
+		assertThat(tree.getNumSharedExpansions(), greaterThan(numSharedExpansions));
+
+		// with two searches per sequence, the second round reuses the shared nodes
+		tree = new MultiSeqConfTree.Builder(emat, confSpace)
+			.addSequences(sequences)
+			.setNumSearchesPerSequence(2)
+			.build();
+		for (Sequence seq : sequences) {
+			enumerate(tree.makeConfSearch(seq));
+		}
+		assertThat(tree.getNumSharedExpansions(), is(numSharedExpansions));
+		for (Sequence seq : sequences) {
+			enumerate(tree.makeConfSearch(seq));
+		}
+		assertThat(tree.getNumSharedExpansions(), is(numSharedExpansions));
+	}
+
+	@Test
+	public void pfuncFactory() {
+
+		SimpleConfSpace confSpace = makeConfSpace();
+		List<Sequence> sequences = makeSequences(confSpace);
+		final double epsilon = 0.1;
+
+		try (EnergyCalculator ecalc = new EnergyCalculator.Builder(confSpace, new ForcefieldParams())
+			.setParallelism(Parallelism.makeCpu(4))
+			.build()
+		) {
+			ConfEnergyCalculator confEcalc = new ConfEnergyCalculator.Builder(confSpace, ecalc)
+				.setReferenceEnergies(new SimplerEnergyMatrixCalculator.Builder(confSpace, ecalc)
+					.build()
+					.calcReferenceEnergies()
+				)
+				.build();
+			EnergyMatrix emat = new SimplerEnergyMatrixCalculator.Builder(confEcalc)
+				.build()
+				.calcEnergyMatrix();
+
+			MultiSeqConfTree tree = new MultiSeqConfTree.Builder(emat, confSpace)
+				.addSequences(sequences)
+				.build();
+			MultiSeqPfuncFactory sharedPfuncs = new MultiSeqPfuncFactory(confEcalc, tree);
+
+			try (TaskExecutor.ContextGroup contexts = ecalc.tasks.contextGroup()) {
+
+				// compute the pfuncs one sequence at a time, like K*
+				for (Sequence seq : sequences) {
+
+					PartitionFunction.Result expected = calcPfunc(
+						new GradientDescentPfunc(
+							confEcalc,
+							new ConfAStarTree.Builder(emat, seq.makeRCs(confSpace))
+								.setTraditional()
+								.build(),
+							seq.makeRCs(confSpace).getNumConformations()
+						),
+						contexts, epsilon
+					);
+					PartitionFunction.Result observed = calcPfunc(sharedPfuncs.make(seq.makeRCs(confSpace)), contexts, epsilon);
+
+					assertThat(seq.toString(), observed.status, is(expected.status));
+					assertThat(seq.toString(), observed.values.calcFreeEnergyBounds().intersects(expected.values.calcFreeEnergyBounds()), is(true));
+				}
+			}
+
+			assertThat(tree.getNumReusedExpansions(), greaterThan(0L));
+		}
+	}
+
+	private static PartitionFunction.Result calcPfunc(PartitionFunction pfunc, TaskExecutor.ContextGroup contexts, double epsilon) {
+		pfunc.setInstanceId(0);
+		pfunc.init(epsilon);
+		pfunc.putTaskContexts(contexts);
+		pfunc.compute();
+		return pfunc.makeResult();
+	}
+}
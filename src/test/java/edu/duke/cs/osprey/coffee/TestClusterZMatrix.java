@@ -4,14 +4,23 @@ import static org.hamcrest.Matchers.*;
 import static org.hamcrest.MatcherAssert.*;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import edu.duke.cs.osprey.TestBase;
+import edu.duke.cs.osprey.astar.conf.ConfIndex;
+import edu.duke.cs.osprey.coffee.bounds.TriplewiseBounder;
+import edu.duke.cs.osprey.coffee.zmat.BigExpArray;
 import edu.duke.cs.osprey.coffee.zmat.ClusterZMatrix;
 import edu.duke.cs.osprey.confspace.MultiStateConfSpace;
 import edu.duke.cs.osprey.confspace.compiled.PosInterDist;
 import edu.duke.cs.osprey.energy.compiled.PosInterGen;
 import edu.duke.cs.osprey.parallelism.Cluster;
 import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.tools.BigExp;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
 import java.util.function.Consumer;
 
 
@@ -95,6 +104,128 @@ public class TestClusterZMatrix {
 		);
 	}
 
+	@Test
+	public void pos6_triplewiseBounderIncremental() {
+
+		var confSpace = TestCoffee.affinity_6ov7_2mut4flex();
+		var zmat = calcZMat(null, confSpace, "complex", PosInterDist.DesmetEtAl1992, 10.0, 4);
+		assertThat(zmat.hasTriples(), is(true));
+
+		var bounder = new TriplewiseBounder(zmat);
+		var cs = zmat.confSpace;
+
+		// assign random confs one position at a time, and make sure the incremental g matches the full g
+		var rand = new Random(12345);
+		for (int i=0; i<100; i++) {
+
+			var index = new ConfIndex(cs.numPos());
+			index.updateUndefined();
+			var g = bounder.g(index);
+
+			while (index.numUndefined > 0) {
+				int posi = index.undefinedPos[rand.nextInt(index.numUndefined)];
+				int confi = rand.nextInt(cs.numConf(posi));
+				index.assignInPlace(posi, confi);
+
+				g.mult(bounder.gDifferential(index, posi, confi));
+
+				var gExp = bounder.g(index);
+				assertThat(g.greaterThanOrEqual(gExp, 1e-9), is(true));
+				assertThat(g.lessThanOrEqual(gExp, 1e-9), is(true));
+			}
+		}
+	}
+
+	@Test
+	public void pos6_cacheFile() {
+
+		var confSpace = TestCoffee.affinity_6ov7_2mut4flex();
+		var state = confSpace.getState("complex");
+
+		try (var cacheFile = new TestBase.TempFile("zmat.complex.cache")) {
+
+			var coffee = new Coffee.Builder(confSpace)
+				.setParallelism(Parallelism.makeCpu(4))
+				.configEachState(config -> {
+					config.posInterGen = new PosInterGen(PosInterDist.DesmetEtAl1992, null);
+					config.zmatCacheFile = cacheFile;
+				})
+				.setStaticStatic(true)
+				.setTripleCorrectionThreshold(10.0)
+				.build();
+
+			// the first time computes the zmat and writes the cache
+			var zmatExp = coffee.calcZMat(state.index);
+			assertThat(cacheFile.exists(), is(true));
+
+			// the second time should read the same zmat from the cache
+			var zmatObs = coffee.calcZMat(state.index);
+
+			var cs = zmatExp.confSpace;
+			assertThat(zmatObs.staticStatic(), is(zmatExp.staticStatic()));
+			assertThat(zmatObs.hasTriples(), is(zmatExp.hasTriples()));
+			for (int posi1=0; posi1<cs.numPos(); posi1++) {
+				for (int confi1=0; confi1<cs.numConf(posi1); confi1++) {
+					assertThat(zmatObs.single(posi1, confi1), is(zmatExp.single(posi1, confi1)));
+					for (int posi2=0; posi2<posi1; posi2++) {
+						for (int confi2=0; confi2<cs.numConf(posi2); confi2++) {
+							assertThat(zmatObs.pair(posi1, confi1, posi2, confi2), is(zmatExp.pair(posi1, confi1, posi2, confi2)));
+							for (int posi3=0; posi3<posi2; posi3++) {
+								for (int confi3=0; confi3<cs.numConf(posi3); confi3++) {
+									assertThat(
+										zmatObs.triple(posi1, confi1, posi2, confi2, posi3, confi3),
+										is(zmatExp.triple(posi1, confi1, posi2, confi2, posi3, confi3))
+									);
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void bigExpArrayMapped()
+	throws IOException {
+
+		var exp = new BigExpArray(100);
+		for (int i=0; i<exp.size(); i+=3) {
+			exp.set(i, new BigExp(1.5, i));
+		}
+
+		try (var file = new TestBase.TempFile("bigexparray.bin")) {
+
+			try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+				exp.write(channel);
+			}
+
+			BigExpArray obs;
+			try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				obs = BigExpArray.map(channel, exp.size());
+				assertThat(channel.position(), is(exp.numBytes()));
+			}
+
+			// the mapping outlives the channel
+			assertThat(obs.count(), is(exp.count()));
+			for (int i=0; i<exp.size(); i++) {
+				assertThat(obs.get(i), is(exp.get(i)));
+			}
+
+			// writes go to a private copy, not the file
+			obs.set(1, new BigExp(2.0, 7));
+			obs.set(0, null);
+			assertThat(obs.get(1), is(new BigExp(2.0, 7)));
+			assertThat(obs.isSet(0), is(false));
+			assertThat(obs.get(3), is(exp.get(3)));
+			try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				var reread = BigExpArray.map(channel, exp.size());
+				assertThat(reread.get(0), is(exp.get(0)));
+				assertThat(reread.isSet(1), is(false));
+			}
+		}
+	}
+
 	/** test that the clustered version computes the same matrix as the local version */
 	private void compareZMat(MultiStateConfSpace confSpace, String stateName, PosInterDist posInterDist, Double triplesThreshold, int numMembers, int numThreads) {
 
@@ -0,0 +1,104 @@
+package edu.duke.cs.osprey.coffee;
+
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import edu.duke.cs.osprey.coffee.nodedb.NodeIndex;
+import edu.duke.cs.osprey.tools.BigExp;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+public class TestMinimizationQueue {
+
+	private static NodeProcessor.NodeInfo node(int id, double zSumUpper) {
+		BigExp z = new BigExp(zSumUpper);
+		return new NodeProcessor.NodeInfo(new NodeIndex.Node(0, new int[] { id }, z, z), null, 0L);
+	}
+
+	private static int id(NodeProcessor.NodeInfo info) {
+		return info.node.conf[0];
+	}
+
+	private static List<NodeProcessor.NodeInfo> pollNow(NodeProcessor.MinimizationQueue queue, int count) {
+		return queue.poll(count, 0, TimeUnit.NANOSECONDS);
+	}
+
+	@Test
+	public void pollsHighestFirst() {
+
+		var queue = new NodeProcessor.MinimizationQueue(10, 1);
+		assertThat(queue.offer(node(1, 2.0)), is(nullValue()));
+		assertThat(queue.offer(node(2, 8.0)), is(nullValue()));
+		assertThat(queue.offer(node(3, 1.0)), is(nullValue()));
+		assertThat(queue.offer(node(4, 4.0)), is(nullValue()));
+		assertThat(queue.size(), is(4));
+
+		var batch = pollNow(queue, 3);
+		assertThat(batch.size(), is(3));
+		assertThat(id(batch.get(0)), is(2));
+		assertThat(id(batch.get(1)), is(4));
+		assertThat(id(batch.get(2)), is(1));
+		assertThat(queue.size(), is(1));
+
+		assertThat(id(pollNow(queue, 1).get(0)), is(3));
+		assertThat(queue.size(), is(0));
+	}
+
+	@Test
+	public void keepsEqualBounds() {
+
+		var queue = new NodeProcessor.MinimizationQueue(10, 1);
+		for (int i=0; i<5; i++) {
+			assertThat(queue.offer(node(i, 3.0)), is(nullValue()));
+		}
+		assertThat(queue.size(), is(5));
+
+		// ties are broken by arrival order, later nodes first
+		var batch = pollNow(queue, 5);
+		assertThat(batch.size(), is(5));
+		for (int i=0; i<5; i++) {
+			assertThat(id(batch.get(i)), is(4 - i));
+		}
+	}
+
+	@Test
+	public void evictsLowest() {
+
+		var queue = new NodeProcessor.MinimizationQueue(3, 1);
+		assertThat(queue.offer(node(1, 5.0)), is(nullValue()));
+		assertThat(queue.offer(node(2, 2.0)), is(nullValue()));
+		assertThat(queue.offer(node(3, 7.0)), is(nullValue()));
+
+		// a better node bumps out the worst queued node
+		assertThat(id(queue.offer(node(4, 6.0))), is(2));
+		assertThat(queue.size(), is(3));
+
+		// a worse node gets bounced right back
+		assertThat(id(queue.offer(node(5, 1.0))), is(5));
+		assertThat(queue.size(), is(3));
+
+		// a node that ties the worst queued node replaces it, like the poll order for ties
+		assertThat(id(queue.offer(node(6, 5.0))), is(1));
+		assertThat(queue.size(), is(3));
+
+		var batch = pollNow(queue, 3);
+		assertThat(id(batch.get(0)), is(3));
+		assertThat(id(batch.get(1)), is(4));
+		assertThat(id(batch.get(2)), is(6));
+	}
+
+	@Test
+	public void waitsForFullBatch() {
+
+		var queue = new NodeProcessor.MinimizationQueue(10, 2);
+		queue.offer(node(1, 1.0));
+		assertThat(pollNow(queue, 2), is(nullValue()));
+		assertThat(queue.size(), is(1));
+
+		queue.offer(node(2, 2.0));
+		assertThat(pollNow(queue, 2).size(), is(2));
+	}
+}
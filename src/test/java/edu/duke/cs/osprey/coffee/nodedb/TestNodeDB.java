@@ -14,6 +14,7 @@ import edu.duke.cs.osprey.tools.MathTools;
 import org.junit.jupiter.api.Test;
 import org.slf4j.bridge.SLF4JBridgeHandler;
 
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Random;
@@ -39,7 +40,11 @@ public class TestNodeDB {
 	}
 
 	private static void withMemNodeDBs(MultiStateConfSpace confSpace, long dbBytes, int numMembers, Consumer<NodeDB> block) {
-		var exceptions = ClusterMember.launchPseudoCluster(numMembers, cluster -> {
+		withMemNodeDBs(confSpace, dbBytes, numMembers, Cluster.Transport.Hazelcast, block);
+	}
+
+	private static void withMemNodeDBs(MultiStateConfSpace confSpace, long dbBytes, int numMembers, Cluster.Transport transport, Consumer<NodeDB> block) {
+		var exceptions = ClusterMember.launchPseudoCluster(numMembers, transport, cluster -> {
 			try (var member = new ClusterMember(cluster)) {
 
 				// make the node database
@@ -179,8 +184,10 @@ public class TestNodeDB {
 	@Test public void addLotsLocalRemoveAll_2() { addLotsLocalRemoveAll(2); }
 	@Test public void addLotsLocalRemoveAll_4() { addLotsLocalRemoveAll(4); }
 
-	@Test
-	public void addLocalRemoveHigh() {
+	@Test public void addLocalRemoveHigh() { addLocalRemoveHigh(Cluster.Transport.Hazelcast); }
+	@Test public void addLocalRemoveHighInProcess() { addLocalRemoveHigh(Cluster.Transport.InProcess); }
+
+	private void addLocalRemoveHigh(Cluster.Transport transport) {
 
 		MultiStateConfSpace confSpace = TestCoffee.affinity_2RL0_7mut();
 
@@ -194,7 +201,7 @@ public class TestNodeDB {
 			new BigExp(rand.nextDouble(), rand.nextInt())
 		);
 
-		withMemNodeDBs(confSpace, MiB, 2, nodedb -> {
+		withMemNodeDBs(confSpace, MiB, 2, transport, nodedb -> {
 
 			// add the node to member 0
 			if (nodedb.member.id() == 0) {
@@ -218,6 +225,71 @@ public class TestNodeDB {
 		});
 	}
 
+	@Test
+	public void addRemoteThenReuseListInProcess() {
+
+		MultiStateConfSpace confSpace = TestCoffee.affinity_2RL0_7mut();
+		var state = confSpace.states.get(0);
+
+		// make a batch of random nodes
+		Random rand = new Random(12345);
+		List<NodeIndex.Node> expNodes = IntStream.range(0, 1000)
+			.mapToObj(i -> new NodeIndex.Node(
+				state.index,
+				Conf.make(state.confSpace),
+				new BigExp(rand.nextDouble(), rand.nextInt()),
+				new BigExp(rand.nextDouble(), rand.nextInt())
+			))
+			.collect(Collectors.toList());
+
+		withMemNodeDBs(confSpace, MiB, 2, Cluster.Transport.InProcess, nodedb -> {
+
+			// fill up member 0, so the batch has to go to member 1
+			if (nodedb.member.id() == 0) {
+				Random fillRand = new Random(67890);
+				for (int i=0; i<60_000; i++) {
+					nodedb.addLocal(new NodeIndex.Node(
+						state.index,
+						Conf.make(state.confSpace),
+						new BigExp(fillRand.nextDouble(), fillRand.nextInt()),
+						new BigExp(fillRand.nextDouble(), fillRand.nextInt())
+					));
+				}
+				assertThat(nodedb.freeSpaceLocal(state.index), lessThan((long)expNodes.size()));
+			}
+
+			// let everyone know about the free space
+			nodedb.member.barrier(2, TimeUnit.SECONDS);
+			nodedb.broadcast();
+			nodedb.member.waitForOperationsQuiet(1, TimeUnit.SECONDS, 5, TimeUnit.SECONDS);
+			nodedb.member.barrier(10, TimeUnit.SECONDS);
+
+			// send the batch, then immediately reuse the list, like NodeProcessor does
+			if (nodedb.member.id() == 0) {
+				var nodes = new ArrayList<>(expNodes);
+				nodedb.add(state.index, nodes);
+				nodes.clear();
+			}
+
+			// wait for the node add to finish
+			nodedb.member.barrier(10, TimeUnit.SECONDS);
+			if (nodedb.member.id() == 1) {
+				nodedb.member.waitForOperationsQuiet(1, TimeUnit.SECONDS, 5, TimeUnit.SECONDS);
+			}
+			nodedb.member.barrier(10, TimeUnit.SECONDS);
+
+			// member 1 should have gotten the whole batch
+			if (nodedb.member.id() == 1) {
+				assertThat(nodedb.size(state.index), is((long)expNodes.size()));
+				var nodes = new ArrayList<NodeIndex.Node>();
+				nodedb.removeHighestLocal(state.index, expNodes.size(), nodes);
+				assertThat(nodes, containsInAnyOrder(expNodes.toArray()));
+			}
+
+			nodedb.member.barrier(2, TimeUnit.SECONDS);
+		});
+	}
+
 	@Test
 	public void fillCluster2Unidirectional() {
 
@@ -258,12 +330,14 @@ public class TestNodeDB {
 		});
 	}
 
-	@Test
-	public void fillCluster4Omnidirectional() {
+	@Test public void fillCluster4Omnidirectional() { fillCluster4Omnidirectional(Cluster.Transport.Hazelcast); }
+	@Test public void fillCluster4OmnidirectionalInProcess() { fillCluster4Omnidirectional(Cluster.Transport.InProcess); }
+
+	private void fillCluster4Omnidirectional(Cluster.Transport transport) {
 
 		MultiStateConfSpace confSpace = TestCoffee.affinity_2RL0_7mut();
 
-		withMemNodeDBs(confSpace, MiB, 4, nodedb -> {
+		withMemNodeDBs(confSpace, MiB, 4, transport, nodedb -> {
 
 			var state = confSpace.states.get(0);
 
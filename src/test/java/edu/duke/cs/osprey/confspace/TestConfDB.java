@@ -295,6 +295,29 @@ public class TestConfDB {
 		});
 	}
 
+	@Test
+	public void writeFlushInBackgroundCloseRead() {
+		Sequence sequence = confSpace.makeWildTypeSequence();
+		withDBTwice((db) -> {
+
+			db.flushInBackground(Parallelism.makeCpu(1));
+
+			ConfDB.SequenceDB sdb = db.getSequence(sequence);
+			for (int i=0; i<100; i++) {
+				sdb.setUpperBound(new int[] { i % 10, i / 10, 0 }, i, (long)i);
+				sdb.flush();
+			}
+
+		}, (db) -> {
+
+			ConfDB.SequenceDB sdb = db.getSequence(sequence);
+			assertThat(sdb.size(), is(100L));
+			for (int i=0; i<100; i++) {
+				assertConfUpper(sdb.get(new int[] { i % 10, i / 10, 0 }), new int[] { i % 10, i / 10, 0 }, i, (long)i);
+			}
+		});
+	}
+
 	@Test
 	public void writeReadCloseReadAFewSequences() {
 
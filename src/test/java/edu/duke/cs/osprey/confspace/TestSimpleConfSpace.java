@@ -569,4 +569,53 @@ public class TestSimpleConfSpace extends TestBase {
 
 		assertThat(separateConfSpace.shellResNumbers, is(combinedConfSpace.shellResNumbers));
 	}
+
+	@Test
+	public void pooledMoleculeMatchesCopy() {
+
+		Strand strand = makeStrand();
+		strand.flexibility.get("A2").setLibraryRotamers(Strand.WildType, "VAL", "GLY").addWildTypeRotamers().setContinuous();
+		strand.flexibility.get("A3").setLibraryRotamers(Strand.WildType, "ARG").addWildTypeRotamers().setContinuous();
+		strand.flexibility.get("A4").setLibraryRotamers(Strand.WildType, "PRO").addWildTypeRotamers();
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder().addStrand(strand).build();
+
+		// cycle through tuples of different sizes, so the pool has to reset residues left over from earlier builds
+		try (SimpleConfSpace.MoleculeCheckout checkout = confSpace.checkoutMolecule()) {
+			for (int rc0=0; rc0<confSpace.positions.get(0).resConfs.size(); rc0+=3) {
+				for (int rc2=0; rc2<confSpace.positions.get(2).resConfs.size(); rc2+=2) {
+					assertPooledMoleculeMatches(confSpace, checkout, new RCTuple(0, rc0, 2, rc2));
+					assertPooledMoleculeMatches(confSpace, checkout, new RCTuple(1, rc2 % confSpace.positions.get(1).resConfs.size()));
+					assertPooledMoleculeMatches(confSpace, checkout, new RCTuple(new int[] { rc0, 0, rc2 }));
+					assertPooledMoleculeMatches(confSpace, checkout, new RCTuple());
+				}
+			}
+		}
+	}
+
+	private void assertPooledMoleculeMatches(SimpleConfSpace confSpace, SimpleConfSpace.MoleculeCheckout checkout, RCTuple conf) {
+
+		ParametricMolecule expected = confSpace.makeMolecule(conf);
+		ParametricMolecule observed = checkout.make(conf);
+
+		assertThat(observed.dofs.size(), is(expected.dofs.size()));
+		for (int d=0; d<expected.dofs.size(); d++) {
+			assertThat(observed.dofs.get(d).getName(), is(expected.dofs.get(d).getName()));
+			assertThat(observed.dofBounds.getMin(d), is(expected.dofBounds.getMin(d)));
+			assertThat(observed.dofBounds.getMax(d), is(expected.dofBounds.getMax(d)));
+		}
+
+		assertThat(observed.mol.residues.size(), is(expected.mol.residues.size()));
+		for (int i=0; i<expected.mol.residues.size(); i++) {
+			Residue expectedRes = expected.mol.residues.get(i);
+			Residue observedRes = observed.mol.residues.get(i);
+			assertThat(observedRes.fullName, is(expectedRes.fullName));
+			assertThat(observedRes.template, is(expectedRes.template));
+			assertThat(observedRes.coords, is(expectedRes.coords));
+			assertThat(observedRes.atoms.size(), is(expectedRes.atoms.size()));
+			for (int a=0; a<expectedRes.atoms.size(); a++) {
+				assertThat(observedRes.atoms.get(a).name, is(expectedRes.atoms.get(a).name));
+				assertThat(observedRes.atoms.get(a).bonds.size(), is(expectedRes.atoms.get(a).bonds.size()));
+			}
+		}
+	}
 }
@@ -0,0 +1,200 @@
+package edu.duke.cs.osprey.design;
+
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import edu.duke.cs.osprey.confspace.Sequence;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.kstar.KStarScore;
+import edu.duke.cs.osprey.kstar.KStarScoreWriter.ScoreInfo;
+import edu.duke.cs.osprey.kstar.pfunc.PartitionFunction;
+import edu.duke.cs.osprey.structure.PDBIO;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+public class TestPostgresScoreWriter {
+
+    /** keeps everything in memory, and counts how the writer uses it */
+    private static class MemoryStore implements PostgresScoreWriter.Store {
+
+        final List<String> designs = new ArrayList<>();
+        final List<List<PostgresScoreWriter.AffinityRow>> batches = new ArrayList<>();
+        final Map<Integer,String> structures = new HashMap<>();
+        int nextAffinityId = 100;
+        int numCloses = 0;
+        boolean failNextBatch = false;
+
+        @Override
+        public synchronized int writeDesign(String name, List<String> inputs) {
+            designs.add(name);
+            return designs.size();
+        }
+
+        @Override
+        public synchronized List<Integer> writeAffinities(int designId, List<PostgresScoreWriter.AffinityRow> rows) {
+            assertThat(numCloses, is(0));
+            if (failNextBatch) {
+                // like a dropped connection
+                failNextBatch = false;
+                throw new RuntimeException("database transaction failed");
+            }
+            batches.add(new ArrayList<>(rows));
+            var ids = new ArrayList<Integer>(rows.size());
+            for (int i=0; i<rows.size(); i++) {
+                ids.add(nextAffinityId++);
+            }
+            return ids;
+        }
+
+        @Override
+        public synchronized void writeStructure(int affinityId, String pdb) {
+            assertThat(numCloses, is(0));
+            structures.put(affinityId, pdb);
+        }
+
+        @Override
+        public synchronized void close() {
+            numCloses += 1;
+        }
+    }
+
+    private static Sequence sequence;
+
+    @BeforeAll
+    public static void beforeAll() {
+        Strand strand = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+        strand.flexibility.get("A5").setLibraryRotamers(Strand.WildType);
+        strand.flexibility.get("A7").setLibraryRotamers(Strand.WildType);
+        SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+            .addStrand(strand)
+            .build();
+        sequence = confSpace.makeWildTypeSequence();
+    }
+
+    private static ScoreInfo makeInfo(int sequenceNumber) {
+        var values = new PartitionFunction.Values();
+        values.qstar = BigDecimal.valueOf(Math.abs(sequenceNumber) + 1);
+        var pfunc = new PartitionFunction.Result(PartitionFunction.Status.Estimated, values, 5);
+        return new ScoreInfo(sequenceNumber, 10, sequence, new KStarScore(pfunc, pfunc, pfunc));
+    }
+
+    private static List<ScoreInfo> makeInfos(int start, int count) {
+        var infos = new ArrayList<ScoreInfo>(count);
+        for (int i=0; i<count; i++) {
+            infos.add(makeInfo(start + i));
+        }
+        return infos;
+    }
+
+    /** skips the minimizations, and just names the sequence */
+    private static class FakeAnalysisWriter extends PostgresScoreWriter {
+
+        FakeAnalysisWriter(Store store, int numAnalysisThreads) {
+            super(store, "design", List.of("--arg"), 5, numAnalysisThreads);
+        }
+
+        @Override
+        String analyzeEnsemble(ScoreInfo info) {
+            if (info.sequenceNumber < 0) {
+                throw new IllegalArgumentException("bad sequence");
+            }
+            return "pdb " + info.sequenceNumber;
+        }
+    }
+
+    @Test
+    public void writesOneBatchPerCall() {
+
+        var store = new MemoryStore();
+        try (var writer = new PostgresScoreWriter(store, "design", List.of("--arg"), 0, 1)) {
+
+            writer.writeHeader();
+            writer.writeScores(makeInfos(0, 3));
+            writer.writeScore(makeInfo(3));
+            writer.finish();
+
+            assertThat(store.designs, contains("design"));
+            assertThat(store.batches.size(), is(2));
+            assertThat(store.batches.get(0).size(), is(3));
+            assertThat(store.batches.get(1).size(), is(1));
+            assertThat(store.batches.get(0).get(0).isWt, is(true));
+            assertThat(store.batches.get(0).get(1).isWt, is(false));
+            assertThat(store.batches.get(1).get(0).kstarLower, closeTo(Math.log10(4.0/16.0), 1e-9));
+            assertThat(store.structures.isEmpty(), is(true));
+        }
+
+        // the store stays open for the whole design, and closes exactly once
+        assertThat(store.numCloses, is(1));
+    }
+
+    @Test
+    public void keepsStoreAfterFailedBatch() {
+
+        var store = new MemoryStore();
+        try (var writer = new PostgresScoreWriter(store, "design", List.of(), 0, 1)) {
+
+            writer.writeHeader();
+
+            // the store drops its connection and reconnects on the next write,
+            // so the writer should report the failure, but keep using the same store
+            store.failNextBatch = true;
+            assertThrows(RuntimeException.class, () -> writer.writeScores(makeInfos(0, 2)));
+            writer.writeScores(makeInfos(2, 2));
+
+            assertThat(store.batches.size(), is(1));
+            assertThat(store.numCloses, is(0));
+        }
+        assertThat(store.numCloses, is(1));
+    }
+
+    @Test
+    public void analysesWriteStructuresAndStayBounded() {
+
+        int numThreads = 2;
+        var store = new MemoryStore();
+        try (var writer = new FakeAnalysisWriter(store, numThreads)) {
+
+            writer.writeHeader();
+            for (int i=0; i<100; i++) {
+                writer.writeScore(makeInfo(i));
+
+                // finished analyses get pruned, so at most the running and queued ones are left, plus the new one
+                assertThat(writer.numTrackedAnalyses(), lessThanOrEqualTo(numThreads*3 + 1));
+            }
+            writer.finish();
+            assertThat(writer.numTrackedAnalyses(), is(0));
+
+            assertThat(store.structures.size(), is(100));
+            for (int i=0; i<100; i++) {
+                assertThat(store.structures.get(100 + i), is("pdb " + i));
+            }
+        }
+    }
+
+    @Test
+    public void reportsFailedAnalyses() {
+
+        var store = new MemoryStore();
+        try (var writer = new FakeAnalysisWriter(store, 1)) {
+
+            writer.writeHeader();
+            writer.writeScore(makeInfo(-1));
+
+            // more writes prune finished analyses, but shouldn't lose the failure
+            for (int i=0; i<10; i++) {
+                writer.writeScore(makeInfo(i));
+            }
+
+            assertThrows(RuntimeException.class, writer::finish);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.ematrix;
+
+import static edu.duke.cs.osprey.tools.Log.log;
+
+import edu.duke.cs.osprey.Benchmark;
+import edu.duke.cs.osprey.astar.conf.ConfIndex;
+import edu.duke.cs.osprey.astar.conf.RCs;
+import edu.duke.cs.osprey.astar.conf.scoring.mplp.EdgeUpdater;
+import edu.duke.cs.osprey.astar.conf.scoring.mplp.MessageVars;
+import edu.duke.cs.osprey.astar.conf.scoring.mplp.NodeUpdater;
+
+import java.util.Random;
+
+
+/**
+ * Compares the pairwise energy lookups of {@link EnergyMatrix} and {@link PrimitiveEnergyMatrix}
+ * in the same kinds of loops the A* scorers and MPLP updaters run.
+ */
+public class BenchmarkPrimitiveEnergyMatrix {
+
+	// keep the JIT from optimizing the loops away
+	private static volatile double sink = 0.0;
+
+	public static void main(String[] args) {
+
+		final int numPos = 20;
+		final int numRCs = 40;
+
+		int[] numRCsAtPos = new int[numPos];
+		int[][] rcsAtPos = new int[numPos][numRCs];
+		for (int pos=0; pos<numPos; pos++) {
+			numRCsAtPos[pos] = numRCs;
+			for (int rc=0; rc<numRCs; rc++) {
+				rcsAtPos[pos][rc] = rc;
+			}
+		}
+
+		EnergyMatrix emat = new EnergyMatrix(numPos, numRCsAtPos, Double.POSITIVE_INFINITY);
+		Random rand = new Random(12345);
+		for (int pos1=0; pos1<numPos; pos1++) {
+			for (int rc1=0; rc1<numRCs; rc1++) {
+				emat.setOneBody(pos1, rc1, rand.nextDouble());
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc2=0; rc2<numRCs; rc2++) {
+						emat.setPairwise(pos1, rc1, pos2, rc2, rand.nextDouble());
+					}
+				}
+			}
+		}
+
+		PrimitiveEnergyMatrix arrays = emat.primitive();
+		PrimitiveEnergyMatrix onDemand = PrimitiveEnergyMatrix.onDemand(emat);
+
+		final int numWarmups = 20;
+		final int numRuns = 200;
+
+		// min over rc2 for every (pos1,rc1,pos2), like TraditionalPairwiseHScorer and initTraditionalAStar
+		log("min over pairwise rows:");
+		Benchmark bmEmat = new Benchmark(numWarmups, numRuns, () -> {
+			double sum = 0.0;
+			for (int pos1=0; pos1<numPos; pos1++) {
+				for (int rc1=0; rc1<numRCs; rc1++) {
+					for (int pos2=0; pos2<numPos; pos2++) {
+						if (pos2 == pos1) {
+							continue;
+						}
+						double min = Double.POSITIVE_INFINITY;
+						for (int rc2=0; rc2<numRCs; rc2++) {
+							min = Math.min(min, emat.getPairwise(pos1, rc1, pos2, rc2));
+						}
+						sum += min;
+					}
+				}
+			}
+			sink = sum;
+		});
+		log("\t%30s: %s", "EnergyMatrix.getPairwise", bmEmat.toString());
+
+		Benchmark bmPrimitive = new Benchmark(numWarmups, numRuns, () -> {
+			double sum = 0.0;
+			for (int pos1=0; pos1<numPos; pos1++) {
+				for (int rc1=0; rc1<numRCs; rc1++) {
+					for (int pos2=0; pos2<numPos; pos2++) {
+						if (pos2 == pos1) {
+							continue;
+						}
+						double min = Double.POSITIVE_INFINITY;
+						for (int rc2=0; rc2<numRCs; rc2++) {
+							min = Math.min(min, arrays.getPairwise(pos1, rc1, pos2, rc2));
+						}
+						sum += min;
+					}
+				}
+			}
+			sink = sum;
+		});
+		log("\t%30s: %s", "PrimitiveEnergyMatrix.getPairwise", bmPrimitive.toString(bmEmat));
+
+		Benchmark bmRows = new Benchmark(numWarmups, numRuns, () -> {
+			double[] rows = arrays.getPairwiseRows();
+			double sum = 0.0;
+			for (int pos1=0; pos1<numPos; pos1++) {
+				for (int rc1=0; rc1<numRCs; rc1++) {
+					for (int pos2=0; pos2<numPos; pos2++) {
+						if (pos2 == pos1) {
+							continue;
+						}
+						int offset = arrays.getPairwiseRowOffset(pos1, rc1, pos2);
+						int stride = arrays.getPairwiseRowStride(pos1, pos2);
+						double min = Double.POSITIVE_INFINITY;
+						for (int rc2=0; rc2<numRCs; rc2++) {
+							min = Math.min(min, rows[offset + rc2*stride]);
+						}
+						sum += min;
+					}
+				}
+			}
+			sink = sum;
+		});
+		log("\t%30s: %s", "PrimitiveEnergyMatrix rows", bmRows.toString(bmEmat));
+
+		// MPLP updates at the root node, with and without the pairwise rows
+		RCs rcs = new RCs(rcsAtPos);
+		ConfIndex confIndex = new ConfIndex(numPos);
+		for (int pos=0; pos<numPos; pos++) {
+			confIndex.undefinedPos[confIndex.numUndefined++] = pos;
+		}
+
+		log("MPLP updates at the root:");
+		for (String name : new String[] { "edge", "node" }) {
+
+			Benchmark bmOnDemand = new Benchmark(2, 20, () -> {
+				MessageVars lambdas = new MessageVars(rcs, confIndex);
+				lambdas.initTraditionalAStar(onDemand);
+				update(name, lambdas, onDemand);
+				sink = lambdas.getTotalEnergy();
+			});
+			log("\t%30s: %s", name + ", on demand", bmOnDemand.toString());
+
+			Benchmark bmArrays = new Benchmark(2, 20, () -> {
+				MessageVars lambdas = new MessageVars(rcs, confIndex);
+				lambdas.initTraditionalAStar(arrays);
+				update(name, lambdas, arrays);
+				sink = lambdas.getTotalEnergy();
+			});
+			log("\t%30s: %s", name + ", rows", bmArrays.toString(bmOnDemand));
+		}
+	}
+
+	private static void update(String name, MessageVars lambdas, PrimitiveEnergyMatrix energies) {
+		switch (name) {
+			case "edge": new EdgeUpdater().update(lambdas, energies); break;
+			case "node": new NodeUpdater().update(lambdas, energies); break;
+			default: throw new IllegalArgumentException(name);
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.ematrix;
+
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+
+public class TestPrimitiveEnergyMatrix {
+
+	private static EnergyMatrix makeEmat() {
+
+		int[] numRCs = { 3, 1, 5, 4 };
+		EnergyMatrix emat = new EnergyMatrix(numRCs.length, numRCs, Double.POSITIVE_INFINITY);
+		emat.setConstTerm(-4.2);
+
+		Random rand = new Random(12345);
+		for (int pos1=0; pos1<numRCs.length; pos1++) {
+			for (int rc1=0; rc1<numRCs[pos1]; rc1++) {
+				emat.setOneBody(pos1, rc1, rand.nextDouble());
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc2=0; rc2<numRCs[pos2]; rc2++) {
+						emat.setPairwise(pos1, rc1, pos2, rc2, rand.nextDouble());
+					}
+				}
+			}
+		}
+
+		return emat;
+	}
+
+	private static void assertMatches(EnergyMatrix emat, PrimitiveEnergyMatrix energies) {
+
+		assertThat(energies.getConstTerm(), is(emat.getConstTerm()));
+
+		for (int pos1=0; pos1<emat.getNumPos(); pos1++) {
+			assertThat(energies.getNumConfAtPos(pos1), is(emat.getNumConfAtPos(pos1)));
+			for (int rc1=0; rc1<emat.getNumConfAtPos(pos1); rc1++) {
+				assertThat(energies.getOneBody(pos1, rc1), is(emat.getOneBody(pos1, rc1)));
+				for (int pos2=0; pos2<emat.getNumPos(); pos2++) {
+					if (pos2 == pos1) {
+						continue;
+					}
+					for (int rc2=0; rc2<emat.getNumConfAtPos(pos2); rc2++) {
+						assertThat(energies.getPairwise(pos1, rc1, pos2, rc2), is(emat.getPairwise(pos1, rc1, pos2, rc2)));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void arrays() {
+		EnergyMatrix emat = makeEmat();
+		PrimitiveEnergyMatrix energies = emat.primitive();
+		assertThat(energies.hasArrays(), is(true));
+		assertMatches(emat, energies);
+	}
+
+	@Test
+	public void arraysSeeChanges() {
+		EnergyMatrix emat = makeEmat();
+		PrimitiveEnergyMatrix energies = emat.primitive();
+		emat.setOneBody(2, 3, 7.0);
+		emat.setPairwise(3, 1, 0, 2, 8.0);
+		assertThat(energies.getOneBody(2, 3), is(7.0));
+		assertThat(energies.getPairwise(3, 1, 0, 2), is(8.0));
+		assertThat(energies.getPairwise(0, 2, 3, 1), is(8.0));
+	}
+
+	@Test
+	public void onDemand() {
+		EnergyMatrix emat = makeEmat();
+		PrimitiveEnergyMatrix energies = PrimitiveEnergyMatrix.onDemand(emat);
+		assertThat(energies.hasArrays(), is(false));
+		assertMatches(emat, energies);
+	}
+
+	@Test
+	public void copyOf() {
+		EnergyMatrix emat = makeEmat();
+		PrimitiveEnergyMatrix energies = PrimitiveEnergyMatrix.copyOf(emat);
+		assertThat(energies.hasArrays(), is(true));
+		assertMatches(emat, energies);
+	}
+
+	@Test
+	public void pairwiseRows() {
+		EnergyMatrix emat = makeEmat();
+		PrimitiveEnergyMatrix energies = emat.primitive();
+		double[] rows = energies.getPairwiseRows();
+
+		for (int pos1=0; pos1<emat.getNumPos(); pos1++) {
+			for (int rc1=0; rc1<emat.getNumConfAtPos(pos1); rc1++) {
+				for (int pos2=0; pos2<emat.getNumPos(); pos2++) {
+					if (pos2 == pos1) {
+						continue;
+					}
+					int offset = energies.getPairwiseRowOffset(pos1, rc1, pos2);
+					int stride = energies.getPairwiseRowStride(pos1, pos2);
+					for (int rc2=0; rc2<emat.getNumConfAtPos(pos2); rc2++) {
+						assertThat(rows[offset + rc2*stride], is(emat.getPairwise(pos1, rc1, pos2, rc2)));
+					}
+				}
+			}
+		}
+	}
+}
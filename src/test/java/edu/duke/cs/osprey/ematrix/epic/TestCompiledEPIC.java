@@ -0,0 +1,174 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.ematrix.epic;
+
+import static edu.duke.cs.osprey.TestBase.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import cern.colt.matrix.DoubleFactory1D;
+import cern.colt.matrix.DoubleMatrix1D;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+
+public class TestCompiledEPIC {
+
+	private static final List<String> dofNames = Arrays.asList("a", "b", "c");
+	private static final DoubleMatrix1D reference = DoubleFactory1D.dense.make(new double[] { 60.0, -175.0, 10.0 });
+
+	private static EPoly makeTerm(Random rand, int order, String ... termDofNames) {
+
+		int numDofs = termDofNames.length;
+
+		// put the center near the reference
+		DoubleMatrix1D center = DoubleFactory1D.dense.make(numDofs);
+		for (int i=0; i<numDofs; i++) {
+			center.set(i, reference.get(dofNames.indexOf(termDofNames[i])) + rand.nextDouble()*4 - 2);
+		}
+
+		double[] coeffs = new double[SeriesFitter.getNumParams(numDofs, false, order)];
+		for (int i=0; i<coeffs.length; i++) {
+			coeffs[i] = (rand.nextDouble()*2 - 1)*0.1;
+		}
+
+		return new EPoly(
+			numDofs,
+			center.copy().assign(x -> x + 9),
+			center.copy().assign(x -> x - 9),
+			center,
+			rand.nextDouble()*10 - 5,
+			coeffs,
+			order,
+			new ArrayList<>(Arrays.asList(termDofNames))
+		);
+	}
+
+	private static List<EPoly> makeTerms() {
+		Random rand = new Random(12345);
+		return Arrays.asList(
+			makeTerm(rand, 2, "a"),
+			makeTerm(rand, 4, "a", "b"),
+			makeTerm(rand, 3, "c", "b"),
+			makeTerm(rand, 6, "c")
+		);
+	}
+
+	private static DoubleMatrix1D randomX(Random rand) {
+		DoubleMatrix1D x = reference.copy();
+		for (int d=0; d<x.size(); d++) {
+			x.set(d, x.get(d) + rand.nextDouble()*10 - 5);
+		}
+		return x;
+	}
+
+	private static double evalTerms(List<EPoly> terms, DoubleMatrix1D x, boolean includeMinE) {
+		double energy = 0;
+		for (EPoly term : terms) {
+			DoubleMatrix1D termX = DoubleFactory1D.dense.make(term.numDOFs);
+			for (int i=0; i<term.numDOFs; i++) {
+				termX.set(i, x.get(dofNames.indexOf(term.DOFNames.get(i))));
+			}
+			energy += term.evaluate(termX, includeMinE, false);
+		}
+		return energy;
+	}
+
+	@Test
+	public void energies() {
+
+		List<EPoly> terms = makeTerms();
+		Random rand = new Random(54321);
+
+		for (boolean includeMinE : Arrays.asList(false, true)) {
+			CompiledEPIC epic = new CompiledEPIC(terms, dofNames, reference, includeMinE);
+			for (int i=0; i<100; i++) {
+				DoubleMatrix1D x = randomX(rand);
+				epic.setDOFs(x);
+				assertThat(epic.getEnergy(), isAbsolutely(evalTerms(terms, x, includeMinE), 1e-6));
+			}
+		}
+	}
+
+	@Test
+	public void energiesForDof() {
+
+		List<EPoly> terms = makeTerms();
+		Random rand = new Random(54321);
+		CompiledEPIC epic = new CompiledEPIC(terms, dofNames, reference, true);
+
+		// the energy for a dof should only differ from the full energy by a constant as the dof varies
+		for (int i=0; i<100; i++) {
+			DoubleMatrix1D x = randomX(rand);
+			int d = i % dofNames.size();
+
+			epic.setDOFs(x);
+			double offset = epic.getEnergy() - epic.getEnergyForDOF(d);
+
+			epic.setDOF(d, x.get(d) + rand.nextDouble()*2 - 1);
+			assertThat(epic.getEnergyForDOF(d) + offset, isAbsolutely(epic.getEnergy(), 1e-6));
+		}
+	}
+
+	@Test
+	public void gradients() {
+
+		List<EPoly> terms = makeTerms();
+		Random rand = new Random(54321);
+		CompiledEPIC epic = new CompiledEPIC(terms, dofNames, reference, true);
+
+		final double h = 1e-5;
+		DoubleMatrix1D grad = DoubleFactory1D.dense.make(dofNames.size());
+		for (int i=0; i<100; i++) {
+			DoubleMatrix1D x = randomX(rand);
+
+			epic.setDOFs(x);
+			double energy = epic.getEnergyAndGradient(grad);
+			assertThat(energy, isAbsolutely(epic.getEnergy(), 1e-12));
+
+			// check against central differences
+			for (int d=0; d<dofNames.size(); d++) {
+				epic.setDOFs(x);
+				epic.setDOF(d, x.get(d) + h);
+				double above = epic.getEnergy();
+				epic.setDOF(d, x.get(d) - h);
+				double below = epic.getEnergy();
+				assertThat(grad.get(d), isAbsolutely((above - below)/2/h, 1e-3));
+			}
+		}
+	}
+}
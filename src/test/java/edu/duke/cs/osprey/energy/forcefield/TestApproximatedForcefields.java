@@ -36,6 +36,8 @@ import static org.hamcrest.Matchers.*;
 import static org.hamcrest.MatcherAssert.*;
 import static edu.duke.cs.osprey.TestBase.*;
 
+import cern.colt.matrix.DoubleFactory1D;
+import cern.colt.matrix.DoubleMatrix1D;
 import edu.duke.cs.osprey.astar.conf.ConfAStarTree;
 import edu.duke.cs.osprey.confspace.ConfSearch;
 import edu.duke.cs.osprey.confspace.SimpleConfSpace;
@@ -48,10 +50,14 @@ import edu.duke.cs.osprey.energy.EnergyCalculator;
 import edu.duke.cs.osprey.energy.EnergyPartition;
 import edu.duke.cs.osprey.energy.approximation.ApproximatorMatrix;
 import edu.duke.cs.osprey.energy.approximation.ApproximatorMatrixCalculator;
+import edu.duke.cs.osprey.energy.approximation.FlatQuadraticApproximator;
+import edu.duke.cs.osprey.energy.approximation.QuadraticApproximator;
 import edu.duke.cs.osprey.parallelism.Parallelism;
 import edu.duke.cs.osprey.structure.PDBIO;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.Random;
 import java.util.function.BiConsumer;
 
 
@@ -181,6 +187,30 @@ public class TestApproximatedForcefields {
 	@Test public void traditional_eref() { check(EnergyPartition.Traditional, true); }
 	@Test public void allOnPairs_eref() { check(EnergyPartition.AllOnPairs, true); }
 
+	@Test
+	public void flatQuadratic() {
+
+		// make a quadratic with arbitrary coefficients over two dof blocks
+		QuadraticApproximator quadratic = new QuadraticApproximator(Arrays.asList(0, 1), Arrays.asList(2, 3));
+		Random rand = new Random(12345);
+		for (int i=0; i<quadratic.coefficients.size(); i++) {
+			quadratic.coefficients.set(i, rand.nextDouble()*2 - 1);
+		}
+		FlatQuadraticApproximator flat = quadratic.flatten();
+
+		// the flat version should compute exactly the same values
+		for (int i=0; i<10; i++) {
+			DoubleMatrix1D x = DoubleFactory1D.dense.make(quadratic.numDofs);
+			for (int d=0; d<x.size(); d++) {
+				x.set(d, rand.nextDouble()*2 - 1);
+			}
+			assertThat(flat.getValue(x), is(quadratic.getValue(x)));
+			for (int d=0; d<x.size(); d++) {
+				assertThat(flat.getValForDOF(d, x.get(d), x), is(quadratic.getValForDOF(d, x.get(d), x)));
+			}
+		}
+	}
+
 	@Test
 	public void ioRoundtrip() {
 
@@ -0,0 +1,118 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.energy.forcefield;
+
+import static edu.duke.cs.osprey.TestBase.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import edu.duke.cs.osprey.energy.ResidueInteractions;
+import edu.duke.cs.osprey.structure.AtomConnectivity;
+import edu.duke.cs.osprey.structure.Residue;
+import edu.duke.cs.osprey.structure.Residues;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class TestResidueForcefieldCutoffs {
+
+	@BeforeAll
+	public static void before() {
+		TestForcefieldEnergy.before();
+	}
+
+	private static Residues makeResidues(TestForcefieldEnergy.TestResidues r) {
+		return new Residues(
+			r.gly06, r.gly15, r.ser17, r.trp18, r.trp25, r.arg22, r.ala24, r.ile26, r.phe31, r.arg32, r.glu34, r.val36,
+			r.leu39, r.trp47, r.leu48, r.ile53, r.arg55, r.val56, r.leu57, r.ile59, r.val62, r.leu64, r.val65, r.met66
+		);
+	}
+
+	private static ResidueForcefieldEnergy makeEfunc(Residues residues, double cutoffDist) {
+
+		ForcefieldParams ffparams = new ForcefieldParams();
+		ffparams.cutoffDist = cutoffDist;
+
+		ResPairCache resPairCache = new ResPairCache(ffparams, new AtomConnectivity.Builder().build());
+		ResidueInteractions inters = new ResidueInteractions();
+		inters.addComplete(residues);
+
+		return new ResidueForcefieldEnergy(resPairCache, inters, residues);
+	}
+
+	@Test
+	public void noCutoffs() {
+		ResidueForcefieldEnergy efunc = makeEfunc(makeResidues(new TestForcefieldEnergy.TestResidues()), Double.POSITIVE_INFINITY);
+		assertThat(efunc.hasCutoffs(), is(false));
+		assertThat(efunc.getCutoffError(), is(0.0));
+	}
+
+	@Test
+	public void farCutoffMatchesFull() {
+		ResidueForcefieldEnergy efunc = makeEfunc(makeResidues(new TestForcefieldEnergy.TestResidues()), 1000.0);
+		assertThat(efunc.hasCutoffs(), is(true));
+		assertThat(efunc.getEnergy(), isAbsolutely(efunc.getEnergyWithoutCutoffs(), 1e-9));
+		assertThat(efunc.getNumCulledResPairs(), is(0));
+	}
+
+	@Test
+	public void nearCutoffCullsPairs() {
+		ResidueForcefieldEnergy efunc = makeEfunc(makeResidues(new TestForcefieldEnergy.TestResidues()), 10.0);
+
+		double energy = efunc.getEnergy();
+		double fullEnergy = efunc.getEnergyWithoutCutoffs();
+		assertThat(Double.isFinite(energy), is(true));
+		assertThat(efunc.getCutoffError(), isAbsolutely(energy - fullEnergy, 1e-12));
+		assertThat(efunc.getNumCulledResPairs(), greaterThan(0));
+	}
+
+	@Test
+	public void neighborListsFollowMovingAtoms() {
+
+		TestForcefieldEnergy.TestResidues r = new TestForcefieldEnergy.TestResidues();
+		Residues residues = makeResidues(r);
+		ResidueForcefieldEnergy efunc = makeEfunc(residues, 8.0);
+		efunc.getEnergy();
+
+		// move a residue a little at a time, past the skin distance eventually
+		Residue res = r.trp18;
+		for (int step=0; step<10; step++) {
+			for (int i=0; i<res.coords.length; i+=3) {
+				res.coords[i] += 0.4;
+			}
+
+			// the energy should match a fresh energy function, which has fresh neighbor lists
+			assertThat(efunc.getEnergy(), isAbsolutely(makeEfunc(residues, 8.0).getEnergy(), 1e-9));
+		}
+	}
+}
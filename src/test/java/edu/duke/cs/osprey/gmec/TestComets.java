@@ -196,6 +196,10 @@ public class TestComets {
 	}
 
 	private static Comets make2RL0PPI(boolean boundedMemory) {
+		return make2RL0PPI(boundedMemory, false);
+	}
+
+	private static Comets make2RL0PPI(boolean boundedMemory, boolean parallelSequenceScoring) {
 
 		Molecule mol = PDBIO.readResource("/2RL0.min.reduce.pdb");
 		ResidueTemplateLibrary templateLib = new ResidueTemplateLibrary.Builder(ffparams.forcefld).build();
@@ -246,6 +250,7 @@ public class TestComets {
 			.setObjectiveWindowMax(2000) // need a big window to get all the sequences
 			.setObjectiveWindowSize(10000)
 			.setMinNumConfTrees(boundedMemory ? 5 : null)
+			.setParallelSequenceScoring(parallelSequenceScoring)
 			.build();
 
 		initStates(comets.states, boundedMemory);
@@ -497,6 +502,12 @@ public class TestComets {
 		prepStates(comets, () -> check2RL0PPI(comets));
 	}
 
+	@Test
+	public void ppi2RL0ParallelSequenceScoring() {
+		Comets comets = make2RL0PPI(false, true);
+		prepStates(comets, () -> check2RL0PPI(comets));
+	}
+
 	@Test
 	public void onlyOneMutant2RL0() {
 		Comets comets = make2RL0OnlyOneMutant();
@@ -0,0 +1,186 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+package edu.duke.cs.osprey.kstar;
+
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+
+public class TestAsyncScoreWriter {
+
+	/** records what it wrote, and optionally waits for a latch before writing anything */
+	private static class RecordingWriter implements KStarScoreWriter {
+
+		final List<String> events = new ArrayList<>();
+		final List<Integer> batchSizes = new ArrayList<>();
+		final CountDownLatch latch;
+		boolean finished = false;
+		boolean closed = false;
+
+		RecordingWriter(CountDownLatch latch) {
+			this.latch = latch;
+		}
+
+		void await() {
+			try {
+				latch.await();
+			} catch (InterruptedException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+
+		@Override
+		public void writeHeader() {
+			await();
+			events.add("header");
+		}
+
+		@Override
+		public void writeScore(ScoreInfo info) {
+			writeScores(List.of(info));
+		}
+
+		@Override
+		public void writeScores(List<ScoreInfo> infos) {
+			await();
+			batchSizes.add(infos.size());
+			for (ScoreInfo info : infos) {
+				if (info.sequenceNumber < 0) {
+					throw new IllegalArgumentException("bad score");
+				}
+				events.add(Integer.toString(info.sequenceNumber));
+			}
+		}
+
+		@Override
+		public void finish() {
+			finished = true;
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	private static KStarScoreWriter.ScoreInfo makeInfo(int sequenceNumber) {
+		return new KStarScoreWriter.ScoreInfo(sequenceNumber, 10, null, null);
+	}
+
+	@Test
+	public void writesInOrder() {
+
+		var writer = new RecordingWriter(new CountDownLatch(0));
+		var async = new AsyncScoreWriter(writer);
+
+		async.writeHeader();
+		for (int i=0; i<10; i++) {
+			async.writeScore(makeInfo(i));
+		}
+		async.finish();
+
+		assertThat(writer.events, contains("header", "0", "1", "2", "3", "4", "5", "6", "7", "8", "9"));
+		assertThat(writer.finished, is(true));
+	}
+
+	@Test
+	public void batchesQueuedScores() {
+
+		// block the writer until all the scores are queued
+		var latch = new CountDownLatch(1);
+		var writer = new RecordingWriter(latch);
+		var async = new AsyncScoreWriter(writer, 16, 16);
+
+		for (int i=0; i<10; i++) {
+			async.writeScore(makeInfo(i));
+		}
+		latch.countDown();
+		async.finish();
+
+		assertThat(writer.events, contains("0", "1", "2", "3", "4", "5", "6", "7", "8", "9"));
+
+		// the first score may have been taken before the rest were queued, but the rest should be one batch
+		assertThat(writer.batchSizes.size(), lessThanOrEqualTo(2));
+		assertThat(writer.batchSizes.stream().mapToInt(i -> i).sum(), is(10));
+	}
+
+	@Test
+	public void reportsErrors() {
+
+		var writer = new RecordingWriter(new CountDownLatch(0));
+		var async = new AsyncScoreWriter(writer);
+
+		async.writeScore(makeInfo(-1));
+
+		assertThrows(RuntimeException.class, async::finish);
+		assertThat(writer.finished, is(false));
+	}
+
+	@Test
+	public void closes() {
+
+		var writer = new RecordingWriter(new CountDownLatch(0));
+		var async = new AsyncScoreWriter(writer);
+
+		async.writeScore(makeInfo(0));
+		async.finish();
+		async.close();
+
+		assertThat(writer.events, contains("0"));
+		assertThat(writer.closed, is(true));
+	}
+
+	@Test
+	public void closesWithoutFinishing() {
+
+		// block the writer forever, like a design that failed while the writer was stuck
+		var writer = new RecordingWriter(new CountDownLatch(1));
+		var async = new AsyncScoreWriter(writer);
+
+		async.writeScore(makeInfo(0));
+
+		// closing shouldn't wait for the stuck write
+		assertTimeoutPreemptively(Duration.ofSeconds(10), async::close);
+		assertThat(writer.closed, is(true));
+		assertThat(writer.finished, is(false));
+	}
+}
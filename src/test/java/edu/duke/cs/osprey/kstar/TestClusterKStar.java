@@ -0,0 +1,265 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.kstar;
+
+import static edu.duke.cs.osprey.kstar.TestKStar.*;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import edu.duke.cs.osprey.astar.conf.ConfAStarTree;
+import edu.duke.cs.osprey.coffee.ClusterMember;
+import edu.duke.cs.osprey.confspace.Sequence;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.SimpleReferenceEnergies;
+import edu.duke.cs.osprey.ematrix.SimplerEnergyMatrixCalculator;
+import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
+import edu.duke.cs.osprey.energy.EnergyCalculator;
+import edu.duke.cs.osprey.kstar.pfunc.GradientDescentPfunc;
+import edu.duke.cs.osprey.kstar.pfunc.PartitionFunction;
+import edu.duke.cs.osprey.parallelism.Cluster;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+
+public class TestClusterKStar {
+
+	static {
+		Cluster.fixHazelcastLogging();
+	}
+
+	private static class Design {
+
+		final ConfSpaces confSpaces = make2RL0();
+		final Map<SimpleConfSpace,SimpleReferenceEnergies> erefs = new HashMap<>();
+		final Map<SimpleConfSpace,EnergyMatrix> emats = new HashMap<>();
+
+		Design() {
+
+			// compute the energy matrices once, and share them with all the cluster members
+			try (EnergyCalculator ecalc = new EnergyCalculator.Builder(confSpaces.complex, confSpaces.ffparams)
+				.setParallelism(Parallelism.makeCpu(4))
+				.build()) {
+
+				for (SimpleConfSpace confSpace : confSpaces.asList()) {
+					SimpleReferenceEnergies eref = new SimplerEnergyMatrixCalculator.Builder(confSpace, ecalc)
+						.build()
+						.calcReferenceEnergies();
+					erefs.put(confSpace, eref);
+					emats.put(confSpace, new SimplerEnergyMatrixCalculator.Builder(new ConfEnergyCalculator.Builder(confSpace, ecalc)
+							.setReferenceEnergies(eref)
+							.build()
+						)
+						.build()
+						.calcEnergyMatrix()
+					);
+				}
+			}
+		}
+	}
+
+	private static Design cachedDesign = null;
+
+	private static synchronized Design design() {
+		if (cachedDesign == null) {
+			cachedDesign = new Design();
+		}
+		return cachedDesign;
+	}
+
+	private static Result runClusterKStar(int numMembers, Cluster.Transport transport, ClusterKStar.Partitioning partitioning, double epsilon) {
+		return runClusterKStar(numMembers, transport, partitioning, epsilon, null);
+	}
+
+	private static Result runClusterKStar(int numMembers, Cluster.Transport transport, ClusterKStar.Partitioning partitioning, double epsilon, Double stabilityThreshold) {
+
+		Design design = design();
+		Result result = new Result();
+
+		var exceptions = ClusterMember.launchPseudoCluster(numMembers, transport, cluster -> {
+			try (var member = new ClusterMember(cluster)) {
+
+				// each member gets its own local energy calculator
+				try (EnergyCalculator ecalc = new EnergyCalculator.Builder(design.confSpaces.complex, design.confSpaces.ffparams)
+					.setParallelism(Parallelism.makeCpu(2))
+					.build()) {
+
+					KStar.Settings settings = new KStar.Settings.Builder()
+						.setEpsilon(epsilon)
+						.setStabilityThreshold(stabilityThreshold)
+						.setMaxSimultaneousMutations(1)
+						.build();
+					KStar kstar = new KStar(design.confSpaces.protein, design.confSpaces.ligand, design.confSpaces.complex, settings);
+					for (KStar.ConfSpaceInfo info : kstar.confSpaceInfos()) {
+
+						SimpleConfSpace confSpace = (SimpleConfSpace)info.confSpace;
+						EnergyMatrix emat = design.emats.get(confSpace);
+
+						info.confEcalc = new ConfEnergyCalculator.Builder(confSpace, ecalc)
+							.setReferenceEnergies(design.erefs.get(confSpace))
+							.build();
+						info.pfuncFactory = (rcs) -> {
+							var pfunc = new GradientDescentPfunc(
+								info.confEcalc,
+								new ConfAStarTree.Builder(emat, rcs)
+									.setTraditional()
+									.build(),
+								new ConfAStarTree.Builder(emat, rcs)
+									.setTraditional()
+									.build(),
+								rcs.getNumConformations()
+							);
+							pfunc.setPreciseBcalc(false);
+							return pfunc;
+						};
+						info.confDBFile = null;
+					}
+
+					var scores = new ClusterKStar.Builder(kstar, member)
+						.setPartitioning(partitioning)
+						.build()
+						.run(ecalc.tasks);
+
+					if (member.isDirector()) {
+						result.kstar = kstar;
+						result.scores = scores;
+					} else {
+						assertThat(scores, is(nullValue()));
+					}
+				}
+			}
+		});
+		if (!exceptions.isEmpty()) {
+			fail("Cluster threads encountered exceptions");
+		}
+
+		return result;
+	}
+
+	@Test
+	public void groupByPrefix() {
+
+		ConfSpaces confSpaces = make2RL0();
+		List<Sequence> sequences = new ArrayList<>();
+		sequences.add(confSpaces.complex.seqSpace.makeWildTypeSequence());
+		sequences.addAll(confSpaces.complex.seqSpace.getMutants(1, true));
+
+		// no prefix, just one group
+		var groups = ClusterKStar.groupByPrefix(sequences, 1);
+		assertThat(groups.size(), is(1));
+		assertThat(groups.get(0).size(), is(sequences.size() - 1));
+
+		// every group should have a distinct prefix,
+		// and every sequence except the wild type should be in exactly one group
+		groups = ClusterKStar.groupByPrefix(sequences, 4);
+		assertThat(groups.size(), greaterThanOrEqualTo(4));
+		List<Integer> indices = groups.stream()
+			.flatMap(group -> group.stream())
+			.sorted()
+			.collect(Collectors.toList());
+		List<Integer> expected = new ArrayList<>();
+		for (int i=1; i<sequences.size(); i++) {
+			expected.add(i);
+		}
+		assertThat(indices, is(expected));
+
+		// asking for more groups than there are sequences gives one group per sequence
+		groups = ClusterKStar.groupByPrefix(sequences, 1000);
+		assertThat(groups.size(), is(sequences.size() - 1));
+	}
+
+	@Test
+	public void test2RL0StaticInProcess() {
+		double epsilon = 0.95;
+		assert2RL0(runClusterKStar(2, Cluster.Transport.InProcess, ClusterKStar.Partitioning.Static, epsilon), epsilon);
+	}
+
+	@Test
+	public void test2RL0DynamicInProcess() {
+		double epsilon = 0.95;
+		assert2RL0(runClusterKStar(3, Cluster.Transport.InProcess, ClusterKStar.Partitioning.Dynamic, epsilon), epsilon);
+	}
+
+	@Test
+	public void test2RL0DynamicHazelcast() {
+		double epsilon = 0.95;
+		assert2RL0(runClusterKStar(2, Cluster.Transport.Hazelcast, ClusterKStar.Partitioning.Dynamic, epsilon), epsilon);
+	}
+
+	@Test
+	public void test2RL0StabilityThreshold() {
+
+		double epsilon = 0.95;
+		Result result = runClusterKStar(2, Cluster.Transport.InProcess, ClusterKStar.Partitioning.Dynamic, epsilon, 0.0);
+
+		// the wild type gets all three partition functions, with no short circuits
+		assertSequence(result, 0, "PHE ASP GLU THR PHE LYS ILE THR", 4.371921e+04, 4.470250e+30, 4.204899e+50, epsilon);
+
+		// mutants that stabilize the protein are still scored
+		assertSequence(result, 15, "PHE ASP GLU SER PHE LYS ILE THR", 3.283712e+06, 4.470250e+30, 1.478944e+53, epsilon);
+
+		// but mutants that destabilize it relative to the wild type are not
+		for (int i : new int[] { 18, 21, 24 }) {
+			assertThat(result.scores.get(i).score.protein.status, is(PartitionFunction.Status.Unstable));
+			assertThat(result.scores.get(i).score.score, is(nullValue()));
+		}
+	}
+
+	@Test
+	public void rank() {
+
+		double epsilon = 0.95;
+		Result result = runClusterKStar(2, Cluster.Transport.InProcess, ClusterKStar.Partitioning.Dynamic, epsilon);
+		List<KStar.ScoredSequence> ranked = ClusterKStar.rank(result.scores);
+
+		assertThat(ranked.size(), is(result.scores.size()));
+
+		// scored sequences come first, best first
+		for (int i=1; i<ranked.size(); i++) {
+			KStarScore prev = ranked.get(i - 1).score;
+			KStarScore next = ranked.get(i).score;
+			if (next.score != null) {
+				assertThat(prev.score, is(not(nullValue())));
+				assertThat(prev.score.compareTo(next.score), greaterThanOrEqualTo(0));
+			}
+		}
+
+		// GLN at G654 has the best K* score in the 2RL0 design
+		assertThat(ranked.get(0).sequence.toString(Sequence.Renderer.AssignmentMutations), is("G654=GLN"));
+	}
+}
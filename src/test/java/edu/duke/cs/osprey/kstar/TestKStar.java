@@ -409,7 +409,7 @@ public class TestKStar {
 		});
 	}
 
-	private static void assert2RL0(Result result, double epsilon) {
+	static void assert2RL0(Result result, double epsilon) {
 		// check the results (values collected with e = 0.01 and 64 digits precision)
 		// NOTE: these values don't match the ones in the TestKSImplLinear test because the conf spaces are slightly different
 		// also, the new K* code has been updated to be more precise
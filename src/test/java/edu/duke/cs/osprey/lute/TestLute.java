@@ -348,12 +348,15 @@ public class TestLute {
 	}
 
 	private static LUTEConfEnergyCalculator train(SimpleConfSpace confSpace, ConfEnergyCalculator confEcalc, EnergyMatrix emat, PruningMatrix pmat) {
+		return train(confSpace, confEcalc, emat, pmat, LUTE.Fitter.OLSCG);
+	}
+
+	private static LUTEConfEnergyCalculator train(SimpleConfSpace confSpace, ConfEnergyCalculator confEcalc, EnergyMatrix emat, PruningMatrix pmat, LUTE.Fitter fitter) {
 
 		try (ConfDB confdb = new ConfDB(confSpace)) {
 			ConfDB.ConfTable confTable = confdb.new ConfTable("lute");
 
 			final int randomSeed = 12345;
-			final LUTE.Fitter fitter = LUTE.Fitter.OLSCG;
 			final double maxOverfittingScore = 1.5;
 			final double maxRMSE = 0.1;
 
@@ -397,6 +400,35 @@ public class TestLute {
 		}
 	}
 
+	@Test
+	public void astarStreaming() {
+
+		SimpleConfSpace confSpace = complex;
+
+		try (EnergyCalculator ecalc = new EnergyCalculator.Builder(confSpace, ffparams)
+			.setParallelism(Parallelism.makeCpu(4))
+			.build()) {
+
+			ConfEnergyCalculator confEcalc = makeConfEcalc(confSpace, ecalc);
+			EnergyMatrix emat = calcEmat(confEcalc);
+			PruningMatrix pmat = calcPmat(confSpace, emat);
+
+			// train LUTE, fitting while sampling
+			LUTEConfEnergyCalculator luteEcalc = train(confSpace, confEcalc, emat, pmat, LUTE.Fitter.StreamingOLSCG);
+
+			ConfAStarTree astar = new ConfAStarTree.Builder(null, pmat)
+				.setLUTE(luteEcalc)
+				.build();
+
+			// should find the same confs as the batch fit
+			final double epsilon = 1e-1;
+			assertConf(astar.nextConf(), new int[] { 13,13,11 }, -29.037828, epsilon);
+			assertConf(astar.nextConf(), new int[] { 13,13,40 }, -28.836836, epsilon);
+			assertConf(astar.nextConf(), new int[] { 11,13,11 }, -28.321740, epsilon);
+			assertConf(astar.nextConf(), new int[] { 11,13,40 }, -28.152335, epsilon);
+		}
+	}
+
 	@Test
 	public void gmec() {
 
@@ -810,4 +842,100 @@ public class TestLute {
 			new RCTuple(1, 2, 2, 0, 3, 1).sorted()
 		));
 	}
+
+	private static class TableTestSpace {
+
+		final SimpleConfSpace confSpace;
+		final LUTE lute;
+		final LUTEState state;
+
+		TableTestSpace() {
+
+			Strand protein = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+			for (String resNum : Arrays.asList("A16", "A17", "A18", "A19")) {
+				protein.flexibility.get(resNum).setLibraryRotamers("VAL"); // 3 rotamers each
+			}
+			confSpace = new SimpleConfSpace.Builder().addStrands(protein).build();
+
+			// pairs and a few triples, with arbitrary energies
+			lute = new LUTE(confSpace);
+			lute.addUniqueTuples(lute.getUnprunedPairTuples(new PruningMatrix(confSpace)));
+			lute.addUniqueTuples(Arrays.asList(
+				new RCTuple(0, 1, 1, 2, 2, 0).sorted(),
+				new RCTuple(1, 2, 2, 0, 3, 1).sorted(),
+				new RCTuple(0, 0, 1, 0, 2, 0).sorted()
+			));
+			state = new LUTEState(lute.tuplesIndex.size());
+			Random rand = new Random(12345);
+			for (int t=0; t<state.tuples.length; t++) {
+				state.tuples[t] = lute.tuplesIndex.get(t);
+				state.tupleEnergies[t] = rand.nextDouble()*10.0 - 5.0;
+			}
+			state.tupleEnergyOffset = 1.5;
+		}
+
+		void forEachConf(Consumer<int[]> block) {
+			int[] conf = new int[4];
+			for (conf[0]=0; conf[0]<3; conf[0]++) {
+				for (conf[1]=0; conf[1]<3; conf[1]++) {
+					for (conf[2]=0; conf[2]<3; conf[2]++) {
+						for (conf[3]=0; conf[3]<3; conf[3]++) {
+							block.accept(conf);
+						}
+					}
+				}
+			}
+		}
+
+		double calcEnergy(int[] conf) {
+			double[] energy = { state.tupleEnergyOffset };
+			lute.tuplesIndex.forEachIn(conf, false, true, (t) -> energy[0] += state.tupleEnergies[t]);
+			return energy[0];
+		}
+	}
+
+	@Test
+	public void energyTableMatchesTuplesIndex() {
+
+		TableTestSpace space = new TableTestSpace();
+		LUTE lute = space.lute;
+		LUTEState state = space.state;
+
+		LUTEEnergyTable table = new LUTEEnergyTable(space.confSpace, state);
+
+		// check every conf
+		space.forEachConf(conf ->
+			assertThat(table.calcEnergy(conf), isAbsolutely(space.calcEnergy(conf), 1e-12))
+		);
+
+		// triple lookups shouldn't depend on the order of the positions
+		double energy = state.tupleEnergies[lute.tuplesIndex.getIndex(new RCTuple(1, 2, 2, 0, 3, 1).sorted())];
+		assertThat(table.getTriple(1, 2, 2, 0, 3, 1), is(energy));
+		assertThat(table.getTriple(3, 1, 1, 2, 2, 0), is(energy));
+		assertThat(table.getTriple(2, 0, 3, 1, 1, 2), is(energy));
+		assertThat(table.getTriple(1, 0, 2, 0, 3, 0), is(0.0));
+	}
+
+	@Test
+	public void energyTableFallsBackToTuplesIndex() {
+
+		TableTestSpace space = new TableTestSpace();
+
+		// 4 positions with 3 RCs each: 12 singles, 6*9 pairs, 3*27 triples, and 4 + 4^2 + 4^3 offsets
+		long bytes = LUTEEnergyTable.estimateBytes(space.confSpace, space.state);
+		assertThat(bytes, is((12L + 6*9 + 3*27)*Double.BYTES + (4L + 4*4 + 4*4*4)*Integer.BYTES));
+
+		// the table should get built only when it fits the budget
+		LUTEConfEnergyCalculator withTable = new LUTEConfEnergyCalculator(space.confSpace, space.state, bytes);
+		assertThat(withTable.table, is(not(nullValue())));
+		LUTEConfEnergyCalculator withoutTable = new LUTEConfEnergyCalculator(space.confSpace, space.state, bytes - 1);
+		assertThat(withoutTable.table, is(nullValue()));
+
+		// both ways should give the same energies
+		space.forEachConf(conf -> {
+			double energy = space.calcEnergy(conf);
+			assertThat(withTable.calcEnergy(conf), isAbsolutely(energy, 1e-12));
+			assertThat(withoutTable.calcEnergy(conf), isAbsolutely(energy, 1e-12));
+		});
+	}
 }
@@ -38,6 +38,7 @@ import edu.duke.cs.osprey.confspace.*;
 import edu.duke.cs.osprey.dof.deeper.DEEPerSettings;
 import edu.duke.cs.osprey.ematrix.EnergyMatrix;
 import edu.duke.cs.osprey.ematrix.SimplerEnergyMatrixCalculator;
+import edu.duke.cs.osprey.ematrix.UpdatingEnergyMatrix;
 import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
 import edu.duke.cs.osprey.energy.EnergyCalculator;
 import edu.duke.cs.osprey.energy.EnergyPartition;
@@ -51,6 +52,7 @@ import edu.duke.cs.osprey.kstar.TestKStar.ConfSpaces;
 import edu.duke.cs.osprey.kstar.pfunc.BoltzmannCalculator;
 import edu.duke.cs.osprey.kstar.pfunc.GradientDescentPfunc;
 import edu.duke.cs.osprey.kstar.pfunc.PartitionFunction;
+import edu.duke.cs.osprey.markstar.framework.MARKStarBoundContinuous;
 import edu.duke.cs.osprey.markstar.visualizer.KStarTreeManipulator;
 import edu.duke.cs.osprey.markstar.visualizer.KStarTreeNode;
 import edu.duke.cs.osprey.parallelism.Parallelism;
@@ -976,6 +978,99 @@ public class TestMARKStar {
 		compareMARKStarAndKStar(numFlex, epsilon);
 	}
 
+	@Test
+	public void testContinuousSchedulerVsPhased() {
+
+		double epsilon = 0.68;
+		ConfSpaces confSpaces = make1GUASmall(3);
+		Result phased = runMARKStar(confSpaces, epsilon, false);
+		Result continuous = runMARKStar(confSpaces, epsilon, true);
+
+		assertThat(continuous.scores.size(), is(phased.scores.size()));
+		for (int i=0; i<phased.scores.size(); i++) {
+			MARKStar.ScoredSequence phasedSeq = phased.scores.get(i);
+			MARKStar.ScoredSequence continuousSeq = continuous.scores.get(i);
+			assertThat(continuousSeq.sequence, is(phasedSeq.sequence));
+			assertSameBounds(continuousSeq.score.protein, phasedSeq.score.protein, epsilon);
+			assertSameBounds(continuousSeq.score.ligand, phasedSeq.score.ligand, epsilon);
+			assertSameBounds(continuousSeq.score.complex, phasedSeq.score.complex, epsilon);
+		}
+	}
+
+	private static void assertSameBounds(PartitionFunction.Result observed, PartitionFunction.Result expected, double epsilon) {
+
+		assertThat(observed.status, is(PartitionFunction.Status.Estimated));
+		assertThat(expected.status, is(PartitionFunction.Status.Estimated));
+		assertThat(observed.values.getEffectiveEpsilon(), lessThanOrEqualTo(epsilon));
+
+		// both schedulers bound the same pfunc, so the bounds have to overlap
+		double relTolerance = 1e-6;
+		assertThat(observed.values.calcLowerBound().doubleValue(),
+			lessThanOrEqualTo(expected.values.calcUpperBound().doubleValue()*(1 + relTolerance)));
+		assertThat(expected.values.calcLowerBound().doubleValue(),
+			lessThanOrEqualTo(observed.values.calcUpperBound().doubleValue()*(1 + relTolerance)));
+	}
+
+	@Test
+	public void testContinuousSchedulerShortRounds() {
+
+		double epsilon = 0.1;
+		ConfSpaces confSpaces = make1GUASmall(3);
+		SimpleConfSpace confSpace = confSpaces.complex;
+		Parallelism parallelism = Parallelism.makeCpu(NUM_CPUs);
+
+		try (EnergyCalculator minimizingEcalc = new EnergyCalculator.Builder(confSpace, confSpaces.ffparams)
+				.setParallelism(parallelism)
+				.build()) {
+
+			EnergyCalculator rigidEcalc = new EnergyCalculator.SharedBuilder(minimizingEcalc)
+				.setIsMinimizing(false)
+				.build();
+			Function<EnergyCalculator,ConfEnergyCalculator> makeConfEcalc = ecalc ->
+				new ConfEnergyCalculator.Builder(confSpace, ecalc)
+					.setReferenceEnergies(new SimplerEnergyMatrixCalculator.Builder(confSpace, ecalc)
+						.build()
+						.calcReferenceEnergies()
+					)
+					.build();
+			ConfEnergyCalculator minimizingConfEcalc = makeConfEcalc.apply(minimizingEcalc);
+			EnergyMatrix rigidEmat = new SimplerEnergyMatrixCalculator.Builder(makeConfEcalc.apply(rigidEcalc))
+				.build()
+				.calcEnergyMatrix();
+			EnergyMatrix minimizingEmat = new SimplerEnergyMatrixCalculator.Builder(minimizingConfEcalc)
+				.build()
+				.calcEnergyMatrix();
+
+			// rounds so short that nearly every round ends on its time limit, with tasks still in flight
+			var pfunc = new MARKStarBoundContinuous(confSpace, rigidEmat, minimizingEmat, minimizingConfEcalc,
+				new RCs(confSpace), parallelism, 1e-9, MARKStarBoundContinuous.DefaultTimeAverageWeight) {
+
+				/** applies anything compute() left behind, and reads the bounds straight from the tree */
+				BigDecimal[] drainedBounds() {
+					finishCompute();
+					return new BigDecimal[] { rootNode.getLowerBound(), rootNode.getUpperBound() };
+				}
+			};
+			pfunc.setCorrections(new UpdatingEnergyMatrix(confSpace, minimizingEmat));
+			pfunc.init(epsilon);
+
+			// stop early, so the last round can't drain its tasks on convergence
+			pfunc.compute(8);
+			BigDecimal lower = pfunc.getValues().qstar;
+			BigDecimal upper = pfunc.getValues().pstar;
+
+			// every finished task should already be in the reported bounds
+			BigDecimal[] drained = pfunc.drainedBounds();
+			assertThat(MathTools.isSameValue(lower, drained[0]), is(true));
+			assertThat(MathTools.isSameValue(upper, drained[1]), is(true));
+
+			// and short rounds should still converge
+			pfunc.compute();
+			assertThat(pfunc.getStatus(), is(PartitionFunction.Status.Estimated));
+			assertThat(pfunc.getValues().getEffectiveEpsilon(), lessThanOrEqualTo(epsilon));
+		}
+	}
+
 	@Test
 	public void testMARKStarTinyEpsilon() {
 		printMARKStarComputationStats(runMARKStar(5, 0.68).get(0));
@@ -1328,6 +1423,10 @@ public class TestMARKStar {
 	}
 
 	public static Result runMARKStar(TestKStar.ConfSpaces confSpaces, double epsilon){
+		return runMARKStar(confSpaces, epsilon, false);
+	}
+
+	public static Result runMARKStar(TestKStar.ConfSpaces confSpaces, double epsilon, boolean useContinuousScheduler){
 
 		Parallelism parallelism = Parallelism.makeCpu(NUM_CPUs);
 
@@ -1359,6 +1458,7 @@ public class TestMARKStar {
 				.setShowPfuncProgress(true)
 				.setParallelism(parallelism)
 				.setReduceMinimizations(REUDCE_MINIMIZATIONS)
+				.setUseContinuousScheduler(useContinuousScheduler)
 				.build();
 
 		result.markstar = new MARKStar(confSpaces.protein, confSpaces.ligand, confSpaces.complex, rigidEcalc, minimizingEcalc, confEcalcFactory, settings);
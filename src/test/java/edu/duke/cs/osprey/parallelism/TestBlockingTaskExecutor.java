@@ -0,0 +1,155 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.parallelism;
+
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import org.junit.jupiter.api.Test;
+
+import edu.duke.cs.osprey.parallelism.TaskExecutor.TaskException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestBlockingTaskExecutor {
+
+	@Test
+	public void countLotsOfBlockedTasks() {
+
+		try (BlockingTaskExecutor tasks = new BlockingTaskExecutor(0)) {
+
+			int[] count = { 0 };
+
+			// way more blocked tasks than we have cores
+			for (int i=0; i<200; i++) {
+				tasks.submit(
+					() -> {
+						// on worker thread: wait for a while
+						ThreadTools.sleep(100);
+						return 1;
+					},
+					(Integer val) -> {
+						// on listener thread: increment counter
+						count[0] += val;
+					}
+				);
+			}
+			tasks.waitForFinish();
+
+			assertThat(count[0], is(200));
+		}
+	}
+
+	@Test
+	public void limitConcurrentTasks() {
+
+		try (BlockingTaskExecutor tasks = new BlockingTaskExecutor(2)) {
+
+			AtomicInteger numRunning = new AtomicInteger(0);
+			int[] maxRunning = { 0 };
+
+			for (int i=0; i<20; i++) {
+				tasks.submit(
+					() -> {
+						int n = numRunning.incrementAndGet();
+						ThreadTools.sleep(10);
+						numRunning.decrementAndGet();
+						return n;
+					},
+					(Integer n) -> maxRunning[0] = Math.max(maxRunning[0], n)
+				);
+			}
+			tasks.waitForFinish();
+
+			assertThat(tasks.getParallelism(), is(2));
+			assertThat(maxRunning[0], lessThanOrEqualTo(2));
+		}
+	}
+
+	@Test
+	public void platformThreads() {
+
+		Parallelism parallelism = new Parallelism.Builder()
+			.setNumCpus(2)
+			.setBlockingThreads(Parallelism.BlockingThreads.Platform)
+			.build();
+
+		try (BlockingTaskExecutor tasks = parallelism.makeBlockingTaskExecutor(0)) {
+			assertThat(tasks.isVirtual, is(false));
+
+			boolean[] isVirtual = { true };
+			tasks.submit(
+				() -> Thread.currentThread().getName().startsWith("blocking-"),
+				(isPlatform) -> isVirtual[0] = !isPlatform
+			);
+			tasks.waitForFinish();
+			assertThat(isVirtual[0], is(false));
+		}
+	}
+
+	@Test
+	public void virtualThreadsWhenAvailable() {
+		try (BlockingTaskExecutor tasks = Parallelism.makeCpu(2).makeBlockingTaskExecutor(0)) {
+			assertThat(tasks.isVirtual, is(BlockingTaskExecutor.hasVirtualThreads()));
+		}
+	}
+
+	@Test
+	public void handleTaskExceptionsGracefully() {
+
+		try (BlockingTaskExecutor tasks = new BlockingTaskExecutor(2)) {
+
+			try {
+				for (int i=0; i<10; i++) {
+					tasks.submit(
+						() -> {
+							// crash in the task
+							throw new Error("Oh No! a Bad Thing has happened");
+						},
+						(Void ignore) -> {
+							fail("task should not finish");
+						}
+					);
+				}
+				tasks.waitForFinish();
+
+				fail("should have thrown Error");
+
+			} catch (TaskException ex) {
+				assertThat(tasks.getNumRunningTasks(), is(0L));
+			}
+		}
+	}
+}
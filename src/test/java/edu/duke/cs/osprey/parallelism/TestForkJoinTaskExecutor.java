@@ -0,0 +1,270 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.parallelism;
+
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import org.junit.jupiter.api.Test;
+
+import edu.duke.cs.osprey.parallelism.TaskExecutor.TaskException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestForkJoinTaskExecutor {
+
+	@Test
+	public void countToTen() {
+
+		try (ForkJoinTaskExecutor tasks = new ForkJoinTaskExecutor.Builder().setNumThreads(1).build()) {
+
+			int[] count = { 0 };
+
+			for (int i=0; i<10; i++) {
+				tasks.submit(
+					() -> {
+						// no work to do
+						return null;
+					},
+					(Void ignore) -> {
+						// increment the counter on the listener thread
+						count[0]++;
+					}
+				);
+			}
+			tasks.waitForFinish();
+
+			assertThat(count[0], is(10));
+		}
+	}
+
+	@Test
+	public void countLotsOfTimes() {
+
+		try (ForkJoinTaskExecutor tasks = new ForkJoinTaskExecutor.Builder().setNumThreads(4).build()) {
+
+			for (int r=0; r<1000; r++) {
+
+				int[] count = { 0 };
+
+				for (int i=0; i<4; i++) {
+					tasks.submit(
+						() -> {
+							// on worker thread: no work to do
+							return null;
+						},
+						(Void ignore) -> {
+							// on listener thread: increment counter
+							count[0]++;
+						}
+					);
+				}
+				tasks.waitForFinish();
+
+				assertThat(count[0], is(4));
+			}
+		}
+	}
+
+	@Test
+	public void countInWorkersAndLanes() {
+
+		try (ForkJoinTaskExecutor tasks = new ForkJoinTaskExecutor.Builder()
+			.setNumThreads(4)
+			.setNumListenerLanes(3)
+			.setMaxPendingTasks(8)
+			.build()) {
+
+			AtomicInteger count = new AtomicInteger(0);
+
+			for (int i=0; i<1000; i++) {
+				tasks.submit(
+					() -> 1,
+					(Integer val) -> count.addAndGet(val),
+					ForkJoinTaskExecutor.DefaultPriority,
+					i % 4 == 3 ? ForkJoinTaskExecutor.InWorker : i % 3
+				);
+			}
+			tasks.waitForFinish();
+
+			assertThat(count.get(), is(1000));
+			assertThat(tasks.getNumRunningTasks(), is(0L));
+		}
+	}
+
+	@Test
+	public void countBatches() {
+
+		try (ForkJoinTaskExecutor tasks = new ForkJoinTaskExecutor.Builder().setNumThreads(4).build()) {
+
+			int[] count = { 0 };
+
+			for (int b=0; b<100; b++) {
+				List<TaskExecutor.Task<Integer>> batch = new ArrayList<>();
+				for (int i=0; i<10; i++) {
+					final int val = i;
+					batch.add(() -> val);
+				}
+				tasks.submitBatch(batch, (Integer val) -> count[0] += val);
+			}
+			tasks.waitForFinish();
+
+			assertThat(count[0], is(100*45));
+		}
+	}
+
+	@Test
+	public void higherPrioritiesFirst() throws InterruptedException {
+
+		try (ForkJoinTaskExecutor tasks = new ForkJoinTaskExecutor.Builder().setNumThreads(1).build()) {
+
+			// block the only worker, so the other tasks queue up
+			CountDownLatch latch = new CountDownLatch(1);
+			tasks.submit(
+				() -> {
+					try {
+						latch.await();
+					} catch (InterruptedException ex) {
+						throw new RuntimeException(ex);
+					}
+					return null;
+				},
+				(Void ignore) -> {}
+			);
+
+			List<Integer> order = new ArrayList<>();
+			for (int priority : new int[] { 1, 5, 3, 5 }) {
+				tasks.submit(() -> priority, order::add, priority);
+			}
+			latch.countDown();
+			tasks.waitForFinish();
+
+			assertThat(order, contains(5, 5, 3, 1));
+		}
+	}
+
+	@Test
+	public void reportRejectedListenersOnce() {
+
+		ForkJoinTaskExecutor tasks = new ForkJoinTaskExecutor.Builder()
+			.setNumThreads(1)
+			.setMaxPendingTasks(1)
+			.build();
+
+		// hold the task until the listener lanes have shut down
+		CountDownLatch latch = new CountDownLatch(1);
+		tasks.submit(
+			() -> {
+				try {
+					latch.await();
+				} catch (InterruptedException ex) {
+					throw new RuntimeException(ex);
+				}
+				return null;
+			},
+			(Void ignore) -> fail("listener should not run")
+		);
+		tasks.clean();
+		latch.countDown();
+
+		try {
+			tasks.waitForFinish();
+			fail("should have thrown TaskException");
+		} catch (TaskException ex) {
+			assertThat(tasks.getNumRunningTasks(), is(0L));
+		}
+	}
+
+	@Test
+	public void handleTaskExceptionsGracefully() {
+
+		try (ForkJoinTaskExecutor tasks = new ForkJoinTaskExecutor.Builder().setNumThreads(2).build()) {
+
+			for (int r=0; r<100; r++) {
+
+				try {
+					for (int i=0; i<10; i++) {
+						tasks.submit(
+							() -> {
+								// crash in the task
+								throw new Error("Oh No! a Bad Thing has happened");
+							},
+							(Void ignore) -> {
+								fail("task should not finish");
+							}
+						);
+					}
+					tasks.waitForFinish();
+
+					fail("should have thrown Error");
+
+				} catch (TaskException ex) {
+
+					assertThat(tasks.getNumRunningTasks(), is(0L));
+
+					// all is well
+					continue;
+				}
+			}
+		}
+	}
+
+	@Test
+	public void handleBatchExceptionsGracefully() {
+
+		try (ForkJoinTaskExecutor tasks = new ForkJoinTaskExecutor.Builder().setNumThreads(2).build()) {
+
+			List<TaskExecutor.Task<Void>> batch = new ArrayList<>();
+			for (int i=0; i<10; i++) {
+				batch.add(() -> {
+					throw new Error("Oh No! a Bad Thing has happened");
+				});
+			}
+
+			try {
+				tasks.submitBatch(batch, (Void ignore) -> fail("task should not finish"));
+				tasks.waitForFinish();
+
+				fail("should have thrown Error");
+
+			} catch (TaskException ex) {
+				assertThat(tasks.getNumRunningTasks(), is(0L));
+			}
+		}
+	}
+}
@@ -43,9 +43,13 @@ import edu.duke.cs.osprey.confspace.Strand;
 import edu.duke.cs.osprey.energy.ResInterGen;
 import edu.duke.cs.osprey.energy.ResidueInteractions;
 import edu.duke.cs.osprey.structure.*;
+import org.apache.commons.math3.linear.RealVector;
+import org.apache.commons.math3.optim.linear.LinearConstraint;
+import org.apache.commons.math3.optim.linear.NoFeasibleSolutionException;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -142,4 +146,132 @@ public class TestPLUG {
 		// Unavoidable: v= 1.13 A23:CD2  <-> A36:HD11 -            overlap=   1.526  >0.000 BadClash
 		assertThat(plug.shouldPruneTuple(tuple, tolerance), is(true));
 	}
+
+	@Test
+	public void constraintsUseVoxelDofs() {
+
+		Strand strand = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+		strand.flexibility.get("A23").setLibraryRotamers("LEU").setContinuous();
+		strand.flexibility.get("A36").setLibraryRotamers("ILE").setContinuous();
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+
+		PLUG plug = new PLUG(confSpace);
+
+		// the atom pairs for A36 only depend on A36's dofs, which come after A23's dofs in the pair voxel,
+		// so their constraints should only have coefficients on A36's dofs
+		ResidueInteractions inters = ResInterGen.of(confSpace)
+			.addIntra(1)
+			.addShell(1)
+			.make();
+
+		int numConstraints = 0;
+		for (int rc0=0; rc0<confSpace.numConf(0); rc0++) {
+			for (int rc1=0; rc1<confSpace.numConf(1); rc1++) {
+
+				RCTuple tuple = new RCTuple(0, rc0, 1, rc1);
+				ParametricMolecule pmol = confSpace.makeMolecule(tuple);
+				assertThat(pmol.dofs.get(0).getResidue().getPDBResNumber(), is("A23"));
+
+				List<LinearConstraint> constraints;
+				try {
+					constraints = plug.getLinearConstraints(tuple, inters, tolerance);
+				} catch (NoFeasibleSolutionException ex) {
+					continue;
+				}
+
+				for (LinearConstraint constraint : constraints) {
+					RealVector u = constraint.getCoefficients();
+					assertThat(u.getDimension(), is(pmol.dofs.size()));
+					for (int d=0; d<pmol.dofs.size(); d++) {
+						if (!pmol.dofs.get(d).getResidue().getPDBResNumber().equals("A36")) {
+							assertThat(u.getEntry(d), is(0.0));
+						}
+					}
+					numConstraints++;
+				}
+			}
+		}
+		assertThat(numConstraints, greaterThan(0));
+	}
+
+	@Test
+	public void cachedMatchesUncached() {
+
+		Strand strand = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+		strand.flexibility.get("A23").setLibraryRotamers("LEU").setContinuous();
+		strand.flexibility.get("A36").setLibraryRotamers("VAL").setContinuous();
+		strand.flexibility.get("A38").setLibraryRotamers("VAL").setContinuous();
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+
+		// get every single, pair, and triple
+		List<RCTuple> tuples = new ArrayList<>();
+		for (int pos1=0; pos1<confSpace.positions.size(); pos1++) {
+			for (int rc1=0; rc1<confSpace.numConf(pos1); rc1++) {
+				tuples.add(new RCTuple(pos1, rc1));
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc2=0; rc2<confSpace.numConf(pos2); rc2++) {
+						tuples.add(new RCTuple(pos2, rc2, pos1, rc1));
+						for (int pos3=0; pos3<pos2; pos3++) {
+							for (int rc3=0; rc3<confSpace.numConf(pos3); rc3++) {
+								tuples.add(new RCTuple(pos3, rc3, pos2, rc2, pos1, rc1));
+							}
+						}
+					}
+				}
+			}
+		}
+
+		// with no cache, PLUG calculates every tuple directly
+		PLUG uncached = new PLUG(confSpace, null);
+		List<Boolean> expected = new ArrayList<>();
+		for (RCTuple tuple : tuples) {
+			expected.add(uncached.shouldPruneTuple(tuple, tolerance));
+		}
+		assertThat(expected, hasItem(true));
+		assertThat(expected, hasItem(false));
+
+		// the cached constraints should give the same answers
+		PLUGCache cache = new PLUGCache(confSpace);
+		PLUG cached = new PLUG(confSpace, cache);
+		for (int i=0; i<tuples.size(); i++) {
+			assertThat(tuples.get(i).toString(), cached.shouldPruneTuple(tuples.get(i), tolerance), is(expected.get(i)));
+		}
+		int numEntries = cache.size();
+		assertThat(numEntries, greaterThan(0));
+
+		// and so should a full cache, without adding anything to it
+		PLUG warm = new PLUG(confSpace, cache);
+		for (int i=0; i<tuples.size(); i++) {
+			assertThat(tuples.get(i).toString(), warm.shouldPruneTuple(tuples.get(i), tolerance), is(expected.get(i)));
+		}
+		assertThat(cache.size(), is(numEntries));
+	}
+
+	@Test
+	public void cacheMatchesOnlyItsConfSpace() {
+
+		SimpleConfSpace confSpace = makeValValConfSpace("A36", "A38");
+		PLUGCache cache = new PLUGCache(confSpace);
+		assertThat(cache.matches(confSpace), is(true));
+		assertThat(cache.matches(makeValValConfSpace("A36", "A38")), is(true));
+
+		// same RC counts, but different residues
+		SimpleConfSpace otherConfSpace = makeValValConfSpace("A37", "A38");
+		assertThat(otherConfSpace.numConf(0), is(confSpace.numConf(0)));
+		assertThat(otherConfSpace.numConf(1), is(confSpace.numConf(1)));
+		assertThat(cache.matches(otherConfSpace), is(false));
+	}
+
+	private static SimpleConfSpace makeValValConfSpace(String resNum1, String resNum2) {
+		Strand strand = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+		strand.flexibility.get(resNum1).setLibraryRotamers("VAL").setContinuous();
+		strand.flexibility.get(resNum2).setLibraryRotamers("VAL").setContinuous();
+		return new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+	}
 }
@@ -241,6 +241,88 @@ public class TestSimpleDEE extends TestBase {
 		assertThat(pmat, is(readPmat(confSpace, "---------++++++++--+--+-----+--+-----+--+--------+--------+--------+----+++++++++++++++-+++++++++++++++-----+---+-------+++++++++++++++-+++++++++++++++-+++++++++++++++-+++++++++++++++-+++++++++++++++")));
 	}
 
+	@Test
+	public void test1CC8_3Pos_SinglesGoldstein_Packed() {
+		SimpleConfSpace confSpace = make1CC8_3Pos();
+		PruningMatrix pmat = calcPmat(confSpace, (runner) -> {
+			runner.setSinglesThreshold(null);
+			runner.setPairsThreshold(null);
+			runner.setSinglesGoldsteinDiffThreshold(100.0);
+			runner.setPacked(true);
+		});
+		assertThat(pmat, is(readPmat(confSpace, "----+---+++++++++------------------------------------------------------++++++++++++++++++++++++++++++++----------------++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++")));
+	}
+
+	@Test
+	public void test1CC8_3Pos_PairsGoldstein_Packed() {
+		SimpleConfSpace confSpace = make1CC8_3Pos();
+		PruningMatrix pmat = calcPmat(confSpace, (runner) -> {
+			runner.setSinglesThreshold(null);
+			runner.setPairsThreshold(null);
+			runner.setPairsGoldsteinDiffThreshold(100.0);
+			runner.setPacked(true);
+		});
+		assertThat(pmat, is(readPmat(confSpace, "---------++++++++--+--+-----+--+-----+--+--------+--------+--------+----+++++++++++++++-+++++++++++++++-----+---+-------+++++++++++++++-+++++++++++++++-+++++++++++++++-+++++++++++++++-+++++++++++++++")));
+	}
+
+	@Test
+	public void test1CC8_3Pos_TriplesGoldstein_PackedMatchesSimple() {
+		SimpleConfSpace confSpace = make1CC8_3Pos();
+		Consumer<SimpleDEE.Runner> config = (runner) -> {
+			runner.setSinglesThreshold(null);
+			runner.setPairsThreshold(null);
+			runner.setGoldsteinDiffThreshold(10.0);
+		};
+		PruningMatrix simplePmat = calcPmat(confSpace, config);
+		PruningMatrix packedPmat = calcPmat(confSpace, config.andThen((runner) -> runner.setPacked(true)));
+		assertThat(packedPmat, is(simplePmat));
+		assertThat(packedPmat.countPrunedTriples(), is(simplePmat.countPrunedTriples()));
+	}
+
+	@Test
+	public void test1CC8_5Pos_TriplesGoldstein_PackedMatchesSimpleParallel() {
+
+		Strand strand = new Strand.Builder(PDBIO.readFile("examples/1CC8/1CC8.ss.pdb")).build();
+		for (String resNum : Arrays.asList("A3", "A4", "A5", "A6", "A7")) {
+			strand.flexibility.get(resNum).setLibraryRotamers(Strand.WildType);
+		}
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+
+		AtomicReference<EnergyMatrix> emat = new AtomicReference<>(null);
+		new EnergyCalculator.Builder(confSpace, new ForcefieldParams())
+			.setParallelism(Parallelism.makeCpu(4))
+			.use((ecalc) -> {
+				emat.set(new SimplerEnergyMatrixCalculator.Builder(confSpace, ecalc)
+					.build()
+					.calcEnergyMatrix());
+			});
+
+		// prune singles and pairs first, so there aren't too many triples
+		PruningMatrix pmat = new PruningMatrix(confSpace);
+		SimpleDEE dee = new SimpleDEE(confSpace, emat.get(), pmat);
+		dee.pruneSinglesGoldstein(10.0, false);
+		dee.prunePairsGoldstein(10.0, false);
+
+		// compete against a fixed pruning matrix, so the prunings don't depend on which threads finish first
+		PruningMatrix competitors = new PruningMatrix(pmat);
+		Parallelism parallelism = Parallelism.makeCpu(4);
+
+		PruningMatrix simplePmat = new PruningMatrix(pmat);
+		new SimpleDEE(confSpace, emat.get(), simplePmat, competitors).pruneTriplesGoldstein(10.0, false, parallelism);
+
+		PruningMatrix packedPmat = new PruningMatrix(pmat);
+		new PackedDEE(confSpace, emat.get(), packedPmat, competitors).pruneTriplesGoldstein(10.0, false, parallelism);
+
+		assertThat(simplePmat.countPrunedTriples(), greaterThan(0));
+		assertThat(packedPmat.countPrunedTriples(), is(simplePmat.countPrunedTriples()));
+		simplePmat.forEachUnprunedTriple((pos1, rc1, pos2, rc2, pos3, rc3) -> {
+			assertThat(packedPmat.isTriplePruned(pos1, rc1, pos2, rc2, pos3, rc3), is(false));
+			return PruningMatrix.IteratorCommand.Continue;
+		});
+	}
+
 	@Test
 	public void prunedConfsOutsideInterval() {
 
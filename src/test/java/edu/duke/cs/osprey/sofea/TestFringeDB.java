@@ -455,6 +455,84 @@ public class TestFringeDB {
 		}
 	}
 
+	@Test
+	public void sizesMapped() {
+		MultiStateConfSpace confSpace = makeConfSpace();
+
+		try (TempFile file = new TempFile("fringe.db")) {
+
+			// entries are padded from 17 bytes to 24 bytes
+			try (FringeDB db = FringeDB.createMapped(confSpace, file, 1024)) {
+				assertThat(db.isMapped(), is(true));
+				assertThat(file.length(), is(1024L));
+				assertThat(db.getNumNodes(), is(0L));
+				assertThat(db.getCapacity(), is(36L));
+			}
+
+			// aligned DBs can be opened without mapping too
+			try (FringeDB db = FringeDB.open(confSpace, file)) {
+				assertThat(db.isMapped(), is(false));
+				assertThat(db.getCapacity(), is(36L));
+			}
+		}
+	}
+
+	@Test
+	public void mappedSegmentsWrapAround() {
+
+		MultiStateConfSpace confSpace = makeConfSpace();
+
+		try (TempFile file = new TempFile("fringe.db")) {
+
+			// make a DB with room for 5 nodes
+			try (FringeDB db = FringeDB.createMapped(confSpace, file, 160 + 5*24)) {
+				assertThat(db.getCapacity(), is(5L));
+
+				FringeDB.Transaction tx = db.transaction();
+				tx.writeRootNode(confSpace.states.get(0), new BigExp(1.0));
+				tx.writeRootNode(confSpace.states.get(1), new BigExp(2.0));
+				tx.writeRootNode(confSpace.states.get(2), new BigExp(3.0));
+				tx.commit();
+				db.finishStep();
+			}
+
+			// use tiny segments, so the sweeps cross segment boundaries and wrap around the end of the file
+			try (FringeDB db = FringeDB.openMapped(confSpace, file, 2*24)) {
+				for (int sweep=0; sweep<4; sweep++) {
+
+					FringeDB.Transaction tx = db.transaction();
+					assertThat(tx.numNodesToRead(), is(3L));
+					for (int i=0; i<3; i++) {
+						tx.readNode();
+						assertThat(tx.state().index, is(i));
+						assertThat(tx.zSumUpper(), is(new BigExp(i + 1.0 + sweep)));
+						tx.writeReplacementNode(tx.state(), tx.conf(), new BigExp(i + 2.0 + sweep));
+					}
+					tx.commit();
+					db.finishStep();
+				}
+			}
+
+			// the file I/O should read the same nodes
+			try (FringeDB db = FringeDB.open(confSpace, file)) {
+				FringeDB.Transaction tx = db.transaction();
+				assertThat(tx.numNodesToRead(), is(3L));
+				tx.readNode();
+				assertThat(tx.state().index, is(0));
+				assertThat(tx.conf(), is(conf(-1, -1)));
+				assertThat(tx.zSumUpper(), is(new BigExp(5.0)));
+				tx.readNode();
+				assertThat(tx.state().index, is(1));
+				assertThat(tx.conf(), is(conf(-1, -1, -1, -1)));
+				assertThat(tx.zSumUpper(), is(new BigExp(6.0)));
+				tx.readNode();
+				assertThat(tx.state().index, is(2));
+				assertThat(tx.conf(), is(conf(-1, -1)));
+				assertThat(tx.zSumUpper(), is(new BigExp(7.0)));
+			}
+		}
+	}
+
 	private static MultiStateConfSpace makeConfSpace() {
 
 		Molecule pdb = PDBIO.readResource("/1CC8.ss.pdb");
@@ -139,6 +139,16 @@ public class TestSofea {
 			1024*1024
 		);
 	}
+	@Test
+	public void test_Stability1CC8Flex3_Traditional_MultiStepHiMem_RCInfo_Pipelined() {
+		stepUntilExhaustionAndCheckRCInfo(
+			Designs.Stability1CC8Flex3_Traditional.get(),
+			5.0,
+			1024*1024,
+			2,
+			true
+		);
+	}
 
 
 	@Test
@@ -352,6 +362,17 @@ public class TestSofea {
 		);
 	}
 	@Test
+	public void test_Binding1CC8Mut2Flex2_Traditional_MultiStepHiMem_4Threads_Pipelined() {
+		stepUntilAllStatesPrecise(
+			Designs.Binding1CC8Mut2Flex2_Traditional.get(),
+			5.0,
+			1024*1024,
+			4,
+			true,
+			TestSofea::assertResults_Binding1CC8Mut2Flex2_Traditional
+		);
+	}
+	@Test
 	public void test_Binding1CC8Mut2Flex2_Traditional_MultiStepLoMem() {
 		stepUntilAllStatesPrecise(
 			Designs.Binding1CC8Mut2Flex2_Traditional.get(),
@@ -910,11 +931,15 @@ public class TestSofea {
 	}
 
 	public void stepUntilExhaustionAndCheckRCInfo(Design design, double sweepIncrement, long fringeDBBytes) {
+		stepUntilExhaustionAndCheckRCInfo(design, sweepIncrement, fringeDBBytes, 1, false);
+	}
+
+	public void stepUntilExhaustionAndCheckRCInfo(Design design, double sweepIncrement, long fringeDBBytes, int numThreads, boolean pipelined) {
 		try (TempFile fringedbLowerFile = new TempFile(tmpdir, "fringe.lower.db")) {
 		try (TempFile fringedbUpperFile = new TempFile(tmpdir, "fringe.upper.db")) {
 		try (TempFile seqdbFile = new TempFile(tmpdir, "seq.db")) {
 		try (TempFile rcdbFile = new TempFile(tmpdir, "rc.db")) {
-		try (Ecalcs ecalcs = design.makeEcalcs(Parallelism.makeCpu(1))) {
+		try (Ecalcs ecalcs = design.makeEcalcs(Parallelism.makeCpu(numThreads))) {
 
 			Sofea sofea = new Sofea.Builder(design.confSpace)
 				.setFringeDBLowerFile(fringedbLowerFile)
@@ -924,6 +949,7 @@ public class TestSofea {
 				.setSeqDBFile(seqdbFile)
 				.setRCDBFile(rcdbFile)
 				.setSweepIncrement(sweepIncrement)
+				.setPipelined(pipelined)
 				.setNegligableFreeEnergy(10.0)
 				.configEachState(state -> design.configState(state, ecalcs))
 				.build();
@@ -991,6 +1017,10 @@ public class TestSofea {
 	}
 
 	public void stepUntilAllStatesPrecise(Design design, double sweepIncrement, long fringeDBBytes, int numThreads, IntermediateChecker checker) {
+		stepUntilAllStatesPrecise(design, sweepIncrement, fringeDBBytes, numThreads, false, checker);
+	}
+
+	public void stepUntilAllStatesPrecise(Design design, double sweepIncrement, long fringeDBBytes, int numThreads, boolean pipelined, IntermediateChecker checker) {
 		try (TempFile fringedbLowerFile = new TempFile(tmpdir, "fringe.lower.db")) {
 		try (TempFile fringedbUpperFile = new TempFile(tmpdir, "fringe.upper.db")) {
 		try (TempFile seqdbFile = new TempFile(tmpdir, "seq.db")) {
@@ -1003,6 +1033,7 @@ public class TestSofea {
 				.setFringeDBUpperBytes(fringeDBBytes)
 				.setSeqDBFile(seqdbFile)
 				.setSweepIncrement(sweepIncrement)
+				.setPipelined(pipelined)
 				.configEachState(state -> design.configState(state, ecalcs))
 				.build();
 
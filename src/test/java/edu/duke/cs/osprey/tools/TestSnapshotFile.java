@@ -0,0 +1,197 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.tools;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
+import edu.duke.cs.osprey.restypes.ResidueTemplate;
+import edu.duke.cs.osprey.restypes.ResidueTemplateLibrary;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class TestSnapshotFile {
+
+	private File dir;
+
+	@BeforeEach
+	public void before()
+	throws IOException {
+		dir = Files.createTempDirectory("osprey-snapshots").toFile();
+	}
+
+	@AfterEach
+	public void after() {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	private static SnapshotFile.Key key(String val) {
+		return new SnapshotFile.Key("test").add(val);
+	}
+
+	@Test
+	public void roundTrip() {
+
+		AtomicInteger numMade = new AtomicInteger(0);
+		ArrayList<String> a = SnapshotFile.loadOrMake(dir, "test", key("a"), ArrayList.class, () -> {
+			numMade.incrementAndGet();
+			ArrayList<String> list = new ArrayList<>();
+			list.add("hello");
+			return list;
+		});
+		ArrayList<String> b = SnapshotFile.loadOrMake(dir, "test", key("a"), ArrayList.class, () -> {
+			numMade.incrementAndGet();
+			return new ArrayList<>();
+		});
+
+		assertThat(numMade.get(), is(1));
+		assertThat(b, is(a));
+	}
+
+	@Test
+	public void differentKey() {
+
+		SnapshotFile.loadOrMake(dir, "test", key("a"), ArrayList.class, ArrayList::new);
+
+		AtomicInteger numMade = new AtomicInteger(0);
+		SnapshotFile.loadOrMake(dir, "test", key("b"), ArrayList.class, () -> {
+			numMade.incrementAndGet();
+			return new ArrayList<>();
+		});
+
+		assertThat(numMade.get(), is(1));
+	}
+
+	@Test
+	public void corruptFile()
+	throws IOException {
+
+		SnapshotFile.Key key = key("a");
+		File file = new File(dir, key.toFilename("test"));
+		Files.write(file.toPath(), new byte[] { 1, 2, 3, 4 });
+
+		assertThat(SnapshotFile.read(file, key, ArrayList.class), is(nullValue()));
+
+		// rebuilding should replace the bad file
+		SnapshotFile.loadOrMake(dir, "test", key, ArrayList.class, ArrayList::new);
+		assertThat(SnapshotFile.read(file, key, ArrayList.class), is(new ArrayList<>()));
+	}
+
+	@Test
+	public void rejectsOtherClasses()
+	throws IOException {
+
+		SnapshotFile.Key key = key("a");
+		File file = new File(dir, key.toFilename("test"));
+
+		// java.io isn't on the allow list
+		SnapshotFile.write(file, key, new File("hello"));
+		assertThat(SnapshotFile.read(file, key, File.class), is(nullValue()));
+
+		// not even inside an allowed collection
+		ArrayList<Object> list = new ArrayList<>();
+		list.add(new File("hello"));
+		SnapshotFile.write(file, key, list);
+		assertThat(SnapshotFile.read(file, key, ArrayList.class), is(nullValue()));
+
+		// but collections of allowed types are fine
+		ArrayList<Object> allowed = new ArrayList<>();
+		allowed.add("hello");
+		allowed.add(5);
+		allowed.add(new double[] { 1.0, 2.0 });
+		SnapshotFile.write(file, key, allowed);
+		assertThat(SnapshotFile.read(file, key, ArrayList.class).size(), is(3));
+	}
+
+	@Test
+	public void templateLibrary() {
+
+		ForcefieldParams ffparams = ForcefieldParams.fromSnapshot(ForcefieldParams.Forcefield.AMBER, dir);
+		ResidueTemplateLibrary expected = new ResidueTemplateLibrary.Builder(ffparams)
+			.setSnapshotDir(dir)
+			.build();
+
+		// the second time should read the snapshots
+		ffparams = ForcefieldParams.fromSnapshot(ForcefieldParams.Forcefield.AMBER, dir);
+		ResidueTemplateLibrary observed = new ResidueTemplateLibrary.Builder(ffparams)
+			.setSnapshotDir(dir)
+			.build();
+
+		assertThat(observed, is(not(sameInstance(expected))));
+		assertThat(observed.totalNumRotamers, is(expected.totalNumRotamers));
+		assertThat(observed.templates.size(), is(expected.templates.size()));
+		for (int i=0; i<expected.templates.size(); i++) {
+			ResidueTemplate exp = expected.templates.get(i);
+			ResidueTemplate obs = observed.templates.get(i);
+			assertThat(obs.name, is(exp.name));
+			assertThat(obs.templateRes.atoms.size(), is(exp.templateRes.atoms.size()));
+		}
+	}
+
+	@Test
+	public void templateLibraryUsesCallerForcefieldParams() {
+
+		new ResidueTemplateLibrary.Builder(new ForcefieldParams())
+			.setSnapshotDir(dir)
+			.build();
+
+		// change a setting that isn't part of the snapshot key
+		ForcefieldParams ffparams = new ForcefieldParams();
+		ffparams.solvScale = 0.3;
+		ResidueTemplateLibrary observed = new ResidueTemplateLibrary.Builder(ffparams)
+			.setSnapshotDir(dir)
+			.build();
+
+		// the library should read the snapshot, but keep our params
+		assertThat(dir.listFiles().length, is(1));
+		assertThat(observed.ffparams, is(sameInstance(ffparams)));
+		assertThat(observed.ffparams.solvScale, is(0.3));
+		assertThat(observed.templates.isEmpty(), is(false));
+	}
+}